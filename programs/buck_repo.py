@@ -108,8 +108,10 @@ RESOURCES = {
     "path_to_intellij_py": "src/com/facebook/buck/command/intellij.py",
     "path_to_pathlib_py": "third-party/py/pathlib/pathlib.py",
     "path_to_pex": "src/com/facebook/buck/python/make_pex.py",
+    "path_to_pex_library": "third-party/py/pex",
     "path_to_pywatchman": "third-party/py/pywatchman",
     "path_to_scandir_py": "third-party/py/scandir/scandir.py",
+    "path_to_setuptools": "third-party/py/setuptools",
     "path_to_sh_binary_template": "src/com/facebook/buck/shell/sh_binary_template",
     "path_to_static_content": "webserver/static",
     "report_generator_jar": "build/report-generator.jar",
@@ -49,8 +49,10 @@ EXPORTED_RESOURCES = [
     Resource("path_to_pathlib_py", basename='pathlib.py'),
     Resource("path_to_intellij_py"),
     Resource("path_to_pex"),
+    Resource("path_to_pex_library"),
     Resource("path_to_pywatchman"),
     Resource("path_to_scandir_py", basename='scandir.py'),
+    Resource("path_to_setuptools"),
     Resource("path_to_sh_binary_template"),
     Resource("jacoco_agent_jar"),
     Resource("report_generator_jar"),
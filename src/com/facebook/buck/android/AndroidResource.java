@@ -20,6 +20,7 @@ import static com.facebook.buck.rules.BuildableProperties.Kind.ANDROID;
 import static com.facebook.buck.rules.BuildableProperties.Kind.LIBRARY;
 
 import com.facebook.buck.android.aapt.MiniAapt;
+import com.facebook.buck.android.aapt.ResourceSymbolTable;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
@@ -365,6 +366,8 @@ public class AndroidResource extends AbstractBuildRule
             resourceUnion));
 
     buildableContext.recordArtifact(Preconditions.checkNotNull(pathToTextSymbolsFile));
+    buildableContext.recordArtifact(
+        ResourceSymbolTable.getPathToSymbolTable(pathToTextSymbolsFile));
 
     steps.add(
         new RecordFileSha1Step(
@@ -20,6 +20,7 @@ import static com.google.common.collect.Ordering.natural;
 
 import com.facebook.buck.android.aapt.RDotTxtEntry;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.android.aapt.ResourceSymbolTable;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.SourcePath;
@@ -27,17 +28,19 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.util.MoreStrings;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
@@ -48,8 +51,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 public class MergeAndroidResourcesStep implements Step {
@@ -316,48 +321,58 @@ public class MergeAndroidResourcesStep implements Step {
       enumerator = new IntEnumerator(0x7f01001);
     }
 
-    SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToSymbolsFiles = TreeMultimap.create();
-    SortedSetMultimap<RDotTxtEntry, Path> bannedDuplicateResourceToSymbolsFiles =
-        TreeMultimap.create();
+    // Every symbols file is sorted, so a k-way merge over them visits resources in the order they
+    // end up in R.java, and equal resources from different files next to each other with the
+    // earliest file first.  Files are read once each, from their binary symbol table when the
+    // android_resource() which produced them wrote one.
+    PriorityQueue<SymbolsFileCursor> cursors =
+        new PriorityQueue<>(Math.max(1, symbolsFileToRDotJavaPackage.size()));
+    int index = 0;
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
-      Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
-      List<String> linesInSymbolsFile;
+      ImmutableList<RDotTxtEntry> resources;
       try {
-        linesInSymbolsFile =
-            FluentIterable.from(filesystem.readLines(symbolsFile))
-                .filter(MoreStrings.NON_EMPTY)
-                .toList();
+        resources = ResourceSymbolTable.read(filesystem, entry.getKey());
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
+      if (!resources.isEmpty()) {
+        cursors.add(
+            new SymbolsFileCursor(index, entry.getKey(), entry.getValue(), resources.iterator()));
+      }
+      index++;
+    }
 
-      String packageName = entry.getValue();
-      for (String line : linesInSymbolsFile) {
-        Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
-        Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
-
-        // We're only doing the remapping so Roboelectric is happy and it is already ignoring the
-        // id references found in the styleable section.  So let's do that as well so we don't have
-        // to get fancier than is needed.  That is, just re-enumerate all app-level resource ids
-        // and ignore everything else, allowing the styleable references to be messed up.
-        RDotTxtEntry resource = parsedEntry.get();
-        if (uberRDotTxtIds.isPresent()) {
-          Preconditions.checkNotNull(finalIds);
-          if (!finalIds.containsKey(resource)) {
-            LOG.debug("Cannot find resource '%s' in the uber R.txt.", resource);
-            continue;
-          }
-          resource = resource.copyWithNewIdValue(finalIds.get(resource));
-        } else if (resource.idValue.startsWith("0x7f")) {
-          Preconditions.checkNotNull(enumerator);
-          resource = resource.copyWithNewIdValue(String.format("0x%08x", enumerator.next()));
-        }
-        if (bannedDuplicateResourceTypes.contains(resource.type)) {
-          bannedDuplicateResourceToSymbolsFiles.put(resource, symbolsFile);
+    SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToSymbolsFiles = TreeMultimap.create();
+    SortedSetMultimap<RDotTxtEntry, Path> bannedDuplicateResourceToSymbolsFiles =
+        TreeMultimap.create();
+    while (!cursors.isEmpty()) {
+      SymbolsFileCursor cursor = cursors.poll();
+      Path symbolsFile = cursor.symbolsFile;
+      String packageName = cursor.rDotJavaPackage;
+      RDotTxtEntry resource = cursor.next();
+      if (cursor.hasNext()) {
+        cursors.add(cursor);
+      }
+
+      // We're only doing the remapping so Roboelectric is happy and it is already ignoring the
+      // id references found in the styleable section.  So let's do that as well so we don't have
+      // to get fancier than is needed.  That is, just re-enumerate all app-level resource ids
+      // and ignore everything else, allowing the styleable references to be messed up.
+      if (uberRDotTxtIds.isPresent()) {
+        Preconditions.checkNotNull(finalIds);
+        if (!finalIds.containsKey(resource)) {
+          LOG.debug("Cannot find resource '%s' in the uber R.txt.", resource);
+          continue;
         }
-        rDotJavaPackageToSymbolsFiles.put(packageName, resource);
+        resource = resource.copyWithNewIdValue(finalIds.get(resource));
+      } else if (resource.idValue.startsWith("0x7f")) {
+        Preconditions.checkNotNull(enumerator);
+        resource = resource.copyWithNewIdValue(String.format("0x%08x", enumerator.next()));
       }
+      if (bannedDuplicateResourceTypes.contains(resource.type)) {
+        bannedDuplicateResourceToSymbolsFiles.put(resource, symbolsFile);
+      }
+      rDotJavaPackageToSymbolsFiles.put(packageName, resource);
     }
 
     StringBuilder duplicateResourcesMessage = new StringBuilder();
@@ -405,6 +420,44 @@ public class MergeAndroidResourcesStep implements Step {
         String.format("%s.java", rName));
   }
 
+  /**
+   * The next unmerged resource of one symbols file.  Cursors order by that resource, and then by
+   * the position of their file in the merge.
+   */
+  private static class SymbolsFileCursor implements Comparable<SymbolsFileCursor> {
+    private final int index;
+    private final Path symbolsFile;
+    private final String rDotJavaPackage;
+    private final PeekingIterator<RDotTxtEntry> resources;
+
+    public SymbolsFileCursor(
+        int index,
+        Path symbolsFile,
+        String rDotJavaPackage,
+        Iterator<RDotTxtEntry> resources) {
+      this.index = index;
+      this.symbolsFile = symbolsFile;
+      this.rDotJavaPackage = rDotJavaPackage;
+      this.resources = Iterators.peekingIterator(resources);
+    }
+
+    public boolean hasNext() {
+      return resources.hasNext();
+    }
+
+    public RDotTxtEntry next() {
+      return resources.next();
+    }
+
+    @Override
+    public int compareTo(SymbolsFileCursor that) {
+      return ComparisonChain.start()
+          .compare(this.resources.peek(), that.resources.peek())
+          .compare(this.index, that.index)
+          .result();
+    }
+  }
+
   private static class IntEnumerator {
     private int value;
 
@@ -27,11 +27,9 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.util.MoreStrings;
 import com.facebook.buck.util.XmlDomParser;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
-import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
@@ -53,6 +51,7 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
@@ -98,6 +97,8 @@ public class MiniAapt implements Step {
   private final ImmutableSet<Path> pathsToSymbolsOfDeps;
   private final AaptResourceCollector resourceCollector;
   private final boolean resourceUnion;
+  @Nullable
+  private ImmutableList<RDotTxtEntry> symbolsOfDeps;
 
   public MiniAapt(
       SourcePathResolver resolver,
@@ -189,18 +190,34 @@ public class MiniAapt implements Step {
       }
     }
 
+    // The symbol table holds exactly what reading back the text would give, so that consumers
+    // see the same entries whichever of the two they read.
+    ImmutableList.Builder<RDotTxtEntry> writtenResources = ImmutableList.builder();
     try (PrintWriter writer =
              new PrintWriter(filesystem.newFileOutputStream(pathToTextSymbolsFile))) {
       Set<RDotTxtEntry> sortedResources =
           FluentIterable.from(resourceCollector.getResources()).toSortedSet(Ordering.natural());
       for (RDotTxtEntry entry : sortedResources) {
-        writer.printf("%s %s %s %s\n", entry.idType, entry.type, entry.name, entry.idValue);
+        String line = String.format(
+            "%s %s %s %s", entry.idType, entry.type, entry.name, entry.idValue);
+        writer.printf("%s\n", line);
+        writtenResources.add(RDotTxtEntry.TO_ENTRY.apply(line));
       }
     } catch (IOException e) {
       context.logError(e, "Error writing file: %s", pathToTextSymbolsFile);
       return StepExecutionResult.ERROR;
     }
 
+    try {
+      ResourceSymbolTable.write(filesystem, pathToTextSymbolsFile, writtenResources.build());
+    } catch (IOException e) {
+      context.logError(
+          e,
+          "Error writing file: %s",
+          ResourceSymbolTable.getPathToSymbolTable(pathToTextSymbolsFile));
+      return StepExecutionResult.ERROR;
+    }
+
     return StepExecutionResult.SUCCESS;
   }
 
@@ -209,15 +226,8 @@ public class MiniAapt implements Step {
    * @throws IOException
    */
   public void resourceUnion() throws IOException {
-    for (Path depRTxt : pathsToSymbolsOfDeps) {
-      Iterable<String> lines = FluentIterable.from(filesystem.readLines(depRTxt))
-          .filter(MoreStrings.NON_EMPTY)
-          .toList();
-      for (String line : lines) {
-        Optional<RDotTxtEntry> entry = RDotTxtEntry.parse(line);
-        Preconditions.checkState(entry.isPresent());
-        resourceCollector.addResourceIfNotPresent(entry.get());
-      }
+    for (RDotTxtEntry entry : getSymbolsOfDeps()) {
+      resourceCollector.addResourceIfNotPresent(entry);
     }
   }
 
@@ -563,16 +573,7 @@ public class MiniAapt implements Step {
     ImmutableSet.Builder<RDotTxtEntry> unresolved = ImmutableSet.builder();
     ImmutableSet.Builder<RDotTxtEntry> definitionsBuilder = ImmutableSet.builder();
     definitionsBuilder.addAll(resourceCollector.getResources());
-    for (Path depRTxt : pathsToSymbolsOfDeps) {
-      Iterable<String> lines = FluentIterable.from(filesystem.readLines(depRTxt))
-          .filter(MoreStrings.NON_EMPTY)
-          .toList();
-      for (String line : lines) {
-        Optional<RDotTxtEntry> entry = RDotTxtEntry.parse(line);
-        Preconditions.checkState(entry.isPresent());
-        definitionsBuilder.add(entry.get());
-      }
-    }
+    definitionsBuilder.addAll(getSymbolsOfDeps());
 
     Set<RDotTxtEntry> definitions = definitionsBuilder.build();
     for (RDotTxtEntry reference : references) {
@@ -583,6 +584,21 @@ public class MiniAapt implements Step {
     return unresolved.build();
   }
 
+  /**
+   * @return the symbols of every dep, which are read the first time they are needed and shared by
+   *     the reference check and the resource union.
+   */
+  private ImmutableList<RDotTxtEntry> getSymbolsOfDeps() throws IOException {
+    if (symbolsOfDeps == null) {
+      ImmutableList.Builder<RDotTxtEntry> entries = ImmutableList.builder();
+      for (Path depRTxt : pathsToSymbolsOfDeps) {
+        entries.addAll(ResourceSymbolTable.read(filesystem, depRTxt));
+      }
+      symbolsOfDeps = entries.build();
+    }
+    return symbolsOfDeps;
+  }
+
   @Override
   public String getShortName() {
     return "generate_resource_ids";
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A binary encoding of the entries of an {@code R.txt} file, written next to it by
+ * {@link MiniAapt} so that rules merging the symbols of many {@code android_resource()}s don't
+ * each have to parse every text file again.
+ * <p>
+ * Entries are stored in their natural order, which is the order of the {@code R.txt} written
+ * alongside, so tables can be merged without sorting them first.
+ */
+public class ResourceSymbolTable {
+
+  private static final int MAGIC = 0x52747874;
+  private static final int VERSION = 1;
+
+  private static final RType[] RTYPES = RType.values();
+  private static final IdType[] ID_TYPES = IdType.values();
+
+  private ResourceSymbolTable() {}
+
+  /**
+   * @return where the table for {@code pathToTextSymbolsFile} lives.
+   */
+  public static Path getPathToSymbolTable(Path pathToTextSymbolsFile) {
+    return pathToTextSymbolsFile.resolveSibling(pathToTextSymbolsFile.getFileName() + ".bin");
+  }
+
+  /**
+   * Writes the table for {@code pathToTextSymbolsFile}, which must list {@code entries} in their
+   * natural order.
+   */
+  public static void write(
+      ProjectFilesystem filesystem,
+      Path pathToTextSymbolsFile,
+      Iterable<RDotTxtEntry> entries) throws IOException {
+    ImmutableList<RDotTxtEntry> sortedEntries = ImmutableList.copyOf(entries);
+    try (OutputStream output =
+             filesystem.newFileOutputStream(getPathToSymbolTable(pathToTextSymbolsFile));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sortedEntries.size());
+      for (RDotTxtEntry entry : sortedEntries) {
+        out.writeByte(entry.idType.ordinal());
+        out.writeByte(entry.type.ordinal());
+        out.writeBoolean(entry.custom);
+        writeString(out, entry.name);
+        writeString(out, entry.idValue);
+      }
+    }
+  }
+
+  /**
+   * @return the entries of {@code pathToTextSymbolsFile} in their natural order, read from its
+   *     table if there is one, and parsed from the text otherwise (e.g. for the {@code R.txt} of a
+   *     prebuilt aar).
+   */
+  public static ImmutableList<RDotTxtEntry> read(
+      ProjectFilesystem filesystem,
+      Path pathToTextSymbolsFile) throws IOException {
+    Path pathToSymbolTable = getPathToSymbolTable(pathToTextSymbolsFile);
+    if (!filesystem.isFile(pathToSymbolTable)) {
+      return FluentIterable.from(RDotTxtEntry.readResources(filesystem, pathToTextSymbolsFile))
+          .toSortedList(Ordering.natural());
+    }
+
+    try (InputStream input = filesystem.newFileInputStream(pathToSymbolTable);
+         DataInputStream in = new DataInputStream(new BufferedInputStream(input))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(
+            String.format("%s is not a resource symbol table.", pathToSymbolTable));
+      }
+      int size = in.readInt();
+      ImmutableList.Builder<RDotTxtEntry> entries = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        IdType idType = ID_TYPES[in.readUnsignedByte()];
+        RType type = RTYPES[in.readUnsignedByte()];
+        boolean custom = in.readBoolean();
+        String name = readString(in);
+        String idValue = readString(in);
+        entries.add(new RDotTxtEntry(idType, type, name, idValue, custom));
+      }
+      return entries.build();
+    }
+  }
+
+  // Styleable arrays can run past the 64k limit of DataOutput.writeUTF.
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.apple.project_generator;
+
+import com.facebook.buck.apple.xcode.xcodeproj.PBXProject;
+import com.facebook.buck.apple.xcode.xcodeproj.PBXTarget;
+import com.facebook.buck.hashing.StringHashing;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the projects generated by {@link ProjectGenerator} across runs of {@code buck project}
+ * in the same daemon, so that a project whose targets have not changed is not generated again.
+ * <p>
+ * Each project is remembered under its path along with a hash of everything its generation
+ * depends on: the generator's options and the raw inputs of every target node reachable from the
+ * targets in the project.  A project is only reused if that hash is unchanged and every file the
+ * generator read or wrote for it (the project file, xcconfigs, header symlink trees and so on) is
+ * still on disk as it was left.
+ */
+public class ProjectGenerationCache {
+
+  private static final Logger LOG = Logger.get(ProjectGenerationCache.class);
+
+  private final ConcurrentMap<Path, CachedProject> projects = new ConcurrentHashMap<>();
+
+  /**
+   * @param projectPath absolute path to the {@code .xcodeproj} directory.
+   * @param key hash of the inputs the project is being generated from.
+   * @return the project previously generated at {@code projectPath} from the same inputs, provided
+   *     none of the files it read or wrote have changed since.
+   */
+  public Optional<CachedProject> get(
+      ProjectFilesystem filesystem,
+      Path projectPath,
+      HashCode key) throws IOException {
+    CachedProject cachedProject = projects.get(projectPath);
+    if (cachedProject == null) {
+      return Optional.absent();
+    }
+    if (!cachedProject.getKey().equals(key)) {
+      LOG.debug("Targets of project %s have changed since it was generated.", projectPath);
+      return Optional.absent();
+    }
+    for (Map.Entry<Path, HashCode> file : cachedProject.getFiles().entrySet()) {
+      if (!fingerprint(filesystem, file.getKey()).equals(file.getValue())) {
+        LOG.debug(
+            "%s has changed since project %s was generated.",
+            file.getKey(),
+            projectPath);
+        return Optional.absent();
+      }
+    }
+    return Optional.of(cachedProject);
+  }
+
+  public void put(Path projectPath, CachedProject cachedProject) {
+    projects.put(projectPath, cachedProject);
+  }
+
+  /**
+   * @return a hash of the contents of {@code path} if it is a file, of the names of its children if
+   *     it is a directory, or a marker that it does not exist.
+   */
+  static HashCode fingerprint(ProjectFilesystem filesystem, Path path) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    if (filesystem.isDirectory(path)) {
+      StringHashing.hashStringAndLength(hasher, "directory");
+      for (String child : FluentIterable.from(filesystem.getDirectoryContents(path))
+          .transform(input -> input.getFileName().toString())
+          .toSortedList(Ordering.natural())) {
+        StringHashing.hashStringAndLength(hasher, child);
+      }
+    } else if (filesystem.isFile(path)) {
+      StringHashing.hashStringAndLength(hasher, "file");
+      filesystem.computeSha1(path).update(hasher);
+    } else {
+      StringHashing.hashStringAndLength(hasher, "missing");
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * A generated project, along with what the {@link WorkspaceAndProjectGenerator} needs from its
+   * {@link ProjectGenerator}.
+   */
+  public static final class CachedProject {
+    private final HashCode key;
+    private final ImmutableMap<Path, HashCode> files;
+    private final PBXProject project;
+    private final ImmutableMultimap<BuildTarget, PBXTarget> buildTargetToGeneratedTargetMap;
+    private final ImmutableSet<PBXTarget> buildableCombinedTestTargets;
+    private final ImmutableSet<BuildTarget> requiredBuildTargets;
+    private final ImmutableList<Path> headerSymlinkTrees;
+
+    public CachedProject(
+        HashCode key,
+        ImmutableMap<Path, HashCode> files,
+        PBXProject project,
+        ImmutableMultimap<BuildTarget, PBXTarget> buildTargetToGeneratedTargetMap,
+        ImmutableSet<PBXTarget> buildableCombinedTestTargets,
+        ImmutableSet<BuildTarget> requiredBuildTargets,
+        ImmutableList<Path> headerSymlinkTrees) {
+      this.key = key;
+      this.files = files;
+      this.project = project;
+      this.buildTargetToGeneratedTargetMap = buildTargetToGeneratedTargetMap;
+      this.buildableCombinedTestTargets = buildableCombinedTestTargets;
+      this.requiredBuildTargets = requiredBuildTargets;
+      this.headerSymlinkTrees = headerSymlinkTrees;
+    }
+
+    public HashCode getKey() {
+      return key;
+    }
+
+    /**
+     * @return fingerprints of the files read or written while generating the project.
+     */
+    public ImmutableMap<Path, HashCode> getFiles() {
+      return files;
+    }
+
+    public PBXProject getProject() {
+      return project;
+    }
+
+    public ImmutableMultimap<BuildTarget, PBXTarget> getBuildTargetToGeneratedTargetMap() {
+      return buildTargetToGeneratedTargetMap;
+    }
+
+    public ImmutableSet<PBXTarget> getBuildableCombinedTestTargets() {
+      return buildableCombinedTestTargets;
+    }
+
+    public ImmutableSet<BuildTarget> getRequiredBuildTargets() {
+      return requiredBuildTargets;
+    }
+
+    public ImmutableList<Path> getHeaderSymlinkTrees() {
+      return headerSymlinkTrees;
+    }
+  }
+}
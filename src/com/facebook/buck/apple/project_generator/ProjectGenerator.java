@@ -74,6 +74,7 @@ import com.facebook.buck.graph.GraphTraversable;
 import com.facebook.buck.halide.HalideBuckConfig;
 import com.facebook.buck.halide.HalideCompile;
 import com.facebook.buck.halide.HalideLibraryDescription;
+import com.facebook.buck.hashing.StringHashing;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.MoreProjectFilesystems;
@@ -86,6 +87,7 @@ import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.model.Either;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.FlavorDomain;
+import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.model.HasTests;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
@@ -132,6 +134,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
@@ -158,6 +161,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -293,12 +297,16 @@ public class ProjectGenerator {
       additionalCombinedTestTargets = ImmutableMultimap.of();
 
   // These fields are created/filled when creating the projects.
-  private final PBXProject project;
+  private PBXProject project;
   private final LoadingCache<TargetNode<?>, Optional<PBXTarget>> targetNodeToProjectTarget;
   private final ImmutableMultimap.Builder<TargetNode<?>, PBXTarget>
       targetNodeToGeneratedProjectTargetBuilder;
   private boolean projectGenerated;
   private final List<Path> headerSymlinkTrees;
+  /**
+   * Files read or written while generating the project, which a cached copy of it depends on.
+   */
+  private final Set<Path> generationFiles = new LinkedHashSet<>();
   private final ImmutableSet.Builder<PBXTarget> buildableCombinedTestTargets =
       ImmutableSet.builder();
   private final ImmutableSet.Builder<BuildTarget> requiredBuildTargetsBuilder =
@@ -318,6 +326,8 @@ public class ProjectGenerator {
   private final AppleConfig appleConfig;
   private final SwiftBuckConfig swiftBuckConfig;
   private final ImmutableList<BuildTarget> focusModules;
+  private RecursiveDependenciesCache dependenciesCache;
+  private Optional<ProjectGenerationCache> generationCache = Optional.absent();
 
   public ProjectGenerator(
       TargetGraph targetGraph,
@@ -394,6 +404,7 @@ public class ProjectGenerator {
     this.appleConfig = appleConfig;
     this.swiftBuckConfig = swiftBuckConfig;
     this.focusModules = focusModules;
+    this.dependenciesCache = new RecursiveDependenciesCache(targetGraph);
 
     for (BuildTarget focusedTarget : focusModules) {
       Preconditions.checkArgument(
@@ -402,6 +413,27 @@ public class ProjectGenerator {
     }
   }
 
+  /**
+   * Shares the recursive dependencies of the target graph with other generators of the same
+   * workspace, so that each one does not have to walk the graph again.
+   */
+  public ProjectGenerator setRecursiveDependenciesCache(
+      RecursiveDependenciesCache dependenciesCache) {
+    Preconditions.checkState(!projectGenerated);
+    Preconditions.checkArgument(dependenciesCache.getTargetGraph() == targetGraph);
+    this.dependenciesCache = dependenciesCache;
+    return this;
+  }
+
+  /**
+   * Reuses the project generated by an earlier run from the same targets, if there was one.
+   */
+  public ProjectGenerator setGenerationCache(ProjectGenerationCache generationCache) {
+    Preconditions.checkState(!projectGenerated);
+    this.generationCache = Optional.of(generationCache);
+    return this;
+  }
+
   /**
    * Sets the set of tests which should be generated as static libraries instead of test bundles.
    */
@@ -490,6 +522,22 @@ public class ProjectGenerator {
             buckEventBus,
             PerfEventId.of("xcode_project_generation"),
             ImmutableMap.of("Path", getProjectPath()))) {
+      Optional<HashCode> generationKey = Optional.absent();
+      if (generationCache.isPresent()) {
+        generationKey = Optional.of(getGenerationKey());
+        Optional<ProjectGenerationCache.CachedProject> cachedProject =
+            generationCache.get().get(
+                projectFilesystem,
+                projectFilesystem.resolve(projectPath),
+                generationKey.get());
+        if (cachedProject.isPresent()) {
+          LOG.debug("Reusing project at %s (targets have not changed)", projectPath);
+          restoreCachedProject(cachedProject.get());
+          projectGenerated = true;
+          return;
+        }
+      }
+
       for (TargetNode<?> targetNode : targetGraph.getNodes()) {
         if (isBuiltByCurrentProject(targetNode.getBuildTarget())) {
           LOG.debug("Including rule %s in project", targetNode);
@@ -526,6 +574,23 @@ public class ProjectGenerator {
       writeProjectFile(project);
 
       projectGenerated = true;
+
+      if (generationKey.isPresent()) {
+        ImmutableMap.Builder<Path, HashCode> files = ImmutableMap.builder();
+        for (Path file : generationFiles) {
+          files.put(file, ProjectGenerationCache.fingerprint(projectFilesystem, file));
+        }
+        generationCache.get().put(
+            projectFilesystem.resolve(projectPath),
+            new ProjectGenerationCache.CachedProject(
+                generationKey.get(),
+                files.build(),
+                project,
+                getBuildTargetToGeneratedTargetMap(),
+                getBuildableCombinedTestTargets(),
+                getRequiredBuildTargets(),
+                ImmutableList.copyOf(headerSymlinkTrees)));
+      }
     } catch (UncheckedExecutionException e) {
       // if any code throws an exception, they tend to get wrapped in LoadingCache's
       // UncheckedExecutionException. Unwrap it if its cause is HumanReadable.
@@ -541,6 +606,73 @@ public class ProjectGenerator {
     }
   }
 
+  /**
+   * @return a hash of everything the generated project depends on, other than the files recorded
+   *     in {@link #generationFiles} and the buck configuration, which lasts as long as the daemon.
+   */
+  private HashCode getGenerationKey() {
+    Hasher hasher = Hashing.sha1().newHasher();
+    StringHashing.hashStringAndLength(hasher, projectCell.getRoot().toString());
+    StringHashing.hashStringAndLength(hasher, projectPath.toString());
+    StringHashing.hashStringAndLength(hasher, buildFileName);
+    for (Option option : ImmutableSortedSet.copyOf(options)) {
+      StringHashing.hashStringAndLength(hasher, option.name());
+    }
+    StringHashing.hashStringAndLength(hasher, targetToBuildWithBuck.toString());
+    StringHashing.hashStringAndLength(hasher, buildWithBuckFlags.toString());
+    StringHashing.hashStringAndLength(hasher, focusModules.toString());
+    StringHashing.hashStringAndLength(hasher, ImmutableSortedMap.copyOf(environment).toString());
+    StringHashing.hashStringAndLength(hasher, cxxPlatforms.getFlavors().toString());
+    StringHashing.hashStringAndLength(hasher, defaultCxxPlatform.getFlavor().toString());
+    StringHashing.hashStringAndLength(hasher, ImmutableSortedSet.copyOf(initialTargets).toString());
+    StringHashing.hashStringAndLength(
+        hasher,
+        FluentIterable.from(testsToGenerateAsStaticLibraries)
+            .transform(HasBuildTarget.TO_TARGET)
+            .toSortedSet(Ordering.natural())
+            .toString());
+
+    ImmutableSet.Builder<TargetNode<?>> roots = ImmutableSet.builder();
+    roots.addAll(targetGraph.getAll(initialTargets));
+    if (targetToBuildWithBuck.isPresent()) {
+      roots.add(targetGraph.get(targetToBuildWithBuck.get()));
+    }
+    roots.addAll(testsToGenerateAsStaticLibraries);
+    for (AppleTestBundleParamsKey key : additionalCombinedTestTargets.keySet()) {
+      StringHashing.hashStringAndLength(hasher, key.toString());
+      ImmutableSortedSet.Builder<BuildTarget> tests = ImmutableSortedSet.naturalOrder();
+      for (TargetNode<AppleTestDescription.Arg> test : additionalCombinedTestTargets.get(key)) {
+        tests.add(test.getBuildTarget());
+        roots.add(test);
+      }
+      StringHashing.hashStringAndLength(hasher, tests.build().toString());
+    }
+
+    ImmutableSortedMap.Builder<BuildTarget, HashCode> nodeHashes =
+        ImmutableSortedMap.naturalOrder();
+    for (TargetNode<?> node : targetGraph.getSubgraph(roots.build()).getNodes()) {
+      nodeHashes.put(node.getBuildTarget(), node.getRawInputsHashCode());
+    }
+    for (Map.Entry<BuildTarget, HashCode> entry : nodeHashes.build().entrySet()) {
+      StringHashing.hashStringAndLength(hasher, entry.getKey().toString());
+      hasher.putBytes(entry.getValue().asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private void restoreCachedProject(ProjectGenerationCache.CachedProject cachedProject) {
+    project = cachedProject.getProject();
+    for (Map.Entry<BuildTarget, PBXTarget> entry :
+        cachedProject.getBuildTargetToGeneratedTargetMap().entries()) {
+      targetNodeToGeneratedProjectTargetBuilder.put(
+          targetGraph.get(entry.getKey()),
+          entry.getValue());
+    }
+    buildableCombinedTestTargets.addAll(cachedProject.getBuildableCombinedTestTargets());
+    requiredBuildTargetsBuilder.addAll(cachedProject.getRequiredBuildTargets());
+    headerSymlinkTrees.addAll(cachedProject.getHeaderSymlinkTrees());
+  }
+
   private void generateBuildWithBuckTarget(TargetNode<?> targetNode) throws IOException {
     final BuildTarget buildTarget = targetNode.getBuildTarget();
 
@@ -812,6 +944,7 @@ public class ProjectGenerator {
         getHalideOutputPath(targetNode.getRuleFactoryParams().getProjectFilesystem(), buildTarget);
 
     Path scriptPath = halideBuckConfig.getXcodeCompileScriptPath();
+    generationFiles.add(scriptPath);
     Optional<String> script = projectFilesystem.readFileIfItExists(scriptPath);
     PBXShellScriptBuildPhase scriptPhase = new PBXShellScriptBuildPhase();
     scriptPhase.setShellScript(script.or(""));
@@ -955,11 +1088,11 @@ public class ProjectGenerator {
             sourcePathResolver.apply(targetNode.getConstructorArg().getInfoPlist()));
 
     // -- copy any binary and bundle targets into this bundle
-    Iterable<TargetNode<?>> copiedRules = AppleBuildRules.getRecursiveTargetNodeDependenciesOfTypes(
-        targetGraph,
-        AppleBuildRules.RecursiveDependenciesMode.COPYING,
-        targetNode,
-        Optional.of(AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES));
+    Iterable<TargetNode<?>> copiedRules =
+        dependenciesCache.getRecursiveTargetNodeDependenciesOfTypes(
+            AppleBuildRules.RecursiveDependenciesMode.COPYING,
+            targetNode,
+            Optional.of(AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES));
     if (bundleRequiresRemovalOfAllTransitiveFrameworks(targetNode)) {
       copiedRules = rulesWithoutFrameworkBundles(copiedRules);
     } else if (bundleRequiresAllTransitiveFrameworks(binaryNode)) {
@@ -1834,6 +1967,7 @@ public class ProjectGenerator {
         stringBuilder.append('\n');
       }
       String xcconfigContents = stringBuilder.toString();
+      generationFiles.add(xcconfigPath);
 
       if (MoreProjectFilesystems.fileContentsDiffer(
           new ByteArrayInputStream(xcconfigContents.getBytes(Charsets.UTF_8)),
@@ -1905,6 +2039,8 @@ public class ProjectGenerator {
     Path headerMapLocation = getHeaderMapLocationFromSymlinkTreeRoot(headerSymlinkTreeRoot);
 
     Path hashCodeFilePath = headerSymlinkTreeRoot.resolve(".contents-hash");
+    generationFiles.add(hashCodeFilePath);
+    generationFiles.add(headerMapLocation);
     Optional<String> currentHashCode = projectFilesystem.readFileIfItExists(hashCodeFilePath);
     String newHashCode =
         getHeaderSymlinkTreeHashCode(resolvedContents, shouldCreateHeadersSymlinks).toString();
@@ -1996,6 +2132,7 @@ public class ProjectGenerator {
                     pathRelativizer.outputDirToRootRelative(dataModel.path),
                     Optional.absent()));
 
+        generationFiles.add(dataModel.path);
         projectFilesystem.walkRelativeFileTree(
             dataModel.path,
             new SimpleFileVisitor<Path>() {
@@ -2014,6 +2151,7 @@ public class ProjectGenerator {
             });
 
         Path currentVersionPath = dataModel.path.resolve(currentVersionFileName);
+        generationFiles.add(currentVersionPath);
         try (InputStream in = projectFilesystem.newFileInputStream(currentVersionPath)) {
           NSObject rootObject;
           try {
@@ -2168,6 +2306,7 @@ public class ProjectGenerator {
     projectFilesystem.mkdirs(xcodeprojDir);
     Path serializedProject = xcodeprojDir.resolve("project.pbxproj");
     String contentsToWrite = rootObject.toXMLPropertyList();
+    generationFiles.add(serializedProject);
     // Before we write any files, check if the file contents have changed.
     if (MoreProjectFilesystems.fileContentsDiffer(
         new ByteArrayInputStream(contentsToWrite.getBytes(Charsets.UTF_8)),
@@ -2314,8 +2453,7 @@ public class ProjectGenerator {
       TargetNode<? extends CxxLibraryDescription.Arg> targetNode) {
     ImmutableSet.Builder<Path> builder = ImmutableSet.builder();
     for (TargetNode<?> input :
-        AppleBuildRules.getRecursiveTargetNodeDependenciesOfTypes(
-            targetGraph,
+        dependenciesCache.getRecursiveTargetNodeDependenciesOfTypes(
             AppleBuildRules.RecursiveDependenciesMode.BUILDING,
             targetNode,
             Optional.of(
@@ -2346,8 +2484,7 @@ public class ProjectGenerator {
     builder.add(getHeaderSymlinkTreeRelativePath(targetNode, HeaderVisibility.PUBLIC));
 
     for (TargetNode<?> input :
-        AppleBuildRules.getRecursiveTargetNodeDependenciesOfTypes(
-            targetGraph,
+        dependenciesCache.getRecursiveTargetNodeDependenciesOfTypes(
             AppleBuildRules.RecursiveDependenciesMode.BUILDING,
             targetNode,
             Optional.of(AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES))) {
@@ -2443,8 +2580,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.LINKING,
                 AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES))
         .transformAndConcat(
@@ -2474,8 +2610,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.LINKING,
                 ImmutableSet.of(
                     AppleLibraryDescription.TYPE,
@@ -2498,8 +2633,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.BUILDING,
                 ImmutableSet.of(
                     AppleLibraryDescription.TYPE,
@@ -2522,8 +2656,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.BUILDING,
                 ImmutableSet.of(
                     AppleLibraryDescription.TYPE,
@@ -2546,8 +2679,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.LINKING,
                 ImmutableSet.of(
                     AppleLibraryDescription.TYPE,
@@ -2571,8 +2703,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.LINKING,
                 ImmutableSet.of(
                     AppleLibraryDescription.TYPE,
@@ -2596,8 +2727,7 @@ public class ProjectGenerator {
     return FluentIterable
         .from(targetNodes)
         .transformAndConcat(
-            AppleBuildRules.newRecursiveRuleDependencyTransformer(
-                targetGraph,
+            dependenciesCache.newRecursiveRuleDependencyTransformer(
                 AppleBuildRules.RecursiveDependenciesMode.LINKING,
                 AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES))
         .filter(getLibraryWithSourcesToCompilePredicate())
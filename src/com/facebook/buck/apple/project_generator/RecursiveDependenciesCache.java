@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.apple.project_generator;
+
+import com.facebook.buck.apple.AppleBuildRules;
+import com.facebook.buck.model.Pair;
+import com.facebook.buck.rules.BuildRuleType;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Memoizes {@link AppleBuildRules#getRecursiveTargetNodeDependenciesOfTypes} for one target graph.
+ * <p>
+ * Generating a target asks for the transitive dependencies of the same nodes many times over, once
+ * each for header search paths, linker flags, framework search paths and so on, and the projects
+ * of a workspace share most of their dependencies.  This walks the graph once per node and mode,
+ * and can be shared by generators running on different threads.
+ */
+public class RecursiveDependenciesCache {
+
+  private final TargetGraph targetGraph;
+  private final LoadingCache<
+      Pair<AppleBuildRules.RecursiveDependenciesMode, TargetNode<?>>,
+      ImmutableList<TargetNode<?>>> dependencies;
+
+  public RecursiveDependenciesCache(final TargetGraph targetGraph) {
+    this.targetGraph = targetGraph;
+    this.dependencies = CacheBuilder.newBuilder().build(
+        new CacheLoader<
+            Pair<AppleBuildRules.RecursiveDependenciesMode, TargetNode<?>>,
+            ImmutableList<TargetNode<?>>>() {
+          @Override
+          public ImmutableList<TargetNode<?>> load(
+              Pair<AppleBuildRules.RecursiveDependenciesMode, TargetNode<?>> key) {
+            return ImmutableList.copyOf(
+                AppleBuildRules.getRecursiveTargetNodeDependenciesOfTypes(
+                    targetGraph,
+                    key.getFirst(),
+                    key.getSecond(),
+                    Optional.absent()));
+          }
+        });
+  }
+
+  public TargetGraph getTargetGraph() {
+    return targetGraph;
+  }
+
+  /**
+   * @return the same nodes, in the same order, as
+   *     {@link AppleBuildRules#getRecursiveTargetNodeDependenciesOfTypes}.
+   */
+  public ImmutableList<TargetNode<?>> getRecursiveTargetNodeDependenciesOfTypes(
+      AppleBuildRules.RecursiveDependenciesMode mode,
+      TargetNode<?> targetNode,
+      final Optional<ImmutableSet<BuildRuleType>> types) {
+    ImmutableList<TargetNode<?>> allDependencies =
+        dependencies.getUnchecked(new Pair<>(mode, targetNode));
+    if (!types.isPresent()) {
+      return allDependencies;
+    }
+    return FluentIterable.from(allDependencies)
+        .filter(input -> types.get().contains(input.getType()))
+        .toList();
+  }
+
+  public Function<TargetNode<?>, Iterable<TargetNode<?>>> newRecursiveRuleDependencyTransformer(
+      final AppleBuildRules.RecursiveDependenciesMode mode,
+      final ImmutableSet<BuildRuleType> types) {
+    return input -> getRecursiveTargetNodeDependenciesOfTypes(mode, input, Optional.of(types));
+  }
+}
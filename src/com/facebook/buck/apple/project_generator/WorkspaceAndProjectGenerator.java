@@ -86,6 +86,7 @@ public class WorkspaceAndProjectGenerator {
 
   private final Cell rootCell;
   private final TargetGraph projectGraph;
+  private final RecursiveDependenciesCache dependenciesCache;
   private final XcodeWorkspaceConfigDescription.Arg workspaceArguments;
   private final BuildTarget workspaceBuildTarget;
   private final ImmutableList<BuildTarget> focusModules;
@@ -99,6 +100,7 @@ public class WorkspaceAndProjectGenerator {
   private final FlavorDomain<CxxPlatform> cxxPlatforms;
   private final CxxPlatform defaultCxxPlatform;
   private ImmutableSet<TargetNode<AppleTestDescription.Arg>> groupableTests = ImmutableSet.of();
+  private Optional<ProjectGenerationCache> generationCache = Optional.absent();
 
   private Optional<ProjectGenerator> combinedProjectGenerator;
   private Optional<ProjectGenerator> combinedTestsProjectGenerator = Optional.absent();
@@ -138,6 +140,7 @@ public class WorkspaceAndProjectGenerator {
       SwiftBuckConfig swiftBuckConfig) {
     this.rootCell = cell;
     this.projectGraph = projectGraph;
+    this.dependenciesCache = new RecursiveDependenciesCache(projectGraph);
     this.workspaceArguments = workspaceArguments;
     this.workspaceBuildTarget = workspaceBuildTarget;
     this.focusModules = focusModules;
@@ -197,6 +200,14 @@ public class WorkspaceAndProjectGenerator {
     return this;
   }
 
+  /**
+   * Reuse projects generated by earlier runs in the same daemon whose targets have not changed.
+   */
+  public WorkspaceAndProjectGenerator setGenerationCache(ProjectGenerationCache generationCache) {
+    this.generationCache = Optional.of(generationCache);
+    return this;
+  }
+
   public Path generateWorkspaceAndDependentProjects(
       Map<Path, ProjectGenerator> projectGenerators,
       ListeningExecutorService listeningExecutorService)
@@ -512,7 +523,8 @@ public class WorkspaceAndProjectGenerator {
         cxxBuckConfig,
         appleConfig,
         swiftBuckConfig);
-    combinedTestsProjectGenerator
+    useGenerationCache(combinedTestsProjectGenerator)
+        .setRecursiveDependenciesCache(dependenciesCache)
         .setAdditionalCombinedTestTargets(groupedTests)
         .createXcodeProjects();
     this.combinedTestsProjectGenerator = Optional.of(combinedTestsProjectGenerator);
@@ -549,7 +561,7 @@ public class WorkspaceAndProjectGenerator {
           // Otherwise, name the project the same thing as the directory we're in.
           projectName = projectDirectory.getFileName().toString();
         }
-        generator = new ProjectGenerator(
+        generator = useGenerationCache(new ProjectGenerator(
             projectGraph,
             rules,
             projectCell,
@@ -578,7 +590,8 @@ public class WorkspaceAndProjectGenerator {
             halideBuckConfig,
             cxxBuckConfig,
             appleConfig,
-            swiftBuckConfig)
+            swiftBuckConfig))
+            .setRecursiveDependenciesCache(dependenciesCache)
             .setTestsToGenerateAsStaticLibraries(groupableTests);
         projectGenerators.put(projectDirectory, generator);
         shouldGenerateProjects = true;
@@ -609,7 +622,7 @@ public class WorkspaceAndProjectGenerator {
       ImmutableMap.Builder<PBXTarget, Path> targetToProjectPathMapBuilder,
       Optional<BuildTarget> targetToBuildWithBuck) throws IOException {
     LOG.debug("Generating a combined project");
-    ProjectGenerator generator = new ProjectGenerator(
+    ProjectGenerator generator = useGenerationCache(new ProjectGenerator(
         projectGraph,
         targetsInRequiredProjects,
         rootCell,
@@ -629,7 +642,8 @@ public class WorkspaceAndProjectGenerator {
         halideBuckConfig,
         cxxBuckConfig,
         appleConfig,
-        swiftBuckConfig)
+        swiftBuckConfig))
+        .setRecursiveDependenciesCache(dependenciesCache)
         .setAdditionalCombinedTestTargets(groupedTests)
         .setTestsToGenerateAsStaticLibraries(groupableTests);
     combinedProjectGenerator = Optional.of(generator);
@@ -648,6 +662,13 @@ public class WorkspaceAndProjectGenerator {
     return result.getBuildableCombinedTestTargets();
   }
 
+  private ProjectGenerator useGenerationCache(ProjectGenerator generator) {
+    if (generationCache.isPresent()) {
+      generator.setGenerationCache(generationCache.get());
+    }
+    return generator;
+  }
+
   private Optional<BuildTarget> getTargetToBuildWithBuck() {
     if (buildWithBuck) {
       return workspaceArguments.srcTarget;
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.artifact_cache;
 
+import com.facebook.buck.counters.CounterRegistry;
+import com.facebook.buck.counters.HistogramCounter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.BorrowablePath;
@@ -25,6 +27,8 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpService;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -35,11 +39,13 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 
 public abstract class AbstractNetworkCache implements ArtifactCache {
 
   private static final Logger LOG = Logger.get(AbstractNetworkCache.class);
+  private static final String COUNTER_CATEGORY = "buck_artifact_cache";
 
   protected final String name;
   protected final String repository;
@@ -53,6 +59,9 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
   private final String errorTextTemplate;
   private final Optional<Long> maxStoreSize;
 
+  private final HistogramCounter fetchTimeMs;
+  private final HistogramCounter storeTimeMs;
+
   private final Set<String> seenErrors = Sets.newConcurrentHashSet();
 
   public AbstractNetworkCache(NetworkCacheArgs args) {
@@ -67,6 +76,12 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     this.httpWriteExecutorService = args.getHttpWriteExecutorService();
     this.errorTextTemplate = args.getErrorTextTemplate();
     this.maxStoreSize = args.getMaxStoreSizeBytes();
+
+    ImmutableMap<String, String> tags = ImmutableMap.of("cache_name", name);
+    this.fetchTimeMs = new HistogramCounter(COUNTER_CATEGORY, "fetch_time_ms", tags);
+    this.storeTimeMs = new HistogramCounter(COUNTER_CATEGORY, "store_time_ms", tags);
+    buckEventBus.post(new CounterRegistry.AsyncCounterRegistrationEvent(
+        ImmutableSet.of(fetchTimeMs, storeTimeMs)));
   }
 
   protected abstract CacheResult fetchImpl(
@@ -88,8 +103,10 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
         HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent)
         .setRuleKeys(Lists.newArrayList(ruleKey));
 
+    Stopwatch stopwatch = Stopwatch.createStarted();
     try {
       CacheResult result = fetchImpl(ruleKey, output, eventBuilder);
+      fetchTimeMs.addSample(stopwatch.elapsed(TimeUnit.MILLISECONDS));
       buckEventBus.post(
           eventBuilder
               .setFetchResult(result)
@@ -140,7 +157,9 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
 
           try {
             if (!isArtefactTooBigToBeStored(tmp, maxStoreSize, projectFilesystem)) {
+              Stopwatch stopwatch = Stopwatch.createStarted();
               storeImpl(info, tmp, finishedEventBuilder);
+              storeTimeMs.addSample(stopwatch.elapsed(TimeUnit.MILLISECONDS));
             } else {
               LOG.info("Artifact too big so not storing it in the distributed cache. " +
                   "file=[%s] buildTarget=[%s]",
@@ -313,7 +313,11 @@ public class ArtifactCaches {
         fetchService =
             new RetryingHttpService(
                 buckEventBus,
-                new LoadBalancedService(clientSideSlb, fetchClient, buckEventBus),
+                new LoadBalancedService(
+                    clientSideSlb,
+                    fetchClient,
+                    buckEventBus,
+                    config.getSlbConfig().shouldHedgeRequests()),
                 config.getMaxFetchRetries());
         storeService = new LoadBalancedService(clientSideSlb, storeClient, buckEventBus);
         break;
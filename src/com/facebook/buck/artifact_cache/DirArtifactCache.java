@@ -88,26 +88,12 @@ public class DirArtifactCache implements ArtifactCache {
   public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
     CacheResult result;
     try {
-      // First, build up the metadata from the metadata file.
-      ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
-      try (DataInputStream in =
-               new DataInputStream(
-                   filesystem.newFileInputStream(
-                       getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
-        int sz = in.readInt();
-        for (int i = 0; i < sz; i++) {
-          String key = in.readUTF();
-          int valSize = in.readInt();
-          byte[] val = new byte[valSize];
-          ByteStreams.readFully(in, val);
-          metadata.put(key, new String(val, Charsets.UTF_8));
-        }
-      }
+      ImmutableMap<String, String> metadata = readMetadata(ruleKey);
 
       // Now copy the artifact out.
       filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.absent()), output.get());
 
-      result = CacheResult.hit(name, metadata.build(), filesystem.getFileSize(output.get()));
+      result = CacheResult.hit(name, metadata, filesystem.getFileSize(output.get()));
     } catch (NoSuchFileException e) {
       result = CacheResult.miss();
     } catch (IOException e) {
@@ -127,6 +113,46 @@ public class DirArtifactCache implements ArtifactCache {
     return result;
   }
 
+  /**
+   * Looks up an artifact without copying it out of the cache.
+   *
+   * @return the artifact's metadata, or absent if it isn't in the cache.  The artifact itself is
+   *     at {@link #getArtifactPath(RuleKey)}, until it's evicted.
+   */
+  public Optional<ImmutableMap<String, String>> fetchMetadata(RuleKey ruleKey)
+      throws IOException {
+    try {
+      return Optional.of(readMetadata(ruleKey));
+    } catch (NoSuchFileException e) {
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * @return the absolute path the artifact for {@code ruleKey} is stored at.
+   */
+  public Path getArtifactPath(RuleKey ruleKey) {
+    return filesystem.resolve(getPathForRuleKey(ruleKey, Optional.absent()));
+  }
+
+  private ImmutableMap<String, String> readMetadata(RuleKey ruleKey) throws IOException {
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+    try (DataInputStream in =
+             new DataInputStream(
+                 filesystem.newFileInputStream(
+                     getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
+      int sz = in.readInt();
+      for (int i = 0; i < sz; i++) {
+        String key = in.readUTF();
+        int valSize = in.readInt();
+        byte[] val = new byte[valSize];
+        ByteStreams.readFully(in, val);
+        metadata.put(key, new String(val, Charsets.UTF_8));
+      }
+    }
+    return metadata.build();
+  }
+
   @Override
   public ListenableFuture<Void> store(
       ArtifactInfo info,
@@ -269,6 +269,18 @@ public class HttpArtifactCacheBinaryProtocol {
       return contentLength;
     }
 
+    /**
+     * @return what's written before the payload, so that it can be sent separately.
+     */
+    public byte[] getHeader() throws IOException {
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      try (DataOutputStream dataOutputStream = new DataOutputStream(header)) {
+        dataOutputStream.writeInt(rawMetadata.length);
+        dataOutputStream.write(rawMetadata);
+      }
+      return header.toByteArray();
+    }
+
     public void write(OutputStream responseSink) throws IOException {
       try (DataOutputStream dataOutputStream = new DataOutputStream(responseSink)) {
         dataOutputStream.writeInt(rawMetadata.length);
@@ -257,6 +257,9 @@ public abstract class AbstractCommand implements Command {
         .setJavaPackageFinder(params.getJavaPackageFinder())
         .setObjectMapper(params.getObjectMapper())
         .setExecutors(params.getExecutors())
+        .setJarIndexCache(params.getJarIndexCache())
+        .setFileHashCache(params.getFileHashCache())
+        .setPersistentWorkerProcessPools(params.getPersistentWorkerPools())
         .build();
   }
 
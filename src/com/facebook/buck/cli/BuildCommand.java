@@ -60,6 +60,7 @@ import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodeFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
+import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.AdbOptions;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.TargetDevice;
@@ -67,8 +68,10 @@ import com.facebook.buck.step.TargetDeviceOptions;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.MoreExceptions;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.environment.Platform;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -95,6 +98,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 
@@ -285,7 +289,10 @@ public class BuildCommand extends AbstractCommand {
       Clock clock,
       Optional<AdbOptions> adbOptions,
       Optional<TargetDeviceOptions> targetDeviceOptions,
-      Map<ExecutorPool, ListeningExecutorService> executors) {
+      Map<ExecutorPool, ListeningExecutorService> executors,
+      JarIndexCache jarIndexCache,
+      FileHashCache fileHashCache,
+      Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools) {
     if (console.getVerbosity() == Verbosity.ALL) {
       console.getStdErr().printf("Creating a build with %d threads.\n", buckConfig.getNumThreads());
     }
@@ -311,7 +318,10 @@ public class BuildCommand extends AbstractCommand {
         getConcurrencyLimit(buckConfig),
         adbOptions,
         targetDeviceOptions,
-        executors);
+        executors,
+        jarIndexCache,
+        Optional.of(fileHashCache),
+        persistentWorkerPools);
   }
 
   @Nullable
@@ -685,7 +695,10 @@ public class BuildCommand extends AbstractCommand {
         params.getClock(),
         Optional.absent(),
         Optional.absent(),
-        params.getExecutors())) {
+        params.getExecutors(),
+        params.getJarIndexCache(),
+        params.getFileHashCache(),
+        params.getPersistentWorkerPools())) {
       lastBuild = build;
       return build.executeAndPrintFailuresToEventBus(
           targetsToBuild,
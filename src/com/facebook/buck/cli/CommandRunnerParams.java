@@ -17,6 +17,7 @@
 package com.facebook.buck.cli;
 
 import com.facebook.buck.android.AndroidPlatformTarget;
+import com.facebook.buck.apple.project_generator.ProjectGenerationCache;
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.httpserver.WebServer;
@@ -24,9 +25,11 @@ import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.ProcessManager;
 import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.environment.BuildEnvironmentDescription;
@@ -39,6 +42,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * {@link CommandRunnerParams} is the collection of parameters needed to run a {@link Command}.
@@ -64,6 +68,9 @@ class CommandRunnerParams {
   private final Map<ExecutorPool, ListeningExecutorService> executors;
   private final BuildEnvironmentDescription buildEnvironmentDescription;
   private final ActionGraphCache actionGraphCache;
+  private final JarIndexCache jarIndexCache;
+  private final Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools;
+  private final Optional<ProjectGenerationCache> projectGenerationCache;
 
   public CommandRunnerParams(
       Console console,
@@ -84,7 +91,10 @@ class CommandRunnerParams {
       FileHashCache fileHashCache,
       Map<ExecutorPool, ListeningExecutorService> executors,
       BuildEnvironmentDescription buildEnvironmentDescription,
-      ActionGraphCache actionGraphCache) {
+      ActionGraphCache actionGraphCache,
+      JarIndexCache jarIndexCache,
+      Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<ProjectGenerationCache> projectGenerationCache) {
     this.console = console;
     this.stdIn = stdIn;
     this.cell = cell;
@@ -104,6 +114,9 @@ class CommandRunnerParams {
     this.executors = executors;
     this.buildEnvironmentDescription = buildEnvironmentDescription;
     this.actionGraphCache = actionGraphCache;
+    this.jarIndexCache = jarIndexCache;
+    this.persistentWorkerPools = persistentWorkerPools;
+    this.projectGenerationCache = projectGenerationCache;
   }
 
   public Console getConsole() {
@@ -182,4 +195,16 @@ class CommandRunnerParams {
     return actionGraphCache;
   }
 
+  public JarIndexCache getJarIndexCache() {
+    return jarIndexCache;
+  }
+
+  public Optional<ConcurrentMap<String, WorkerProcessPool>> getPersistentWorkerPools() {
+    return persistentWorkerPools;
+  }
+
+  public Optional<ProjectGenerationCache> getProjectGenerationCache() {
+    return projectGenerationCache;
+  }
+
 }
@@ -24,6 +24,8 @@ import com.google.common.collect.ImmutableSortedMap;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class DownloadConfig {
   private static final Logger LOG = Logger.get(DownloadConfig.class);
@@ -65,6 +67,19 @@ public class DownloadConfig {
     return repos.build();
   }
 
+  /**
+   * @return a directory in which downloaded files are kept by their sha1, so that they only need
+   *     to be fetched once however many checkouts or rules refer to them.
+   */
+  public Optional<Path> getDownloadCacheDir() {
+    Optional<String> cacheDir = delegate.getValue("download", "cache_dir");
+    if (!cacheDir.isPresent()) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        delegate.resolvePathThatMayBeOutsideTheProjectFilesystem(Paths.get(cacheDir.get())));
+  }
+
   public boolean isDownloadAtRuntimeOk() {
     return delegate.getBooleanValue("download", "in_build", false);
   }
@@ -122,7 +122,10 @@ public class FetchCommand extends BuildCommand {
           params.getClock(),
           Optional.absent(),
           Optional.absent(),
-          params.getExecutors())) {
+          params.getExecutors(),
+          params.getJarIndexCache(),
+          params.getFileHashCache(),
+          params.getPersistentWorkerPools())) {
         exitCode = build.executeAndPrintFailuresToEventBus(
             buildTargets,
             isKeepGoing(),
@@ -152,7 +155,9 @@ public class FetchCommand extends BuildCommand {
     Optional<Path> sdkDir = resolver.getSdkOrAbsent();
 
     Downloader downloader = StackedDownloader.createFromConfig(params.getBuckConfig(), sdkDir);
-    Description<?> description = new RemoteFileDescription(downloader);
+    Description<?> description = new RemoteFileDescription(
+        downloader,
+        new DownloadConfig(params.getBuckConfig()).getDownloadCacheDir());
     return new FetchTargetNodeToBuildRuleTransformer(
         ImmutableSet.of(description)
     );
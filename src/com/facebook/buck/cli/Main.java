@@ -24,6 +24,7 @@ import com.facebook.buck.android.AndroidDirectoryResolver;
 import com.facebook.buck.android.AndroidPlatformTarget;
 import com.facebook.buck.android.DefaultAndroidDirectoryResolver;
 import com.facebook.buck.android.NoAndroidSdkException;
+import com.facebook.buck.apple.project_generator.ProjectGenerationCache;
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactCacheBuckConfig;
 import com.facebook.buck.artifact_cache.ArtifactCaches;
@@ -59,6 +60,7 @@ import com.facebook.buck.io.PathOrGlobMatcher;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.io.Watchman;
 import com.facebook.buck.io.WatchmanDiagnosticCache;
+import com.facebook.buck.io.WatchmanSubscription;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.JavacOptions;
 import com.facebook.buck.log.CommandThreadFactory;
@@ -80,6 +82,7 @@ import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RelativeCellName;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.test.TestConfig;
 import com.facebook.buck.test.TestResultSummaryVerbosity;
@@ -94,6 +97,7 @@ import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.InterruptionFailedException;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.Libc;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.PkillProcessManager;
@@ -168,6 +172,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -307,7 +313,12 @@ public final class Main {
     private final EventBus fileEventBus;
     private final Optional<WebServer> webServer;
     private final UUID watchmanQueryUUID;
+    @Nullable
+    private WatchmanSubscription watchmanSubscription;
     private final ActionGraphCache actionGraphCache;
+    private final JarIndexCache jarIndexCache;
+    private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+    private final ProjectGenerationCache projectGenerationCache;
     private final BroadcastEventListener broadcastEventListener;
 
     public Daemon(
@@ -325,6 +336,9 @@ public final class Main {
 
       this.broadcastEventListener = new BroadcastEventListener();
       this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
+      this.jarIndexCache = new JarIndexCache();
+      this.persistentWorkerPools = new ConcurrentHashMap<>();
+      this.projectGenerationCache = new ProjectGenerationCache();
 
       TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory(objectMapper);
       this.parser = new Parser(
@@ -407,6 +421,18 @@ public final class Main {
       return actionGraphCache;
     }
 
+    private JarIndexCache getJarIndexCache() {
+      return jarIndexCache;
+    }
+
+    private ConcurrentMap<String, WorkerProcessPool> getPersistentWorkerPools() {
+      return persistentWorkerPools;
+    }
+
+    private ProjectGenerationCache getProjectGenerationCache() {
+      return projectGenerationCache;
+    }
+
     private BroadcastEventListener getBroadcastEventListener() {
       return broadcastEventListener;
     }
@@ -490,9 +516,54 @@ public final class Main {
       return watchmanQueryUUID;
     }
 
+    /**
+     * @return a subscription streaming file changes to this daemon in the background, made afresh
+     *     if there isn't one or the last one has stopped working, or absent if subscriptions are
+     *     disabled or unsupported.
+     */
+    private synchronized Optional<WatchmanSubscription> getWatchmanSubscription(
+        String watchRoot,
+        ImmutableSet<PathOrGlobMatcher> ignorePaths,
+        Watchman watchman) throws IOException, InterruptedException {
+      if (!cell.getBuckConfig().getView(ParserConfig.class).getEnableWatchmanSubscription()) {
+        return Optional.absent();
+      }
+      if (watchmanSubscription != null && watchmanSubscription.isAlive()) {
+        return Optional.of(watchmanSubscription);
+      }
+      closeWatchmanSubscription();
+      // Changes made while there was no subscription weren't seen, but a new subscription starts
+      // with a fresh instance, which tells the watcher to flush the caches.
+      watchmanSubscription = WatchmanWatcher.subscribe(
+          watchRoot,
+          ignorePaths,
+          watchman,
+          "buckd-" + watchmanQueryUUID).orNull();
+      return Optional.fromNullable(watchmanSubscription);
+    }
+
+    private synchronized void closeWatchmanSubscription() throws IOException {
+      if (watchmanSubscription != null) {
+        watchmanSubscription.close();
+        watchmanSubscription = null;
+      }
+    }
+
     @Override
     public void close() throws IOException {
       shutdownWebServer();
+      closeWatchmanSubscription();
+      closePersistentWorkerPools();
+    }
+
+    private void closePersistentWorkerPools() {
+      try {
+        for (WorkerProcessPool pool : persistentWorkerPools.values()) {
+          pool.close();
+        }
+      } finally {
+        persistentWorkerPools.clear();
+      }
     }
 
     private void shutdownWebServer() {
@@ -558,13 +629,14 @@ public final class Main {
       String watchRoot,
       EventBus fileChangeEventBus,
       ImmutableSet<PathOrGlobMatcher> ignorePaths,
-      Watchman watchman) {
+      Watchman watchman) throws IOException, InterruptedException {
     return new WatchmanWatcher(
         watchRoot,
         fileChangeEventBus,
         ignorePaths,
         watchman,
-        daemon.getWatchmanQueryUUID());
+        "n:buckd" + daemon.getWatchmanQueryUUID(),
+        daemon.getWatchmanSubscription(watchRoot, ignorePaths, watchman));
   }
 
   private static BroadcastEventListener getBroadcastEventListener(
@@ -1107,6 +1179,10 @@ public final class Main {
           // Create or get Parser and invalidate cached command parameters.
           Parser parser = null;
           ActionGraphCache actionGraphCache = null;
+          JarIndexCache jarIndexCache = null;
+          Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools =
+              Optional.absent();
+          Optional<ProjectGenerationCache> projectGenerationCache = Optional.absent();
 
           if (isDaemon) {
             try {
@@ -1129,6 +1205,9 @@ public final class Main {
                   watchmanFreshInstanceAction,
                   watchmanDiagnosticCache);
               actionGraphCache = daemon.getActionGraphCache();
+              jarIndexCache = daemon.getJarIndexCache();
+              persistentWorkerPools = Optional.of(daemon.getPersistentWorkerPools());
+              projectGenerationCache = Optional.of(daemon.getProjectGenerationCache());
             } catch (WatchmanWatcherException | IOException e) {
               buildEventBus.post(
                   ConsoleEvent.warning(
@@ -1141,6 +1220,10 @@ public final class Main {
             actionGraphCache = new ActionGraphCache(broadcastEventListener);
           }
 
+          if (jarIndexCache == null) {
+            jarIndexCache = new JarIndexCache();
+          }
+
           if (parser == null) {
             TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory(objectMapper);
             parser = new Parser(
@@ -1204,7 +1287,10 @@ public final class Main {
                   fileHashCache,
                   executors,
                   buildEnvironmentDescription,
-                  actionGraphCache));
+                  actionGraphCache,
+                  jarIndexCache,
+                  persistentWorkerPools,
+                  projectGenerationCache));
           // Wait for HTTP writes to complete.
           closeHttpExecutorService(
               cacheBuckConfig, Optional.of(buildEventBus), httpWriteExecutorService);
@@ -623,7 +623,7 @@ public class ProjectCommand extends BuildCommand {
   private ImmutableSet<BuildTarget> writeProjectAndGetRequiredBuildTargets(
       CommandRunnerParams params,
       final TargetGraphAndTargets targetGraphAndTargets
-  ) throws IOException {
+  ) throws IOException, InterruptedException {
     ActionGraphAndResolver result = Preconditions.checkNotNull(
         ActionGraphCache.getFreshActionGraph(
             params.getBuckEventBus(),
@@ -644,7 +644,10 @@ public class ProjectCommand extends BuildCommand {
         sourcePathResolver,
         params.getCell().getFilesystem(),
         getIntellijAggregationMode(buckConfig),
-        buckConfig);
+        buckConfig,
+        Preconditions.checkNotNull(
+            params.getExecutors().get(ExecutorPool.PROJECT),
+            "CommandRunnerParams does not have executor for PROJECT pool"));
 
     return project.write(
         runIjCleaner,
@@ -999,6 +1002,9 @@ public class ProjectCommand extends BuildCommand {
           appleConfig,
           swiftBuckConfig);
       generator.setGroupableTests(groupableTests);
+      if (params.getProjectGenerationCache().isPresent()) {
+        generator.setGenerationCache(params.getProjectGenerationCache().get());
+      }
       ListeningExecutorService executorService = params.getExecutors().get(
           ExecutorPool.PROJECT);
       Preconditions.checkNotNull(
@@ -41,6 +41,9 @@ public class SlbBuckConfig {
   private static final String LATENCY_CHECK_TIME_RANGE_MILLIS =
       "slb_latency_check_time_range_millis";
   private static final String MAX_ACCEPTABLE_LATENCY_MILLIS = "slb_max_acceptable_latency_millis";
+  private static final String RANKING_REFRESH_INTERVAL_MILLIS =
+      "slb_ranking_refresh_interval_millis";
+  private static final String HEDGE_REQUESTS = "slb_hedge_requests";
 
   private final String parentSection;
   private final BuckConfig buckConfig;
@@ -67,6 +70,14 @@ public class SlbBuckConfig {
     return builder.build();
   }
 
+  /**
+   * @return whether requests which are safe to repeat should also be sent to the second best
+   *     server when the best one is slow to answer.
+   */
+  public boolean shouldHedgeRequests() {
+    return buckConfig.getBooleanValue(parentSection, HEDGE_REQUESTS, false);
+  }
+
   public ClientSideSlb createClientSideSlb(
       Clock clock,
       BuckEventBus eventBus,
@@ -123,6 +134,11 @@ public class SlbBuckConfig {
           buckConfig.getLong(parentSection, LATENCY_CHECK_TIME_RANGE_MILLIS).get().intValue());
     }
 
+    if (buckConfig.getValue(parentSection, RANKING_REFRESH_INTERVAL_MILLIS).isPresent()) {
+      configBuilder.setRankingRefreshIntervalMillis(
+          buckConfig.getLong(parentSection, RANKING_REFRESH_INTERVAL_MILLIS).get().intValue());
+    }
+
     if (buckConfig.getValue(parentSection, MAX_ERROR_PERCENTAGE).isPresent()) {
       configBuilder.setMaxErrorPercentage(
           buckConfig.getFloat(parentSection, MAX_ERROR_PERCENTAGE).get());
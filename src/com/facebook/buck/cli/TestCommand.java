@@ -275,7 +275,13 @@ public class TestCommand extends BuildCommand {
         .setPathToJavaAgent(Optional.fromNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
         .setCoverageReportTitle(coverageReportTitle)
-        .setEnvironmentOverrides(environmentOverrides);
+        .setEnvironmentOverrides(environmentOverrides)
+        .setJavaTestShards(
+            isDebugEnabled() ?
+                1 :
+                params.getBuckConfig().getInteger("test", "java_test_shards").or(1))
+        .setUsingJavaTestWorkers(
+            params.getBuckConfig().getBooleanValue("test", "java_test_workers", false));
 
     Optional<ImmutableList<String>> coverageIncludes =
         params.getBuckConfig().getOptionalListWithoutComments("test", "coverageIncludes", ',');
@@ -529,7 +535,10 @@ public class TestCommand extends BuildCommand {
           params.getClock(),
           Optional.of(getAdbOptions(params.getBuckConfig())),
           Optional.of(getTargetDeviceOptions()),
-          params.getExecutors())) {
+          params.getExecutors(),
+          params.getJarIndexCache(),
+          params.getFileHashCache(),
+          params.getPersistentWorkerPools())) {
 
         // Build all of the test rules.
         int exitCode = build.executeAndPrintFailuresToEventBus(
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResults;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * How long each test rule, and each of its test cases, took the last time it ran.  These are kept
+ * between runs so that the slowest tests can be started first, and so that large java_tests can
+ * be split into shards which take about as long as each other.
+ */
+class TestDurations {
+
+  private static final Logger LOG = Logger.get(TestDurations.class);
+
+  private static final String TARGETS = "targets";
+  private static final String TEST_CASES = "testCases";
+
+  private final Map<String, Long> targets;
+  private final Map<String, Long> testCases;
+
+  @VisibleForTesting
+  TestDurations(Map<String, Long> targets, Map<String, Long> testCases) {
+    this.targets = new TreeMap<>(targets);
+    this.testCases = new TreeMap<>(testCases);
+  }
+
+  @VisibleForTesting
+  static Path getPath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getBuckOut().resolve("test_durations.json");
+  }
+
+  /**
+   * Reads the recorded durations, starting afresh if there aren't any or they can't be read.
+   */
+  public static TestDurations load(ProjectFilesystem filesystem, ObjectMapper objectMapper) {
+    Path path = getPath(filesystem);
+    if (filesystem.exists(path)) {
+      try (InputStream input = filesystem.newFileInputStream(path)) {
+        Map<String, Map<String, Long>> contents = objectMapper.readValue(
+            input,
+            new TypeReference<Map<String, Map<String, Long>>>() {
+            });
+        Map<String, Long> targets = contents.get(TARGETS);
+        Map<String, Long> testCases = contents.get(TEST_CASES);
+        if (targets != null && testCases != null) {
+          return new TestDurations(targets, testCases);
+        }
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to read test durations from %s", path);
+      }
+    }
+    return new TestDurations(ImmutableMap.of(), ImmutableMap.of());
+  }
+
+  public void save(ProjectFilesystem filesystem, ObjectMapper objectMapper) {
+    Path path = getPath(filesystem);
+    try {
+      filesystem.mkdirs(path.getParent());
+      try (OutputStream output = filesystem.newFileOutputStream(path)) {
+        objectMapper.writeValue(
+            output,
+            ImmutableMap.of(TARGETS, targets, TEST_CASES, testCases));
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to write test durations to %s", path);
+    }
+  }
+
+  /**
+   * Records how long the tests which actually ran (rather than having their results read from the
+   * cache) took.
+   */
+  public synchronized void record(TestResults results) {
+    long total = 0;
+    boolean ran = false;
+    for (TestCaseSummary testCase : results.getTestCases()) {
+      if (testCase.isCached() || testCase.isDryRun()) {
+        continue;
+      }
+      testCases.put(testCase.getTestCaseName(), testCase.getTotalTime());
+      total += testCase.getTotalTime();
+      ran = true;
+    }
+    if (ran) {
+      targets.put(results.getBuildTarget().getFullyQualifiedName(), total);
+    }
+  }
+
+  public synchronized Optional<Long> getTargetDuration(BuildTarget target) {
+    return Optional.fromNullable(targets.get(target.getFullyQualifiedName()));
+  }
+
+  public synchronized ImmutableMap<String, Long> getTestCaseDurations() {
+    return ImmutableMap.copyOf(testCases);
+  }
+}
@@ -85,6 +85,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -161,6 +162,15 @@ public class TestRunning {
 
     final int totalNumberOfTests = Iterables.size(tests);
 
+    // How long tests took last time lets us start the slowest first, and lets java_tests which are
+    // split into shards balance their test classes across them.
+    final TestDurations testDurations =
+        TestDurations.load(params.getCell().getFilesystem(), params.getObjectMapper());
+    TestRunningOptions testRunOptions = TestRunningOptions.builder()
+        .from(options)
+        .setTestCaseDurations(testDurations.getTestCaseDurations())
+        .build();
+
     params.getBuckEventBus().post(
         TestRunEvent.started(
             options.isRunAllTests(),
@@ -285,7 +295,7 @@ public class TestRunning {
         Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
         List<Step> testSteps = test.runTests(
             executionContext,
-            options,
+            testRunOptions,
             testReportingCallback);
         if (!testSteps.isEmpty()) {
           stepsBuilder.addAll(testSteps);
@@ -332,7 +342,10 @@ public class TestRunning {
           }
         };
 
-    for (TestRun testRun : parallelTestRuns) {
+    // Submit the slowest tests first, so that a long test isn't left running on its own at the end,
+    // but keep the results in the order the tests were given to us.
+    Map<TestRun, ListenableFuture<TestResults>> parallelTestRunResults = new IdentityHashMap<>();
+    for (TestRun testRun : orderByDuration(parallelTestRuns, testDurations)) {
       ListenableFuture<TestResults> testResults =
           stepRunner.runStepsAndYieldResult(
               testRun.getSteps(),
@@ -340,15 +353,18 @@ public class TestRunning {
               Optional.of(testRun.getTest().getBuildTarget()),
               service,
               testStepRunningCallback);
-        results.add(
-            transformTestResults(
-                params,
-                testResults,
-                testRun.getTest(),
-                testRun.getTestReportingCallback(),
-                testTargets,
-                lastReportedTestSequenceNumber,
-                totalNumberOfTests));
+      parallelTestRunResults.put(testRun, testResults);
+    }
+    for (TestRun testRun : parallelTestRuns) {
+      results.add(
+          transformTestResults(
+              params,
+              parallelTestRunResults.get(testRun),
+              testRun.getTest(),
+              testRun.getTestReportingCallback(),
+              testTargets,
+              lastReportedTestSequenceNumber,
+              totalNumberOfTests));
     }
 
 
@@ -426,6 +442,13 @@ public class TestRunning {
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
+    if (!options.isDryRun()) {
+      for (TestResults testResults : completedResults) {
+        testDurations.record(testResults);
+      }
+      testDurations.save(params.getCell().getFilesystem(), params.getObjectMapper());
+    }
+
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
     if (path.isPresent()) {
@@ -470,6 +493,21 @@ public class TestRunning {
     return failures ? TEST_FAILURES_EXIT_CODE : 0;
   }
 
+  /**
+   * @return {@code testRuns}, slowest first according to {@code testDurations}.  Tests we have no
+   *     record of go first of all, since they might be slow, and otherwise the order is kept.
+   */
+  @VisibleForTesting
+  static ImmutableList<TestRun> orderByDuration(
+      List<TestRun> testRuns,
+      final TestDurations testDurations) {
+    return FluentIterable.from(testRuns)
+        .toSortedList(
+            (a, b) -> Long.compare(
+                testDurations.getTargetDuration(b.getTest().getBuildTarget()).or(Long.MAX_VALUE),
+                testDurations.getTargetDuration(a.getTest().getBuildTarget()).or(Long.MAX_VALUE)));
+  }
+
   private static ListenableFuture<TestResults> transformTestResults(
       final CommandRunnerParams params,
       ListenableFuture<TestResults> originalTestResults,
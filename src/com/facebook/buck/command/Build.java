@@ -39,6 +39,7 @@ import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.ImmutableBuildContext;
+import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.AdbOptions;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
@@ -50,6 +51,8 @@ import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.JarIndexCache;
+import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
@@ -77,6 +80,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
@@ -125,7 +129,10 @@ public class Build implements Closeable {
       ConcurrencyLimit concurrencyLimit,
       Optional<AdbOptions> adbOptions,
       Optional<TargetDeviceOptions> targetDeviceOptions,
-      Map<ExecutorPool, ListeningExecutorService> executors) {
+      Map<ExecutorPool, ListeningExecutorService> executors,
+      JarIndexCache jarIndexCache,
+      Optional<FileHashCache> fileHashCache,
+      Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools) {
     this.actionGraph = actionGraph;
     this.ruleResolver = ruleResolver;
     this.rootCell = rootCell;
@@ -146,6 +153,9 @@ public class Build implements Closeable {
         .setAdbOptions(adbOptions)
         .setTargetDeviceOptions(targetDeviceOptions)
         .setExecutors(executors)
+        .setJarIndexCache(jarIndexCache)
+        .setFileHashCache(fileHashCache)
+        .setPersistentWorkerProcessPools(persistentWorkerPools)
         .build();
     this.artifactCache = artifactCache;
     this.buildEngine = buildEngine;
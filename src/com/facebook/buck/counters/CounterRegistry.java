@@ -41,6 +41,11 @@ public interface CounterRegistry extends Closeable {
       String name,
       ImmutableMap<String, String> tags);
 
+  HistogramCounter newHistogramCounter(
+      String category,
+      String name,
+      ImmutableMap<String, String> tags);
+
   void registerCounters(Collection<Counter> counters);
 
   @Subscribe
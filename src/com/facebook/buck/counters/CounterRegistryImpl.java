@@ -83,6 +83,13 @@ public class CounterRegistryImpl implements CounterRegistry {
         new TagSetCounter(category, name, tags));
   }
 
+  @Override
+  public HistogramCounter newHistogramCounter(
+      String category, String name, ImmutableMap<String, String> tags) {
+    return registerCounter(
+        new HistogramCounter(category, name, tags));
+  }
+
   @Override
   public void registerCounters(Collection<Counter> countersToRegister) {
     synchronized (this) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the distribution of a value, such as how long something took, cheaply enough to be used
+ * on hot paths.
+ * <p>
+ * Samples are counted in buckets whose widths grow with the values they hold, so that each
+ * bucket's bounds are within 12.5% of each other whatever the magnitude.  Adding a sample takes no
+ * locks: each thread counts into one of several copies of the buckets, which are only added
+ * together when the counter is flushed.
+ */
+public class HistogramCounter extends Counter {
+
+  // Each power of two is split into this many buckets.
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  @VisibleForTesting
+  static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  private static final int MAX_STRIPES = 16;
+
+  private final AtomicLongArray[] stripes;
+  private final LongAdder sum;
+  private final LongAccumulator max;
+
+  public HistogramCounter(String category, String name, ImmutableMap<String, String> tags) {
+    super(category, name, tags);
+    int stripeCount = Math.min(
+        MAX_STRIPES,
+        Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    this.stripes = new AtomicLongArray[stripeCount];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+    this.sum = new LongAdder();
+    this.max = new LongAccumulator(Math::max, 0);
+  }
+
+  public void addSample(long value) {
+    value = Math.max(0, value);
+    int stripe = (int) Thread.currentThread().getId() & (stripes.length - 1);
+    stripes[stripe].incrementAndGet(getBucket(value));
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    long[] buckets = new long[BUCKETS];
+    long count = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        long bucketCount = stripe.getAndSet(i, 0);
+        buckets[i] += bucketCount;
+        count += bucketCount;
+      }
+    }
+    long total = sum.sumThenReset();
+    long maxValue = max.getThenReset();
+    if (count == 0) {
+      return Optional.absent();
+    }
+
+    CounterSnapshot.Builder snapshot = CounterSnapshot.builderForCounter(this);
+    snapshot.putValues(getName() + "_count", count);
+    snapshot.putValues(getName() + "_avg", total / count);
+    snapshot.putValues(getName() + "_p50", getPercentile(buckets, count, maxValue, 0.50));
+    snapshot.putValues(getName() + "_p95", getPercentile(buckets, count, maxValue, 0.95));
+    snapshot.putValues(getName() + "_p99", getPercentile(buckets, count, maxValue, 0.99));
+    snapshot.putValues(getName() + "_max", maxValue);
+    return Optional.of(snapshot.build());
+  }
+
+  /**
+   * @return the upper bound of the bucket holding the sample at {@code percentile}, which
+   *     overestimates it by at most one bucket's width.
+   */
+  private static long getPercentile(long[] buckets, long count, long max, double percentile) {
+    long rank = Math.max(1, (long) Math.ceil(percentile * count));
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return Math.min(max, getBucketUpperBound(i));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Values below {@link #SUB_BUCKETS} get a bucket each; above that, every power of two is split
+   * into {@link #SUB_BUCKETS} equal buckets.
+   */
+  @VisibleForTesting
+  static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  @VisibleForTesting
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    long lowerBound = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -408,7 +408,8 @@ abstract class AbstractCxxSourceRuleFactory {
         getCompileOutputPath(target, name),
         source.getPath(),
         source.getType(),
-        getCxxPlatform().getDebugPathSanitizer());
+        getCxxPlatform().getDebugPathSanitizer(),
+        getCxxBuckConfig().getCompileCacheParams());
     getResolver().addToIndex(result);
     return result;
   }
@@ -570,7 +571,8 @@ abstract class AbstractCxxSourceRuleFactory {
         source.getType(),
         precompiledHeaderReference,
         getCxxPlatform().getDebugPathSanitizer(),
-        strategy);
+        strategy,
+        getCxxBuckConfig().getCompileCacheParams());
     getResolver().addToIndex(result);
     return result;
   }
@@ -27,6 +27,7 @@ import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.ToolProvider;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
@@ -48,6 +49,8 @@ public class CxxBuckConfig {
   private static final String UNFLAVORED_CXX_SECTION_PREFIX = "cxx";
 
   private static final long DEFAULT_MAX_TEST_OUTPUT_SIZE = 8096;
+  // The default size of a ccache cache.
+  private static final long DEFAULT_COMPILE_CACHE_MAX_SIZE = 5L * 1024 * 1024 * 1024;
 
   private final BuckConfig delegate;
   private final String cxxSection;
@@ -290,6 +293,32 @@ public class CxxBuckConfig {
     return delegate.getInteger(cxxSection, "debug_path_sanitizer_limit").or(250);
   }
 
+  /**
+   * @return where and how large the local object file cache used by compile rules is, if enabled.
+   */
+  public Optional<CxxCompileCacheParams> getCompileCacheParams() {
+    Optional<Path> dir =
+        delegate.getPath(cxxSection, "compile_cache_dir", /* isCellRootRelative */ false);
+    if (!dir.isPresent()) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        CxxCompileCacheParams.builder()
+            .setDir(dir.get())
+            .setMaxSizeBytes(
+                delegate.getValue(cxxSection, "compile_cache_max_size")
+                    .transform(SizeUnit::parseBytes)
+                    .or(DEFAULT_COMPILE_CACHE_MAX_SIZE))
+            .build());
+  }
+
+  @Value.Immutable
+  @BuckStyleImmutable
+  abstract static class AbstractCxxCompileCacheParams {
+    public abstract Path getDir();
+    public abstract long getMaxSizeBytes();
+  }
+
   @Value.Immutable
   @BuckStyleImmutable
   abstract static class AbstractCxxToolProviderParams {
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local cache of object files produced by {@link CxxPreprocessAndCompileStep}, modeled after
+ * ccache's "direct mode".
+ * <p>
+ * Entries are looked up in two stages.  A manifest, keyed on the compiler identity, the full
+ * command line and the input source, records the dependencies listed in the depfile of the last
+ * successful compilation.  The object file itself is then keyed on the manifest key plus the
+ * contents of each of those dependencies.  Since this key doesn't involve the rule key, an
+ * object file can be reused across rule key changes which don't affect the translation unit (e.g.
+ * a flag change on an unrelated source in the same rule).
+ * <p>
+ * Entries are spread over 256 buckets by the first two hex digits of their key.  Like ccache,
+ * each bucket holds at most 1/256th of the maximum size, and writing to a bucket evicts its least
+ * recently used entries once it is over that limit, so keeping the cache bounded never requires
+ * scanning all of it.
+ */
+public class CxxCompileCache {
+
+  private static final Logger LOG = Logger.get(CxxCompileCache.class);
+
+  private static final String MANIFESTS_DIR = "manifests";
+  private static final String OBJECTS_DIR = "objects";
+  private static final String OBJECT_SUFFIX = ".o";
+  private static final String DEPFILE_SUFFIX = ".dep";
+  private static final String DIAGNOSTICS_SUFFIX = ".err";
+  private static final int BUCKETS = 256;
+  // Evicting down to a little under the limit keeps every store from triggering an eviction.
+  private static final double EVICTION_TARGET = 0.9;
+
+  private final ProjectFilesystem filesystem;
+  private final Path cacheDir;
+  private final long maxSizeBytes;
+
+  public CxxCompileCache(ProjectFilesystem filesystem, Path cacheDir, long maxSizeBytes) {
+    this.filesystem = filesystem;
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /**
+   * @return the key identifying a compilation, independent of the headers it ends up including.
+   */
+  public HashCode computeManifestKey(
+      Iterable<ImmutableList<String>> commandPrefixes,
+      Iterable<String> arguments,
+      ImmutableMap<String, String> environment,
+      Path input) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+
+    // Use the path, size and modification time of the tool binaries to identify the compiler,
+    // rather than hashing them in their entirety on every lookup.
+    for (ImmutableList<String> prefix : commandPrefixes) {
+      for (String part : prefix) {
+        hasher.putString(part, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+      if (!prefix.isEmpty()) {
+        Path tool = Paths.get(prefix.get(0));
+        if (tool.isAbsolute() && filesystem.isFile(tool)) {
+          hasher.putLong(filesystem.getFileSize(tool));
+          hasher.putLong(filesystem.getLastModifiedTime(tool));
+        }
+      }
+    }
+
+    for (String argument : arguments) {
+      hasher.putString(argument, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+
+    for (Map.Entry<String, String> entry :
+         ImmutableSortedMap.copyOf(environment).entrySet()) {
+      hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putByte((byte) 0);
+      hasher.putString(entry.getValue(), StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+
+    hasher.putString(input.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+    filesystem.computeSha1(input).update(hasher);
+
+    return hasher.hash();
+  }
+
+  /**
+   * Attempts to restore the outputs of a previous compilation with the given manifest key.
+   *
+   * @return the diagnostics the compiler printed, if {@code output} (and {@code depFile}, if
+   *     given) were restored from the cache.
+   */
+  public Optional<String> fetch(HashCode manifestKey, Path output, Optional<Path> depFile)
+      throws IOException {
+    Path manifest = getManifestPath(manifestKey);
+    if (!filesystem.isFile(manifest)) {
+      LOG.verbose("No manifest for %s", manifestKey);
+      return Optional.absent();
+    }
+
+    ImmutableList.Builder<Path> dependencies = ImmutableList.builder();
+    for (String line : filesystem.readLines(manifest)) {
+      if (!line.isEmpty()) {
+        dependencies.add(Paths.get(line));
+      }
+    }
+
+    Optional<HashCode> resultKey = computeResultKey(manifestKey, dependencies.build());
+    if (!resultKey.isPresent()) {
+      return Optional.absent();
+    }
+
+    Path cachedObject = getObjectPath(resultKey.get(), OBJECT_SUFFIX);
+    Path cachedDepFile = getObjectPath(resultKey.get(), DEPFILE_SUFFIX);
+    if (!filesystem.isFile(cachedObject) ||
+        (depFile.isPresent() && !filesystem.isFile(cachedDepFile))) {
+      LOG.verbose("No cached object for %s", resultKey.get());
+      return Optional.absent();
+    }
+
+    filesystem.copyFile(cachedObject, output);
+    if (depFile.isPresent()) {
+      filesystem.copyFile(cachedDepFile, depFile.get());
+    }
+    Path cachedDiagnostics = getObjectPath(resultKey.get(), DIAGNOSTICS_SUFFIX);
+    String diagnostics = filesystem.readFileIfItExists(cachedDiagnostics).or("");
+
+    // Mark the entry as recently used, so that eviction picks other entries first.
+    FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+    for (Path path : ImmutableList.of(manifest, cachedObject, cachedDepFile, cachedDiagnostics)) {
+      if (filesystem.isFile(path)) {
+        filesystem.setLastModifiedTime(path, now);
+      }
+    }
+
+    LOG.debug("Restored %s from compile cache entry %s", output, resultKey.get());
+    return Optional.of(diagnostics);
+  }
+
+  /**
+   * Records the outputs of a successful compilation, along with the dependencies the compiler
+   * reported reading and the diagnostics it printed, so that a later compilation with the same
+   * manifest key can reuse them.
+   */
+  public void store(
+      HashCode manifestKey,
+      ImmutableList<Path> dependencies,
+      Path output,
+      Optional<Path> depFile,
+      String diagnostics) throws IOException {
+    Optional<HashCode> resultKey = computeResultKey(manifestKey, dependencies);
+    if (!resultKey.isPresent()) {
+      return;
+    }
+
+    ImmutableList.Builder<String> lines = ImmutableList.builder();
+    for (Path dependency : dependencies) {
+      lines.add(dependency.toString());
+    }
+
+    // Write the object before the manifest, so that a concurrent lookup never finds a manifest
+    // pointing to an object which isn't there yet.
+    atomicallyCopy(output, getObjectPath(resultKey.get(), OBJECT_SUFFIX));
+    if (depFile.isPresent()) {
+      atomicallyCopy(depFile.get(), getObjectPath(resultKey.get(), DEPFILE_SUFFIX));
+    }
+    Path cachedDiagnostics = getObjectPath(resultKey.get(), DIAGNOSTICS_SUFFIX);
+    Path diagnosticsTmp =
+        filesystem.createTempFile(cachedDiagnostics.getParent(), "diagnostics", ".tmp");
+    filesystem.writeContentsToPath(diagnostics, diagnosticsTmp);
+    filesystem.move(
+        diagnosticsTmp,
+        cachedDiagnostics,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    Path manifest = getManifestPath(manifestKey);
+    filesystem.mkdirs(manifest.getParent());
+    Path tmp = filesystem.createTempFile(manifest.getParent(), "manifest", ".tmp");
+    filesystem.writeLinesToPath(lines.build(), tmp);
+    filesystem.move(
+        tmp,
+        manifest,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("Stored %s in compile cache entry %s", output, resultKey.get());
+
+    evict(getBucket(resultKey.get()));
+    evict(getBucket(manifestKey));
+  }
+
+  /**
+   * Deletes the least recently used entries of a bucket, across manifests and objects, until it
+   * fits in its share of the maximum size.
+   */
+  private void evict(String bucket) throws IOException {
+    long bucketLimit = maxSizeBytes / BUCKETS;
+    Map<Path, List<Path>> entries = new HashMap<>();
+    long bucketSize = 0;
+    for (String dir : ImmutableList.of(MANIFESTS_DIR, OBJECTS_DIR)) {
+      // Listed directly, since the cache usually lives under buck-out, which the project
+      // filesystem ignores.
+      Path bucketDir = filesystem.resolve(cacheDir.resolve(dir).resolve(bucket));
+      if (!Files.isDirectory(bucketDir)) {
+        continue;
+      }
+      ImmutableList<Path> paths;
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(bucketDir)) {
+        paths = ImmutableList.copyOf(stream);
+      }
+      for (Path path : paths) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+          // Written by a concurrent store which hasn't moved it in place yet.
+          continue;
+        }
+        int dot = name.indexOf('.');
+        Path entry = path.resolveSibling(dot == -1 ? name : name.substring(0, dot));
+        List<Path> files = entries.get(entry);
+        if (files == null) {
+          files = new ArrayList<>();
+          entries.put(entry, files);
+        }
+        files.add(path);
+        bucketSize += filesystem.getFileSize(path);
+      }
+    }
+    if (bucketSize <= bucketLimit) {
+      return;
+    }
+
+    final Map<Path, Long> lastUsed = new HashMap<>();
+    for (Map.Entry<Path, List<Path>> entry : entries.entrySet()) {
+      long mostRecent = 0;
+      for (Path path : entry.getValue()) {
+        mostRecent = Math.max(mostRecent, filesystem.getLastModifiedTime(path));
+      }
+      lastUsed.put(entry.getKey(), mostRecent);
+    }
+
+    List<Path> leastRecentlyUsedFirst = new ArrayList<>(entries.keySet());
+    Collections.sort(
+        leastRecentlyUsedFirst,
+        (a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+    long target = (long) (bucketLimit * EVICTION_TARGET);
+    for (Path entry : leastRecentlyUsedFirst) {
+      if (bucketSize <= target) {
+        break;
+      }
+      for (Path path : entries.get(entry)) {
+        bucketSize -= filesystem.getFileSize(path);
+        filesystem.deleteFileAtPathIfExists(path);
+      }
+      LOG.verbose("Evicted compile cache entry %s", entry);
+    }
+  }
+
+  private static String getBucket(HashCode key) {
+    return key.toString().substring(0, 2);
+  }
+
+  private Optional<HashCode> computeResultKey(
+      HashCode manifestKey,
+      ImmutableList<Path> dependencies) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(manifestKey.asBytes());
+    for (Path dependency : dependencies) {
+      if (!filesystem.isFile(dependency)) {
+        LOG.verbose("Dependency %s no longer exists", dependency);
+        return Optional.absent();
+      }
+      hasher.putString(dependency.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+      filesystem.computeSha1(dependency).update(hasher);
+    }
+    return Optional.of(hasher.hash());
+  }
+
+  private void atomicallyCopy(Path source, Path destination) throws IOException {
+    filesystem.mkdirs(destination.getParent());
+    Path tmp = filesystem.createTempFile(
+        destination.getParent(),
+        destination.getFileName().toString(),
+        ".tmp");
+    filesystem.copyFile(source, tmp);
+    filesystem.move(
+        tmp,
+        destination,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private Path getManifestPath(HashCode manifestKey) {
+    return cacheDir.resolve(MANIFESTS_DIR)
+        .resolve(getBucket(manifestKey))
+        .resolve(manifestKey.toString());
+  }
+
+  private Path getObjectPath(HashCode resultKey, String suffix) {
+    return cacheDir.resolve(OBJECTS_DIR)
+        .resolve(getBucket(resultKey))
+        .resolve(resultKey.toString() + suffix);
+  }
+
+}
@@ -187,6 +187,7 @@ public class CxxPrecompiledHeader
         preprocessorDelegate.getHeaderVerification(),
         scratchDir,
         true,
-        compilerDelegate.getCompiler());
+        compilerDelegate.getCompiler(),
+        Optional.absent());
   }
 }
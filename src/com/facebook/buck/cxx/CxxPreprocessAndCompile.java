@@ -62,6 +62,7 @@ public class CxxPreprocessAndCompile
   private final Optional<PrecompiledHeaderReference> precompiledHeader;
   private final CxxSource.Type inputType;
   private final DebugPathSanitizer sanitizer;
+  private final Optional<CxxCompileCacheParams> compileCacheParams;
 
   @VisibleForTesting
   public CxxPreprocessAndCompile(
@@ -74,7 +75,8 @@ public class CxxPreprocessAndCompile
       SourcePath input,
       CxxSource.Type inputType,
       Optional<PrecompiledHeaderReference> precompiledHeader,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<CxxCompileCacheParams> compileCacheParams) {
     super(params, resolver);
     Preconditions.checkState(operation.isPreprocess() == preprocessDelegate.isPresent());
     if (precompiledHeader.isPresent()) {
@@ -90,6 +92,7 @@ public class CxxPreprocessAndCompile
     this.inputType = inputType;
     this.precompiledHeader = precompiledHeader;
     this.sanitizer = sanitizer;
+    this.compileCacheParams = compileCacheParams;
   }
 
   /**
@@ -102,7 +105,8 @@ public class CxxPreprocessAndCompile
       Path output,
       SourcePath input,
       CxxSource.Type inputType,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<CxxCompileCacheParams> compileCacheParams) {
     return new CxxPreprocessAndCompile(
         params,
         resolver,
@@ -113,7 +117,8 @@ public class CxxPreprocessAndCompile
         input,
         inputType,
         Optional.absent(),
-        sanitizer);
+        sanitizer,
+        compileCacheParams);
   }
 
   /**
@@ -138,7 +143,8 @@ public class CxxPreprocessAndCompile
         input,
         inputType,
         Optional.absent(),
-        sanitizer);
+        sanitizer,
+        Optional.absent());
   }
 
   /**
@@ -154,7 +160,8 @@ public class CxxPreprocessAndCompile
       CxxSource.Type inputType,
       Optional<PrecompiledHeaderReference> precompiledHeader,
       DebugPathSanitizer sanitizer,
-      CxxPreprocessMode strategy) {
+      CxxPreprocessMode strategy,
+      Optional<CxxCompileCacheParams> compileCacheParams) {
     return new CxxPreprocessAndCompile(
         params,
         resolver,
@@ -167,7 +174,8 @@ public class CxxPreprocessAndCompile
         input,
         inputType,
         precompiledHeader,
-        sanitizer);
+        sanitizer,
+        compileCacheParams);
   }
 
   @Override
@@ -243,6 +251,17 @@ public class CxxPreprocessAndCompile
       compilerCommand = Optional.absent();
     }
 
+    // Precompiled headers are passed by path, and so their contents wouldn't be reflected in the
+    // compile cache key.
+    Optional<CxxCompileCache> compileCache = Optional.absent();
+    if (compileCacheParams.isPresent() && !precompiledHeader.isPresent()) {
+      compileCache = Optional.of(
+          new CxxCompileCache(
+              getProjectFilesystem(),
+              compileCacheParams.get().getDir(),
+              compileCacheParams.get().getMaxSizeBytes()));
+    }
+
     return new CxxPreprocessAndCompileStep(
         getProjectFilesystem(),
         operation,
@@ -261,7 +280,8 @@ public class CxxPreprocessAndCompile
             HeaderVerification.of(HeaderVerification.Mode.IGNORE),
         scratchDir,
         useArgfile,
-        compilerDelegate.getCompiler());
+        compilerDelegate.getCompiler(),
+        compileCache);
   }
 
   @Override
@@ -37,12 +37,16 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.google.common.io.Files;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -68,6 +72,7 @@ public class CxxPreprocessAndCompileStep implements Step {
   private final DebugPathSanitizer sanitizer;
   private final HeaderVerification headerVerification;
   private final Compiler compiler;
+  private final Optional<CxxCompileCache> compileCache;
 
   /**
    * Directory to use to store intermediate/temp files used for compilation.
@@ -91,7 +96,8 @@ public class CxxPreprocessAndCompileStep implements Step {
       HeaderVerification headerVerification,
       Path scratchDir,
       boolean useArgfile,
-      Compiler compiler) {
+      Compiler compiler,
+      Optional<CxxCompileCache> compileCache) {
 
     Preconditions.checkState(operation.isPreprocess() == preprocessorCommand.isPresent());
     Preconditions.checkState(operation.isCompile() == compilerCommand.isPresent());
@@ -110,6 +116,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     this.scratchDir = scratchDir;
     this.useArgfile = useArgfile;
     this.compiler = compiler;
+    this.compileCache = compileCache;
   }
 
   @Override
@@ -235,7 +242,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     }
   }
 
-  private int executePiped(ExecutionContext context)
+  private int executePiped(ExecutionContext context, StringBuilder diagnostics)
       throws IOException, InterruptedException {
     Preconditions.checkState(preprocessorCommand.isPresent());
     Preconditions.checkState(compilerCommand.isPresent());
@@ -315,6 +322,7 @@ public class CxxPreprocessAndCompileStep implements Step {
       safeCloseProcessor(errorProcessorCompile);
 
       String preprocessErr = new String(preprocessError.toByteArray());
+      diagnostics.append(preprocessErr);
       if (!preprocessErr.isEmpty()) {
         context.getBuckEventBus().post(
             createConsoleEvent(
@@ -325,6 +333,7 @@ public class CxxPreprocessAndCompileStep implements Step {
       }
 
       String compileErr = new String(compileError.toByteArray());
+      diagnostics.append(compileErr);
       if (!compileErr.isEmpty()) {
         context.getBuckEventBus().post(
             createConsoleEvent(
@@ -370,7 +379,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     }
   }
 
-  private int executeOther(ExecutionContext context) throws Exception {
+  private int executeOther(ExecutionContext context, StringBuilder diagnostics) throws Exception {
     ProcessExecutorParams.Builder builder =
         makeSubprocessBuilder(context, ImmutableMap.of());
 
@@ -447,6 +456,7 @@ public class CxxPreprocessAndCompileStep implements Step {
 
     // If we generated any error output, print that to the console.
     String err = new String(error.toByteArray());
+    diagnostics.append(err);
     if (!err.isEmpty()) {
       context.getBuckEventBus().post(
           createConsoleEvent(
@@ -492,17 +502,94 @@ public class CxxPreprocessAndCompileStep implements Step {
         sanitizer);
   }
 
+  private boolean shouldUseCompileCache() {
+    // We can only trust a cached object if we know every file that went into it, which requires
+    // a depfile whenever preprocessing is involved.
+    return compileCache.isPresent() &&
+        operation.isCompile() &&
+        (!operation.isPreprocess() || compiler.isDependencyFileSupported());
+  }
+
+  /**
+   * @return the depfile as the compiler wrote it, which is what gets cached, so that header
+   *     verification runs on it for cache hits just as it does after compiling.
+   */
+  private Optional<Path> getCachedDepFile() {
+    return operation.isPreprocess() ? Optional.of(getDepTemp()) : Optional.absent();
+  }
+
+  private HashCode computeCompileCacheKey() throws IOException {
+    ImmutableList.Builder<ImmutableList<String>> commandPrefixes = ImmutableList.builder();
+    Map<String, String> environment = new HashMap<>();
+    for (ToolCommand command : Optional.presentInstances(
+             ImmutableList.of(preprocessorCommand, compilerCommand))) {
+      commandPrefixes.add(command.getCommandPrefix());
+      environment.putAll(command.getEnvironment());
+    }
+    return compileCache.get().computeManifestKey(
+        commandPrefixes.build(),
+        ImmutableList.of(
+            operation.toString(),
+            sanitizer.getCompilationDirectory(),
+            getDescriptionNoContext()),
+        ImmutableMap.copyOf(environment),
+        input);
+  }
+
+  /**
+   * @return the files the compiler reported reading, taken from the depfile it emitted.
+   */
+  private ImmutableList<Path> getCompileCacheDependencies() throws IOException {
+    if (!operation.isPreprocess()) {
+      // The input is already part of the manifest key.
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<Path> dependencies = ImmutableList.builder();
+    try (Reader reader = new InputStreamReader(filesystem.newFileInputStream(getDepTemp()))) {
+      for (String prereq : Depfiles.parseDepfile(reader).getPrereqs()) {
+        dependencies.add(filesystem.resolve(Paths.get(prereq).normalize()));
+      }
+    }
+    return dependencies.build();
+  }
+
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
     try {
       LOG.debug("%s %s -> %s", operation.toString().toLowerCase(), input, output);
 
-      // We need completely different logic if we're piping from the preprocessor to the compiler.
+      Optional<HashCode> compileCacheKey = Optional.absent();
+      Optional<String> cachedDiagnostics = Optional.absent();
+      if (shouldUseCompileCache()) {
+        try {
+          compileCacheKey = Optional.of(computeCompileCacheKey());
+          cachedDiagnostics =
+              compileCache.get().fetch(compileCacheKey.get(), output, getCachedDepFile());
+        } catch (IOException e) {
+          LOG.warn(e, "error reading compile cache for %s", input);
+        }
+      }
+      boolean restoredFromCache = cachedDiagnostics.isPresent();
+
       int exitCode;
-      if (operation == Operation.PIPED_PREPROCESS_AND_COMPILE) {
-        exitCode = executePiped(context);
+      StringBuilder diagnostics = new StringBuilder();
+      if (restoredFromCache) {
+        // Replay the warnings of the cached compilation, as a real one would print them again.
+        if (!cachedDiagnostics.get().isEmpty()) {
+          context.getBuckEventBus().post(
+              createConsoleEvent(
+                  context,
+                  preprocessorCommand.or(compilerCommand).get().supportsColorsInDiagnostics(),
+                  Level.WARNING,
+                  cachedDiagnostics.get()));
+        }
+        exitCode = 0;
+      } else if (operation == Operation.PIPED_PREPROCESS_AND_COMPILE) {
+        // We need completely different logic if we're piping from the preprocessor to the
+        // compiler.
+        exitCode = executePiped(context, diagnostics);
       } else {
-        exitCode = executeOther(context);
+        exitCode = executeOther(context, diagnostics);
       }
 
       if (operation.isPreprocess() && exitCode == 0 && compiler.isDependencyFileSupported()) {
@@ -522,7 +609,8 @@ public class CxxPreprocessAndCompileStep implements Step {
       // through #line directive modification, perform the in-place update of the compilation per
       // above.  This locates the relevant debug section and swaps out the expanded actual
       // compilation directory with the one we really want.
-      if (exitCode == 0 && shouldSanitizeOutputBinary()) {
+      // Cached objects were stored already sanitized.
+      if (exitCode == 0 && !restoredFromCache && shouldSanitizeOutputBinary()) {
         try {
           Path path = filesystem.getRootPath().toAbsolutePath().resolve(output);
           sanitizer.restoreCompilationDirectory(
@@ -535,6 +623,19 @@ public class CxxPreprocessAndCompileStep implements Step {
         }
       }
 
+      if (exitCode == 0 && !restoredFromCache && compileCacheKey.isPresent()) {
+        try {
+          compileCache.get().store(
+              compileCacheKey.get(),
+              getCompileCacheDependencies(),
+              output,
+              getCachedDepFile(),
+              diagnostics.toString());
+        } catch (IOException e) {
+          LOG.warn(e, "error storing %s in compile cache", output);
+        }
+      }
+
       if (exitCode != 0) {
         LOG.warn("error %d %s %s", exitCode, operation.toString().toLowerCase(), input);
       }
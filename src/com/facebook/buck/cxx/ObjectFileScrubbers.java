@@ -28,6 +28,7 @@ import com.google.common.primitives.Shorts;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.ReadOnlyBufferException;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
@@ -40,6 +41,19 @@ public class ObjectFileScrubbers {
   public static final byte[] GLOBAL_THIN_HEADER = "!<thin>\n".getBytes(Charsets.US_ASCII);
   public static final byte[] END_OF_FILE_HEADER_MARKER = {0x60, 0x0A};
 
+  private static final int ENTRY_NAME_SIZE = 16;
+  private static final int ENTRY_SIZE =
+      ENTRY_NAME_SIZE /* fileName */ +
+      12 /* file modification time */ +
+      6 /* owner ID */ +
+      6 /* group ID */ +
+      8 /* file mode */ +
+      10 /* file size */ +
+      2 /* file magic */;
+  private static final int SCRUBBED_METADATA_SIZE = 12 + 6 + 6 + 8;
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  private static final int FILE_MODE = 0100644;
+
   public enum PaddingStyle {
     LEFT,
     RIGHT,
@@ -55,76 +69,35 @@ public class ObjectFileScrubbers {
   }
 
   public static FileContentsScrubber createDateUidGidScrubber(final PaddingStyle paddingStyle) {
+    // The values we inject for the timestamp, UID, GID and file mode are the same for every
+    // entry, so render them once up front rather than formatting them for each entry.
+    ByteBuffer scrubbed = ByteBuffer.allocate(SCRUBBED_METADATA_SIZE);
+    /* File modification timestamp */ putIntAsDecimalString(
+        scrubbed,
+        12,
+        ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP,
+        paddingStyle);
+    /* Owner ID */ putIntAsDecimalString(scrubbed, 6, 0, paddingStyle);
+    /* Group ID */ putIntAsDecimalString(scrubbed, 6, 0, paddingStyle);
+    /* File mode */ putIntAsOctalString(scrubbed, 8, FILE_MODE, paddingStyle);
+    final byte[] scrubbedMetadata = scrubbed.array();
+
     return new FileContentsScrubber() {
 
       /**
        * Efficiently modifies the archive backed by the given buffer to remove any non-deterministic
        * meta-data such as timestamps, UIDs, and GIDs.
        */
-      @SuppressWarnings("PMD.AvoidUsingOctalValues")
       @Override
       public void scrubFile(FileChannel file) throws IOException, ScrubException {
         try {
-          ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_SIZE);
-          file.read(header);
-          // Grab the global header chunk and verify it's accurate.
-          header.position(0);
-          byte[] globalHeader = getBytes(header, GLOBAL_HEADER_SIZE);
-          boolean thin = checkHeader(globalHeader);
-
-          // Iterate over all the file meta-data entries, injecting zero's for timestamp,
-          // UID, and GID.
-          final int entrySize =
-              16 /* fileName */ +
-              12 /* file modification time */ +
-              6 /* owner ID */ +
-              6 /* group ID */ +
-              8 /* file mode */ +
-              10 /* file size */ +
-              2 /* file magic */;
-
-          long start = GLOBAL_HEADER_SIZE;
-          ByteBuffer buffer = ByteBuffer.allocate(entrySize);
-          while (start < file.size()) {
-            checkArchive(file.size() - start >= entrySize, "Invalid entry metadata format");
-
-            buffer.clear();
-            file.position(start);
-            int read = file.read(buffer);
-            checkArchive(read == entrySize, "Not all bytes have been read");
-
-            buffer.position(0); // position points just past the last byte read, so need to reset
-            String fileName = new String(getBytes(buffer, 16), Charsets.US_ASCII).trim();
-
-            // Inject 0's for the non-deterministic meta-data entries.
-            /* File modification timestamp */ putIntAsDecimalString(
-                buffer,
-                12,
-                ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP,
-                paddingStyle);
-            /* Owner ID */ putIntAsDecimalString(buffer, 6, 0, paddingStyle);
-            /* Group ID */ putIntAsDecimalString(buffer, 6, 0, paddingStyle);
-
-            /* File mode */ putIntAsOctalString(buffer, 8, 0100644, paddingStyle);
-            long fileSize = getDecimalStringAsLong(buffer, 10);
-
-            // Lastly, grab the file magic entry and verify it's accurate.
-            byte[] fileMagic = getBytes(buffer, 2);
-            checkArchive(
-                Arrays.equals(END_OF_FILE_HEADER_MARKER, fileMagic),
-                "invalid file magic");
-
-            // write the changes
-            buffer.position(0); // position points just past the last byte accessed, need to reset
-            file.position(start);
-            int written = file.write(buffer);
-            checkArchive(written == entrySize, "Not all bytes have been written");
-
-            // Skip the file data.
-            start += entrySize;
-            if (!thin || SPECIAL_ENTRIES.contains(fileName)) {
-              start += fileSize + fileSize % 2;
-            }
+          // Archives with thousands of members would otherwise cost a read and a write syscall
+          // per member, so patch the entry headers in place through a memory mapping when the
+          // archive is small enough to be mapped in one go.
+          if (file.size() <= Integer.MAX_VALUE) {
+            scrubMappedArchive(file, scrubbedMetadata);
+          } else {
+            scrubArchive(file, scrubbedMetadata);
           }
 
           // Convert any low-level exceptions to `ArchiveExceptions`s.
@@ -135,6 +108,114 @@ public class ObjectFileScrubbers {
     };
   }
 
+  private static void scrubMappedArchive(FileChannel file, byte[] scrubbedMetadata)
+      throws IOException, FileContentsScrubber.ScrubException {
+    long size = file.size();
+    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+    // Grab the global header chunk and verify it's accurate.
+    byte[] globalHeader = getBytes(map, GLOBAL_HEADER_SIZE);
+    boolean thin = checkHeader(globalHeader);
+
+    // Check every entry before writing anything, as writes go straight to the file, and a
+    // malformed archive must be left as it was.
+    long start = GLOBAL_HEADER_SIZE;
+    while (start < size) {
+      checkArchive(size - start >= ENTRY_SIZE, "Invalid entry metadata format");
+      map.position((int) start);
+      start += checkEntry(map, scrubbedMetadata.length, thin);
+    }
+
+    start = GLOBAL_HEADER_SIZE;
+    while (start < size) {
+      map.position((int) start);
+      start += scrubEntry(map, scrubbedMetadata, thin);
+    }
+  }
+
+  private static void scrubArchive(FileChannel file, byte[] scrubbedMetadata)
+      throws IOException, FileContentsScrubber.ScrubException {
+    ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_SIZE);
+    file.read(header);
+    // Grab the global header chunk and verify it's accurate.
+    header.position(0);
+    byte[] globalHeader = getBytes(header, GLOBAL_HEADER_SIZE);
+    boolean thin = checkHeader(globalHeader);
+
+    long start = GLOBAL_HEADER_SIZE;
+    ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+    while (start < file.size()) {
+      checkArchive(file.size() - start >= ENTRY_SIZE, "Invalid entry metadata format");
+
+      buffer.clear();
+      file.position(start);
+      int read = file.read(buffer);
+      checkArchive(read == ENTRY_SIZE, "Not all bytes have been read");
+
+      buffer.position(0); // position points just past the last byte read, so need to reset
+      long entryLength = scrubEntry(buffer, scrubbedMetadata, thin);
+
+      // write the changes
+      buffer.position(0); // position points just past the last byte accessed, need to reset
+      file.position(start);
+      int written = file.write(buffer);
+      checkArchive(written == ENTRY_SIZE, "Not all bytes have been written");
+
+      start += entryLength;
+    }
+  }
+
+  /**
+   * Injects zero's for the timestamp, UID, and GID of the file meta-data entry at the current
+   * position of the given buffer, once the entry has been checked.
+   *
+   * @return the distance from the start of this entry to the start of the next one.
+   */
+  private static long scrubEntry(ByteBuffer buffer, byte[] scrubbedMetadata, boolean thin)
+      throws FileContentsScrubber.ScrubException {
+    int entryStart = buffer.position();
+    long entryLength = checkEntry(buffer, scrubbedMetadata.length, thin);
+
+    // Inject 0's for the non-deterministic meta-data entries.
+    buffer.position(entryStart + ENTRY_NAME_SIZE);
+    buffer.put(scrubbedMetadata);
+    return entryLength;
+  }
+
+  /**
+   * Validates the size and file magic of the file meta-data entry at the current position of the
+   * given buffer, without modifying it.
+   *
+   * @return the distance from the start of this entry to the start of the next one.
+   */
+  private static long checkEntry(ByteBuffer buffer, int metadataLength, boolean thin)
+      throws FileContentsScrubber.ScrubException {
+    String fileName =
+        new String(getBytes(buffer, ENTRY_NAME_SIZE), Charsets.US_ASCII).trim();
+
+    buffer.position(buffer.position() + metadataLength);
+    long fileSize;
+    try {
+      fileSize = getDecimalStringAsLong(buffer, 10);
+    } catch (NumberFormatException e) {
+      throw new FileContentsScrubber.ScrubException("invalid file size");
+    }
+    checkArchive(fileSize >= 0, "invalid file size");
+
+    // Lastly, grab the file magic entry and verify it's accurate.
+    byte[] fileMagic = getBytes(buffer, 2);
+    checkArchive(
+        Arrays.equals(END_OF_FILE_HEADER_MARKER, fileMagic),
+        "invalid file magic");
+
+    // Skip the file data.
+    long entryLength = ENTRY_SIZE;
+    if (!thin || SPECIAL_ENTRIES.contains(fileName)) {
+      entryLength += fileSize + fileSize % 2;
+    }
+    return entryLength;
+  }
+
   public static byte[] getBytes(ByteBuffer buffer, int len) {
     byte[] bytes = new byte[len];
     buffer.get(bytes);
@@ -27,6 +27,7 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
 import java.text.DateFormat;
@@ -68,8 +69,32 @@ public class DistBuildClientExecutor {
     LOG.info("Created job. Build id = " + id.getId());
     logDebugInfo(job);
 
+    // The target graph and the local changes are independent, so upload them concurrently.
+    final BuildJob createdJob = job;
+    final BuckEventBus buildEventBus = eventBus;
+    ListenableFuture<Void> filesUploaded = distBuildService.uploadMissingFiles(
+        buildJobState.fileHashes,
+        DistBuildService.DEFAULT_UPLOAD_BATCH_SIZE,
+        new DistBuildService.FileUploadListener() {
+          @Override
+          public void onBatchUploaded(int filesChecked, int filesUploaded, int totalFiles) {
+            buildEventBus.post(new DistBuildStatusEvent(
+                prepareStatusFromJob(createdJob)
+                    .setETAMillis(MAX_BUILD_DURATION_MILLIS)
+                    .setMessage(String.format(
+                        "Checked %d/%d source files, uploaded %d",
+                        filesChecked,
+                        totalFiles,
+                        filesUploaded))
+                    .build()));
+          }
+        },
+        executorService);
+    ListenableFuture<Void> targetGraphUploaded =
+        distBuildService.uploadTargetGraph(buildJobState, id, executorService);
+
     try {
-      distBuildService.uploadMissingFiles(buildJobState.fileHashes, executorService).get();
+      filesUploaded.get();
     } catch (ExecutionException e) {
       LOG.error("Exception uploading local changes: " + e);
       throw new RuntimeException(e);
@@ -77,7 +102,7 @@ public class DistBuildClientExecutor {
     LOG.info("Uploaded local changes. Build status: " + job.getStatus().toString());
 
     try {
-      distBuildService.uploadTargetGraph(buildJobState, id, executorService).get();
+      targetGraphUploaded.get();
     } catch (ExecutionException e) {
       LOG.error("Exception uploading build graph: " + e);
       throw new RuntimeException(e);
@@ -30,6 +30,11 @@ public class DistBuildConfig {
   private static final String FRONTEND_REQUEST_TIMEOUT_MILLIS = "stampede_timeout_millis";
   private static final long DEFAULT_DEFAULT_REQUEST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
 
+  private static final String MATERIALIZE_SOURCE_FILES_ON_DEMAND =
+      "materialize_source_files_on_demand";
+  private static final String SOURCE_FILE_PREFETCH_THREADS = "source_file_prefetch_threads";
+  private static final int DEFAULT_SOURCE_FILE_PREFETCH_THREADS = 4;
+
   private final SlbBuckConfig frontendConfig;
   private final BuckConfig buckConfig;
 
@@ -47,6 +52,26 @@ public class DistBuildConfig {
         .or(DEFAULT_DEFAULT_REQUEST_TIMEOUT_MILLIS);
   }
 
+  /**
+   * @return whether slaves should only write out source files as the build asks for them, rather
+   *     than materializing the whole of the build state before starting.
+   */
+  public boolean isMaterializeSourceFilesOnDemandEnabled() {
+    return buckConfig.getBooleanValue(
+        STAMPEDE_SECTION,
+        MATERIALIZE_SOURCE_FILES_ON_DEMAND,
+        false);
+  }
+
+  /**
+   * @return how many threads prefetch source files when they're materialized on demand, or 0 to
+   *     disable prefetching.
+   */
+  public int getSourceFilePrefetchThreads() {
+    return buckConfig.getInteger(STAMPEDE_SECTION, SOURCE_FILE_PREFETCH_THREADS)
+        .or(DEFAULT_SOURCE_FILE_PREFETCH_THREADS);
+  }
+
   public OkHttpClient createOkHttpClient() {
     return new OkHttpClient.Builder()
         .connectTimeout(getFrontendRequestTimeoutMillis(), TimeUnit.MILLISECONDS)
@@ -25,20 +25,31 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Optional;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * {@link FileHashLoader} which writes out the contents of each source file recorded in the
+ * {@link BuildJobStateFileHashes} the first time it is asked about it.  Safe to use from several
+ * threads at once, so that files can be materialized on demand while a prefetcher is running.
+ */
 class DistBuildFileMaterializer implements FileHashLoader {
   private static final Logger LOG = Logger.get(DistBuildFileMaterializer.class);
   private final Map<Path, BuildJobStateFileHashEntry> remoteFileHashes;
-  private final Set<Path> materializedPaths;
+  private final ConcurrentMap<Path, SettableFuture<Void>> materializedPaths;
+  private final Set<Path> materializedSymlinks;
+  private final AtomicInteger materializedFileCount;
   private final FileContentsProvider provider;
   private final ProjectFilesystem projectFilesystem;
 
@@ -49,39 +60,74 @@ class DistBuildFileMaterializer implements FileHashLoader {
     this.remoteFileHashes = DistBuildFileHashes.indexEntriesByPath(
         projectFilesystem,
         remoteFileHashes);
-    this.materializedPaths = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    this.materializedPaths = new ConcurrentHashMap<>();
+    this.materializedSymlinks = new HashSet<>();
+    this.materializedFileCount = new AtomicInteger(0);
     this.provider = provider;
     this.projectFilesystem = projectFilesystem;
   }
 
   public void preloadAllFiles() throws IOException {
     for (Path path : remoteFileHashes.keySet()) {
-      materializeIfNeeded(path);
+      materializeIfNeeded(path, /* expandDirectories */ false);
     }
   }
 
-  private void materializeIfNeeded(Path path) throws IOException {
-    if (materializedPaths.contains(path)) {
+  /**
+   * @return the number of paths the remote state has file hashes for.
+   */
+  public int getRecordedPathCount() {
+    return remoteFileHashes.size();
+  }
+
+  /**
+   * @return the number of files whose contents have been written out so far.
+   */
+  public int getMaterializedFileCount() {
+    return materializedFileCount.get();
+  }
+
+  private void materializeIfNeeded(Path path, boolean expandDirectories) throws IOException {
+    SettableFuture<Void> materialized = SettableFuture.create();
+    SettableFuture<Void> existing = materializedPaths.putIfAbsent(path, materialized);
+    if (existing != null) {
+      // Either done already, or in progress on another thread.
+      Futures.getChecked(existing, IOException.class);
       return;
     }
+
+    try {
+      materialize(path, expandDirectories);
+      materialized.set(null);
+    } catch (IOException | RuntimeException e) {
+      materialized.setException(e);
+      throw e;
+    }
+  }
+
+  private void materialize(Path path, boolean expandDirectories) throws IOException {
     LOG.info("Materializing: %s", path.toAbsolutePath().toString());
 
     BuildJobStateFileHashEntry fileHashEntry = remoteFileHashes.get(path);
     if (fileHashEntry == null || fileHashEntry.isPathIsAbsolute()) {
-      materializedPaths.add(path);
       return;
     }
 
     if (fileHashEntry.isSetRootSymLink()) {
       materializeSymlink(fileHashEntry);
-      materializedPaths.add(path);
       return;
     }
 
-    materializedPaths.add(path);
-
     // TODO(alisdair04,ruibm,shivanker): materialize directories
     if (fileHashEntry.isIsDirectory()) {
+      // When preloading, every file under the directory is visited anyway.
+      if (expandDirectories) {
+        for (Path child : remoteFileHashes.keySet()) {
+          if (!child.equals(path) && child.startsWith(path)) {
+            materializeIfNeeded(child, /* expandDirectories */ false);
+          }
+        }
+      }
       return;
     }
 
@@ -98,15 +144,15 @@ class DistBuildFileMaterializer implements FileHashLoader {
       Files.copy(sourceStream, path);
       // TODO(alisdair04,ruibm,shivanker): apply original file permissions
     }
+    materializedFileCount.incrementAndGet();
   }
 
-  private void materializeSymlink(BuildJobStateFileHashEntry fileHashEntry) {
+  private synchronized void materializeSymlink(BuildJobStateFileHashEntry fileHashEntry) {
     Path rootSymlink = projectFilesystem.resolve(fileHashEntry.getRootSymLink().getPath());
 
-    if (materializedPaths.contains(rootSymlink)) {
+    if (materializedSymlinks.contains(rootSymlink)) {
       return;
     }
-    materializedPaths.add(rootSymlink);
 
     if (!projectFilesystem.getPathRelativeToProjectRoot(rootSymlink).isPresent()) {
       // RecordingFileHashLoader stored an absolute path (which was also a sym link).
@@ -127,6 +173,7 @@ class DistBuildFileMaterializer implements FileHashLoader {
           rootSymlink,
           rootSymlinkTarget,
           true /* force creation */);
+      materializedSymlinks.add(rootSymlink);
     } catch (IOException e) {
       LOG.error(e);
       throw new RuntimeException(e);
@@ -135,7 +182,7 @@ class DistBuildFileMaterializer implements FileHashLoader {
 
   @Override
   public HashCode get(Path path) throws IOException {
-    materializeIfNeeded(path);
+    materializeIfNeeded(path, /* expandDirectories */ true);
     return HashCode.fromInt(0);
   }
 
@@ -146,7 +193,7 @@ class DistBuildFileMaterializer implements FileHashLoader {
 
   @Override
   public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
-    materializeIfNeeded(archiveMemberPath.getArchivePath());
+    materializeIfNeeded(archiveMemberPath.getArchivePath(), /* expandDirectories */ true);
     return HashCode.fromInt(0);
   }
 }
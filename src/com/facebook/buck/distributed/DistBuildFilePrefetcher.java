@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import com.facebook.buck.graph.TopologicalSort;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Predicates;
+import com.google.common.cache.LoadingCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materializes the inputs of every node in a {@link TargetGraph} on a bounded number of threads,
+ * starting from the leaves of the graph so that files are fetched roughly in the order the build
+ * will need them.  Anything not prefetched yet is still materialized on demand by the
+ * {@link DistBuildFileMaterializer}, so failures here are only logged.
+ */
+class DistBuildFilePrefetcher implements AutoCloseable {
+  private static final Logger LOG = Logger.get(DistBuildFilePrefetcher.class);
+
+  private final ExecutorService executor;
+
+  private DistBuildFilePrefetcher(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public static DistBuildFilePrefetcher start(
+      TargetGraph targetGraph,
+      final LoadingCache<ProjectFilesystem, DistBuildFileMaterializer> materializers,
+      int threadCount) {
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor("dist-build-prefetch", threadCount);
+    for (final TargetNode<?> node :
+         TopologicalSort.sort(targetGraph, Predicates.<TargetNode<?>>alwaysTrue())) {
+      executor.execute(() -> prefetchInputs(node, materializers));
+    }
+    return new DistBuildFilePrefetcher(executor);
+  }
+
+  private static void prefetchInputs(
+      TargetNode<?> node,
+      LoadingCache<ProjectFilesystem, DistBuildFileMaterializer> materializers) {
+    ProjectFilesystem filesystem = node.getRuleFactoryParams().getProjectFilesystem();
+    DistBuildFileMaterializer materializer = materializers.getUnchecked(filesystem);
+    for (Path input : node.getInputs()) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      try {
+        materializer.get(filesystem.resolve(input));
+      } catch (IOException | RuntimeException e) {
+        LOG.warn(e, "Failed to prefetch %s of %s.", input, node.getBuildTarget());
+      }
+    }
+  }
+
+  /**
+   * Stops prefetching, abandoning any nodes which haven't been visited yet.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+}
@@ -37,8 +37,11 @@ import com.facebook.buck.distributed.thrift.StartBuildRequest;
 import com.facebook.buck.distributed.thrift.StoreBuildGraphRequest;
 import com.facebook.buck.distributed.thrift.StoreLocalChangesRequest;
 import com.facebook.buck.log.Logger;
+import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
@@ -46,15 +49,23 @@ import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class DistBuildService implements Closeable {
   private static final Logger LOG = Logger.get(DistBuildService.class);
+
+  /**
+   * Number of content hashes sent in each CAS_CONTAINS request when uploading missing files.
+   */
+  public static final int DEFAULT_UPLOAD_BATCH_SIZE = 500;
+
   private final FrontendService service;
 
   public DistBuildService(
@@ -99,66 +110,116 @@ public class DistBuildService implements Closeable {
   public ListenableFuture<Void> uploadMissingFiles(
       final List<BuildJobStateFileHashes> fileHashes,
       ListeningExecutorService executorService) throws IOException {
-    return executorService.submit(new Callable<Void>() {
-      @Override
-      public Void call() throws IOException {
-        Map<String, BuildJobStateFileHashEntry> sha1ToFileEntry = new HashMap<>();
-        for (BuildJobStateFileHashes filesystem : fileHashes) {
-          if (!filesystem.isSetEntries()) {
-            continue;
-          }
-          for (BuildJobStateFileHashEntry file : filesystem.entries) {
-            // TODO(shivanker): Eventually, we won't have file contents in BuildJobState.
-            // Then change this code to load file contents inline (only for missing files)
-            sha1ToFileEntry.put(file.hashCode, file);
+    return uploadMissingFiles(
+        fileHashes,
+        DEFAULT_UPLOAD_BATCH_SIZE,
+        new FileUploadListener() {
+          @Override
+          public void onBatchUploaded(int filesChecked, int filesUploaded, int totalFiles) {
           }
-        }
+        },
+        executorService);
+  }
 
-        List<String> contentHashes = ImmutableList.copyOf(sha1ToFileEntry.keySet());
-        CASContainsRequest containsReq = new CASContainsRequest();
-        containsReq.setContentSha1s(contentHashes);
-        FrontendRequest request = new FrontendRequest();
-        request.setType(FrontendRequestType.CAS_CONTAINS);
-        request.setCasContainsRequest(containsReq);
-        FrontendResponse response = makeRequestChecked(request);
-
-        Preconditions.checkState(
-            response.getCasContainsResponse().exists.size() == contentHashes.size());
-        List<Boolean> isPresent = response.getCasContainsResponse().exists;
-        List<FileInfo> filesToBeUploaded = new LinkedList<>();
-        for (int i = 0; i < isPresent.size(); ++i) {
-          BuildJobStateFileHashEntry fileHashEntry = sha1ToFileEntry.get(contentHashes.get(i));
-          if (isPresent.get(i)) {
-            LOG.info(
-                "File with path [%s] has already been uploaded. Skipping..",
-                fileHashEntry.path.getPath());
-            continue;
-          }
-          if (fileHashEntry.isSetRootSymLink()) {
-            LOG.info(
-                "File with path [%s] is a symlink. Skipping upload..",
-                fileHashEntry.path.getPath());
-            continue;
-          }
+  /**
+   * Uploads the contents of every file the frontend doesn't have yet.  Files are checked and
+   * uploaded in batches of {@code batchSize}, with the batches running concurrently on
+   * {@code executorService}, so that the upload of one batch overlaps with the CAS lookup of the
+   * next.
+   */
+  public ListenableFuture<Void> uploadMissingFiles(
+      final List<BuildJobStateFileHashes> fileHashes,
+      int batchSize,
+      final FileUploadListener listener,
+      ListeningExecutorService executorService) throws IOException {
+    Preconditions.checkArgument(batchSize > 0);
+    final Map<String, BuildJobStateFileHashEntry> sha1ToFileEntry = new LinkedHashMap<>();
+    for (BuildJobStateFileHashes filesystem : fileHashes) {
+      if (!filesystem.isSetEntries()) {
+        continue;
+      }
+      for (BuildJobStateFileHashEntry file : filesystem.entries) {
+        if (file.isSetRootSymLink()) {
+          LOG.info(
+              "File with path [%s] is a symlink. Skipping upload..",
+              file.path.getPath());
+          continue;
+        }
+        // TODO(shivanker): Eventually, we won't have file contents in BuildJobState.
+        // Then change this code to load file contents inline (only for missing files)
+        sha1ToFileEntry.put(file.hashCode, file);
+      }
+    }
 
-          LOG.info("Uploading file with path [%s]",  fileHashEntry.path.getPath());
-          FileInfo file = new FileInfo();
-          file.setContentHash(fileHashEntry.getHashCode());
-          file.setContent(fileHashEntry.getContents());
-          filesToBeUploaded.add(file);
+    final int totalFiles = sha1ToFileEntry.size();
+    final AtomicInteger filesChecked = new AtomicInteger(0);
+    final AtomicInteger filesUploaded = new AtomicInteger(0);
+    List<ListenableFuture<Void>> batches = new ArrayList<>();
+    for (final List<String> batch :
+         Iterables.partition(ImmutableList.copyOf(sha1ToFileEntry.keySet()), batchSize)) {
+      batches.add(executorService.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          int uploaded = uploadMissingFiles(batch, sha1ToFileEntry);
+          listener.onBatchUploaded(
+              filesChecked.addAndGet(batch.size()),
+              filesUploaded.addAndGet(uploaded),
+              totalFiles);
+          return null;
         }
+      }));
+    }
 
+    return Futures.transform(
+        Futures.allAsList(batches),
+        Functions.<Void>constant(null));
+  }
 
-        request = new FrontendRequest();
-        StoreLocalChangesRequest storeReq = new StoreLocalChangesRequest();
-        storeReq.setFiles(filesToBeUploaded);
-        request.setType(FrontendRequestType.STORE_LOCAL_CHANGES);
-        request.setStoreLocalChangesRequest(storeReq);
-        makeRequestChecked(request);
-        // No response expected.
-        return null;
+  /**
+   * @return the number of files which had to be uploaded.
+   */
+  private int uploadMissingFiles(
+      List<String> contentHashes,
+      Map<String, BuildJobStateFileHashEntry> sha1ToFileEntry) throws IOException {
+    CASContainsRequest containsReq = new CASContainsRequest();
+    containsReq.setContentSha1s(contentHashes);
+    FrontendRequest request = new FrontendRequest();
+    request.setType(FrontendRequestType.CAS_CONTAINS);
+    request.setCasContainsRequest(containsReq);
+    FrontendResponse response = makeRequestChecked(request);
+
+    Preconditions.checkState(
+        response.getCasContainsResponse().exists.size() == contentHashes.size());
+    List<Boolean> isPresent = response.getCasContainsResponse().exists;
+    List<FileInfo> filesToBeUploaded = new LinkedList<>();
+    for (int i = 0; i < isPresent.size(); ++i) {
+      BuildJobStateFileHashEntry fileHashEntry = sha1ToFileEntry.get(contentHashes.get(i));
+      if (isPresent.get(i)) {
+        LOG.info(
+            "File with path [%s] has already been uploaded. Skipping..",
+            fileHashEntry.path.getPath());
+        continue;
       }
-    });
+
+      LOG.info("Uploading file with path [%s]",  fileHashEntry.path.getPath());
+      FileInfo file = new FileInfo();
+      file.setContentHash(fileHashEntry.getHashCode());
+      file.setContent(fileHashEntry.getContents());
+      filesToBeUploaded.add(file);
+    }
+
+    if (filesToBeUploaded.isEmpty()) {
+      return 0;
+    }
+
+    request = new FrontendRequest();
+    StoreLocalChangesRequest storeReq = new StoreLocalChangesRequest();
+    storeReq.setFiles(filesToBeUploaded);
+    request.setType(FrontendRequestType.STORE_LOCAL_CHANGES);
+    request.setStoreLocalChangesRequest(storeReq);
+    makeRequestChecked(request);
+    // No response expected.
+    return filesToBeUploaded.size();
   }
 
   public BuildJob createBuild() throws IOException {
@@ -269,6 +330,14 @@ public class DistBuildService implements Closeable {
     service.close();
   }
 
+  /**
+   * Notified as each batch of files passed to {@link #uploadMissingFiles} completes.  May be
+   * called concurrently from several threads.
+   */
+  public interface FileUploadListener {
+    void onBatchUploaded(int filesChecked, int filesUploaded, int totalFiles);
+  }
+
   private FrontendResponse makeRequestChecked(FrontendRequest request) throws IOException {
     FrontendResponse response = service.makeRequest(request);
     Preconditions.checkState(response.isSetWasSuccessful());
@@ -34,6 +34,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodeFactory;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -64,6 +65,12 @@ public class DistBuildSlaveExecutor {
   @Nullable
   private DistBuildCachingEngineDelegate cachingBuildEngineDelegate;
 
+  @Nullable
+  private LoadingCache<ProjectFilesystem, DistBuildFileMaterializer> fileMaterializers;
+
+  @Nullable
+  private DistBuildFilePrefetcher filePrefetcher;
+
   private static final Logger LOG = Logger.get(DistBuildSlaveExecutor.class);
 
   public DistBuildSlaveExecutor(DistBuildExecutorArgs args) {
@@ -71,6 +78,14 @@ public class DistBuildSlaveExecutor {
   }
 
   public int buildAndReturnExitCode() throws IOException, InterruptedException {
+    try {
+      return build();
+    } finally {
+      stopMaterializingFiles();
+    }
+  }
+
+  private int build() throws IOException, InterruptedException {
     createBuildEngineDelegate();
     BuckConfig config = args.getRemoteRootCellConfig();
     BuildEngine buildEngine = new CachingBuildEngine(
@@ -115,7 +130,10 @@ public class DistBuildSlaveExecutor {
             config.getMaximumResourceAmounts().withCpu(4)),
         Optional.absent(),
         Optional.absent(),
-        args.getExecutors())) {
+        args.getExecutors(),
+        new JarIndexCache(),
+        /* fileHashCache */ Optional.absent(),
+        Optional.absent())) {
 
       // TODO(ruibm): We need to pass to the distbuild target via de distributed build
       //              thrift structs.
@@ -166,7 +184,7 @@ public class DistBuildSlaveExecutor {
       return cachingBuildEngineDelegate;
     }
 
-    LoadingCache<ProjectFilesystem, DistBuildFileMaterializer> fileHashLoaders =
+    final LoadingCache<ProjectFilesystem, DistBuildFileMaterializer> fileHashLoaders =
         CacheBuilder.newBuilder().build(
             new CacheLoader<ProjectFilesystem, DistBuildFileMaterializer>() {
               @Override
@@ -174,17 +192,35 @@ public class DistBuildSlaveExecutor {
                 return args.getState().createMaterializingLoader(filesystem, args.getProvider());
               }
             });
+    fileMaterializers = fileHashLoaders;
 
-    // Load all file up-front. This is needed as right now the action graph directly
-    // accesses the file system.
-    // TODO(alisdair04): remove this once action graph doesn't read from file system.
-    for (Cell cell : args.getState().getCells().values()) {
-      try {
-        fileHashLoaders.get(cell.getFilesystem()).preloadAllFiles();
-      } catch (ExecutionException e) {
-        LOG.error(e);
-        throw new RuntimeException(e);
+    DistBuildConfig distBuildConfig = new DistBuildConfig(args.getRemoteRootCellConfig());
+    if (distBuildConfig.isMaterializeSourceFilesOnDemandEnabled()) {
+      // Files get written out as the rule keys of the rules reading them are computed, with the
+      // prefetcher trying to stay ahead of the build.
+      int prefetchThreads = distBuildConfig.getSourceFilePrefetchThreads();
+      if (prefetchThreads > 0) {
+        filePrefetcher = DistBuildFilePrefetcher.start(
+            createTargetGraph(),
+            fileHashLoaders,
+            prefetchThreads);
       }
+    } else {
+      // Load all file up-front. This is needed as right now the action graph directly
+      // accesses the file system.
+      // TODO(alisdair04): remove this once action graph doesn't read from file system.
+      long startMillis = args.getClock().currentTimeMillis();
+      for (Cell cell : args.getState().getCells().values()) {
+        try {
+          fileHashLoaders.get(cell.getFilesystem()).preloadAllFiles();
+        } catch (ExecutionException e) {
+          LOG.error(e);
+          throw new RuntimeException(e);
+        }
+      }
+      LOG.info(
+          "Preloaded source files in %d ms.",
+          args.getClock().currentTimeMillis() - startMillis);
     }
 
     createActionGraphAndResolver();
@@ -197,6 +233,23 @@ public class DistBuildSlaveExecutor {
     return cachingBuildEngineDelegate;
   }
 
+  private void stopMaterializingFiles() throws InterruptedException {
+    if (filePrefetcher != null) {
+      filePrefetcher.close();
+      filePrefetcher = null;
+    }
+    if (fileMaterializers != null) {
+      for (Map.Entry<ProjectFilesystem, DistBuildFileMaterializer> entry :
+           fileMaterializers.asMap().entrySet()) {
+        LOG.info(
+            "Materialized %d files of the %d paths recorded for %s.",
+            entry.getValue().getMaterializedFileCount(),
+            entry.getValue().getRecordedPathCount(),
+            entry.getKey().getRootPath());
+      }
+    }
+  }
+
   private Supplier<AndroidPlatformTarget> getExplodingAndroidSupplier() {
     return AndroidPlatformTarget.EXPLODING_ANDROID_PLATFORM_TARGET_SUPPLIER;
   }
@@ -18,37 +18,47 @@ package com.facebook.buck.file;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
- * Download a file from a known location.
+ * Download a file from a known location.  If a download cache directory is given, files are first
+ * looked up there by their sha1, and whatever is downloaded is added to it.
  */
 public class DownloadStep implements Step {
+  private static final Logger LOG = Logger.get(DownloadStep.class);
+
   private final ProjectFilesystem filesystem;
   private final URI url;
   private final HashCode sha1;
   private final Path output;
   private final Downloader downloader;
+  private final Optional<Path> downloadCacheDir;
 
   public DownloadStep(
       ProjectFilesystem filesystem,
       Downloader downloader,
+      Optional<Path> downloadCacheDir,
       URI url,
       HashCode sha1,
       Path output) {
     this.filesystem = filesystem;
     this.downloader = downloader;
+    this.downloadCacheDir = downloadCacheDir;
     this.url = url;
     this.sha1 = sha1;
     this.output = output;
@@ -59,13 +69,17 @@ public class DownloadStep implements Step {
     BuckEventBus eventBus = context.getBuckEventBus();
     try {
       Path resolved = filesystem.resolve(output);
+      if (fetchFromDownloadCache(resolved)) {
+        return StepExecutionResult.SUCCESS;
+      }
+
       boolean success = downloader.fetch(eventBus, url, resolved);
 
       if (!success) {
         return StepExecutionResult.of(reportFailedDownload(eventBus));
       }
 
-      HashCode readHash = Files.asByteSource(resolved.toFile()).hash(Hashing.sha1());
+      HashCode readHash = MorePaths.asByteSource(resolved).hash(Hashing.sha1());
       if (!sha1.equals(readHash)) {
         eventBus.post(
             ConsoleEvent.severe(
@@ -75,6 +89,8 @@ public class DownloadStep implements Step {
                 readHash));
         return StepExecutionResult.of(-1);
       }
+
+      storeInDownloadCache(resolved);
     } catch (IOException e) {
       return StepExecutionResult.of(reportFailedDownload(eventBus));
     } catch (HumanReadableException e) {
@@ -85,6 +101,56 @@ public class DownloadStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
+  private boolean fetchFromDownloadCache(Path resolved) {
+    if (!downloadCacheDir.isPresent()) {
+      return false;
+    }
+    Path cached = downloadCacheDir.get().resolve(sha1.toString());
+    if (!Files.isRegularFile(cached)) {
+      return false;
+    }
+    try {
+      Files.copy(cached, resolved, StandardCopyOption.REPLACE_EXISTING);
+      if (!sha1.equals(MorePaths.asByteSource(resolved).hash(Hashing.sha1()))) {
+        LOG.warn("Ignoring corrupt download cache entry %s", cached);
+        Files.deleteIfExists(cached);
+        return false;
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read %s from the download cache", cached);
+      return false;
+    }
+    LOG.debug("Using %s from the download cache for %s", cached, url);
+    return true;
+  }
+
+  /**
+   * Adds a verified download to the cache.  Entries are moved into place atomically so that
+   * concurrent builds sharing the cache never see a partial file, and failing to store one does
+   * not fail the build.
+   */
+  private void storeInDownloadCache(Path resolved) {
+    if (!downloadCacheDir.isPresent()) {
+      return;
+    }
+    try {
+      Files.createDirectories(downloadCacheDir.get());
+      Path temp = Files.createTempFile(downloadCacheDir.get(), sha1.toString(), ".tmp");
+      try {
+        Files.copy(resolved, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(
+            temp,
+            downloadCacheDir.get().resolve(sha1.toString()),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to add %s to the download cache", url);
+    }
+  }
+
   private int reportFailedDownload(BuckEventBus eventBus) {
     eventBus.post(ConsoleEvent.severe("Unable to download: %s", url));
     return -1;
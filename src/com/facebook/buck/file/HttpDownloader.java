@@ -21,8 +21,6 @@ import com.facebook.buck.log.Logger;
 import com.google.common.base.Optional;
 import com.google.common.io.BaseEncoding;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,7 +30,9 @@ import java.net.Proxy;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -42,6 +42,11 @@ import javax.net.ssl.HttpsURLConnection;
  */
 public class HttpDownloader implements Downloader {
   public static final int PROGRESS_REPORT_EVERY_N_BYTES = 1000;
+  /**
+   * How many times a transfer which fails part way through is resumed before giving up.
+   */
+  private static final int MAX_RESUMPTIONS = 3;
+  private static final int BUFFER_SIZE = 64 * 1024;
 
   private static final Logger LOG = Logger.get(HttpDownloader.class);
 
@@ -70,44 +75,76 @@ public class HttpDownloader implements Downloader {
     eventBus.post(started);
 
     try {
-      HttpURLConnection connection = createConnection(uri);
-
-      if (authentication.isPresent()) {
-        if ("https".equals(uri.getScheme()) && connection instanceof HttpsURLConnection) {
-          PasswordAuthentication p = authentication.get();
-          String authStr = p.getUserName() + ":" + new String(p.getPassword());
-          String authEncoded = BaseEncoding.base64().encode(
-              authStr.getBytes(StandardCharsets.UTF_8));
-          connection.addRequestProperty("Authorization", "Basic " + authEncoded);
+      long contentLength = -1;
+      long read = 0;
+      for (int attempt = 0; ; attempt++) {
+        HttpURLConnection connection = createConnection(uri);
+
+        if (authentication.isPresent()) {
+          if ("https".equals(uri.getScheme()) && connection instanceof HttpsURLConnection) {
+            PasswordAuthentication p = authentication.get();
+            String authStr = p.getUserName() + ":" + new String(p.getPassword());
+            String authEncoded = BaseEncoding.base64().encode(
+                authStr.getBytes(StandardCharsets.UTF_8));
+            connection.addRequestProperty("Authorization", "Basic " + authEncoded);
+          } else {
+            LOG.info("Refusing to send basic authentication over plain http.");
+            return false;
+          }
+        }
+
+        // Pick up where an interrupted attempt left off.  Servers which ignore the range send the
+        // whole file again, in which case we start over.
+        if (read > 0) {
+          connection.setRequestProperty("Range", "bytes=" + read + "-");
+        }
+        int responseCode = connection.getResponseCode();
+        if (read > 0 && responseCode == HttpURLConnection.HTTP_PARTIAL) {
+          String contentRange = connection.getHeaderField("Content-Range");
+          if (contentRange == null || !contentRange.startsWith("bytes " + read + "-")) {
+            LOG.info("Unable to resume %s: unexpected range %s", uri, contentRange);
+            return false;
+          }
+          LOG.debug("Resuming download of %s at byte %d", uri, read);
+        } else if (responseCode == HttpURLConnection.HTTP_OK) {
+          read = 0;
+          contentLength = connection.getContentLengthLong();
         } else {
-          LOG.info("Refusing to send basic authentication over plain http.");
+          LOG.info("Unable to download %s: %s", uri, connection.getResponseMessage());
           return false;
         }
-      }
 
-      if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
-        LOG.info("Unable to download %s: %s", uri, connection.getResponseMessage());
-        return false;
-      }
-      long contentLength = connection.getContentLengthLong();
-      try (InputStream is = new BufferedInputStream(connection.getInputStream());
-           OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
-        long read = 0;
-
-        while (true) {
-          int r = is.read();
-          read++;
-          if (r == -1) {
-            break;
+        OpenOption[] openOptions = read > 0
+            ? new OpenOption[] {StandardOpenOption.WRITE, StandardOpenOption.APPEND}
+            : new OpenOption[0];
+        try (InputStream is = connection.getInputStream();
+             OutputStream os = Files.newOutputStream(output, openOptions)) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          while (true) {
+            int r = is.read(buffer);
+            if (r == -1) {
+              break;
+            }
+            os.write(buffer, 0, r);
+            long previouslyRead = read;
+            read += r;
+            if (read / PROGRESS_REPORT_EVERY_N_BYTES >
+                previouslyRead / PROGRESS_REPORT_EVERY_N_BYTES) {
+              eventBus.post(new DownloadProgressEvent(uri, contentLength, read));
+            }
           }
-          if (read % PROGRESS_REPORT_EVERY_N_BYTES == 0) {
-            eventBus.post(new DownloadProgressEvent(uri, contentLength, read));
+        } catch (IOException e) {
+          if (attempt >= MAX_RESUMPTIONS) {
+            throw e;
           }
-          os.write(r);
+          // Only trust what actually made it to disk.
+          read = Files.exists(output) ? Files.size(output) : 0;
+          LOG.info(e, "Download of %s failed after %d bytes, retrying", uri, read);
+          continue;
         }
-      }
 
-      return true;
+        return true;
+      }
     } finally {
       eventBus.post(DownloadEvent.finished(started));
     }
@@ -26,6 +26,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.CopyStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 
@@ -45,11 +46,13 @@ public class RemoteFile extends AbstractBuildRule {
   @AddToRuleKey(stringify = true)
   private final Path output;
   private final Downloader downloader;
+  private final Optional<Path> downloadCacheDir;
 
   public RemoteFile(
       BuildRuleParams params,
       SourcePathResolver resolver,
       Downloader downloader,
+      Optional<Path> downloadCacheDir,
       URI uri,
       HashCode sha1,
       String out) {
@@ -58,6 +61,7 @@ public class RemoteFile extends AbstractBuildRule {
     this.uri = uri;
     this.sha1 = sha1;
     this.downloader = downloader;
+    this.downloadCacheDir = downloadCacheDir;
 
     output = BuildTargets.getGenPath(
         getProjectFilesystem(),
@@ -76,7 +80,14 @@ public class RemoteFile extends AbstractBuildRule {
         "%s/" + output.getFileName());
 
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), tempFile.getParent()));
-    steps.add(new DownloadStep(getProjectFilesystem(), downloader, uri, sha1, tempFile));
+    steps.add(
+        new DownloadStep(
+            getProjectFilesystem(),
+            downloader,
+            downloadCacheDir,
+            uri,
+            sha1,
+            tempFile));
 
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), output.getParent()));
     steps.add(CopyStep.forFile(getProjectFilesystem(), tempFile, output));
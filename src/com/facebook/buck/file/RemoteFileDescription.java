@@ -30,14 +30,21 @@ import com.google.common.base.Optional;
 import com.google.common.hash.HashCode;
 
 import java.net.URI;
+import java.nio.file.Path;
 
 public class RemoteFileDescription implements Description<RemoteFileDescription.Arg> {
 
   public static final BuildRuleType TYPE = BuildRuleType.of("remote_file");
   private final Downloader downloader;
+  private final Optional<Path> downloadCacheDir;
 
   public RemoteFileDescription(Downloader downloader) {
+    this(downloader, Optional.absent());
+  }
+
+  public RemoteFileDescription(Downloader downloader, Optional<Path> downloadCacheDir) {
     this.downloader = downloader;
+    this.downloadCacheDir = downloadCacheDir;
   }
 
   @Override
@@ -73,6 +80,7 @@ public class RemoteFileDescription implements Description<RemoteFileDescription.
         params,
         new SourcePathResolver(resolver),
         downloader,
+        downloadCacheDir,
         args.url,
         sha1,
         out);
@@ -21,6 +21,7 @@ import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.BuildableProperties;
@@ -28,6 +29,7 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SymlinkTree;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
@@ -38,10 +40,17 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 
 import java.nio.file.Path;
 
-public class GoCompile extends AbstractBuildRule {
+/**
+ * Compiles a go package into an archive.
+ * <p>
+ * Imported packages only contribute their export data to the input-based rule key, so editing a
+ * function body deep in the graph doesn't recompile every package which transitively imports it.
+ */
+public class GoCompile extends AbstractBuildRule implements SupportsInputBasedRuleKey {
   @AddToRuleKey
   private final Tool compiler;
   @AddToRuleKey
@@ -58,12 +67,17 @@ public class GoCompile extends AbstractBuildRule {
   private final ImmutableList<String> assemblerFlags;
   @AddToRuleKey
   private final GoPlatform platform;
+  // The export data of every package visible to the compiler, keyed by package name.  The
+  // archives themselves are only reached through the symlink tree.
+  @AddToRuleKey
+  private final ImmutableSortedMap<String, SourcePath> importedExportData;
   // TODO(mikekap): Make these part of the rule key.
   private final ImmutableList<Path> assemblerIncludeDirs;
   private final ImmutableMap<Path, Path> importPathMap;
 
   private final SymlinkTree symlinkTree;
   private final Path output;
+  private final Path exportData;
 
   public GoCompile(
       BuildRuleParams params,
@@ -71,6 +85,7 @@ public class GoCompile extends AbstractBuildRule {
       SymlinkTree symlinkTree,
       Path packageName,
       ImmutableMap<Path, Path> importPathMap,
+      ImmutableSortedMap<String, SourcePath> importedExportData,
       ImmutableSet<SourcePath> srcs,
       ImmutableList<String> compilerFlags,
       Tool compiler,
@@ -81,6 +96,7 @@ public class GoCompile extends AbstractBuildRule {
       GoPlatform platform) {
     super(params, resolver);
     this.importPathMap = importPathMap;
+    this.importedExportData = importedExportData;
     this.srcs = srcs;
     this.symlinkTree = symlinkTree;
     this.packageName = packageName;
@@ -95,6 +111,10 @@ public class GoCompile extends AbstractBuildRule {
         getProjectFilesystem(),
         getBuildTarget(),
         "%s/" + getBuildTarget().getShortName() + ".a");
+    this.exportData = BuildTargets.getGenPath(
+        getProjectFilesystem(),
+        getBuildTarget(),
+        "%s/" + getBuildTarget().getShortName() + ".pkgdef");
   }
 
   @Override
@@ -103,6 +123,7 @@ public class GoCompile extends AbstractBuildRule {
       BuildableContext buildableContext) {
 
     buildableContext.recordArtifact(output);
+    buildableContext.recordArtifact(exportData);
 
     ImmutableList.Builder<Path> compileSrcListBuilder = ImmutableList.builder();
     ImmutableList.Builder<Path> headerSrcListBuilder = ImmutableList.builder();
@@ -214,6 +235,8 @@ public class GoCompile extends AbstractBuildRule {
           output));
     }
 
+    steps.add(new GoExportDataStep(getProjectFilesystem(), output, exportData));
+
     return steps.build();
   }
 
@@ -222,6 +245,14 @@ public class GoCompile extends AbstractBuildRule {
     return output;
   }
 
+  /**
+   * @return the {@code __.PKGDEF} member of the archive, which is all that packages importing this
+   *     one are compiled against.
+   */
+  public SourcePath getExportData() {
+    return new BuildTargetSourcePath(getBuildTarget(), exportData);
+  }
+
   @Override
   public BuildableProperties getProperties() {
     return new BuildableProperties(BuildableProperties.Kind.LIBRARY);
@@ -46,6 +46,7 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -150,6 +151,7 @@ abstract class GoDescriptors {
                   return input.getGoLinkInput().keySet();
                 }
               })),
+        getImportedExportData(pathResolver, linkables),
         ImmutableSet.copyOf(srcs),
         ImmutableList.copyOf(compilerFlags),
         goBuckConfig.getCompiler(),
@@ -160,6 +162,27 @@ abstract class GoDescriptors {
         platform);
   }
 
+  /**
+   * @return the export data of each package in {@code linkables}, falling back to the archive for
+   *     anything not built by a {@link GoCompile}.
+   */
+  private static ImmutableSortedMap<String, SourcePath> getImportedExportData(
+      SourcePathResolver pathResolver,
+      ImmutableSet<GoLinkable> linkables) {
+    ImmutableSortedMap.Builder<String, SourcePath> exportData = ImmutableSortedMap.naturalOrder();
+    for (GoLinkable linkable : linkables) {
+      for (Map.Entry<Path, SourcePath> linkInput : linkable.getGoLinkInput().entrySet()) {
+        Optional<BuildRule> rule = pathResolver.getRule(linkInput.getValue());
+        exportData.put(
+            linkInput.getKey().toString(),
+            rule.isPresent() && rule.get() instanceof GoCompile ?
+                ((GoCompile) rule.get()).getExportData() :
+                linkInput.getValue());
+      }
+    }
+    return exportData.build();
+  }
+
   @VisibleForTesting
   static ImmutableMap<Path, Path> getPackageImportMap(
       ImmutableList<Path> globalVendorPaths,
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.go;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Copies the export data, which is everything the compiler reads when compiling packages
+ * importing it, out of a package archive made by {@code go tool compile -pack}.
+ * <p>
+ * The export data lives in the {@code __.PKGDEF} member of the archive, ahead of the object code.
+ * It only changes when the package's API, or a function body which may be inlined, does.
+ */
+public class GoExportDataStep implements Step {
+
+  private static final byte[] ARCHIVE_MAGIC = "!<arch>\n".getBytes(StandardCharsets.US_ASCII);
+  private static final String EXPORT_DATA_MEMBER = "__.PKGDEF";
+  private static final int HEADER_SIZE = 60;
+  private static final int NAME_SIZE = 16;
+  private static final int SIZE_OFFSET = 48;
+  private static final int SIZE_SIZE = 10;
+
+  private final ProjectFilesystem filesystem;
+  private final Path archive;
+  private final Path output;
+
+  public GoExportDataStep(ProjectFilesystem filesystem, Path archive, Path output) {
+    this.filesystem = filesystem;
+    this.archive = archive;
+    this.output = output;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    byte[] contents = Files.readAllBytes(filesystem.resolve(archive));
+    Files.write(filesystem.resolve(output), getExportData(contents));
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return the contents of the {@code __.PKGDEF} member of {@code archive}, or the whole of it if
+   *     it doesn't have one, so that anything unexpected is treated as a change.
+   */
+  @VisibleForTesting
+  static byte[] getExportData(byte[] archive) {
+    if (archive.length < ARCHIVE_MAGIC.length ||
+        !Arrays.equals(Arrays.copyOf(archive, ARCHIVE_MAGIC.length), ARCHIVE_MAGIC)) {
+      return archive;
+    }
+    int offset = ARCHIVE_MAGIC.length;
+    while (offset + HEADER_SIZE <= archive.length) {
+      String name = CharMatcher.anyOf(" /").trimTrailingFrom(
+          new String(archive, offset, NAME_SIZE, StandardCharsets.US_ASCII));
+      long size;
+      try {
+        size = Long.parseLong(
+            new String(archive, offset + SIZE_OFFSET, SIZE_SIZE, StandardCharsets.US_ASCII)
+                .trim());
+      } catch (NumberFormatException e) {
+        return archive;
+      }
+      int dataOffset = offset + HEADER_SIZE;
+      if (size < 0 || dataOffset + size > archive.length) {
+        return archive;
+      }
+      if (name.equals(EXPORT_DATA_MEMBER)) {
+        return Arrays.copyOfRange(archive, dataOffset, dataOffset + (int) size);
+      }
+      // Members are padded to an even length.
+      offset = dataOffset + (int) (size + (size % 2));
+    }
+    return archive;
+  }
+
+  @Override
+  public String getShortName() {
+    return "go export data";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("extract %s from %s into %s", EXPORT_DATA_MEMBER, archive, output);
+  }
+}
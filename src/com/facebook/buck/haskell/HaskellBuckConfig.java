@@ -130,4 +130,9 @@ public class HaskellBuckConfig implements HaskellConfig {
     return delegate.getBooleanValue(SECTION, "cache_links", true);
   }
 
+  @Override
+  public boolean shouldCompileModulesInParallel() {
+    return delegate.getBooleanValue(SECTION, "parallel_compile", false);
+  }
+
 }
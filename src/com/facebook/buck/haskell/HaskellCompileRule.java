@@ -39,24 +39,43 @@ import com.facebook.buck.rules.Tool;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreIterables;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 
 public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppendable {
 
@@ -104,6 +123,12 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
   @AddToRuleKey
   private final Preprocessor preprocessor;
 
+  /**
+   * Whether to compile modules one at a time, in parallel, rather than in a single invocation.
+   * The outputs are the same either way, so this isn't part of the rule key.
+   */
+  private final boolean parallelCompile;
+
   private HaskellCompileRule(
       BuildRuleParams buildRuleParams,
       SourcePathResolver resolver,
@@ -118,7 +143,8 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
       ImmutableSortedMap<String, HaskellPackage> exposedPackages,
       ImmutableSortedMap<String, HaskellPackage> packages,
       HaskellSources sources,
-      Preprocessor preprocessor) {
+      Preprocessor preprocessor,
+      boolean parallelCompile) {
     super(buildRuleParams, resolver);
     this.compiler = compiler;
     this.flags = flags;
@@ -132,6 +158,7 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
     this.packages = packages;
     this.sources = sources;
     this.preprocessor = preprocessor;
+    this.parallelCompile = parallelCompile;
   }
 
   public static HaskellCompileRule from(
@@ -149,7 +176,8 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
       final ImmutableSortedMap<String, HaskellPackage> exposedPackages,
       final ImmutableSortedMap<String, HaskellPackage> packages,
       final HaskellSources sources,
-      Preprocessor preprocessor) {
+      Preprocessor preprocessor,
+      boolean parallelCompile) {
     return new HaskellCompileRule(
         baseParams.copyWithChanges(
             target,
@@ -179,7 +207,8 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
         exposedPackages,
         packages,
         sources,
-        preprocessor);
+        preprocessor,
+        parallelCompile);
   }
 
   @Override
@@ -270,6 +299,41 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
         cxxToolFlags.getAllFlags());
   }
 
+  /**
+   * @return the arguments to pass to the compiler, in the given mode, to compile {@code sources}.
+   */
+  private ImmutableList<String> getCompilerArgs(
+      ImmutableList<String> modeArgs,
+      Iterable<SourcePath> sources) {
+    return ImmutableList.<String>builder()
+        .addAll(compiler.getCommandPrefix(getResolver()))
+        .addAll(flags)
+        .addAll(modeArgs)
+        .addAll(
+            picType == CxxSourceRuleFactory.PicType.PIC ?
+                ImmutableList.of("-dynamic", "-fPIC", "-hisuf", "dyn_hi") :
+                ImmutableList.of())
+        .addAll(
+            MoreIterables.zipAndConcat(
+                Iterables.cycle("-main-is"),
+                main.asSet()))
+        .addAll(getPackageNameArgs())
+        .addAll(getPreprocessorFlags())
+        .add("-odir", getProjectFilesystem().resolve(getObjectDir()).toString())
+        .add("-hidir", getProjectFilesystem().resolve(getInterfaceDir()).toString())
+        .add("-stubdir", getProjectFilesystem().resolve(getStubDir()).toString())
+        .add("-i" + Joiner.on(':').join(
+            FluentIterable.from(includes)
+                .transform(getResolver().getAbsolutePathFunction())
+                .transform(Functions.toStringFunction())))
+        .addAll(getPackageArgs())
+        .addAll(
+            FluentIterable.from(sources)
+                .transform(getResolver().getAbsolutePathFunction())
+                .transform(Functions.toStringFunction()))
+        .build();
+  }
+
   @Override
   public ImmutableList<Step> getBuildSteps(
       BuildContext context,
@@ -277,57 +341,270 @@ public class HaskellCompileRule extends AbstractBuildRule implements RuleKeyAppe
     buildableContext.recordArtifact(getObjectDir());
     buildableContext.recordArtifact(getInterfaceDir());
     buildableContext.recordArtifact(getStubDir());
+    if (parallelCompile) {
+      // The outputs of the last build are kept, so that GHC's recompilation check can skip
+      // modules whose source and imported interfaces haven't changed.
+      return ImmutableList.of(
+          new MkdirStep(getProjectFilesystem(), getObjectDir()),
+          new MkdirStep(getProjectFilesystem(), getInterfaceDir()),
+          new MkdirStep(getProjectFilesystem(), getStubDir()),
+          new MakeCleanDirectoryStep(getProjectFilesystem(), getDependencyFile().getParent()),
+          new ParallelCompileStep());
+    }
     return ImmutableList.of(
         new MakeCleanDirectoryStep(getProjectFilesystem(), getObjectDir()),
         new MakeCleanDirectoryStep(getProjectFilesystem(), getInterfaceDir()),
         new MakeCleanDirectoryStep(getProjectFilesystem(), getStubDir()),
-        new ShellStep(getProjectFilesystem().getRootPath()) {
-
-          @Override
-          public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
-            return ImmutableMap.<String, String>builder()
-                .putAll(super.getEnvironmentVariables(context))
-                .putAll(compiler.getEnvironment(getResolver()))
-                .build();
-          }
+        new CompilerStep(ImmutableList.of("-no-link"), sources.getSourcePaths()));
+  }
 
-          @Override
-          protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
-            return ImmutableList.<String>builder()
-                .addAll(compiler.getCommandPrefix(getResolver()))
-                .addAll(flags)
-                .add("-no-link")
-                .addAll(
-                    picType == CxxSourceRuleFactory.PicType.PIC ?
-                        ImmutableList.of("-dynamic", "-fPIC", "-hisuf", "dyn_hi") :
-                        ImmutableList.of())
-                .addAll(
-                    MoreIterables.zipAndConcat(
-                        Iterables.cycle("-main-is"),
-                        main.asSet()))
-                .addAll(getPackageNameArgs())
-                .addAll(getPreprocessorFlags())
-                .add("-odir", getProjectFilesystem().resolve(getObjectDir()).toString())
-                .add("-hidir", getProjectFilesystem().resolve(getInterfaceDir()).toString())
-                .add("-stubdir", getProjectFilesystem().resolve(getStubDir()).toString())
-                .add("-i" + Joiner.on(':').join(
-                    FluentIterable.from(includes)
-                        .transform(getResolver().getAbsolutePathFunction())
-                        .transform(Functions.toStringFunction())))
-                .addAll(getPackageArgs())
-                .addAll(
-                    FluentIterable.from(sources.getSourcePaths())
-                        .transform(getResolver().getAbsolutePathFunction())
-                        .transform(Functions.toStringFunction()))
-                .build();
-          }
+  private Path getDependencyFile() {
+    return BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s__deps")
+        .resolve("deps.mk");
+  }
+
+  private class CompilerStep extends ShellStep {
+
+    private final ImmutableList<String> modeArgs;
+    private final ImmutableList<SourcePath> sources;
+
+    public CompilerStep(ImmutableList<String> modeArgs, Iterable<SourcePath> sources) {
+      super(getProjectFilesystem().getRootPath());
+      this.modeArgs = modeArgs;
+      this.sources = ImmutableList.copyOf(sources);
+    }
+
+    @Override
+    public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
+      return ImmutableMap.<String, String>builder()
+          .putAll(super.getEnvironmentVariables(context))
+          .putAll(compiler.getEnvironment(getResolver()))
+          .build();
+    }
+
+    @Override
+    protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
+      return getCompilerArgs(modeArgs, sources);
+    }
+
+    @Override
+    public String getShortName() {
+      return "haskell-compile";
+    }
+
+  }
+
+  /**
+   * Asks the compiler for the module dependency graph, then compiles each module in one-shot mode
+   * on a pool of as many threads as the build may use, as soon as the modules it imports have been
+   * compiled.
+   */
+  private class ParallelCompileStep implements Step {
+
+    @Override
+    public StepExecutionResult execute(final ExecutionContext context)
+        throws IOException, InterruptedException {
+      Path dependencyFile = getDependencyFile();
+      StepExecutionResult depResult =
+          new CompilerStep(
+              ImmutableList.of(
+                  "-M",
+                  "-dep-makefile",
+                  getProjectFilesystem().resolve(dependencyFile).toString()),
+              sources.getSourcePaths())
+              .execute(context);
+      if (!depResult.isSuccess()) {
+        return depResult;
+      }
+
+      Optional<ImmutableMap<String, ImmutableSet<String>>> moduleDeps =
+          parseModuleDependencies(
+              getProjectFilesystem().readLines(dependencyFile),
+              getProjectFilesystem().resolve(getObjectDir()),
+              getProjectFilesystem().resolve(getInterfaceDir()),
+              sources.getModuleNames());
+      if (!moduleDeps.isPresent()) {
+        // Modules importing each other through boot files have to be compiled together.
+        return new CompilerStep(ImmutableList.of("-no-link"), sources.getSourcePaths())
+            .execute(context);
+      }
+
+      deleteStaleOutputs(getObjectDir());
+      deleteStaleOutputs(getInterfaceDir());
+
+      ListeningExecutorService executorService = MoreExecutors.listeningDecorator(
+          MostExecutors.newMultiThreadExecutor(
+              "Haskell compile",
+              context.getConcurrencyLimit().threadLimit));
+      List<StepExecutionResult> results;
+      try {
+        Map<String, ListenableFuture<StepExecutionResult>> compilations = new HashMap<>();
+        for (String module : sources.getModuleNames()) {
+          scheduleCompilation(
+              context,
+              executorService,
+              moduleDeps.get(),
+              module,
+              compilations,
+              new LinkedHashSet<>());
+        }
+        results = Futures.allAsList(compilations.values()).get();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        executorService.shutdownNow();
+      }
+      for (StepExecutionResult result : results) {
+        if (!result.isSuccess()) {
+          return result;
+        }
+      }
+      return StepExecutionResult.SUCCESS;
+    }
 
-          @Override
-          public String getShortName() {
-            return "haskell-compile";
+    /**
+     * @return a future for the compilation of {@code module}, which starts once those of the
+     *     modules it imports have succeeded.  If any of them failed, so does the module, with the
+     *     same result.
+     */
+    private ListenableFuture<StepExecutionResult> scheduleCompilation(
+        final ExecutionContext context,
+        ListeningExecutorService executorService,
+        ImmutableMap<String, ImmutableSet<String>> moduleDeps,
+        String module,
+        Map<String, ListenableFuture<StepExecutionResult>> compilations,
+        Set<String> visiting) {
+      ListenableFuture<StepExecutionResult> result = compilations.get(module);
+      if (result != null) {
+        return result;
+      }
+      if (!visiting.add(module)) {
+        throw new HumanReadableException(
+            "%s: modules import each other: %s",
+            getBuildTarget(),
+            Joiner.on(" -> ").join(Iterables.concat(visiting, ImmutableList.of(module))));
+      }
+      List<ListenableFuture<StepExecutionResult>> depResults = new ArrayList<>();
+      for (String dep : moduleDeps.get(module)) {
+        depResults.add(
+            scheduleCompilation(
+                context,
+                executorService,
+                moduleDeps,
+                dep,
+                compilations,
+                visiting));
+      }
+      visiting.remove(module);
+
+      final Step compileStep =
+          new CompilerStep(
+              ImmutableList.of("-c"),
+              ImmutableList.of(sources.getModuleMap().get(module)));
+      result = Futures.transformAsync(
+          Futures.allAsList(depResults),
+          depExecutionResults -> {
+            for (StepExecutionResult depExecutionResult : depExecutionResults) {
+              if (!depExecutionResult.isSuccess()) {
+                return Futures.immediateFuture(depExecutionResult);
+              }
+            }
+            return Futures.immediateFuture(compileStep.execute(context));
+          },
+          executorService);
+      compilations.put(module, result);
+      return result;
+    }
+
+    /**
+     * Removes the objects and interfaces of modules which are no longer part of this rule, so that
+     * modules can't import them by mistake.
+     */
+    private void deleteStaleOutputs(Path dir) throws IOException {
+      for (Path file : getProjectFilesystem().getFilesUnderPath(dir)) {
+        if (!sources.getModuleNames().contains(getModuleName(dir.relativize(file)))) {
+          getProjectFilesystem().deleteFileAtPathIfExists(file);
+        }
+      }
+    }
+
+    @Override
+    public String getShortName() {
+      return "haskell-compile";
+    }
+
+    @Override
+    public String getDescription(ExecutionContext context) {
+      return Joiner.on(' ').join(
+          getCompilerArgs(ImmutableList.of("-c"), sources.getSourcePaths()));
+    }
+
+  }
+
+  /**
+   * @return the modules each of {@code modules} imports, going by the makefile written by
+   *     {@code ghc -M}, or absent if any of them imports a boot interface.
+   */
+  @VisibleForTesting
+  static Optional<ImmutableMap<String, ImmutableSet<String>>> parseModuleDependencies(
+      List<String> makefile,
+      Path objectDir,
+      Path interfaceDir,
+      ImmutableSortedSet<String> modules) {
+    Map<String, ImmutableSet.Builder<String>> deps = new HashMap<>();
+    for (String module : modules) {
+      deps.put(module, ImmutableSet.builder());
+    }
+    for (String line : makefile) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      List<String> parts = Splitter.on(" : ").limit(2).trimResults().splitToList(line);
+      if (parts.size() != 2) {
+        continue;
+      }
+      Path target = Paths.get(parts.get(0));
+      if (!target.startsWith(objectDir)) {
+        continue;
+      }
+      ImmutableSet.Builder<String> targetDeps =
+          deps.get(getModuleName(objectDir.relativize(target)));
+      if (targetDeps == null) {
+        continue;
+      }
+      for (String prerequisite : Splitter.on(' ').omitEmptyStrings().split(parts.get(1))) {
+        if (prerequisite.endsWith("-boot")) {
+          return Optional.absent();
+        }
+        Path dep = Paths.get(prerequisite);
+        if (dep.startsWith(interfaceDir)) {
+          String depModule = getModuleName(interfaceDir.relativize(dep));
+          if (modules.contains(depModule)) {
+            targetDeps.add(depModule);
           }
+        }
+      }
+    }
+    ImmutableMap.Builder<String, ImmutableSet<String>> moduleDeps = ImmutableMap.builder();
+    for (String module : modules) {
+      moduleDeps.put(module, deps.get(module).build());
+    }
+    return Optional.of(moduleDeps.build());
+  }
 
-        });
+  /**
+   * @return the name of the module an object or interface at {@code relativePath} belongs to.
+   */
+  private static String getModuleName(Path relativePath) {
+    String path = relativePath.toString();
+    int extension = path.lastIndexOf('.');
+    if (extension > path.lastIndexOf(File.separatorChar)) {
+      path = path.substring(0, extension);
+    }
+    return path.replace(File.separatorChar, '.');
   }
 
   @Override
@@ -51,4 +51,9 @@ public interface HaskellConfig {
    */
   boolean shouldCacheLinks();
 
+  /**
+   * @return whether to compile the modules of a rule one at a time, in parallel.
+   */
+  boolean shouldCompileModulesInParallel();
+
 }
@@ -162,7 +162,8 @@ public class HaskellDescriptionUtils {
         exposedPackages,
         packages,
         sources,
-        CxxSourceTypes.getPreprocessor(cxxPlatform, CxxSource.Type.C).resolve(resolver));
+        CxxSourceTypes.getPreprocessor(cxxPlatform, CxxSource.Type.C).resolve(resolver),
+        haskellConfig.shouldCompileModulesInParallel());
   }
 
   protected static BuildTarget getCompileBuildTarget(
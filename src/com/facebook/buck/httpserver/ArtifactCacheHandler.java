@@ -19,25 +19,50 @@ package com.facebook.buck.httpserver;
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.DirArtifactCache;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheBinaryProtocol;
 import com.facebook.buck.artifact_cache.StoreResponseReadResult;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -45,17 +70,56 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * Implements a really simple cache server on top of the local dircache.
+ * <p>
+ * When the cache being served is a {@link DirArtifactCache}, artifacts are sent straight from the
+ * files it keeps them in, and single byte ranges of them can be asked for.  Stores are queued and
+ * written by a background thread, so that uploads don't hold up the threads serving fetches.
  */
 public class ArtifactCacheHandler extends AbstractHandler {
   private static final Logger LOG = Logger.get(ArtifactCacheHandler.class);
 
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+  private static final int MAX_QUEUED_STORES = 64;
+  // Headers include a checksum of the whole artifact, so they're remembered rather than worked
+  // out again every time the artifact is fetched.
+  private static final long MAX_CACHED_HEADER_BYTES = 16 * 1024 * 1024;
+  // Artifacts are mapped into memory a slice at a time, to keep the address space used bounded.
+  private static final long MAX_MAPPED_BYTES = 16 * 1024 * 1024;
+
   private final ProjectFilesystem projectFilesystem;
+  private final Cache<String, byte[]> headers;
+  private final ThreadPoolExecutor storeExecutor;
+  // Artifacts which are waiting to be stored, so that they can be fetched in the meantime.
+  private final ConcurrentMap<RuleKey, Pair<ImmutableMap<String, String>, Path>> queuedStores;
   private Optional<ArtifactCache> artifactCache;
 
   public ArtifactCacheHandler(
       ProjectFilesystem projectFilesystem) {
+    this(projectFilesystem, MAX_QUEUED_STORES);
+  }
+
+  @VisibleForTesting
+  ArtifactCacheHandler(
+      ProjectFilesystem projectFilesystem,
+      int maxQueuedStores) {
     this.artifactCache = Optional.absent();
     this.projectFilesystem = projectFilesystem;
+    this.headers = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_HEADER_BYTES)
+        .weigher((String key, byte[] header) -> header.length)
+        .build();
+    this.storeExecutor = new ThreadPoolExecutor(
+        /* corePoolSize */ 1,
+        /* maximumPoolSize */ 1,
+        /* keepAliveTime */ 1L,
+        TimeUnit.MINUTES,
+        new ArrayBlockingQueue<>(maxQueuedStores),
+        new ThreadFactoryBuilder()
+            .setNameFormat(ArtifactCacheHandler.class.getSimpleName() + "-store-%d")
+            .setDaemon(true)
+            .build());
+    this.storeExecutor.allowCoreThreadTimeOut(true);
+    this.queuedStores = new ConcurrentHashMap<>();
   }
 
   public void setArtifactCache(Optional<ArtifactCache> artifactCache) {
@@ -72,7 +136,9 @@ public class ArtifactCacheHandler extends AbstractHandler {
       int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
       String method = baseRequest.getMethod();
       if (method.equals("GET")) {
-        status = handleGet(baseRequest, response);
+        status = handleGet(baseRequest, response, /* includeBody */ true);
+      } else if (method.equals("HEAD")) {
+        status = handleGet(baseRequest, response, /* includeBody */ false);
       } else if (method.equals("PUT")) {
         status = handlePut(baseRequest, response);
       }
@@ -87,7 +153,10 @@ public class ArtifactCacheHandler extends AbstractHandler {
     }
   }
 
-  private int handleGet(Request baseRequest, HttpServletResponse response) throws IOException {
+  private int handleGet(
+      Request baseRequest,
+      HttpServletResponse response,
+      boolean includeBody) throws IOException {
     if (!artifactCache.isPresent()) {
       response.getWriter().write("Serving local cache is disabled for this instance.");
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
@@ -102,6 +171,15 @@ public class ArtifactCacheHandler extends AbstractHandler {
 
     RuleKey ruleKey = RuleKey.TO_RULE_KEY.apply(pathElements[3]);
 
+    if (artifactCache.get() instanceof DirArtifactCache) {
+      return serveFromDirCache(
+          (DirArtifactCache) artifactCache.get(),
+          ruleKey,
+          baseRequest,
+          response,
+          includeBody);
+    }
+
     Path temp = null;
     try {
       projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
@@ -125,8 +203,10 @@ public class ArtifactCacheHandler extends AbstractHandler {
                   return projectFilesystem.newFileInputStream(tempFinal);
                 }
               });
-      fetchResponse.write(response.getOutputStream());
       response.setContentLengthLong(fetchResponse.getContentLength());
+      if (includeBody) {
+        fetchResponse.write(response.getOutputStream());
+      }
       return HttpServletResponse.SC_OK;
     } finally {
       if (temp != null) {
@@ -162,18 +242,220 @@ public class ArtifactCacheHandler extends AbstractHandler {
         return HttpServletResponse.SC_NOT_ACCEPTABLE;
       }
 
-      artifactCache.get().store(
-          ArtifactInfo.builder()
-              .setRuleKeys(storeRequest.getRuleKeys())
-              .setMetadata(storeRequest.getMetadata())
-              .build(),
-          BorrowablePath.notBorrowablePath(temp));
+      ArtifactCache cache = artifactCache.get();
+      if (!cache.isStoreSupported()) {
+        return HttpServletResponse.SC_ACCEPTED;
+      }
+      ArtifactInfo info = ArtifactInfo.builder()
+          .setRuleKeys(storeRequest.getRuleKeys())
+          .setMetadata(storeRequest.getMetadata())
+          .build();
+      Pair<ImmutableMap<String, String>, Path> upload = new Pair<>(info.getMetadata(), temp);
+      for (RuleKey ruleKey : info.getRuleKeys()) {
+        queuedStores.put(ruleKey, upload);
+      }
+      try {
+        storeExecutor.execute(
+            () -> {
+              try {
+                // The upload isn't lent to the cache, so that it can still be served from until
+                // the cache has written both the artifact and its metadata.
+                cache.store(info, BorrowablePath.notBorrowablePath(upload.getSecond()));
+              } finally {
+                for (RuleKey ruleKey : info.getRuleKeys()) {
+                  queuedStores.remove(ruleKey, upload);
+                }
+                deleteUpload(upload.getSecond());
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        for (RuleKey ruleKey : info.getRuleKeys()) {
+          queuedStores.remove(ruleKey, upload);
+        }
+        response.getWriter().write("Too many stores queued.");
+        return HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+      }
+      // The queued store owns the upload now.
+      temp = null;
       return HttpServletResponse.SC_ACCEPTED;
     } finally {
       if (temp != null) {
         projectFilesystem.deleteFileAtPathIfExists(temp);
       }
     }
+  }
+
+  private void deleteUpload(Path upload) {
+    try {
+      projectFilesystem.deleteFileAtPathIfExists(upload);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete %s", upload);
+    }
+  }
 
+  private int serveFromDirCache(
+      DirArtifactCache cache,
+      RuleKey ruleKey,
+      Request baseRequest,
+      HttpServletResponse response,
+      boolean includeBody) throws IOException {
+    Optional<Pair<ImmutableMap<String, String>, Path>> artifact = lookUp(cache, ruleKey);
+    if (!artifact.isPresent()) {
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+    try {
+      return serveArtifact(ruleKey, artifact.get(), baseRequest, response, includeBody);
+    } catch (NoSuchFileException e) {
+      // It's been evicted, or a queued store has moved it into the cache, since it was looked up.
+      artifact = lookUp(cache, ruleKey);
+      if (!artifact.isPresent()) {
+        return HttpServletResponse.SC_NOT_FOUND;
+      }
+      try {
+        return serveArtifact(ruleKey, artifact.get(), baseRequest, response, includeBody);
+      } catch (NoSuchFileException e2) {
+        return HttpServletResponse.SC_NOT_FOUND;
+      }
+    }
+  }
+
+  /**
+   * @return the metadata of the artifact for {@code ruleKey} and the file it's in, whether that's
+   *     in the cache or an upload which is still waiting to be stored.
+   */
+  private Optional<Pair<ImmutableMap<String, String>, Path>> lookUp(
+      DirArtifactCache cache,
+      RuleKey ruleKey) {
+    Optional<ImmutableMap<String, String>> metadata;
+    try {
+      metadata = cache.fetchMetadata(ruleKey);
+    } catch (IOException e) {
+      LOG.warn(e, "Unreadable metadata for %s", ruleKey);
+      return Optional.absent();
+    }
+    if (metadata.isPresent()) {
+      return Optional.of(new Pair<>(metadata.get(), cache.getArtifactPath(ruleKey)));
+    }
+    Pair<ImmutableMap<String, String>, Path> queued = queuedStores.get(ruleKey);
+    if (queued != null) {
+      return Optional.of(
+          new Pair<>(queued.getFirst(), projectFilesystem.resolve(queued.getSecond())));
+    }
+    return Optional.absent();
+  }
+
+  private int serveArtifact(
+      RuleKey ruleKey,
+      Pair<ImmutableMap<String, String>, Path> metadataAndArtifact,
+      Request baseRequest,
+      HttpServletResponse response,
+      boolean includeBody) throws IOException {
+    ImmutableMap<String, String> metadata = metadataAndArtifact.getFirst();
+    Path artifact = metadataAndArtifact.getSecond();
+    try (FileChannel channel = FileChannel.open(artifact, StandardOpenOption.READ)) {
+      long payloadLength = channel.size();
+      byte[] header = getHeader(ruleKey, metadata, artifact, payloadLength);
+      long contentLength = header.length + payloadLength;
+
+      long start = 0;
+      long end = contentLength - 1;
+      int status = HttpServletResponse.SC_OK;
+      String range = baseRequest.getHeader("Range");
+      if (range != null) {
+        Matcher matcher = RANGE.matcher(range);
+        if (matcher.matches() &&
+            !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+          if (matcher.group(1).isEmpty()) {
+            // The last N bytes.
+            start = Math.max(0, contentLength - Long.parseLong(matcher.group(2)));
+          } else {
+            start = Long.parseLong(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) {
+              end = Math.min(end, Long.parseLong(matcher.group(2)));
+            }
+          }
+          if (start > end) {
+            response.setHeader("Content-Range", "bytes */" + contentLength);
+            return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+          }
+          status = HttpServletResponse.SC_PARTIAL_CONTENT;
+          response.setHeader(
+              "Content-Range",
+              String.format("bytes %d-%d/%d", start, end, contentLength));
+        }
+        // Anything else, such as several ranges, is answered with the whole artifact.
+      }
+
+      response.setStatus(status);
+      response.setHeader("Accept-Ranges", "bytes");
+      response.setContentLengthLong(end - start + 1);
+      if (includeBody) {
+        OutputStream out = response.getOutputStream();
+        if (start < header.length) {
+          int headerEnd = (int) Math.min(header.length, end + 1);
+          out.write(header, (int) start, headerEnd - (int) start);
+        }
+        long payloadStart = Math.max(start, header.length) - header.length;
+        long payloadEnd = end + 1 - header.length;
+        if (payloadEnd > payloadStart) {
+          writePayload(channel, payloadStart, payloadEnd - payloadStart, out);
+        }
+      }
+      return status;
+    }
+  }
+
+  private byte[] getHeader(
+      RuleKey ruleKey,
+      ImmutableMap<String, String> metadata,
+      Path artifact,
+      long payloadLength) throws IOException {
+    String key = String.format(
+        "%s:%d:%d",
+        ruleKey,
+        payloadLength,
+        Files.getLastModifiedTime(artifact).toMillis());
+    byte[] header = headers.getIfPresent(key);
+    if (header == null) {
+      header = new HttpArtifactCacheBinaryProtocol.FetchResponse(
+          ImmutableSet.of(ruleKey),
+          metadata,
+          MorePaths.asByteSource(artifact))
+          .getHeader();
+      headers.put(key, header);
+    }
+    return header;
+  }
+
+  /**
+   * Sends part of an artifact without copying it through the heap.  Jetty writes buffers mapped
+   * from the file straight to the socket; other streams get it through
+   * {@link FileChannel#transferTo}.
+   */
+  private static void writePayload(
+      FileChannel channel,
+      long position,
+      long count,
+      OutputStream out) throws IOException {
+    if (out instanceof HttpOutput) {
+      HttpOutput httpOutput = (HttpOutput) out;
+      while (count > 0) {
+        long slice = Math.min(count, MAX_MAPPED_BYTES);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, slice);
+        httpOutput.write(buffer);
+        position += slice;
+        count -= slice;
+      }
+    } else {
+      WritableByteChannel target = Channels.newChannel(out);
+      while (count > 0) {
+        long transferred = channel.transferTo(position, count, target);
+        if (transferred <= 0) {
+          throw new EOFException("Artifact was truncated while being sent.");
+        }
+        position += transferred;
+        count -= transferred;
+      }
+    }
   }
 }
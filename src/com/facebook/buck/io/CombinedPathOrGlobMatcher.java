@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matches a path against a set of {@link PathOrGlobMatcher}s at once, rather than one after the
+ * other.  The paths are kept in a trie of path elements, so that checking whether a path is under
+ * any of them is one lookup per element of the path, and the globs are run together as a single
+ * {@link GlobAutomaton}, so that matching them is one step per character of the path.
+ */
+public class CombinedPathOrGlobMatcher {
+
+  private final Node pathTrie;
+  private final Optional<GlobAutomaton> combinedGlobs;
+  private final ImmutableList<PathOrGlobMatcher> otherMatchers;
+
+  /**
+   * @param separator the separator of the file system the paths which are matched come from.
+   *     Globs are only combined when it's {@code /}, which is the only one the automaton handles.
+   */
+  public CombinedPathOrGlobMatcher(Iterable<PathOrGlobMatcher> matchers, String separator) {
+    this.pathTrie = new Node();
+    ImmutableList.Builder<ImmutableList<GlobAutomaton.Token>> globs = ImmutableList.builder();
+    ImmutableList.Builder<PathOrGlobMatcher> otherMatchers = ImmutableList.builder();
+    for (PathOrGlobMatcher matcher : matchers) {
+      switch (matcher.getType()) {
+        case PATH:
+          if (matcher.getPath().isAbsolute()) {
+            otherMatchers.add(matcher);
+          } else {
+            addToTrie(matcher.getPath());
+          }
+          break;
+        case GLOB:
+          Optional<ImmutableList<ImmutableList<GlobAutomaton.Token>>> parsed =
+              separator.equals("/")
+                  ? GlobAutomaton.parse(matcher.getGlob())
+                  : Optional.<ImmutableList<ImmutableList<GlobAutomaton.Token>>>absent();
+          if (parsed.isPresent()) {
+            globs.addAll(parsed.get());
+          } else {
+            otherMatchers.add(matcher);
+          }
+          break;
+      }
+    }
+    ImmutableList<ImmutableList<GlobAutomaton.Token>> allGlobs = globs.build();
+    this.combinedGlobs = allGlobs.isEmpty()
+        ? Optional.<GlobAutomaton>absent()
+        : Optional.of(new GlobAutomaton(allGlobs));
+    this.otherMatchers = otherMatchers.build();
+  }
+
+  private void addToTrie(Path path) {
+    Node node = pathTrie;
+    for (Path element : path) {
+      Node child = node.children.get(element);
+      if (child == null) {
+        child = new Node();
+        node.children.put(element, child);
+      }
+      node = child;
+    }
+    node.isMatch = true;
+  }
+
+  /**
+   * @return whether any of the matchers matches {@code path}.
+   */
+  public boolean matches(Path path) {
+    if (!path.isAbsolute()) {
+      // Path elements are compared with the path's own equals(), so that they're case-insensitive
+      // where the path's file system is.
+      Node node = pathTrie;
+      for (Path element : path) {
+        node = node.children.get(element);
+        if (node == null) {
+          break;
+        }
+        if (node.isMatch) {
+          return true;
+        }
+      }
+    }
+
+    if (combinedGlobs.isPresent() && combinedGlobs.get().matches(path.toString())) {
+      return true;
+    }
+
+    for (PathOrGlobMatcher matcher : otherMatchers) {
+      if (matcher.matches(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Node {
+    private final Map<Path, Node> children = new HashMap<>();
+    private boolean isMatch;
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Matches strings against any of a set of globs in a single pass, by running them all as one
+ * automaton.  The globs are compiled into a nondeterministic automaton, and the deterministic
+ * states it turns into are worked out as they're first needed and then reused, so that matching
+ * a path costs a lookup per character however many globs there are.
+ * <p>
+ * Globs have the syntax, and match the same strings as, those given to
+ * {@link java.nio.file.FileSystem#getPathMatcher} on a file system using {@code /} as a separator.
+ */
+class GlobAutomaton {
+
+  private static final CharMatcher ANY_BUT_SEPARATOR = CharMatcher.isNot('/');
+  private static final int MAX_EXPANSIONS = 256;
+  private static final int MAX_CACHED_STATES = 10000;
+  private static final int CACHED_CHARS = 128;
+
+  /**
+   * Each glob is laid out as a run of tokens followed by an accepting position, which has no
+   * matcher.
+   */
+  private final CharMatcher[] matchers;
+  private final boolean[] repeats;
+  private final ConcurrentMap<BitSet, State> states;
+  private final State start;
+
+  /**
+   * @param globs globs parsed by {@link #parse(String)}.
+   */
+  GlobAutomaton(Iterable<ImmutableList<Token>> globs) {
+    List<CharMatcher> matchers = new ArrayList<>();
+    List<Boolean> repeats = new ArrayList<>();
+    List<Integer> starts = new ArrayList<>();
+    for (ImmutableList<Token> glob : globs) {
+      starts.add(matchers.size());
+      for (Token token : glob) {
+        matchers.add(token.matcher);
+        repeats.add(token.repeats);
+      }
+      matchers.add(null);
+      repeats.add(false);
+    }
+    this.matchers = matchers.toArray(new CharMatcher[matchers.size()]);
+    this.repeats = new boolean[repeats.size()];
+    for (int i = 0; i < this.repeats.length; i++) {
+      this.repeats[i] = repeats.get(i);
+    }
+    this.states = new ConcurrentHashMap<>();
+
+    BitSet startPositions = new BitSet();
+    for (int position : starts) {
+      addClosure(startPositions, position);
+    }
+    this.start = intern(startPositions);
+  }
+
+  public boolean matches(CharSequence string) {
+    State state = start;
+    for (int i = 0; i < string.length(); i++) {
+      state = state.next(string.charAt(i));
+      if (state.positions.isEmpty()) {
+        return false;
+      }
+    }
+    return state.isAccepting;
+  }
+
+  /**
+   * Adds {@code position}, and any positions which can be reached from it without consuming a
+   * character, to {@code positions}.
+   */
+  private void addClosure(BitSet positions, int position) {
+    while (!positions.get(position)) {
+      positions.set(position);
+      if (matchers[position] == null || !repeats[position]) {
+        break;
+      }
+      // A repeated token can match nothing at all.
+      position++;
+    }
+  }
+
+  private State intern(BitSet positions) {
+    State state = states.get(positions);
+    if (state != null) {
+      return state;
+    }
+    state = new State(positions);
+    if (states.size() >= MAX_CACHED_STATES) {
+      // Globs which blow up like this are pathological; keep matching, but stop remembering.
+      return state;
+    }
+    State existing = states.putIfAbsent(positions, state);
+    return existing == null ? state : existing;
+  }
+
+  /**
+   * Parses a glob into the sequences of tokens it can match, one for each combination of the
+   * alternatives in its groups.
+   *
+   * @return the sequences, or absent if the glob is invalid or has too many combinations.
+   */
+  static Optional<ImmutableList<ImmutableList<Token>>> parse(String glob) {
+    List<List<Token>> expansions = new ArrayList<>();
+    expansions.add(new ArrayList<>());
+    List<List<Token>> group = null;
+    int i = 0;
+    while (i < glob.length()) {
+      char c = glob.charAt(i);
+      if (group == null && c == '{') {
+        group = new ArrayList<>();
+        group.add(new ArrayList<>());
+        i++;
+        continue;
+      }
+      if (group != null) {
+        if (c == '{') {
+          // Nested groups aren't allowed.
+          return Optional.absent();
+        } else if (c == ',') {
+          group.add(new ArrayList<>());
+          i++;
+          continue;
+        } else if (c == '}') {
+          List<List<Token>> combined = new ArrayList<>();
+          for (List<Token> prefix : expansions) {
+            for (List<Token> alternative : group) {
+              List<Token> expansion = new ArrayList<>(prefix);
+              expansion.addAll(alternative);
+              combined.add(expansion);
+            }
+          }
+          if (combined.size() > MAX_EXPANSIONS) {
+            return Optional.absent();
+          }
+          expansions = combined;
+          group = null;
+          i++;
+          continue;
+        }
+      }
+
+      List<Token> token = new ArrayList<>(1);
+      i = parseToken(glob, i, token);
+      if (i < 0) {
+        return Optional.absent();
+      }
+      for (List<Token> expansion : group == null ? expansions : group.subList(
+          group.size() - 1,
+          group.size())) {
+        expansion.addAll(token);
+      }
+    }
+    if (group != null) {
+      return Optional.absent();
+    }
+
+    ImmutableList.Builder<ImmutableList<Token>> result = ImmutableList.builder();
+    for (List<Token> expansion : expansions) {
+      result.add(ImmutableList.copyOf(expansion));
+    }
+    return Optional.of(result.build());
+  }
+
+  /**
+   * Parses the token starting at {@code i} into {@code tokens}.
+   *
+   * @return the index after the token, or -1 if it's invalid.
+   */
+  private static int parseToken(String glob, int i, List<Token> tokens) {
+    char c = glob.charAt(i++);
+    switch (c) {
+      case '\\':
+        if (i == glob.length()) {
+          return -1;
+        }
+        tokens.add(new Token(CharMatcher.is(glob.charAt(i++)), false));
+        return i;
+      case '[':
+        return parseClass(glob, i, tokens);
+      case '*':
+        if (i < glob.length() && glob.charAt(i) == '*') {
+          // Crosses directory boundaries.
+          tokens.add(new Token(CharMatcher.any(), true));
+          return i + 1;
+        }
+        tokens.add(new Token(ANY_BUT_SEPARATOR, true));
+        return i;
+      case '?':
+        tokens.add(new Token(ANY_BUT_SEPARATOR, false));
+        return i;
+      default:
+        tokens.add(new Token(CharMatcher.is(c), false));
+        return i;
+    }
+  }
+
+  /**
+   * Parses a character class, whose opening {@code [} is just before {@code i}.
+   */
+  private static int parseClass(String glob, int i, List<Token> tokens) {
+    CharMatcher members = CharMatcher.none();
+    boolean negated = false;
+    if (i < glob.length() && glob.charAt(i) == '^') {
+      members = members.or(CharMatcher.is('^'));
+      i++;
+    } else {
+      if (i < glob.length() && glob.charAt(i) == '!') {
+        negated = true;
+        i++;
+      }
+      if (i < glob.length() && glob.charAt(i) == '-') {
+        members = members.or(CharMatcher.is('-'));
+        i++;
+      }
+    }
+
+    boolean hasRangeStart = false;
+    char last = 0;
+    while (i < glob.length()) {
+      char c = glob.charAt(i++);
+      if (c == ']') {
+        CharMatcher matcher = negated ? members.negate() : members;
+        tokens.add(new Token(matcher.and(ANY_BUT_SEPARATOR), false));
+        return i;
+      } else if (c == '/') {
+        return -1;
+      } else if (c == '-') {
+        if (!hasRangeStart || i == glob.length()) {
+          return -1;
+        }
+        c = glob.charAt(i++);
+        if (c == ']') {
+          // A trailing '-' is just a member.
+          members = members.or(CharMatcher.is('-'));
+          CharMatcher matcher = negated ? members.negate() : members;
+          tokens.add(new Token(matcher.and(ANY_BUT_SEPARATOR), false));
+          return i;
+        }
+        if (c < last) {
+          return -1;
+        }
+        members = members.or(CharMatcher.inRange(last, c));
+        hasRangeStart = false;
+      } else {
+        members = members.or(CharMatcher.is(c));
+        hasRangeStart = true;
+        last = c;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * One position in a glob: a character matching {@code matcher}, or if {@code repeats} any
+   * number of them.
+   */
+  static class Token {
+    private final CharMatcher matcher;
+    private final boolean repeats;
+
+    Token(CharMatcher matcher, boolean repeats) {
+      this.matcher = matcher;
+      this.repeats = repeats;
+    }
+  }
+
+  /**
+   * A set of positions the automaton can be in at once.  Transitions are filled in as they're
+   * needed; threads racing to fill in the same one work out the same state, so either may win.
+   */
+  private class State {
+    private final BitSet positions;
+    private final boolean isAccepting;
+    private final State[] asciiTransitions;
+    private final ConcurrentMap<Character, State> otherTransitions;
+
+    State(BitSet positions) {
+      this.positions = positions;
+      boolean isAccepting = false;
+      for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+        isAccepting |= matchers[i] == null;
+      }
+      this.isAccepting = isAccepting;
+      this.asciiTransitions = new State[CACHED_CHARS];
+      this.otherTransitions = new ConcurrentHashMap<>();
+    }
+
+    State next(char c) {
+      if (c < CACHED_CHARS) {
+        State next = asciiTransitions[c];
+        if (next == null) {
+          next = step(c);
+          asciiTransitions[c] = next;
+        }
+        return next;
+      }
+      State next = otherTransitions.get(c);
+      if (next == null) {
+        next = step(c);
+        otherTransitions.putIfAbsent(c, next);
+      }
+      return next;
+    }
+
+    private State step(char c) {
+      BitSet next = new BitSet();
+      for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+        if (matchers[i] != null && matchers[i].matches(c)) {
+          addClosure(next, repeats[i] ? i : i + 1);
+        }
+      }
+      return intern(next);
+    }
+  }
+}
@@ -134,6 +134,7 @@ public class ProjectFilesystem {
   private final Function<Path, Path> pathRelativizer;
 
   private final ImmutableSet<PathOrGlobMatcher> blackListedPaths;
+  private final CombinedPathOrGlobMatcher blackListedPathsMatcher;
   private final ImmutableSet<PathOrGlobMatcher> blackListedDirectories;
 
   /**
@@ -224,6 +225,8 @@ public class ProjectFilesystem {
                 .append(ImmutableSet.of(buckPaths.getTrashDir()))
                 .transform(PathOrGlobMatcher.toPathMatcher()))
         .toSet();
+    this.blackListedPathsMatcher =
+        new CombinedPathOrGlobMatcher(this.blackListedPaths, vfs.getSeparator());
     this.buckPaths = buckPaths;
 
     this.blackListedDirectories = FluentIterable.from(this.blackListedPaths)
@@ -1131,12 +1134,7 @@ public class ProjectFilesystem {
    */
   public boolean isIgnored(Path path) {
     Preconditions.checkArgument(!path.isAbsolute());
-    for (PathOrGlobMatcher blackListedPath : blackListedPaths) {
-      if (blackListedPath.matches(path)) {
-        return true;
-      }
-    }
-    return false;
+    return blackListedPathsMatcher.matches(path);
   }
 
   /**
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+
+/**
+ * Too many path changes to be worth posting one at a time, such as after a rebase.  Subscribers
+ * which know about batches can invalidate just what the paths affect, in one go.  To everyone
+ * else this is an {@link StandardWatchEventKinds#OVERFLOW}, whose context is the reason for it.
+ */
+public class WatchEventBatch implements WatchEvent<Object> {
+
+  private final String reason;
+  private final ImmutableList<WatchEvent<Path>> events;
+
+  public WatchEventBatch(String reason, ImmutableList<WatchEvent<Path>> events) {
+    this.reason = reason;
+    this.events = events;
+  }
+
+  /**
+   * @return the path change events in the batch.
+   */
+  public ImmutableList<WatchEvent<Path>> getEvents() {
+    return events;
+  }
+
+  @Override
+  public Kind<Object> kind() {
+    return StandardWatchEventKinds.OVERFLOW;
+  }
+
+  @Override
+  public int count() {
+    return events.size();
+  }
+
+  @Override
+  public Object context() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return "Watchman batch of " + events.size() + " path WatchEvents";
+  }
+}
@@ -49,7 +49,8 @@ public class Watchman implements AutoCloseable {
     SUPPORTS_PROJECT_WATCH,
     WILDMATCH_GLOB,
     WILDMATCH_MULTISLASH,
-    GLOB_GENERATOR
+    GLOB_GENERATOR,
+    FLUSH_SUBSCRIPTIONS
   }
 
   private static final ImmutableSet<String> REQUIRED_CAPABILITIES =
@@ -58,13 +59,14 @@ public class Watchman implements AutoCloseable {
       );
 
   private static final ImmutableMap<String, Capability> ALL_CAPABILITIES =
-      ImmutableMap.of(
-          "term-dirname", Capability.DIRNAME,
-          "cmd-watch-project", Capability.SUPPORTS_PROJECT_WATCH,
-          "wildmatch", Capability.WILDMATCH_GLOB,
-          "wildmatch_multislash", Capability.WILDMATCH_MULTISLASH,
-          "glob_generator", Capability.GLOB_GENERATOR
-      );
+      ImmutableMap.<String, Capability>builder()
+          .put("term-dirname", Capability.DIRNAME)
+          .put("cmd-watch-project", Capability.SUPPORTS_PROJECT_WATCH)
+          .put("wildmatch", Capability.WILDMATCH_GLOB)
+          .put("wildmatch_multislash", Capability.WILDMATCH_MULTISLASH)
+          .put("glob_generator", Capability.GLOB_GENERATOR)
+          .put("cmd-flush-subscriptions", Capability.FLUSH_SUBSCRIPTIONS)
+          .build();
 
   private static final Logger LOG = Logger.get(Watchman.class);
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.facebook.buck.io.unixsocket.UnixDomainSocket;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A Watchman subscription, over a connection of its own.  Rather than us asking Watchman for
+ * everything which has changed since a clock, Watchman sends the changes matching the query as
+ * they happen, and they're read in the background and kept until {@link #flush(long)} is called.
+ */
+public class WatchmanSubscription implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(WatchmanSubscription.class);
+
+  private final String name;
+  private final String watchRoot;
+  private final InputStream inputStream;
+  private final OutputStream outputStream;
+  private final Closeable connection;
+  private final BserSerializer bserSerializer;
+  private final BserDeserializer bserDeserializer;
+  private final BlockingQueue<Map<String, Object>> responses;
+  private final Thread readerThread;
+
+  @GuardedBy("notifications")
+  private final List<Map<String, Object>> notifications;
+  @Nullable
+  private volatile IOException failure;
+  private volatile boolean closed;
+
+  @VisibleForTesting
+  WatchmanSubscription(
+      String name,
+      String watchRoot,
+      InputStream inputStream,
+      OutputStream outputStream,
+      Closeable connection) {
+    this.name = name;
+    this.watchRoot = watchRoot;
+    this.inputStream = inputStream;
+    this.outputStream = outputStream;
+    this.connection = connection;
+    this.bserSerializer = new BserSerializer();
+    this.bserDeserializer = new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED);
+    this.responses = new LinkedBlockingQueue<>();
+    this.notifications = new ArrayList<>();
+    this.readerThread = new Thread(this::readResponses, "Watchman subscription " + name);
+    this.readerThread.setDaemon(true);
+    this.readerThread.start();
+  }
+
+  /**
+   * Subscribes to the changes matching {@code query}, if this version of Watchman can tell us
+   * when all of the changes it knows about have been sent.  Without that we couldn't be sure that
+   * we'd seen a file which was changed just before a command started.
+   */
+  public static Optional<WatchmanSubscription> subscribe(
+      Watchman watchman,
+      String name,
+      WatchmanQuery query,
+      long timeoutMillis) throws IOException, InterruptedException {
+    if (!watchman.getSocketPath().isPresent() ||
+        !watchman.getCapabilities().contains(Watchman.Capability.FLUSH_SUBSCRIPTIONS)) {
+      return Optional.absent();
+    }
+    Socket socket = UnixDomainSocket.createSocketWithPath(watchman.getSocketPath().get());
+    WatchmanSubscription subscription = new WatchmanSubscription(
+        name,
+        query.getQueryPath(),
+        socket.getInputStream(),
+        socket.getOutputStream(),
+        socket);
+    if (!subscription.subscribe(query, timeoutMillis)) {
+      subscription.close();
+      return Optional.absent();
+    }
+    return Optional.of(subscription);
+  }
+
+  @VisibleForTesting
+  boolean subscribe(WatchmanQuery query, long timeoutMillis)
+      throws IOException, InterruptedException {
+    Optional<Map<String, Object>> response = sendCommand(
+        timeoutMillis,
+        ImmutableList.of(
+            "subscribe",
+            watchRoot,
+            name,
+            ImmutableMap.<String, Object>builder()
+                .putAll(query.getQueryParams())
+                // Changes made by source control operations are what we most want to hear about
+                // early, so don't have them held back until the operation finishes.
+                .put("defer_vcs", false)
+                .build()));
+    if (!response.isPresent()) {
+      LOG.warn("Watchman didn't answer subscription request %s within %d ms", name, timeoutMillis);
+      return false;
+    }
+    if (response.get().containsKey("error")) {
+      LOG.warn("Watchman refused subscription %s: %s", name, response.get().get("error"));
+      return false;
+    }
+    LOG.debug("Subscribed to Watchman as %s", name);
+    return true;
+  }
+
+  /**
+   * Waits for Watchman to send everything it knows has changed.
+   *
+   * @return the notifications received since the last call, followed by Watchman's answer to the
+   *     flush itself (which may carry errors or warnings), or absent if Watchman didn't answer in
+   *     time, in which case this subscription shouldn't be relied on any more.
+   */
+  public synchronized Optional<ImmutableList<Map<String, Object>>> flush(long timeoutMillis)
+      throws IOException, InterruptedException {
+    Optional<Map<String, Object>> response = sendCommand(
+        timeoutMillis,
+        ImmutableList.of(
+            "flush-subscriptions",
+            watchRoot,
+            ImmutableMap.of(
+                "sync_timeout", timeoutMillis,
+                "subscriptions", ImmutableList.of(name))));
+    if (!response.isPresent()) {
+      return Optional.absent();
+    }
+    // Watchman sends any pending notifications before it answers the flush, and the reader
+    // thread queues them before the answer, so they're all here now.
+    ImmutableList.Builder<Map<String, Object>> result = ImmutableList.builder();
+    synchronized (notifications) {
+      result.addAll(notifications);
+      notifications.clear();
+    }
+    result.add(response.get());
+    return Optional.of(result.build());
+  }
+
+  /**
+   * @return whether notifications are still being received.
+   */
+  public boolean isAlive() {
+    return !closed && readerThread.isAlive();
+  }
+
+  private synchronized Optional<Map<String, Object>> sendCommand(
+      long timeoutMillis,
+      List<Object> command) throws IOException, InterruptedException {
+    if (failure != null) {
+      throw new IOException("Lost connection to Watchman", failure);
+    }
+    LOG.debug("Sending command: %s", command);
+    bserSerializer.serializeToStream(command, outputStream);
+    outputStream.flush();
+    Map<String, Object> response = responses.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    if (response == null) {
+      IOException failure = this.failure;
+      if (failure != null) {
+        throw new IOException("Lost connection to Watchman", failure);
+      }
+      return Optional.absent();
+    }
+    return Optional.of(response);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readResponses() {
+    try {
+      while (!closed) {
+        Object value = bserDeserializer.deserializeBserValue(inputStream);
+        if (!(value instanceof Map<?, ?>)) {
+          LOG.warn("Unrecognized Watchman response: %s", value);
+          continue;
+        }
+        Map<String, Object> response = (Map<String, Object>) value;
+        if (Boolean.TRUE.equals(response.get("unilateral")) ||
+            response.containsKey("subscription")) {
+          if (name.equals(response.get("subscription"))) {
+            LOG.verbose("Got notification: %s", response);
+            synchronized (notifications) {
+              notifications.add(response);
+            }
+          }
+        } else {
+          responses.add(response);
+        }
+      }
+    } catch (IOException e) {
+      if (!closed) {
+        LOG.warn(e, "Lost connection to Watchman subscription %s", name);
+        failure = e;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    LOG.debug("Closing Watchman subscription %s", name);
+    closed = true;
+    connection.close();
+  }
+}
@@ -60,4 +60,12 @@ public class ReactNativeBuckConfig {
   public Optional<Path> getServer() {
     return delegate.getPath("react-native", "server");
   }
+
+  /**
+   * @return whether the packager workers should be kept alive by the daemon between commands, so
+   *     that they don't have to rebuild their module graph for every build.
+   */
+  public boolean isPackagerWorkerPersistent() {
+    return delegate.getBooleanValue("react-native", "persistent_packager_worker", false);
+  }
 }
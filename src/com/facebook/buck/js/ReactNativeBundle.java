@@ -78,6 +78,8 @@ public class ReactNativeBundle
   @AddToRuleKey
   private final Optional<String> packagerFlags;
 
+  private final boolean isPersistentWorker;
+
   private final Path jsOutputDir;
   private final Path resource;
 
@@ -91,7 +93,8 @@ public class ReactNativeBundle
       String bundleName,
       Optional<String> packagerFlags,
       Tool jsPackager,
-      ReactNativePlatform platform) {
+      ReactNativePlatform platform,
+      boolean isPersistentWorker) {
     super(ruleParams, resolver);
     this.entryPath = entryPath;
     this.srcs = srcs;
@@ -101,6 +104,7 @@ public class ReactNativeBundle
     this.packagerFlags = packagerFlags;
     this.jsPackager = jsPackager;
     this.platform = platform;
+    this.isPersistentWorker = isPersistentWorker;
     BuildTarget buildTarget = ruleParams.getBuildTarget();
     this.jsOutputDir = getPathToJSBundleDir(buildTarget, getProjectFilesystem());
     this.resource = getPathToResources(buildTarget, getProjectFilesystem());
@@ -153,7 +157,8 @@ public class ReactNativeBundle
             isDevMode,
             getProjectFilesystem().resolve(outputFile),
             getProjectFilesystem().resolve(resource),
-            getProjectFilesystem().resolve(sourceMapOutput));
+            getProjectFilesystem().resolve(sourceMapOutput),
+            isPersistentWorker);
     stepBuilder.add(workerStep);
 
     // Run the package to get the used inputs.
@@ -165,7 +170,8 @@ public class ReactNativeBundle
             packagerFlags,
             platform,
             getProjectFilesystem().resolve(getResolver().getAbsolutePath(entryPath)),
-            getProjectFilesystem().resolve(depFile));
+            getProjectFilesystem().resolve(depFile),
+            isPersistentWorker);
     stepBuilder.add(depsWorkerStep);
   }
 
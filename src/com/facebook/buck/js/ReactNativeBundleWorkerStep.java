@@ -38,7 +38,8 @@ public class ReactNativeBundleWorkerStep extends WorkerShellStep {
       boolean isDevMode,
       Path outputFile,
       Path resourcePath,
-      Path sourceMapFile) {
+      Path sourceMapFile,
+      boolean isPersistentWorker) {
     super(
         filesystem,
         Optional.of(
@@ -60,7 +61,8 @@ public class ReactNativeBundleWorkerStep extends WorkerShellStep {
                     outputFile.toString(),
                     resourcePath.toString(),
                     sourceMapFile.toString()),
-                Optional.of(1))),
+                Optional.of(1),
+                isPersistentWorker)),
         Optional.absent(),
         Optional.absent());
   }
@@ -34,7 +34,8 @@ public class ReactNativeDepsWorkerStep extends WorkerShellStep {
       Optional<String> additionalPackagerFlags,
       ReactNativePlatform platform,
       Path entryFile,
-      Path outputFile) {
+      Path outputFile,
+      boolean isPersistentWorker) {
     super(
         filesystem,
         Optional.of(
@@ -51,7 +52,8 @@ public class ReactNativeDepsWorkerStep extends WorkerShellStep {
                     platform.toString(),
                     entryFile.toString(),
                     outputFile.toString()),
-                Optional.of(1))),
+                Optional.of(1),
+                isPersistentWorker)),
         Optional.absent(),
         Optional.absent());
   }
@@ -69,7 +69,8 @@ public class ReactNativeLibraryGraphEnhancer {
         args.bundleName,
         args.packagerFlags,
         jsPackager,
-        platform);
+        platform,
+        buckConfig.isPackagerWorkerPersistent());
   }
 
   public AndroidReactNativeLibrary enhanceForAndroid(
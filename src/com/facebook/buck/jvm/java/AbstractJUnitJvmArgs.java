@@ -151,6 +151,30 @@ abstract class AbstractJUnitJvmArgs {
       ProjectFilesystem filesystem,
       Verbosity verbosity,
       long defaultTestTimeoutMillis) {
+    formatJvmFlagsToList(args, filesystem, verbosity);
+
+    args.add(
+        "-classpath",
+        "@" + filesystem.resolve(getClasspathFile()).toString() + File.pathSeparator +
+        getTestRunnerClasspath().toString());
+
+    args.add(FileClassPathRunner.class.getName());
+
+    // Specify the Java class whose main() method should be run. This is the class that is
+    // responsible for running the tests.
+    args.add(getTestType().getDefaultTestRunner());
+
+    formatTestRunnerArgsToList(args, defaultTestTimeoutMillis);
+  }
+
+  /**
+   * Formats the options and system properties for the JVM itself, which come before the classpath
+   * and main class on the command line.
+   */
+  public void formatJvmFlagsToList(
+      ImmutableList.Builder<String> args,
+      ProjectFilesystem filesystem,
+      Verbosity verbosity) {
     // NOTE(agallagher): These probably don't belong here, but buck integration tests need
     // to find the test runner classes, so propagate these down via the relevant properties.
     args.add(String.format("-Dbuck.testrunner_classes=%s", getTestRunnerClasspath()));
@@ -209,18 +233,14 @@ abstract class AbstractJUnitJvmArgs {
     if (verbosity.shouldUseVerbosityFlagIfAvailable()) {
       args.add("-verbose");
     }
+  }
 
-    args.add(
-        "-classpath",
-        "@" + filesystem.resolve(getClasspathFile()).toString() + File.pathSeparator +
-        getTestRunnerClasspath().toString());
-
-    args.add(FileClassPathRunner.class.getName());
-
-    // Specify the Java class whose main() method should be run. This is the class that is
-    // responsible for running the tests.
-    args.add(getTestType().getDefaultTestRunner());
-
+  /**
+   * Formats the arguments for the test runner's main class.
+   */
+  public void formatTestRunnerArgsToList(
+      ImmutableList.Builder<String> args,
+      long defaultTestTimeoutMillis) {
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
     // tests written to those file descriptors, as well.
@@ -71,6 +71,19 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     INTERMEDIATE_TO_DISK,
   }
 
+  /**
+   * How the ABI jar which dependents compile against is generated.
+   */
+  public enum AbiGenerationMode {
+    /** Generate the ABI by stubbing the classes of the compiled library. */
+    CLASS,
+    /**
+     * Generate the ABI from the library's sources, so that dependents can start compiling while
+     * the library itself is still being compiled.
+     */
+    SOURCE,
+  }
+
   public enum JavacSource {
     /** Shell out to the javac in the JDK */
     EXTERNAL,
@@ -88,6 +101,29 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return SpoolMode.INTERMEDIATE_TO_DISK;
   }
 
+  @Value.Default
+  public AbiGenerationMode getAbiGenerationMode() {
+    return AbiGenerationMode.CLASS;
+  }
+
+  /**
+   * Whether to keep the classes compiled by a previous build of a library, and recompile only the
+   * sources which changed along with the sources affected by those changes.
+   */
+  @Value.Default
+  public boolean isIncrementalCompilation() {
+    return false;
+  }
+
+  /**
+   * Whether in-process javac lists classpath jars through an index shared across compilations,
+   * instead of scanning each jar on every compilation.
+   */
+  @Value.Default
+  public boolean isIndexedClasspath() {
+    return false;
+  }
+
   @Value.Default
   protected boolean isProductionBuild() {
     return false;
@@ -148,9 +184,10 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
       case JAR:
         return new JarBackedJavac(
             "com.sun.tools.javac.api.JavacTool",
-            ImmutableSet.of(getJavacJarPath().get()));
+            ImmutableSet.of(getJavacJarPath().get()),
+            isIndexedClasspath());
       case JDK:
-        return new JdkProvidedInMemoryJavac();
+        return new JdkProvidedInMemoryJavac(isIndexedClasspath());
     }
     throw new AssertionError("Unknown javac source: " + javacSource);
   }
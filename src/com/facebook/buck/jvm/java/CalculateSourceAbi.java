@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+
+/**
+ * Generates the ABI jar of a java library from its sources rather than from its compiled output.
+ * This only depends on the ABI jars of the library's deps, so the library's dependents can start
+ * compiling against it as soon as those are available, rather than once the library and all of
+ * its deps have been compiled.
+ */
+public class CalculateSourceAbi extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> srcs;
+  @AddToRuleKey
+  private final JavacOptions javacOptions;
+  private final ImmutableSortedSet<SourcePath> abiInputs;
+  @AddToRuleKey
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  private final JarArchiveDependencySupplier abiClasspath;
+  private final Path outputPath;
+
+  public CalculateSourceAbi(
+      BuildRuleParams buildRuleParams,
+      SourcePathResolver resolver,
+      ImmutableSortedSet<SourcePath> srcs,
+      JavacOptions javacOptions,
+      ImmutableSortedSet<SourcePath> abiInputs) {
+    super(buildRuleParams, resolver);
+    Preconditions.checkArgument(
+        javacOptions.getJavac() instanceof Jsr199Javac,
+        "Source ABIs can only be generated with an in-process javac.");
+    this.srcs = srcs;
+    this.javacOptions = javacOptions;
+    this.abiInputs = abiInputs;
+    this.abiClasspath = new JarArchiveDependencySupplier(
+        Suppliers.ofInstance(abiInputs),
+        getProjectFilesystem());
+    this.outputPath = getAbiJarPath();
+  }
+
+  /**
+   * @return whether the ABI of a library compiled with the given options and sources can be
+   *     generated from its sources.  Libraries whose ABI may be changed by annotation processors
+   *     or by post-processing their classes need their ABI calculated from their output.
+   */
+  public static boolean isSupported(
+      JavacOptions javacOptions,
+      ImmutableSortedSet<SourcePath> srcs,
+      ImmutableList<String> postprocessClassesCommands) {
+    return javacOptions.getAbiGenerationMode() == AbstractJavacOptions.AbiGenerationMode.SOURCE &&
+        javacOptions.getJavacSource() != AbstractJavacOptions.JavacSource.EXTERNAL &&
+        javacOptions.getAnnotationProcessingParams().isEmpty() &&
+        javacOptions.getClassesToRemoveFromJar().isEmpty() &&
+        postprocessClassesCommands.isEmpty() &&
+        !srcs.isEmpty();
+  }
+
+  public static CalculateSourceAbi of(
+      BuildTarget target,
+      SourcePathResolver pathResolver,
+      BuildRuleParams libraryParams,
+      ImmutableSortedSet<SourcePath> srcs,
+      JavacOptions javacOptions) {
+    ImmutableSortedSet<SourcePath> abiInputs =
+        JavaLibraryRules.getAbiInputs(libraryParams.getDeps());
+    return new CalculateSourceAbi(
+        libraryParams.copyWithChanges(
+            target,
+            Suppliers.ofInstance(
+                ImmutableSortedSet.<BuildRule>naturalOrder()
+                    .addAll(pathResolver.filterBuildRuleInputs(abiInputs))
+                    .addAll(pathResolver.filterBuildRuleInputs(srcs))
+                    .addAll(
+                        pathResolver.filterBuildRuleInputs(javacOptions.getInputs(pathResolver)))
+                    .build()),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        pathResolver,
+        srcs,
+        javacOptions,
+        abiInputs);
+  }
+
+  private Path getAbiJarPath() {
+    return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "%s")
+        .resolve(String.format("%s-abi.jar", getBuildTarget().getShortName()));
+  }
+
+  private Path getWorkingDirectory() {
+    return BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__abi");
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    ImmutableSortedSet<Path> classpath = ImmutableSortedSet.copyOf(
+        FluentIterable.from(abiInputs).transform(getResolver().getAbsolutePathFunction()));
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), getAbiJarPath().getParent()),
+        new RmStep(getProjectFilesystem(), getAbiJarPath(), /* shouldForceDeletion */ true),
+        new MakeCleanDirectoryStep(getProjectFilesystem(), getWorkingDirectory()),
+        new CalculateSourceAbiStep(
+            buildableContext,
+            getProjectFilesystem(),
+            getResolver(),
+            (Jsr199Javac) javacOptions.getJavac(),
+            javacOptions,
+            ImmutableSortedSet.copyOf(getResolver().deprecatedAllPaths(srcs)),
+            classpath,
+            getWorkingDirectory(),
+            getPathToOutput()));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return outputPath;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.keys.AbiRule;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the ABI jar of a library straight from its sources, by running javac only as far as it
+ * needs to in order to enter them.
+ */
+public class CalculateSourceAbiStep implements Step {
+
+  private final BuildableContext buildableContext;
+  private final ProjectFilesystem filesystem;
+  private final SourcePathResolver resolver;
+  private final Jsr199Javac javac;
+  private final JavacOptions javacOptions;
+  private final ImmutableSortedSet<Path> javaSourceFilePaths;
+  private final ImmutableSortedSet<Path> classpathEntries;
+  private final Path workingDirectory;
+  private final Path abiJar;
+
+  public CalculateSourceAbiStep(
+      BuildableContext buildableContext,
+      ProjectFilesystem filesystem,
+      SourcePathResolver resolver,
+      Jsr199Javac javac,
+      JavacOptions javacOptions,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      ImmutableSortedSet<Path> classpathEntries,
+      Path workingDirectory,
+      Path abiJar) {
+    this.buildableContext = buildableContext;
+    this.filesystem = filesystem;
+    this.resolver = resolver;
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.javaSourceFilePaths = javaSourceFilePaths;
+    this.classpathEntries = classpathEntries;
+    this.workingDirectory = workingDirectory;
+    this.abiJar = abiJar;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) {
+    ImmutableList<String> options = JavacStep.getOptions(
+        javacOptions,
+        filesystem,
+        workingDirectory,
+        context,
+        classpathEntries);
+    int exitCode = javac.buildSourceAbi(
+        context,
+        filesystem,
+        resolver,
+        options,
+        javaSourceFilePaths,
+        abiJar);
+    if (exitCode != 0) {
+      return StepExecutionResult.of(exitCode);
+    }
+
+    Sha1HashCode abiKey;
+    try {
+      abiKey = filesystem.computeSha1(abiJar);
+    } catch (IOException e) {
+      context.logError(e, "Failed to calculate ABI for %s.", abiJar);
+      return StepExecutionResult.ERROR;
+    }
+
+    buildableContext.recordArtifact(abiJar);
+    buildableContext.addMetadata(AbiRule.ABI_KEY_ON_DISK_METADATA, abiKey.getHash());
+
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "calculate_source_abi";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("%s %s", getShortName(), abiJar);
+  }
+}
@@ -41,9 +41,14 @@ import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePaths;
+import com.facebook.buck.rules.SupportsPipelining;
+import com.facebook.buck.rules.keys.AbiRule;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.TouchStep;
@@ -56,6 +61,7 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
@@ -94,7 +100,8 @@ import javax.annotation.Nullable;
 public class DefaultJavaLibrary extends AbstractBuildRule
     implements JavaLibrary, HasClasspathEntries, ExportDependencies,
     InitializableFromDisk<JavaLibrary.Data>, AndroidPackageable,
-    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests {
+    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests,
+    SupportsPipelining {
 
   private static final BuildableProperties OUTPUT_TYPE = new BuildableProperties(LIBRARY);
 
@@ -122,6 +129,7 @@ public class DefaultJavaLibrary extends AbstractBuildRule
   private final Supplier<ImmutableSet<Path>>
       transitiveClasspathsSupplier;
   private final Supplier<ImmutableSet<JavaLibrary>> transitiveClasspathDepsSupplier;
+  private final Supplier<ImmutableSortedSet<BuildRule>> pipelinedDepsSupplier;
 
   private final SourcePath abiJar;
   private final boolean trackClassUsage;
@@ -289,11 +297,44 @@ public class DefaultJavaLibrary extends AbstractBuildRule
             () -> JavaLibraryClasspathProvider.getTransitiveClasspathDeps(
                 DefaultJavaLibrary.this));
 
+    this.pipelinedDepsSupplier = Suppliers.memoize(this::findPipelinedDeps);
+
     this.buildOutputInitializer = new BuildOutputInitializer<>(params.getBuildTarget(), this);
     this.generatedSourceFolder = generatedSourceFolder;
     this.classesToRemoveFromJar = classesToRemoveFromJar;
   }
 
+  /**
+   * Deps whose ABI jar is generated from their sources don't need to have been built for this
+   * library to compile against them.
+   */
+  private ImmutableSortedSet<BuildRule> findPipelinedDeps() {
+    ImmutableSortedSet.Builder<BuildRule> pipelinedDeps = ImmutableSortedSet.naturalOrder();
+    for (BuildRule dep : deps) {
+      if (!(dep instanceof HasJavaAbi) || dep.getPathToOutput() == null) {
+        continue;
+      }
+      Optional<SourcePath> depAbiJar = ((HasJavaAbi) dep).getAbiJar();
+      if (depAbiJar.isPresent() &&
+          getResolver().getRule(depAbiJar.get()).orNull() instanceof CalculateSourceAbi) {
+        pipelinedDeps.add(dep);
+      }
+    }
+    return pipelinedDeps.build();
+  }
+
+  /**
+   * @return whether this library's ABI jar is generated from its sources rather than its output.
+   */
+  private boolean hasSourceAbi() {
+    return getResolver().getRule(abiJar).orNull() instanceof CalculateSourceAbi;
+  }
+
+  @Override
+  public ImmutableSortedSet<BuildRule> getPipelinedDeps() {
+    return pipelinedDepsSupplier.get();
+  }
+
   private Path getPathToAbiOutputDir() {
     return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__abi");
   }
@@ -426,6 +467,15 @@ public class DefaultJavaLibrary extends AbstractBuildRule
                 .build(),
             context.getActionGraph().getNodes());
 
+    // Compile against the ABI jars of any deps which may still be building.
+    ImmutableMap.Builder<Path, Path> pipelinedJarsBuilder = ImmutableMap.builder();
+    for (BuildRule dep : getPipelinedDeps()) {
+      pipelinedJarsBuilder.put(
+          dep.getProjectFilesystem().resolve(dep.getPathToOutput()),
+          getResolver().getAbsolutePath(((HasJavaAbi) dep).getAbiJar().get()));
+    }
+    final ImmutableMap<Path, Path> pipelinedJars = pipelinedJarsBuilder.build();
+
     // We don't want to add these to the declared or transitive deps, since they're only used at
     // compile time.
     Collection<Path> provided = JavaLibraryClasspathProvider.getJavaLibraryDeps(providedDeps)
@@ -437,6 +487,8 @@ public class DefaultJavaLibrary extends AbstractBuildRule
               }
             })
         .filter(Predicates.notNull())
+        .transform(
+            path -> pipelinedJars.getOrDefault(getProjectFilesystem().resolve(path), path))
         .toSet();
 
     ProjectFilesystem projectFilesystem = getProjectFilesystem(); // NOPMD confused by lambda
@@ -446,7 +498,9 @@ public class DefaultJavaLibrary extends AbstractBuildRule
           public Iterable<Path> apply(JavaLibrary input) {
             return input.getOutputClasspaths();
           }
-        }).transform(projectFilesystem::resolve);
+        })
+        .transform(projectFilesystem::resolve)
+        .transform(path -> pipelinedJars.getOrDefault(path, path));
     // Only override the bootclasspath if this rule is supposed to compile Android code.
     ImmutableSortedSet<Path> declared = ImmutableSortedSet.<Path>naturalOrder()
         .addAll(declaredClasspaths)
@@ -549,8 +603,23 @@ public class DefaultJavaLibrary extends AbstractBuildRule
       }
       buildableContext.recordArtifact(output);
 
-      // Calculate the ABI.
-      steps.add(new CalculateAbiStep(buildableContext, getProjectFilesystem(), output, abiJar));
+      if (hasSourceAbi()) {
+        // The ABI jar is generated from the sources by another rule, so don't stub the output as
+        // well; its hash stands in for the ABI key that initializing from disk expects.
+        steps.add(
+            new AbstractExecutionStep("record_abi_key") {
+              @Override
+              public StepExecutionResult execute(ExecutionContext context) throws IOException {
+                buildableContext.addMetadata(
+                    AbiRule.ABI_KEY_ON_DISK_METADATA,
+                    getProjectFilesystem().computeSha1(output).getHash());
+                return StepExecutionResult.SUCCESS;
+              }
+            });
+      } else {
+        // Calculate the ABI.
+        steps.add(new CalculateAbiStep(buildableContext, getProjectFilesystem(), output, abiJar));
+      }
     } else {
       Path scratch = BuildTargets.getScratchPath(
           getProjectFilesystem(),
@@ -638,6 +707,7 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     Preconditions.checkState(useDependencyFileRuleKeys());
     return DefaultClassUsageFileReader.loadFromFile(
         getProjectFilesystem(),
+        getResolver(),
         Preconditions.checkNotNull(depFileOutputPath),
         deps);
   }
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.core.SuggestBuildRules;
+import com.facebook.buck.jvm.java.abi.ClassFileSummary;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a library's sources into a directory which is kept between builds, recompiling only the
+ * sources which changed since the last build along with the sources which depend on classes whose
+ * ABI changed as a result, and then copies the classes to the output directory.
+ * <p>
+ * The sources each class came from, the hash of its ABI, its supertypes and the classes it refers
+ * to are recorded in a state file next to the kept classes.  A class whose ABI changes also changes
+ * the members its subclasses inherit, and a new class may be picked over one of the same name that
+ * was imported on demand, so both count as changes too.  A full compile is done when there is no
+ * usable state, when the options or the contents of the classpath changed, when a class whose
+ * constants may have been inlined into other classes changes its ABI, and when a source compiled
+ * earlier in the same build would have to be compiled again.
+ */
+public class IncrementalJavacStep implements Step {
+
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+  private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+  private static final Pattern PACKAGE_DECLARATION =
+      Pattern.compile("\\s*(?:@[\\w.]+\\s*(?:\\([^)]*\\)\\s*)?)*package\\s+([\\w.\\s]+?)\\s*;");
+
+  private final Path outputDirectory;
+  private final Path incrementalDirectory;
+  private final ClassUsageFileWriter usedClassesFileWriter;
+  private final Optional<Path> workingDirectory;
+  private final ImmutableSortedSet<Path> javaSourceFilePaths;
+  private final Path pathToSrcsList;
+  private final ImmutableSortedSet<Path> declaredClasspathEntries;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final Optional<SuggestBuildRules> suggestBuildRules;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+
+  public IncrementalJavacStep(
+      Path outputDirectory,
+      Path incrementalDirectory,
+      ClassUsageFileWriter usedClassesFileWriter,
+      Optional<Path> workingDirectory,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      ImmutableSortedSet<Path> declaredClasspathEntries,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      Optional<SuggestBuildRules> suggestBuildRules,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem) {
+    this.outputDirectory = outputDirectory;
+    this.incrementalDirectory = incrementalDirectory;
+    this.usedClassesFileWriter = usedClassesFileWriter;
+    this.workingDirectory = workingDirectory;
+    this.javaSourceFilePaths = javaSourceFilePaths;
+    this.pathToSrcsList = pathToSrcsList;
+    this.declaredClasspathEntries = declaredClasspathEntries;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.suggestBuildRules = suggestBuildRules;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ObjectMapper objectMapper = context.getObjectMapper();
+    String configuration = hashConfiguration(context);
+    Map<String, String> sourceHashes = new TreeMap<>();
+    for (Path source : javaSourceFilePaths) {
+      sourceHashes.put(
+          MorePaths.pathWithUnixSeparators(source),
+          filesystem.computeSha1(source).getHash());
+    }
+
+    Optional<State> previous = readState(objectMapper, configuration);
+
+    // Whatever happens, the kept classes will no longer match the recorded state until we're done.
+    filesystem.deleteFileAtPathIfExists(getStatePath());
+
+    Optional<State> state = Optional.absent();
+    if (previous.isPresent()) {
+      Optional<Integer> exitCode =
+          compileIncrementally(context, previous.get(), sourceHashes, objectMapper);
+      if (exitCode.isPresent() && exitCode.get() != 0) {
+        return StepExecutionResult.of(exitCode.get());
+      }
+      if (exitCode.isPresent()) {
+        state = previous;
+      }
+    }
+
+    if (!state.isPresent()) {
+      LOG.debug("%s: compiling all sources", invokingRule);
+      State fresh = new State();
+      fresh.configuration = configuration;
+      int exitCode = compileFully(context, fresh, sourceHashes);
+      if (exitCode != 0) {
+        return StepExecutionResult.of(exitCode);
+      }
+      state = Optional.of(fresh);
+    }
+
+    filesystem.mkdirs(outputDirectory);
+    filesystem.copyFolder(getClassesDirectory(), outputDirectory);
+    // A full compile which couldn't tell where every class came from leaves nothing to record.
+    if (state.get().configuration != null) {
+      objectMapper.writeValue(filesystem.resolve(getStatePath()).toFile(), state.get());
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return the exit code of javac, or absent if the state turned out not to be good enough to
+   *     compile incrementally, in which case a full compile is needed.
+   */
+  private Optional<Integer> compileIncrementally(
+      ExecutionContext context,
+      State state,
+      Map<String, String> sourceHashes,
+      ObjectMapper objectMapper) throws IOException, InterruptedException {
+    Set<String> pending = new TreeSet<>();
+    for (Map.Entry<String, String> entry : sourceHashes.entrySet()) {
+      if (!entry.getValue().equals(state.sources.get(entry.getKey()))) {
+        pending.add(entry.getKey());
+      }
+    }
+    Set<String> removed =
+        Sets.newTreeSet(Sets.difference(state.sources.keySet(), sourceHashes.keySet()));
+    Set<String> compiled = new HashSet<>();
+    Map<String, String> sourcePackages = new HashMap<>();
+
+    // A compile of some of the sources only records the classes they use, so fold in the usage
+    // recorded by earlier compiles.
+    Optional<Path> usedClassesFile = getUsedClassesFile();
+    Map<String, SortedSet<String>> usedClasses = new TreeMap<>();
+    if (usedClassesFile.isPresent()) {
+      if (!filesystem.exists(usedClassesFile.get())) {
+        return Optional.absent();
+      }
+      mergeUsedClasses(objectMapper, usedClassesFile.get(), usedClasses);
+    }
+
+    while (!pending.isEmpty() || !removed.isEmpty()) {
+      Set<String> invalidated = Sets.union(pending, removed);
+      Map<String, ClassState> staleClasses = new HashMap<>();
+      for (Map.Entry<String, ClassState> entry : state.classes.entrySet()) {
+        if (invalidated.contains(entry.getValue().source)) {
+          staleClasses.put(entry.getKey(), entry.getValue());
+        }
+      }
+      for (String className : staleClasses.keySet()) {
+        state.classes.remove(className);
+        filesystem.deleteFileAtPathIfExists(getClassFile(className));
+      }
+      state.sources.keySet().removeAll(removed);
+      removed.clear();
+
+      Set<String> compiledThisRound = new HashSet<>();
+      Set<String> addedClasses = new HashSet<>();
+      if (!pending.isEmpty()) {
+        LOG.debug("%s: recompiling %s", invokingRule, pending);
+        Set<String> existingClasses = listClasses();
+        ImmutableSortedSet.Builder<Path> sources = ImmutableSortedSet.naturalOrder();
+        for (Path source : javaSourceFilePaths) {
+          if (pending.contains(MorePaths.pathWithUnixSeparators(source))) {
+            sources.add(source);
+          }
+        }
+        ImmutableSortedSet<Path> classpath = ImmutableSortedSet.<Path>naturalOrder()
+            .addAll(declaredClasspathEntries)
+            .add(filesystem.resolve(getClassesDirectory()))
+            .build();
+        ClassUsageFileWriter roundUsedClassesFileWriter = usedClassesFileWriter;
+        if (usedClassesFile.isPresent()) {
+          roundUsedClassesFileWriter =
+              new DefaultClassUsageFileWriter(usedClassesFile.get(), new ClassUsageTracker());
+        }
+        StepExecutionResult result =
+            createJavacStep(sources.build(), classpath, roundUsedClassesFileWriter)
+                .execute(context);
+        if (!result.isSuccess()) {
+          return Optional.of(result.getExitCode());
+        }
+        if (usedClassesFile.isPresent()) {
+          mergeUsedClasses(objectMapper, usedClassesFile.get(), usedClasses);
+        }
+
+        for (String className : Sets.difference(listClasses(), existingClasses)) {
+          ClassFileSummary summary = summarize(className);
+          Optional<String> source = findSource(summary, pending, sourcePackages);
+          if (!source.isPresent()) {
+            LOG.debug("%s: couldn't tell which source %s came from", invokingRule, className);
+            return Optional.absent();
+          }
+          state.classes.put(className, new ClassState(source.get(), summary));
+          if (!staleClasses.containsKey(className)) {
+            addedClasses.add(className);
+          }
+        }
+        for (String source : pending) {
+          state.sources.put(source, sourceHashes.get(source));
+        }
+        compiled.addAll(pending);
+        compiledThisRound.addAll(pending);
+        pending.clear();
+      }
+
+      // Work out which classes now have a different ABI, or no longer exist.
+      Set<String> changedClasses = new HashSet<>();
+      for (Map.Entry<String, ClassState> entry : staleClasses.entrySet()) {
+        ClassState now = state.classes.get(entry.getKey());
+        if (now != null && now.abi.equals(entry.getValue().abi)) {
+          continue;
+        }
+        if (entry.getValue().constants) {
+          LOG.debug("%s: %s may have had its constants inlined", invokingRule, entry.getKey());
+          return Optional.absent();
+        }
+        changedClasses.add(entry.getKey());
+      }
+      changedClasses.addAll(addedClasses);
+      addSubclasses(state, changedClasses);
+      Set<String> addedNames = new HashSet<>();
+      for (String className : addedClasses) {
+        String simpleName = getSimpleName(className);
+        // Anonymous and local classes can't be named from anywhere else.
+        if (!Character.isDigit(simpleName.charAt(0))) {
+          addedNames.add(simpleName);
+        }
+      }
+
+      // And recompile the sources of the classes which refer to them, or to a class which one
+      // that was added could now be found instead of.
+      for (Map.Entry<String, ClassState> entry : state.classes.entrySet()) {
+        ClassState classState = entry.getValue();
+        if (compiledThisRound.contains(classState.source) ||
+            !refersTo(classState, changedClasses, addedNames)) {
+          continue;
+        }
+        if (compiled.contains(classState.source)) {
+          LOG.debug(
+              "%s: %s was compiled before the classes it uses changed",
+              invokingRule,
+              entry.getKey());
+          return Optional.absent();
+        }
+        pending.add(classState.source);
+      }
+    }
+
+    if (usedClassesFile.isPresent()) {
+      objectMapper.writeValue(
+          filesystem.resolve(usedClassesFile.get()).toFile(),
+          usedClasses);
+    }
+    return Optional.of(0);
+  }
+
+  /**
+   * Adds every class in {@code state} which directly or indirectly extends or implements one of
+   * {@code classes} to them.
+   */
+  private static void addSubclasses(State state, Set<String> classes) {
+    boolean added;
+    do {
+      added = false;
+      for (Map.Entry<String, ClassState> entry : state.classes.entrySet()) {
+        if (!classes.contains(entry.getKey()) &&
+            !Sets.intersection(entry.getValue().supertypes, classes).isEmpty()) {
+          classes.add(entry.getKey());
+          added = true;
+        }
+      }
+    } while (added);
+  }
+
+  private static boolean refersTo(
+      ClassState classState,
+      Set<String> changedClasses,
+      Set<String> addedNames) {
+    for (String reference : classState.references) {
+      if (changedClasses.contains(reference) ||
+          addedNames.contains(getSimpleName(reference))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the name a class is referred to by in source, e.g. {@code Bar} for
+   *     {@code com/example/Foo$Bar}.
+   */
+  private static String getSimpleName(String className) {
+    return className.substring(
+        Math.max(className.lastIndexOf('/'), className.lastIndexOf('$')) + 1);
+  }
+
+  private int compileFully(
+      ExecutionContext context,
+      State state,
+      Map<String, String> sourceHashes) throws IOException, InterruptedException {
+    Path classesDirectory = getClassesDirectory();
+    if (filesystem.exists(classesDirectory)) {
+      filesystem.deleteRecursivelyIfExists(classesDirectory);
+    }
+    filesystem.mkdirs(classesDirectory);
+
+    StepExecutionResult result =
+        createJavacStep(javaSourceFilePaths, declaredClasspathEntries, usedClassesFileWriter)
+            .execute(context);
+    if (!result.isSuccess()) {
+      return result.getExitCode();
+    }
+
+    Map<String, String> sourcePackages = new HashMap<>();
+    for (String className : listClasses()) {
+      ClassFileSummary summary = summarize(className);
+      Optional<String> source = findSource(summary, sourceHashes.keySet(), sourcePackages);
+      if (!source.isPresent()) {
+        // Without knowing where each class came from we can't compile incrementally next time.
+        LOG.debug("%s: couldn't tell which source %s came from", invokingRule, className);
+        state.configuration = null;
+        return 0;
+      }
+      state.classes.put(className, new ClassState(source.get(), summary));
+    }
+    state.sources.putAll(sourceHashes);
+    return 0;
+  }
+
+  private JavacStep createJavacStep(
+      ImmutableSortedSet<Path> sources,
+      ImmutableSortedSet<Path> classpath,
+      ClassUsageFileWriter classUsageFileWriter) {
+    return new JavacStep(
+        getClassesDirectory(),
+        classUsageFileWriter,
+        Optional.absent(),
+        workingDirectory,
+        sources,
+        pathToSrcsList,
+        classpath,
+        javacOptions.getJavac(),
+        javacOptions,
+        invokingRule,
+        suggestBuildRules,
+        resolver,
+        filesystem);
+  }
+
+  private Optional<State> readState(ObjectMapper objectMapper, String configuration) {
+    Path statePath = getStatePath();
+    if (!filesystem.exists(statePath)) {
+      return Optional.absent();
+    }
+    State state;
+    try {
+      state = objectMapper.readValue(filesystem.resolve(statePath).toFile(), State.class);
+    } catch (IOException e) {
+      LOG.debug(e, "%s: unable to read incremental compilation state", invokingRule);
+      return Optional.absent();
+    }
+    if (!configuration.equals(state.configuration)) {
+      LOG.debug("%s: compiler options or classpath changed", invokingRule);
+      return Optional.absent();
+    }
+    for (Map.Entry<String, ClassState> entry : state.classes.entrySet()) {
+      // State written before supertypes were recorded can't tell what a change affects.
+      if (entry.getValue().supertypes == null ||
+          !filesystem.exists(getClassFile(entry.getKey()))) {
+        return Optional.absent();
+      }
+    }
+    return Optional.of(state);
+  }
+
+  /**
+   * Hashes everything other than the sources which affects the output of javac: its options and
+   * the contents of the classpath.
+   */
+  private String hashConfiguration(ExecutionContext context) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String option : JavacStep.getOptions(
+        javacOptions,
+        filesystem,
+        getClassesDirectory(),
+        context,
+        declaredClasspathEntries)) {
+      hasher.putString(option, Charsets.UTF_8).putByte((byte) 0);
+    }
+    for (Path entry : declaredClasspathEntries) {
+      hasher.putString(entry.toString(), Charsets.UTF_8).putByte((byte) 0);
+      Path absolute = filesystem.resolve(entry);
+      if (Files.isDirectory(absolute)) {
+        for (Path file : listFiles(absolute)) {
+          hasher.putString(file.toString(), Charsets.UTF_8).putByte((byte) 0);
+          filesystem.computeSha1(absolute.resolve(file)).update(hasher);
+        }
+      } else if (Files.isRegularFile(absolute)) {
+        filesystem.computeSha1(absolute).update(hasher);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private Optional<Path> getUsedClassesFile() {
+    if (usedClassesFileWriter instanceof DefaultClassUsageFileWriter) {
+      return Optional.of(((DefaultClassUsageFileWriter) usedClassesFileWriter).getRelativePath());
+    }
+    return Optional.absent();
+  }
+
+  private void mergeUsedClasses(
+      ObjectMapper objectMapper,
+      Path usedClassesFile,
+      Map<String, SortedSet<String>> usedClasses) throws IOException {
+    Map<String, List<String>> contents = objectMapper.readValue(
+        filesystem.resolve(usedClassesFile).toFile(),
+        new TypeReference<Map<String, List<String>>>() {
+        });
+    for (Map.Entry<String, List<String>> entry : contents.entrySet()) {
+      SortedSet<String> classes = usedClasses.get(entry.getKey());
+      if (classes == null) {
+        classes = new TreeSet<>();
+        usedClasses.put(entry.getKey(), classes);
+      }
+      classes.addAll(entry.getValue());
+    }
+  }
+
+  private ClassFileSummary summarize(String className) throws IOException {
+    return ClassFileSummary.of(Files.readAllBytes(filesystem.resolve(getClassFile(className))));
+  }
+
+  /**
+   * Finds the source a class was compiled from, among those that were compiled.  A class records
+   * just the name of its source file, and sources needn't live in their package's directory, so
+   * it's matched against the sources with that name which declare the class's package.
+   */
+  private Optional<String> findSource(
+      ClassFileSummary summary,
+      Set<String> sources,
+      Map<String, String> sourcePackages) throws IOException {
+    if (!summary.getSourceFile().isPresent()) {
+      return Optional.absent();
+    }
+    String sourceFile = summary.getSourceFile().get();
+    int lastSlash = sourceFile.lastIndexOf('/');
+    String packagePath = lastSlash == -1 ? "" : sourceFile.substring(0, lastSlash);
+    String fileName = sourceFile.substring(lastSlash + 1);
+    Optional<String> found = Optional.absent();
+    for (String source : sources) {
+      if (!source.equals(fileName) && !source.endsWith("/" + fileName)) {
+        continue;
+      }
+      String sourcePackage = sourcePackages.get(source);
+      if (sourcePackage == null) {
+        sourcePackage = readPackagePath(source);
+        sourcePackages.put(source, sourcePackage);
+      }
+      if (sourcePackage.equals(packagePath)) {
+        if (found.isPresent()) {
+          return Optional.absent();
+        }
+        found = Optional.of(source);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the package {@code source} declares, as a path, e.g. {@code com/example}.
+   */
+  private String readPackagePath(String source) throws IOException {
+    String contents = new String(
+        Files.readAllBytes(filesystem.resolve(source)),
+        Charsets.UTF_8);
+    Matcher matcher = PACKAGE_DECLARATION.matcher(COMMENT.matcher(contents).replaceAll(" "));
+    if (!matcher.lookingAt()) {
+      return "";
+    }
+    return matcher.group(1).replaceAll("\\s", "").replace('.', '/');
+  }
+
+  /**
+   * @return the internal names of the kept classes.
+   */
+  private Set<String> listClasses() throws IOException {
+    Set<String> classes = new HashSet<>();
+    Path classesDirectory = filesystem.resolve(getClassesDirectory());
+    if (!Files.isDirectory(classesDirectory)) {
+      return classes;
+    }
+    for (Path file : listFiles(classesDirectory)) {
+      String name = MorePaths.pathWithUnixSeparators(file);
+      if (name.endsWith(".class")) {
+        classes.add(name.substring(0, name.length() - ".class".length()));
+      }
+    }
+    return classes;
+  }
+
+  private static List<Path> listFiles(final Path directory) throws IOException {
+    final List<Path> files = new ArrayList<>();
+    Files.walkFileTree(
+        directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(directory.relativize(file));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    files.sort(null);
+    return files;
+  }
+
+  private Path getClassFile(String className) {
+    return getClassesDirectory().resolve(className + ".class");
+  }
+
+  @VisibleForTesting
+  Path getClassesDirectory() {
+    return incrementalDirectory.resolve("classes");
+  }
+
+  private Path getStatePath() {
+    return incrementalDirectory.resolve("state.json");
+  }
+
+  @Override
+  public String getShortName() {
+    return "javac";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "%s && cp -R %s/. %s",
+        createJavacStep(javaSourceFilePaths, declaredClasspathEntries, usedClassesFileWriter)
+            .getDescription(context),
+        getClassesDirectory(),
+        outputDirectory);
+  }
+
+  /**
+   * What's recorded about the kept classes between builds.  Public fields so it can be read and
+   * written by Jackson.
+   */
+  static class State {
+    public String configuration;
+    /** The hash of each compiled source. */
+    public Map<String, String> sources = new TreeMap<>();
+    /** The kept classes, by internal name. */
+    public Map<String, ClassState> classes = new TreeMap<>();
+  }
+
+  static class ClassState {
+    public String source;
+    public String abi;
+    public boolean constants;
+    public Set<String> supertypes;
+    public Set<String> references;
+
+    public ClassState() {
+    }
+
+    public ClassState(String source, ClassFileSummary summary) {
+      this.source = source;
+      this.abi = summary.getAbiHash().toString();
+      this.constants = summary.hasConstants();
+      this.supertypes = summary.getSupertypes();
+      this.references = summary.getReferencedClasses();
+    }
+  }
+}
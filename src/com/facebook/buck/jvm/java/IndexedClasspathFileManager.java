@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.util.JarIndexCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager which answers classpath lookups from a shared {@link JarIndexCache} instead of
+ * having javac open and scan every jar on the classpath for each compilation.  Directories on the
+ * classpath, and every other location, are still handled by the underlying file manager.
+ */
+class IndexedClasspathFileManager extends ForwardingStandardJavaFileManager {
+
+  private final JarIndexCache jarIndexCache;
+  private final FileHashLoader fileHashLoader;
+  private final Charset sourceCharset;
+  private final Map<Path, ZipFile> openJars = new HashMap<>();
+
+  /**
+   * The classpath, with each jar replaced by its index.  Computed on first use, since javac only
+   * sets the classpath on the file manager once the task is created.
+   */
+  @Nullable
+  private ImmutableList<Object> classpath;
+
+  public IndexedClasspathFileManager(
+      StandardJavaFileManager fileManager,
+      JarIndexCache jarIndexCache,
+      FileHashLoader fileHashLoader,
+      Charset sourceCharset) {
+    super(fileManager);
+    this.jarIndexCache = jarIndexCache;
+    this.fileHashLoader = fileHashLoader;
+    this.sourceCharset = sourceCharset;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse) throws IOException {
+    if (location != StandardLocation.CLASS_PATH) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    ImmutableList.Builder<JavaFileObject> result = ImmutableList.builder();
+    for (Object entry : getClasspath()) {
+      if (entry instanceof JarIndexCache.JarIndex) {
+        listJar((JarIndexCache.JarIndex) entry, packageName, kinds, recurse, result);
+      } else {
+        Path packageDir = ((Path) entry).resolve(packageName.replace('.', File.separatorChar));
+        listDirectory(packageDir, kinds, recurse, result);
+      }
+    }
+    return result.build();
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof JarEntryJavaFileObject) {
+      return ((JarEntryJavaFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof JarEntryJavaFileObject || b instanceof JarEntryJavaFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    resetClasspath();
+    return super.handleOption(current, remaining);
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    resetClasspath();
+    super.setLocation(location, path);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      synchronized (this) {
+        for (ZipFile zip : openJars.values()) {
+          zip.close();
+        }
+        openJars.clear();
+      }
+    } finally {
+      super.close();
+    }
+  }
+
+  private synchronized void resetClasspath() {
+    classpath = null;
+  }
+
+  private synchronized ImmutableList<Object> getClasspath() throws IOException {
+    if (classpath == null) {
+      ImmutableList.Builder<Object> entries = ImmutableList.builder();
+      Iterable<? extends File> location = fileManager.getLocation(StandardLocation.CLASS_PATH);
+      if (location != null) {
+        for (File file : location) {
+          Path path = file.toPath().toAbsolutePath();
+          if (Files.isDirectory(path)) {
+            entries.add(path);
+          } else if (Files.isRegularFile(path)) {
+            entries.add(jarIndexCache.getIndex(path, fileHashLoader.get(path)));
+          }
+        }
+      }
+      classpath = entries.build();
+    }
+    return classpath;
+  }
+
+  private void listJar(
+      JarIndexCache.JarIndex index,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse,
+      ImmutableList.Builder<JavaFileObject> result) {
+    Iterable<String> packages =
+        recurse ? index.getPackagesUnder(packageName) : ImmutableList.of(packageName);
+    for (String name : packages) {
+      for (String entryName : index.getEntries(name)) {
+        JavaFileObject.Kind kind = getKind(entryName);
+        if (kinds.contains(kind)) {
+          result.add(new JarEntryJavaFileObject(index, entryName, kind));
+        }
+      }
+    }
+  }
+
+  private void listDirectory(
+      Path dir,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse,
+      ImmutableList.Builder<JavaFileObject> result) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+      for (Path child : children) {
+        if (Files.isDirectory(child)) {
+          if (recurse) {
+            listDirectory(child, kinds, recurse, result);
+          }
+        } else if (kinds.contains(getKind(child.getFileName().toString()))) {
+          for (JavaFileObject file : fileManager.getJavaFileObjects(child.toFile())) {
+            result.add(file);
+          }
+        }
+      }
+    }
+  }
+
+  private static JavaFileObject.Kind getKind(String name) {
+    for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+      if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+
+  private byte[] readEntry(final JarIndexCache.JarIndex index, final String entryName)
+      throws IOException {
+    return jarIndexCache.getContents(
+        index,
+        entryName,
+        new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            ZipFile zip = openJar(index.getPath());
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+              throw new FileNotFoundException(
+                  String.format("%s not found in %s", entryName, index.getPath()));
+            }
+            try (InputStream input = zip.getInputStream(entry)) {
+              return ByteStreams.toByteArray(input);
+            }
+          }
+        });
+  }
+
+  private synchronized ZipFile openJar(Path path) throws IOException {
+    ZipFile zip = openJars.get(path);
+    if (zip == null) {
+      zip = new ZipFile(path.toFile());
+      openJars.put(path, zip);
+    }
+    return zip;
+  }
+
+  private static URI createJarUri(Path jar, String entryName) {
+    try {
+      String escapedEntryName = new URI(null, null, entryName, null).getRawPath();
+      return URI.create("jar:" + jar.toUri() + "!/" + escapedEntryName);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /**
+   * An entry in an indexed jar.  The URI has the same form as those javac gives entries of the
+   * jars it opens itself, which is what {@link ClassUsageTracker} relies on.
+   */
+  private class JarEntryJavaFileObject implements JavaFileObject {
+
+    private final JarIndexCache.JarIndex index;
+    private final String entryName;
+    private final JavaFileObject.Kind kind;
+    private final URI uri;
+
+    private JarEntryJavaFileObject(
+        JarIndexCache.JarIndex index,
+        String entryName,
+        JavaFileObject.Kind kind) {
+      this.index = index;
+      this.entryName = entryName;
+      this.kind = kind;
+      this.uri = createJarUri(index.getPath(), entryName);
+    }
+
+    private String getBinaryName() {
+      return entryName.substring(0, entryName.length() - kind.extension.length())
+          .replace('/', '.');
+    }
+
+    @Override
+    public URI toUri() {
+      return uri;
+    }
+
+    @Override
+    public String getName() {
+      return String.format("%s(%s)", index.getPath(), entryName);
+    }
+
+    @Override
+    public JavaFileObject.Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, JavaFileObject.Kind kind) {
+      String baseName = entryName.substring(entryName.lastIndexOf('/') + 1);
+      return this.kind == kind && baseName.equals(simpleName + kind.extension);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return new ByteArrayInputStream(readEntry(index, entryName));
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      return new String(readEntry(index, entryName), sourceCharset);
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Writer openWriter() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getLastModified() {
+      return index.getPath().toFile().lastModified();
+    }
+
+    @Override
+    public boolean delete() {
+      return false;
+    }
+
+    @Nullable
+    @Override
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Nullable
+    @Override
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof JarEntryJavaFileObject &&
+          uri.equals(((JarEntryJavaFileObject) other).uri);
+    }
+
+    @Override
+    public int hashCode() {
+      return uri.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return getName();
+    }
+  }
+}
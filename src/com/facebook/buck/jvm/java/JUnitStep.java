@@ -16,35 +16,54 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.shell.WorkerJobResult;
+import com.facebook.buck.shell.WorkerProcess;
+import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JUnitStep extends ShellStep {
   private static final Logger LOG = Logger.get(JUnitStep.class);
 
+  private static final String WORKER_MAIN = "com.facebook.buck.testrunner.JUnitWorkerMain";
+  // Must match JUnitWorkerMain.EXIT_CODE_RETIRE.
+  private static final int WORKER_EXIT_CODE_RETIRE = 3;
+  private static final int WORKER_MAX_JOBS = 100;
+  private static final AtomicInteger WORKER_NUMBER = new AtomicInteger();
+
   private final ProjectFilesystem filesystem;
   private final JavaRuntimeLauncher javaRuntimeLauncher;
   private final ImmutableMap<String, String> nativeLibsEnvironment;
   private final Optional<Long> testRuleTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final boolean useWorkerProcess;
 
   // Set when the junit command times out.
   private boolean hasTimedOut = false;
@@ -56,6 +75,28 @@ public class JUnitStep extends ShellStep {
       ImmutableMap<String, String> env,
       JavaRuntimeLauncher javaRuntimeLauncher,
       JUnitJvmArgs junitJvmArgs) {
+    this(
+        filesystem,
+        nativeLibsEnvironment,
+        testRuleTimeoutMs,
+        env,
+        javaRuntimeLauncher,
+        junitJvmArgs,
+        /* useWorkerProcess */ false);
+  }
+
+  /**
+   * @param useWorkerProcess whether to run the tests in a JVM which is kept running between test
+   *     rules, rather than one started for just these tests.
+   */
+  public JUnitStep(
+      ProjectFilesystem filesystem,
+      Map<String, String> nativeLibsEnvironment,
+      Optional<Long> testRuleTimeoutMs,
+      ImmutableMap<String, String> env,
+      JavaRuntimeLauncher javaRuntimeLauncher,
+      JUnitJvmArgs junitJvmArgs,
+      boolean useWorkerProcess) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -63,6 +104,141 @@ public class JUnitStep extends ShellStep {
     this.testRuleTimeoutMs = testRuleTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.useWorkerProcess = useWorkerProcess;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws InterruptedException, IOException {
+    if (canUseWorkerProcess()) {
+      Optional<StepExecutionResult> result = executeInWorkerProcess(context);
+      if (result.isPresent()) {
+        return result.get();
+      }
+    }
+    return super.execute(context);
+  }
+
+  private boolean canUseWorkerProcess() {
+    // Debugging and coverage both rely on the JVM starting and exiting with the tests, and the
+    // rule timeout is enforced by killing the JVM.
+    return useWorkerProcess &&
+        junitJvmArgs.getTestType() == TestType.JUNIT &&
+        !junitJvmArgs.isDebugEnabled() &&
+        !junitJvmArgs.isCodeCoverageEnabled() &&
+        !testRuleTimeoutMs.isPresent();
+  }
+
+  /**
+   * Runs the tests in a JVM which is shared with other test rules with the same JVM options.  Each
+   * run loads the tests in a new class loader, writing the same results as a JVM of its own would.
+   * A worker which fails is shut down, and so is one which asks to be replaced because it has run
+   * enough tests or the tests leaked threads or memory.
+   *
+   * @return the result, or absent if the tests should be run in a JVM of their own instead.
+   */
+  private Optional<StepExecutionResult> executeInWorkerProcess(ExecutionContext context)
+      throws InterruptedException, IOException {
+    // System properties can be set for each run, but the other options need a JVM of their own.
+    ImmutableList.Builder<String> jvmFlags = ImmutableList.builder();
+    junitJvmArgs.formatJvmFlagsToList(jvmFlags, filesystem, context.getVerbosity());
+    ImmutableList.Builder<String> startupCommand = ImmutableList.builder();
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    startupCommand.add(javaRuntimeLauncher.getCommand());
+    for (String flag : jvmFlags.build()) {
+      if (flag.startsWith("-D")) {
+        jobArgs.add(flag);
+      } else {
+        startupCommand.add(flag);
+      }
+    }
+    startupCommand.add(
+        "-classpath",
+        junitJvmArgs.getTestRunnerClasspath().toString(),
+        WORKER_MAIN,
+        String.valueOf(WORKER_MAX_JOBS));
+    jobArgs.add(
+        "--classpath-file",
+        filesystem.resolve(junitJvmArgs.getClasspathFile()).toString());
+    junitJvmArgs.formatTestRunnerArgsToList(jobArgs, context.getDefaultTestTimeoutMillis());
+
+    WorkerProcessPool pool = getWorkerProcessPool(context, startupCommand.build());
+    WorkerProcess process;
+    try {
+      process = pool.borrowWorkerProcess(context);
+    } catch (IOException | HumanReadableException e) {
+      LOG.warn(e, "Unable to start a JUnit worker, running the tests in their own JVM instead.");
+      return Optional.absent();
+    }
+
+    WorkerJobResult result;
+    try {
+      result = process.submitAndWaitForJob(Joiner.on('\0').join(jobArgs.build()));
+    } catch (IOException | HumanReadableException e) {
+      LOG.warn(e, "JUnit worker failed, running the tests in their own JVM instead.");
+      pool.destroyWorkerProcess(process);
+      return Optional.absent();
+    }
+
+    if (result.getExitCode() == 0) {
+      pool.returnWorkerProcess(process);
+    } else {
+      LOG.debug("Replacing JUnit worker which exited with %d.", result.getExitCode());
+      pool.destroyWorkerProcess(process);
+      if (result.getExitCode() != WORKER_EXIT_CODE_RETIRE) {
+        return Optional.absent();
+      }
+    }
+
+    Verbosity verbosity = context.getVerbosity();
+    if (result.getStdout().isPresent() && !result.getStdout().get().isEmpty() &&
+        shouldPrintStdout(verbosity)) {
+      context.postEvent(ConsoleEvent.info("%s", result.getStdout().get()));
+    }
+    if (result.getStderr().isPresent() && !result.getStderr().get().isEmpty() &&
+        shouldPrintStderr(verbosity)) {
+      context.postEvent(ConsoleEvent.warning("%s", result.getStderr().get()));
+    }
+    return Optional.of(StepExecutionResult.SUCCESS);
+  }
+
+  private WorkerProcessPool getWorkerProcessPool(
+      ExecutionContext context,
+      ImmutableList<String> startupCommand) {
+    ImmutableMap<String, String> stepEnvironment = getEnvironmentVariables(context);
+    String key = "junit:" + Joiner.on(' ').join(startupCommand) + " " + stepEnvironment;
+    ConcurrentMap<String, WorkerProcessPool> pools = context.getWorkerProcessPools();
+    WorkerProcessPool pool = pools.get(key);
+    if (pool != null) {
+      return pool;
+    }
+
+    Map<String, String> environment = new HashMap<>(context.getEnvironment());
+    environment.put("PWD", filesystem.getRootPath().toString());
+    environment.putAll(stepEnvironment);
+    final ProcessExecutorParams processParams = ProcessExecutorParams.builder()
+        .setCommand(startupCommand)
+        .setEnvironment(environment)
+        .setDirectory(filesystem.getRootPath())
+        .build();
+    WorkerProcessPool newPool = new WorkerProcessPool(Optional.absent()) {
+      @Override
+      protected WorkerProcess startWorkerProcess(ExecutionContext context) throws IOException {
+        Path tmpDir = filesystem.getBuckPaths().getTmpDir()
+            .resolve("junit-workers")
+            .resolve(Integer.toString(WORKER_NUMBER.getAndIncrement()));
+        filesystem.mkdirs(tmpDir);
+        WorkerProcess process = new WorkerProcess(
+            context.getProcessExecutor(),
+            processParams,
+            filesystem,
+            tmpDir);
+        process.ensureLaunchAndHandshake();
+        return process;
+      }
+    };
+    WorkerProcessPool previousPool = pools.putIfAbsent(key, newPool);
+    return previousPool == null ? newPool : previousPool;
   }
 
   @Override
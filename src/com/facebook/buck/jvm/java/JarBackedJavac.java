@@ -53,6 +53,14 @@ public class JarBackedJavac extends Jsr199Javac {
   private final ImmutableSortedSet<SourcePath> classpath;
 
   JarBackedJavac(String compilerClassName, Iterable<SourcePath> classpath) {
+    this(compilerClassName, classpath, /* indexedClasspath */ false);
+  }
+
+  JarBackedJavac(
+      String compilerClassName,
+      Iterable<SourcePath> classpath,
+      boolean indexedClasspath) {
+    super(indexedClasspath);
     this.compilerClassName = compilerClassName;
     this.classpath = ImmutableSortedSet.copyOf(classpath);
   }
@@ -63,6 +63,15 @@ public class JavaBuckConfig {
         .getEnum("java", "jar_spool_mode", AbstractJavacOptions.SpoolMode.class)
         .or(AbstractJavacOptions.SpoolMode.INTERMEDIATE_TO_DISK);
 
+    AbstractJavacOptions.AbiGenerationMode abiGenerationMode = delegate
+        .getEnum("java", "abi_generation_mode", AbstractJavacOptions.AbiGenerationMode.class)
+        .or(AbstractJavacOptions.AbiGenerationMode.CLASS);
+
+    boolean incrementalCompilation =
+        delegate.getBooleanValue("java", "incremental_compilation", false);
+
+    boolean indexedClasspath = delegate.getBooleanValue("java", "indexed_classpath", false);
+
     // This is just to make it possible to turn off dep-based rulekeys in case anything goes wrong
     // and can be removed when we're sure class usage tracking and dep-based keys for Java
     // work fine.
@@ -84,6 +93,9 @@ public class JavaBuckConfig {
         .setSourceLevel(sourceLevel.or(TARGETED_JAVA_VERSION))
         .setTargetLevel(targetLevel.or(TARGETED_JAVA_VERSION))
         .setSpoolMode(spoolMode)
+        .setAbiGenerationMode(abiGenerationMode)
+        .setIncrementalCompilation(incrementalCompilation)
+        .setIndexedClasspath(indexedClasspath)
         .putAllSourceToBootclasspath(bootclasspaths.build())
         .addAllExtraArguments(extraArguments)
         .setSafeAnnotationProcessors(safeAnnotationProcessors)
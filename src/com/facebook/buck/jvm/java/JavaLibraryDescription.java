@@ -129,18 +129,20 @@ public class JavaLibraryDescription implements Description<JavaLibraryDescriptio
     BuildTarget abiJarTarget = params.getBuildTarget().withAppendedFlavors(CalculateAbi.FLAVOR);
 
     ImmutableSortedSet<BuildRule> exportedDeps = resolver.getAllRules(args.exportedDeps.get());
+    BuildRuleParams javaLibraryParams =
+        params.appendExtraDeps(
+            Iterables.concat(
+                BuildRules.getExportedRules(
+                    Iterables.concat(
+                        params.getDeclaredDeps().get(),
+                        exportedDeps,
+                        resolver.getAllRules(args.providedDeps.get()))),
+                pathResolver.filterBuildRuleInputs(
+                    javacOptions.getInputs(pathResolver))));
     DefaultJavaLibrary defaultJavaLibrary =
         resolver.addToIndex(
             new DefaultJavaLibrary(
-                params.appendExtraDeps(
-                    Iterables.concat(
-                        BuildRules.getExportedRules(
-                            Iterables.concat(
-                                params.getDeclaredDeps().get(),
-                                exportedDeps,
-                                resolver.getAllRules(args.providedDeps.get()))),
-                        pathResolver.filterBuildRuleInputs(
-                            javacOptions.getInputs(pathResolver)))),
+                javaLibraryParams,
                 pathResolver,
                 args.srcs.get(),
                 validateResources(
@@ -163,12 +165,25 @@ public class JavaLibraryDescription implements Description<JavaLibraryDescriptio
                 args.tests.get(),
                 javacOptions.getClassesToRemoveFromJar()));
 
-    resolver.addToIndex(
-        CalculateAbi.of(
-            abiJarTarget,
-            pathResolver,
-            params,
-            new BuildTargetSourcePath(defaultJavaLibrary.getBuildTarget())));
+    if (CalculateSourceAbi.isSupported(
+        javacOptions,
+        args.srcs.get(),
+        args.postprocessClassesCommands.get())) {
+      resolver.addToIndex(
+          CalculateSourceAbi.of(
+              abiJarTarget,
+              pathResolver,
+              javaLibraryParams,
+              args.srcs.get(),
+              javacOptions));
+    } else {
+      resolver.addToIndex(
+          CalculateAbi.of(
+              abiJarTarget,
+              pathResolver,
+              params,
+              new BuildTargetSourcePath(defaultJavaLibrary.getBuildTarget())));
+    }
 
   if (!flavors.contains(JavaLibrary.MAVEN_JAR)) {
       return defaultJavaLibrary;
@@ -40,6 +40,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ParallelStep;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TargetDevice;
@@ -58,6 +59,7 @@ import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -65,10 +67,13 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -242,7 +247,8 @@ public class JavaTest
         testRuleTimeoutMs,
         env,
         javaRuntimeLauncher,
-        args);
+        args,
+        options.isUsingJavaTestWorkers());
   }
 
   /**
@@ -287,20 +293,96 @@ public class JavaTest
         );
       }
       junits = junitsBuilder.build();
+      steps.addAll(junits);
     } else {
-      junits = ImmutableList.of(
-          getJUnitStep(
-            executionContext,
-            options,
-            Optional.of(pathToTestOutput),
-            Optional.of(pathToTestLogs),
-            testClassNames)
-      );
+      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
+      // A rule which has to run on its own shouldn't start several JVMs at once either.
+      int shardCount = runTestSeparately ? 1 : options.getJavaTestShards();
+      ImmutableList<Set<String>> shards =
+          shardTestClasses(testClassNames, shardCount, options.getTestCaseDurations());
+      for (int i = 0; i < shards.size(); i++) {
+        junitsBuilder.add(
+            getJUnitStep(
+                executionContext,
+                options,
+                Optional.of(pathToTestOutput),
+                Optional.of(getPathToTestLogs(i)),
+                shards.get(i)));
+      }
+      junits = junitsBuilder.build();
+      // Each shard writes the results of its own classes, so they're merged when interpreted.
+      if (junits.size() > 1) {
+        steps.add(new ParallelStep(junits));
+      } else {
+        steps.addAll(junits);
+      }
     }
-    steps.addAll(junits);
     return steps.build();
   }
 
+  /**
+   * Splits the test classes into at most {@code shardCount} shards which should take about as long
+   * as each other to run, going by how long each class took the last time it ran.  Classes which
+   * haven't run before are assumed to take as long as the average class which has.
+   */
+  @VisibleForTesting
+  static ImmutableList<Set<String>> shardTestClasses(
+      Set<String> testClassNames,
+      int shardCount,
+      Map<String, Long> durations) {
+    shardCount = Math.max(1, Math.min(shardCount, testClassNames.size()));
+    if (shardCount == 1) {
+      return ImmutableList.of(testClassNames);
+    }
+
+    long knownTotal = 0;
+    int knownCount = 0;
+    for (String testClass : testClassNames) {
+      Long duration = durations.get(testClass);
+      if (duration != null) {
+        knownTotal += duration;
+        knownCount++;
+      }
+    }
+    final Map<String, Long> estimates = Maps.newHashMap();
+    for (String testClass : testClassNames) {
+      Long duration = durations.get(testClass);
+      estimates.put(
+          testClass,
+          duration != null ? duration : (knownCount == 0 ? 1 : knownTotal / knownCount));
+    }
+
+    // Hand out the longest classes first, each to the shard with the least to do so far.
+    List<String> longestFirst = Lists.newArrayList(testClassNames);
+    Collections.sort(
+        longestFirst,
+        (a, b) -> ComparisonChain.start()
+            .compare(estimates.get(b), estimates.get(a))
+            .compare(a, b)
+            .result());
+    List<ImmutableSortedSet.Builder<String>> shards = Lists.newArrayList();
+    long[] shardDurations = new long[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(ImmutableSortedSet.naturalOrder());
+    }
+    for (String testClass : longestFirst) {
+      int shortest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (shardDurations[i] < shardDurations[shortest]) {
+          shortest = i;
+        }
+      }
+      shards.get(shortest).add(testClass);
+      shardDurations[shortest] += estimates.get(testClass);
+    }
+
+    ImmutableList.Builder<Set<String>> result = ImmutableList.builder();
+    for (ImmutableSortedSet.Builder<String> shard : shards) {
+      result.add(shard.build());
+    }
+    return result.build();
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
@@ -462,13 +544,42 @@ public class JavaTest
             .setTestCases(summaries)
             .setContacts(contacts)
             .setLabels(FluentIterable.from(labels).transform(Functions.toStringFunction()).toSet())
-            .addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs))
+            .addAllTestLogPaths(getPathsToTestLogs())
             .build();
       }
 
     };
   }
 
+  /**
+   * @return where the tests run by the given shard log to.  The first, or only, shard logs to the
+   *     same place as unsharded tests.
+   */
+  private Path getPathToTestLogs(int shard) {
+    if (shard == 0) {
+      return pathToTestLogs;
+    }
+    return getPathToTestOutputDirectory().resolve(String.format("logs-%d.txt", shard));
+  }
+
+  /**
+   * @return the absolute paths of the logs written by every shard which ran the tests.  Results may
+   *     come from the cache rather than {@link #runTests}, so the shards' logs are looked for in the
+   *     output directory.
+   */
+  private ImmutableList<Path> getPathsToTestLogs() throws IOException {
+    ImmutableList.Builder<Path> paths = ImmutableList.builder();
+    paths.add(getProjectFilesystem().resolve(pathToTestLogs));
+    Path outputDirectory = getProjectFilesystem().resolve(getPathToTestOutputDirectory());
+    if (Files.isDirectory(outputDirectory)) {
+      try (DirectoryStream<Path> shardLogs =
+               Files.newDirectoryStream(outputDirectory, "logs-*.txt")) {
+        paths.addAll(Ordering.natural().sortedCopy(shardLogs));
+      }
+    }
+    return paths.build();
+  }
+
   private Set<String> getClassNamesForSources() {
     if (compiledClassFileFinder == null) {
       compiledClassFileFinder = new CompiledClassFileFinder(this);
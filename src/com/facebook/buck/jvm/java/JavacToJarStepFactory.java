@@ -22,6 +22,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.SuggestBuildRules;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.RuleKeyObjectSink;
@@ -68,6 +69,27 @@ public class JavacToJarStepFactory extends BaseCompileToJarStepFactory {
     // Javac requires that the root directory for generated sources already exist.
     addAnnotationGenFolderStep(buildTimeOptions, filesystem, steps, buildableContext);
 
+    // We can't tell which sources annotation processors read or generate, so libraries which use
+    // them are always compiled in full.
+    if (buildTimeOptions.isIncrementalCompilation() &&
+        buildTimeOptions.getAnnotationProcessingParams().isEmpty()) {
+      steps.add(
+          new IncrementalJavacStep(
+              outputDirectory,
+              BuildTargets.getScratchPath(filesystem, invokingRule, "lib__%s__incremental"),
+              usedClassesFileWriter,
+              workingDirectory,
+              sourceFilePaths,
+              pathToSrcsList,
+              declaredClasspathEntries,
+              buildTimeOptions,
+              invokingRule,
+              suggestBuildRules,
+              resolver,
+              filesystem));
+      return;
+    }
+
     steps.add(
         new JavacStep(
             outputDirectory,
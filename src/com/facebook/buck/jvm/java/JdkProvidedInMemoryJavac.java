@@ -31,7 +31,12 @@ import javax.tools.ToolProvider;
 public class JdkProvidedInMemoryJavac extends Jsr199Javac {
 
   JdkProvidedInMemoryJavac() {
+    this(/* indexedClasspath */ false);
+  }
+
+  JdkProvidedInMemoryJavac(boolean indexedClasspath) {
     // only here to limit this to package-level visibility
+    super(indexedClasspath);
   }
 
   @Override
@@ -21,6 +21,7 @@ import com.facebook.buck.event.BuckTracingEventBusBridge;
 import com.facebook.buck.event.MissingSymbolEvent;
 import com.facebook.buck.event.api.BuckTracing;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.SourceAbiStubProcessor;
 import com.facebook.buck.jvm.java.tracing.TranslatingJavacPhaseTracer;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
@@ -51,6 +52,7 @@ import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -79,6 +81,16 @@ public abstract class Jsr199Javac implements Javac {
   private static final StandardJavaFileManagerFactory DEFAULT_FILE_MANAGER_FACTORY =
       compiler -> compiler.getStandardFileManager(null, null, null);
 
+  private final boolean indexedClasspath;
+
+  /**
+   * @param indexedClasspath whether to list classpath jars through the {@link JarIndexCache}
+   *     shared across compilations, rather than having javac scan every jar itself.
+   */
+  protected Jsr199Javac(boolean indexedClasspath) {
+    this.indexedClasspath = indexedClasspath;
+  }
+
   @Override
   public JavacVersion getVersion() {
     return VERSION;
@@ -131,8 +143,10 @@ public abstract class Jsr199Javac implements Javac {
       Optional<StandardJavaFileManagerFactory> fileManagerFactory) {
     JavaCompiler compiler = createCompiler(context, resolver);
 
-    StandardJavaFileManager fileManager =
-        fileManagerFactory.or(DEFAULT_FILE_MANAGER_FACTORY).create(compiler);
+    StandardJavaFileManager fileManager = maybeIndexClasspath(
+        context,
+        fileManagerFactory.or(DEFAULT_FILE_MANAGER_FACTORY).create(compiler),
+        options);
     try {
       Iterable<? extends JavaFileObject> compilationUnits;
       try {
@@ -170,6 +184,31 @@ public abstract class Jsr199Javac implements Javac {
     }
   }
 
+  private StandardJavaFileManager maybeIndexClasspath(
+      ExecutionContext context,
+      StandardJavaFileManager fileManager,
+      ImmutableList<String> options) {
+    // Jars are indexed by their hashes, so there's nothing to index them by outside of a build.
+    if (!indexedClasspath || !context.getFileHashCache().isPresent()) {
+      return fileManager;
+    }
+    return new IndexedClasspathFileManager(
+        fileManager,
+        context.getJarIndexCache(),
+        context.getFileHashCache().get(),
+        getSourceEncoding(options));
+  }
+
+  private static Charset getSourceEncoding(List<String> options) {
+    Iterator<String> iterator = options.iterator();
+    while (iterator.hasNext()) {
+      if ("-encoding".equals(iterator.next()) && iterator.hasNext()) {
+        return Charset.forName(iterator.next());
+      }
+    }
+    return Charset.defaultCharset();
+  }
+
   private int buildWithClasspath(
       ExecutionContext context,
       ProjectFilesystem filesystem,
@@ -284,6 +323,80 @@ public abstract class Jsr199Javac implements Javac {
     }
   }
 
+  /**
+   * Runs javac only as far as entering {@code javaSourceFilePaths}, and writes stubs of the types
+   * they declare to {@code abiJar}.  The stubs match those {@link CalculateAbiStep} would produce
+   * from the compiled library, provided no annotation processors contribute to its ABI.
+   *
+   * @return the exit code, as for {@link #buildWithClasspath}.
+   */
+  public int buildSourceAbi(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      SourcePathResolver resolver,
+      ImmutableList<String> options,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path abiJar) {
+    JavaCompiler compiler = createCompiler(context, resolver);
+
+    StandardJavaFileManager fileManager = maybeIndexClasspath(
+        context,
+        DEFAULT_FILE_MANAGER_FACTORY.create(compiler),
+        options);
+    try {
+      Iterable<? extends JavaFileObject> compilationUnits;
+      try {
+        compilationUnits = createCompilationUnits(
+            fileManager,
+            filesystem.getAbsolutifier(),
+            javaSourceFilePaths);
+      } catch (IOException e) {
+        LOG.warn(e, "Error building compilation units");
+        return 1;
+      }
+
+      try {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask compilationTask = compiler.getTask(
+            new PrintWriter(context.getStdErr()),
+            fileManager,
+            diagnostics,
+            ImmutableList.<String>builder().addAll(options).add("-proc:only").build(),
+            ImmutableList.<String>of(),
+            compilationUnits);
+        SourceAbiStubProcessor processor = new SourceAbiStubProcessor();
+        compilationTask.setProcessors(ImmutableList.of(processor));
+
+        if (compilationTask.call() && processor.isSuccessful()) {
+          try {
+            processor.writeTo(filesystem, abiJar);
+          } catch (IOException e) {
+            context.logError(e, "Failed to write source ABI to %s.", abiJar);
+            return 1;
+          }
+          return 0;
+        }
+
+        if (context.getVerbosity().shouldPrintStandardInformation()) {
+          for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+              context.getStdErr().println(DiagnosticPrettyPrinter.format(diagnostic));
+            }
+          }
+        }
+        return 1;
+      } finally {
+        close(compilationUnits);
+      }
+    } finally {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to close java filemanager. We may be leaking memory.");
+      }
+    }
+  }
+
   private void close(Iterable<? extends JavaFileObject> compilationUnits) {
     for (JavaFileObject unit : compilationUnits) {
       if (unit instanceof Closeable) {
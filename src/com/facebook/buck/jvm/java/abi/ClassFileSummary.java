@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * What incremental compilation needs to know about a compiled class: the source file it came
+ * from, a hash of its ABI (as {@link StubJar} would stub it), whether other classes may have
+ * inlined any of its constants, its direct supertypes and the classes it refers to.
+ */
+public final class ClassFileSummary {
+
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+
+  private final String name;
+  private final Optional<String> sourceFile;
+  private final HashCode abiHash;
+  private final boolean hasConstants;
+  private final ImmutableSortedSet<String> supertypes;
+  private final ImmutableSortedSet<String> referencedClasses;
+
+  private ClassFileSummary(
+      String name,
+      Optional<String> sourceFile,
+      HashCode abiHash,
+      boolean hasConstants,
+      ImmutableSortedSet<String> supertypes,
+      ImmutableSortedSet<String> referencedClasses) {
+    this.name = name;
+    this.sourceFile = sourceFile;
+    this.abiHash = abiHash;
+    this.hasConstants = hasConstants;
+    this.supertypes = supertypes;
+    this.referencedClasses = referencedClasses;
+  }
+
+  public static ClassFileSummary of(byte[] classFile) throws IOException {
+    ClassReader reader = new ClassReader(classFile);
+    ClassMirror mirror = new ClassMirror(reader.getClassName() + ".class");
+    SummarizingVisitor visitor = new SummarizingVisitor(mirror);
+    reader.accept(visitor, SKIP_CODE | SKIP_FRAMES);
+
+    // References made from method bodies only show up in the constant pool.
+    char[] buffer = new char[reader.getMaxStringLength()];
+    for (int i = 1; i < reader.getItemCount(); i++) {
+      int offset = reader.getItem(i);
+      if (offset == 0) {
+        // The second slot of a long or double constant.
+        continue;
+      }
+      switch (reader.b[offset - 1]) {
+        case CONSTANT_CLASS:
+          visitor.addInternalName(reader.readUTF8(offset, buffer));
+          break;
+        case CONSTANT_NAME_AND_TYPE:
+          visitor.addDescriptor(reader.readUTF8(offset + 2, buffer));
+          break;
+        case CONSTANT_METHOD_TYPE:
+          visitor.addDescriptor(reader.readUTF8(offset, buffer));
+          break;
+        default:
+          break;
+      }
+    }
+
+    String name = reader.getClassName();
+    Optional<String> sourceFile = Optional.absent();
+    if (visitor.sourceFile != null) {
+      int lastSlash = name.lastIndexOf('/');
+      sourceFile = Optional.of(
+          lastSlash < 0 ?
+              visitor.sourceFile :
+              name.substring(0, lastSlash + 1) + visitor.sourceFile);
+    }
+
+    return new ClassFileSummary(
+        name,
+        sourceFile,
+        Hashing.sha1().hashBytes(mirror.getStubClassBytes().read()),
+        visitor.hasConstants,
+        visitor.supertypes.build(),
+        ImmutableSortedSet.copyOf(visitor.references.build()));
+  }
+
+  /**
+   * @return the internal name of the class, e.g. {@code com/example/Foo$Bar}.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the path of the source file the class was compiled from, relative to its source root,
+   *     or absent if the class was compiled without debug information.
+   */
+  public Optional<String> getSourceFile() {
+    return sourceFile;
+  }
+
+  public HashCode getAbiHash() {
+    return abiHash;
+  }
+
+  /**
+   * @return whether the class has non-private constant fields, whose values javac inlines into
+   *     the classes that use them without leaving any reference behind.
+   */
+  public boolean hasConstants() {
+    return hasConstants;
+  }
+
+  /**
+   * @return the internal names of the superclass and interfaces the class directly extends, whose
+   *     members it inherits without referring to them.
+   */
+  public ImmutableSortedSet<String> getSupertypes() {
+    return supertypes;
+  }
+
+  /**
+   * @return the internal names of every class this one refers to, including itself.
+   */
+  public ImmutableSortedSet<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  private static class SummarizingVisitor extends ClassVisitor {
+
+    private final ImmutableSortedSet.Builder<String> supertypes =
+        ImmutableSortedSet.naturalOrder();
+    private final ImmutableSortedSet.Builder<String> references =
+        ImmutableSortedSet.naturalOrder();
+    @Nullable
+    private String sourceFile;
+    private boolean hasConstants;
+
+    public SummarizingVisitor(ClassMirror mirror) {
+      super(Opcodes.ASM5, mirror);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      addInternalName(name);
+      addInternalName(superName);
+      addInternalNames(interfaces);
+      addSignature(signature);
+      if (superName != null) {
+        supertypes.add(superName);
+      }
+      if (interfaces != null) {
+        supertypes.add(interfaces);
+      }
+      super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+      sourceFile = source;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      addDescriptor(desc);
+      return super.visitAnnotation(desc, visible);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      // Local and anonymous classes can't be referred to from outside the class that declares
+      // them, so adding or removing one doesn't change its ABI.
+      if (outerName == null || innerName == null) {
+        return;
+      }
+      addInternalName(name);
+      super.visitInnerClass(name, outerName, innerName, access);
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access,
+        String name,
+        String desc,
+        String signature,
+        Object value) {
+      addDescriptor(desc);
+      addSignature(signature);
+      if (value != null && (access & Opcodes.ACC_PRIVATE) == 0) {
+        hasConstants = true;
+      }
+      return super.visitField(access, name, desc, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access,
+        String name,
+        String desc,
+        String signature,
+        String[] exceptions) {
+      addDescriptor(desc);
+      addSignature(signature);
+      addInternalNames(exceptions);
+      return super.visitMethod(access, name, desc, signature, exceptions);
+    }
+
+    private void addInternalName(@Nullable String internalName) {
+      if (internalName == null) {
+        return;
+      }
+      if (internalName.startsWith("[")) {
+        addDescriptor(internalName);
+      } else {
+        references.add(internalName);
+      }
+    }
+
+    private void addInternalNames(@Nullable String[] internalNames) {
+      if (internalNames == null) {
+        return;
+      }
+      for (String internalName : internalNames) {
+        addInternalName(internalName);
+      }
+    }
+
+    private void addDescriptor(String desc) {
+      if (desc.startsWith("(")) {
+        addType(Type.getReturnType(desc));
+        for (Type argument : Type.getArgumentTypes(desc)) {
+          addType(argument);
+        }
+      } else {
+        addType(Type.getType(desc));
+      }
+    }
+
+    private void addType(Type type) {
+      if (type.getSort() == Type.ARRAY) {
+        type = type.getElementType();
+      }
+      if (type.getSort() == Type.OBJECT) {
+        references.add(type.getInternalName());
+      }
+    }
+
+    private void addSignature(@Nullable String signature) {
+      if (signature == null) {
+        return;
+      }
+      new SignatureReader(signature).accept(
+          new SignatureVisitor(Opcodes.ASM5) {
+            @Nullable
+            private String currentClass;
+
+            @Override
+            public void visitClassType(String name) {
+              currentClass = name;
+              references.add(name);
+            }
+
+            @Override
+            public void visitInnerClassType(String name) {
+              currentClass = currentClass + "$" + name;
+              references.add(currentClass);
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,718 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.Trees;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.SimpleAnnotationValueVisitor8;
+
+/**
+ * Creates stub class files straight from the elements of a compilation, matching what
+ * {@link StubJar} would produce from the compiled classes: non-private members only, with no
+ * code.  This lets an ABI jar be written as soon as javac has entered the sources, without
+ * attributing method bodies or generating code.
+ */
+class ElementStubber {
+
+  private final Elements elements;
+  private final Trees trees;
+
+  ElementStubber(Elements elements, Trees trees) {
+    this.elements = elements;
+    this.trees = trees;
+  }
+
+  /**
+   * Adds the stub class file for {@code type}, and for each of its non-private member types, to
+   * {@code stubs}, keyed on their path in a jar.
+   */
+  void stubType(TypeElement type, Map<String, byte[]> stubs) {
+    if (type.getModifiers().contains(Modifier.PRIVATE)) {
+      return;
+    }
+
+    ClassWriter writer = new ClassWriter(0);
+    String name = getInternalName(type);
+
+    TypeMirror superclass = type.getSuperclass();
+    String superName;
+    if (checkResolved(superclass).getKind() == TypeKind.DECLARED) {
+      superName = getInternalName((TypeElement) ((DeclaredType) superclass).asElement());
+    } else {
+      superName = name.equals("java/lang/Object") ? null : "java/lang/Object";
+    }
+
+    ImmutableList.Builder<String> interfaces = ImmutableList.builder();
+    for (TypeMirror iface : type.getInterfaces()) {
+      interfaces.add(
+          getInternalName((TypeElement) ((DeclaredType) checkResolved(iface)).asElement()));
+    }
+    if (type.getKind() == ElementKind.ANNOTATION_TYPE && type.getInterfaces().isEmpty()) {
+      interfaces.add("java/lang/annotation/Annotation");
+    }
+
+    writer.visit(
+        Opcodes.V1_8,
+        getClassAccess(type),
+        name,
+        getClassSignature(type),
+        superName,
+        interfaces.build().toArray(new String[0]));
+
+    // Record this class's own nesting, and that of its member types, so that javac can tell
+    // them apart from top-level classes with '$' in their names.
+    for (Element current = type;
+         current instanceof TypeElement &&
+             ((TypeElement) current).getNestingKind() == NestingKind.MEMBER;
+         current = current.getEnclosingElement()) {
+      visitInnerClass(writer, (TypeElement) current);
+    }
+    for (Element member : type.getEnclosedElements()) {
+      if (isType(member) && !member.getModifiers().contains(Modifier.PRIVATE)) {
+        visitInnerClass(writer, (TypeElement) member);
+      }
+    }
+
+    visitAnnotations(type, writer);
+
+    for (Element member : type.getEnclosedElements()) {
+      if (member.getModifiers().contains(Modifier.PRIVATE)) {
+        continue;
+      }
+      switch (member.getKind()) {
+        case FIELD:
+        case ENUM_CONSTANT:
+          visitField((VariableElement) member, writer);
+          break;
+        case METHOD:
+        case CONSTRUCTOR:
+          visitMethod(type, (ExecutableElement) member, writer);
+          break;
+        // $CASES-OMITTED$
+        default:
+          break;
+      }
+    }
+
+    writer.visitEnd();
+    stubs.put(name + ".class", writer.toByteArray());
+
+    for (Element member : type.getEnclosedElements()) {
+      if (isType(member)) {
+        stubType((TypeElement) member, stubs);
+      }
+    }
+  }
+
+  /**
+   * Adds the stub for a {@code package-info} class carrying the package's annotations, if it has
+   * any which are retained in class files.
+   */
+  void stubPackage(PackageElement pkg, Map<String, byte[]> stubs) {
+    String name = pkg.getQualifiedName().toString().replace('.', '/') + "/package-info";
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(
+        Opcodes.V1_8,
+        Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_SYNTHETIC,
+        name,
+        null,
+        "java/lang/Object",
+        null);
+    visitAnnotations(pkg, writer);
+    writer.visitEnd();
+    stubs.put(name + ".class", writer.toByteArray());
+  }
+
+  private static boolean isType(Element element) {
+    return element.getKind().isClass() || element.getKind().isInterface();
+  }
+
+  private void visitInnerClass(ClassVisitor visitor, TypeElement inner) {
+    visitor.visitInnerClass(
+        getInternalName(inner),
+        getInternalName((TypeElement) inner.getEnclosingElement()),
+        inner.getSimpleName().toString(),
+        getInnerClassAccess(inner));
+  }
+
+  private void visitField(VariableElement field, ClassVisitor visitor) {
+    int access = getAccess(field.getModifiers());
+    if (field.getKind() == ElementKind.ENUM_CONSTANT) {
+      access |= Opcodes.ACC_ENUM;
+    }
+    if (elements.isDeprecated(field)) {
+      access |= Opcodes.ACC_DEPRECATED;
+    }
+
+    TypeMirror type = field.asType();
+    FieldVisitor fieldVisitor = visitor.visitField(
+        access,
+        field.getSimpleName().toString(),
+        getDescriptor(type),
+        needsSignature(type) ? getSignature(type) : null,
+        toClassFileConstant(field.getConstantValue()));
+    visitAnnotations(field, fieldVisitor);
+    fieldVisitor.visitEnd();
+  }
+
+  private void visitMethod(TypeElement owner, ExecutableElement method, ClassVisitor visitor) {
+    int access = getAccess(method.getModifiers());
+    if (method.isVarArgs()) {
+      access |= Opcodes.ACC_VARARGS;
+    }
+    if (elements.isDeprecated(method)) {
+      access |= Opcodes.ACC_DEPRECATED;
+    }
+
+    boolean isConstructor = method.getKind() == ElementKind.CONSTRUCTOR;
+    StringBuilder descriptor = new StringBuilder("(");
+    if (isConstructor) {
+      // Mirror the parameters javac adds to the constructors of enums and inner classes.
+      if (owner.getKind() == ElementKind.ENUM) {
+        descriptor.append("Ljava/lang/String;I");
+      } else if (owner.getNestingKind() == NestingKind.MEMBER &&
+          !owner.getModifiers().contains(Modifier.STATIC)) {
+        descriptor.append(
+            getDescriptor(((TypeElement) owner.getEnclosingElement()).asType()));
+      }
+    }
+    boolean needsSignature = !method.getTypeParameters().isEmpty() ||
+        needsSignature(method.getReturnType());
+    for (VariableElement parameter : method.getParameters()) {
+      descriptor.append(getDescriptor(parameter.asType()));
+      needsSignature |= needsSignature(parameter.asType());
+    }
+    descriptor.append(')').append(getDescriptor(method.getReturnType()));
+
+    List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+    String[] exceptions = new String[thrownTypes.size()];
+    boolean genericThrows = false;
+    for (int i = 0; i < exceptions.length; i++) {
+      TypeMirror thrown = thrownTypes.get(i);
+      exceptions[i] = getDescriptor(thrown);
+      exceptions[i] = exceptions[i].substring(1, exceptions[i].length() - 1);
+      genericThrows |= needsSignature(thrown);
+    }
+
+    String signature = null;
+    if (needsSignature || genericThrows) {
+      StringBuilder builder = new StringBuilder();
+      appendTypeParameters(method.getTypeParameters(), builder);
+      builder.append('(');
+      for (VariableElement parameter : method.getParameters()) {
+        appendSignature(parameter.asType(), builder);
+      }
+      builder.append(')');
+      appendSignature(method.getReturnType(), builder);
+      if (genericThrows) {
+        for (TypeMirror thrown : thrownTypes) {
+          builder.append('^');
+          appendSignature(thrown, builder);
+        }
+      }
+      signature = builder.toString();
+    }
+
+    MethodVisitor methodVisitor = visitor.visitMethod(
+        access,
+        isConstructor ? "<init>" : method.getSimpleName().toString(),
+        descriptor.toString(),
+        signature,
+        exceptions.length == 0 ? null : exceptions);
+
+    AnnotationValue defaultValue = method.getDefaultValue();
+    if (defaultValue != null) {
+      AnnotationVisitor annotationVisitor = methodVisitor.visitAnnotationDefault();
+      visitAnnotationValue(null, defaultValue, annotationVisitor);
+      annotationVisitor.visitEnd();
+    }
+
+    visitAnnotations(method, methodVisitor);
+    List<? extends VariableElement> parameters = method.getParameters();
+    for (int i = 0; i < parameters.size(); i++) {
+      for (AnnotationMirror annotation : parameters.get(i).getAnnotationMirrors()) {
+        RetentionPolicy retention = getRetention(annotation);
+        if (retention != RetentionPolicy.SOURCE) {
+          visitAnnotationValues(
+              annotation,
+              methodVisitor.visitParameterAnnotation(
+                  i,
+                  getDescriptor(annotation.getAnnotationType()),
+                  retention == RetentionPolicy.RUNTIME));
+        }
+      }
+    }
+    methodVisitor.visitEnd();
+  }
+
+  private void visitAnnotations(Element element, ClassVisitor visitor) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        visitAnnotationValues(
+            annotation,
+            visitor.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME));
+      }
+    }
+  }
+
+  private void visitAnnotations(Element element, FieldVisitor visitor) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        visitAnnotationValues(
+            annotation,
+            visitor.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME));
+      }
+    }
+  }
+
+  private void visitAnnotations(Element element, MethodVisitor visitor) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        visitAnnotationValues(
+            annotation,
+            visitor.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME));
+      }
+    }
+  }
+
+  private void visitAnnotationValues(AnnotationMirror annotation, AnnotationVisitor visitor) {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+         annotation.getElementValues().entrySet()) {
+      visitAnnotationValue(entry.getKey().getSimpleName().toString(), entry.getValue(), visitor);
+    }
+    visitor.visitEnd();
+  }
+
+  private void visitAnnotationValue(
+      @Nullable final String name,
+      AnnotationValue value,
+      final AnnotationVisitor visitor) {
+    value.accept(
+        new SimpleAnnotationValueVisitor8<Void, Void>() {
+          @Override
+          protected Void defaultAction(Object constant, Void unused) {
+            visitor.visit(name, constant);
+            return null;
+          }
+
+          @Override
+          public Void visitType(TypeMirror type, Void unused) {
+            visitor.visit(name, Type.getType(getDescriptor(type)));
+            return null;
+          }
+
+          @Override
+          public Void visitEnumConstant(VariableElement constant, Void unused) {
+            visitor.visitEnum(
+                name,
+                getDescriptor(constant.asType()),
+                constant.getSimpleName().toString());
+            return null;
+          }
+
+          @Override
+          public Void visitAnnotation(AnnotationMirror annotation, Void unused) {
+            visitAnnotationValues(
+                annotation,
+                visitor.visitAnnotation(name, getDescriptor(annotation.getAnnotationType())));
+            return null;
+          }
+
+          @Override
+          public Void visitArray(List<? extends AnnotationValue> values, Void unused) {
+            AnnotationVisitor arrayVisitor = visitor.visitArray(name);
+            for (AnnotationValue element : values) {
+              visitAnnotationValue(null, element, arrayVisitor);
+            }
+            arrayVisitor.visitEnd();
+            return null;
+          }
+        },
+        null);
+  }
+
+  private static RetentionPolicy getRetention(AnnotationMirror annotation) {
+    for (AnnotationMirror meta :
+         annotation.getAnnotationType().asElement().getAnnotationMirrors()) {
+      TypeElement metaType = (TypeElement) meta.getAnnotationType().asElement();
+      if (!metaType.getQualifiedName().contentEquals("java.lang.annotation.Retention")) {
+        continue;
+      }
+      for (AnnotationValue value : meta.getElementValues().values()) {
+        return RetentionPolicy.valueOf(
+            ((VariableElement) value.getValue()).getSimpleName().toString());
+      }
+    }
+    return RetentionPolicy.CLASS;
+  }
+
+  private int getClassAccess(TypeElement type) {
+    Set<Modifier> modifiers = type.getModifiers();
+    int access = 0;
+    if (modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED)) {
+      access |= Opcodes.ACC_PUBLIC;
+    }
+    return access | getTypeKindAccess(type);
+  }
+
+  private int getInnerClassAccess(TypeElement type) {
+    Set<Modifier> modifiers = type.getModifiers();
+    int access = getAccess(modifiers) & ~(Opcodes.ACC_ABSTRACT | Opcodes.ACC_FINAL);
+    if (type.getKind().isInterface() || type.getKind() == ElementKind.ENUM) {
+      access |= Opcodes.ACC_STATIC;
+    }
+    return access | (getTypeKindAccess(type) & ~Opcodes.ACC_SUPER);
+  }
+
+  private int getTypeKindAccess(TypeElement type) {
+    Set<Modifier> modifiers = type.getModifiers();
+    int access = elements.isDeprecated(type) ? Opcodes.ACC_DEPRECATED : 0;
+    switch (type.getKind()) {
+      case ANNOTATION_TYPE:
+        return access | Opcodes.ACC_ANNOTATION | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT;
+      case INTERFACE:
+        return access | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT;
+      case ENUM:
+        access |= Opcodes.ACC_ENUM | Opcodes.ACC_SUPER;
+        for (Element member : type.getEnclosedElements()) {
+          if (member.getKind() == ElementKind.METHOD &&
+              member.getModifiers().contains(Modifier.ABSTRACT)) {
+            return access | Opcodes.ACC_ABSTRACT;
+          }
+        }
+        // Enums are implicitly final unless one of their constants has a body.
+        return hasConstantWithBody(type) ? access : access | Opcodes.ACC_FINAL;
+      // $CASES-OMITTED$
+      default:
+        if (modifiers.contains(Modifier.ABSTRACT)) {
+          access |= Opcodes.ACC_ABSTRACT;
+        }
+        if (modifiers.contains(Modifier.FINAL)) {
+          access |= Opcodes.ACC_FINAL;
+        }
+        return access | Opcodes.ACC_SUPER;
+    }
+  }
+
+  private boolean hasConstantWithBody(TypeElement enumType) {
+    for (Element member : enumType.getEnclosedElements()) {
+      if (member.getKind() != ElementKind.ENUM_CONSTANT) {
+        continue;
+      }
+      Tree tree = trees.getTree(member);
+      if (tree instanceof VariableTree) {
+        ExpressionTree initializer = ((VariableTree) tree).getInitializer();
+        if (initializer instanceof NewClassTree &&
+            ((NewClassTree) initializer).getClassBody() != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static int getAccess(Set<Modifier> modifiers) {
+    int access = 0;
+    for (Modifier modifier : modifiers) {
+      switch (modifier) {
+        case PUBLIC:
+          access |= Opcodes.ACC_PUBLIC;
+          break;
+        case PROTECTED:
+          access |= Opcodes.ACC_PROTECTED;
+          break;
+        case PRIVATE:
+          access |= Opcodes.ACC_PRIVATE;
+          break;
+        case ABSTRACT:
+          access |= Opcodes.ACC_ABSTRACT;
+          break;
+        case STATIC:
+          access |= Opcodes.ACC_STATIC;
+          break;
+        case FINAL:
+          access |= Opcodes.ACC_FINAL;
+          break;
+        case TRANSIENT:
+          access |= Opcodes.ACC_TRANSIENT;
+          break;
+        case VOLATILE:
+          access |= Opcodes.ACC_VOLATILE;
+          break;
+        case SYNCHRONIZED:
+          access |= Opcodes.ACC_SYNCHRONIZED;
+          break;
+        case NATIVE:
+          access |= Opcodes.ACC_NATIVE;
+          break;
+        case STRICTFP:
+          access |= Opcodes.ACC_STRICT;
+          break;
+        // $CASES-OMITTED$
+        default:
+          break;
+      }
+    }
+    return access;
+  }
+
+  /**
+   * Converts a constant value as reported by javac to the type the class file format expects.
+   */
+  @Nullable
+  private static Object toClassFileConstant(@Nullable Object value) {
+    if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1 : 0;
+    } else if (value instanceof Character) {
+      return (int) (Character) value;
+    } else if (value instanceof Byte || value instanceof Short) {
+      return ((Number) value).intValue();
+    }
+    return value;
+  }
+
+  private String getInternalName(TypeElement type) {
+    return elements.getBinaryName(type).toString().replace('.', '/');
+  }
+
+  private static TypeMirror checkResolved(TypeMirror type) {
+    if (type.getKind() == TypeKind.ERROR) {
+      throw new UnresolvedTypeException(type);
+    }
+    return type;
+  }
+
+  private String getDescriptor(TypeMirror type) {
+    switch (checkResolved(type).getKind()) {
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      case VOID:
+        return "V";
+      case ARRAY:
+        return "[" + getDescriptor(((ArrayType) type).getComponentType());
+      case DECLARED:
+        return "L" + getInternalName((TypeElement) ((DeclaredType) type).asElement()) + ";";
+      case TYPEVAR:
+        return getDescriptor(((TypeVariable) type).getUpperBound());
+      case INTERSECTION:
+        return getDescriptor(
+            ((javax.lang.model.type.IntersectionType) type).getBounds().get(0));
+      // $CASES-OMITTED$
+      default:
+        throw new IllegalArgumentException("Unexpected type in signature: " + type);
+    }
+  }
+
+  private static boolean needsSignature(TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return needsSignature(((ArrayType) type).getComponentType());
+      case DECLARED:
+        return hasTypeArguments((DeclaredType) type);
+      case TYPEVAR:
+        return true;
+      // $CASES-OMITTED$
+      default:
+        return false;
+    }
+  }
+
+  private static boolean hasTypeArguments(DeclaredType type) {
+    if (!type.getTypeArguments().isEmpty()) {
+      return true;
+    }
+    TypeMirror enclosing = type.getEnclosingType();
+    return enclosing.getKind() == TypeKind.DECLARED && hasTypeArguments((DeclaredType) enclosing);
+  }
+
+  @Nullable
+  private String getClassSignature(TypeElement type) {
+    boolean needsSignature = !type.getTypeParameters().isEmpty() ||
+        needsSignature(type.getSuperclass());
+    for (TypeMirror iface : type.getInterfaces()) {
+      needsSignature |= needsSignature(iface);
+    }
+    if (!needsSignature) {
+      return null;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    appendTypeParameters(type.getTypeParameters(), builder);
+    if (type.getSuperclass().getKind() == TypeKind.DECLARED) {
+      appendSignature(type.getSuperclass(), builder);
+    } else {
+      builder.append("Ljava/lang/Object;");
+    }
+    for (TypeMirror iface : type.getInterfaces()) {
+      appendSignature(iface, builder);
+    }
+    return builder.toString();
+  }
+
+  private String getSignature(TypeMirror type) {
+    StringBuilder builder = new StringBuilder();
+    appendSignature(type, builder);
+    return builder.toString();
+  }
+
+  private void appendTypeParameters(
+      List<? extends TypeParameterElement> typeParameters,
+      StringBuilder builder) {
+    if (typeParameters.isEmpty()) {
+      return;
+    }
+    builder.append('<');
+    for (TypeParameterElement typeParameter : typeParameters) {
+      builder.append(typeParameter.getSimpleName());
+      List<? extends TypeMirror> bounds = typeParameter.getBounds();
+      if (!bounds.isEmpty() &&
+          ((DeclaredType) checkResolved(bounds.get(0))).asElement().getKind().isInterface()) {
+        // An empty class bound, followed by the interface bounds.
+        builder.append(':');
+      }
+      for (TypeMirror bound : bounds) {
+        builder.append(':');
+        appendSignature(bound, builder);
+      }
+    }
+    builder.append('>');
+  }
+
+  private void appendSignature(TypeMirror type, StringBuilder builder) {
+    switch (checkResolved(type).getKind()) {
+      case ARRAY:
+        builder.append('[');
+        appendSignature(((ArrayType) type).getComponentType(), builder);
+        break;
+      case DECLARED:
+        appendClassTypeSignature((DeclaredType) type, builder);
+        builder.append(';');
+        break;
+      case TYPEVAR:
+        builder.append('T').append(((TypeVariable) type).asElement().getSimpleName()).append(';');
+        break;
+      // $CASES-OMITTED$
+      default:
+        builder.append(getDescriptor(type));
+        break;
+    }
+  }
+
+  private void appendClassTypeSignature(DeclaredType type, StringBuilder builder) {
+    TypeElement element = (TypeElement) type.asElement();
+    TypeMirror enclosing = type.getEnclosingType();
+    if (enclosing.getKind() == TypeKind.DECLARED && hasTypeArguments((DeclaredType) enclosing)) {
+      appendClassTypeSignature((DeclaredType) enclosing, builder);
+      builder.append('.').append(element.getSimpleName());
+    } else {
+      builder.append('L').append(getInternalName(element));
+    }
+
+    List<? extends TypeMirror> typeArguments = type.getTypeArguments();
+    if (typeArguments.isEmpty()) {
+      return;
+    }
+    builder.append('<');
+    for (TypeMirror typeArgument : typeArguments) {
+      if (typeArgument.getKind() == TypeKind.WILDCARD) {
+        WildcardType wildcard = (WildcardType) typeArgument;
+        if (wildcard.getExtendsBound() != null) {
+          builder.append('+');
+          appendSignature(wildcard.getExtendsBound(), builder);
+        } else if (wildcard.getSuperBound() != null) {
+          builder.append('-');
+          appendSignature(wildcard.getSuperBound(), builder);
+        } else {
+          builder.append('*');
+        }
+      } else {
+        appendSignature(typeArgument, builder);
+      }
+    }
+    builder.append('>');
+  }
+
+  /**
+   * Thrown when the ABI refers to a type which javac could not resolve, typically because it is
+   * generated by an annotation processor, or missing from the classpath.
+   */
+  static class UnresolvedTypeException extends RuntimeException {
+    UnresolvedTypeException(TypeMirror type) {
+      super(String.format("Cannot resolve %s", type));
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.facebook.buck.io.HashingDeterministicJarWriter;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.sun.source.util.Trees;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarOutputStream;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+/**
+ * An annotation processor which writes stubs of the types being compiled as soon as javac has
+ * entered them.  Run with {@code -proc:only}, this produces the same ABI jar as {@link StubJar}
+ * would from the compiled library, without javac having to attribute method bodies or generate
+ * code, so that dependent libraries can start compiling before this one finishes.
+ */
+public class SourceAbiStubProcessor extends AbstractProcessor {
+
+  private final Map<String, byte[]> stubs = new TreeMap<>();
+  private boolean failed = false;
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return ImmutableSet.of("*");
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (roundEnv.processingOver()) {
+      return false;
+    }
+
+    ElementStubber stubber = new ElementStubber(
+        processingEnv.getElementUtils(),
+        Trees.instance(processingEnv));
+    for (Element element : roundEnv.getRootElements()) {
+      try {
+        if (element instanceof TypeElement) {
+          stubber.stubType((TypeElement) element, stubs);
+        } else if (element instanceof PackageElement) {
+          stubber.stubPackage((PackageElement) element, stubs);
+        }
+      } catch (ElementStubber.UnresolvedTypeException e) {
+        failed = true;
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether every type could be stubbed.  If not, errors will have been reported to javac.
+   */
+  public boolean isSuccessful() {
+    return !failed;
+  }
+
+  public ImmutableSortedMap<String, byte[]> getStubs() {
+    return ImmutableSortedMap.copyOf(stubs);
+  }
+
+  public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
+    Preconditions.checkState(!filesystem.exists(path), "Output file already exists: %s)", path);
+
+    if (path.getParent() != null && !filesystem.exists(path.getParent())) {
+      filesystem.createParentDirs(path);
+    }
+
+    try (
+        HashingDeterministicJarWriter jar = new HashingDeterministicJarWriter(
+            new JarOutputStream(
+                filesystem.newFileOutputStream(path)))) {
+      for (Map.Entry<String, byte[]> stub : stubs.entrySet()) {
+        jar.writeEntry(stub.getKey(), new ByteArrayInputStream(stub.getValue()));
+      }
+    }
+  }
+}
@@ -39,6 +39,7 @@ import com.facebook.buck.rules.TargetNode;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -56,6 +57,7 @@ public class IjProject {
   private final ProjectFilesystem projectFilesystem;
   private final IjModuleGraph.AggregationMode aggregationMode;
   private final IjProjectConfig projectConfig;
+  private final ListeningExecutorService executorService;
 
   public IjProject(
       TargetGraphAndTargets targetGraphAndTargets,
@@ -65,7 +67,8 @@ public class IjProject {
       SourcePathResolver sourcePathResolver,
       ProjectFilesystem projectFilesystem,
       IjModuleGraph.AggregationMode aggregationMode,
-      BuckConfig buckConfig) {
+      BuckConfig buckConfig,
+      ListeningExecutorService executorService) {
     this.targetGraphAndTargets = targetGraphAndTargets;
     this.javaPackageFinder = javaPackageFinder;
     this.javaFileParser = javaFileParser;
@@ -74,6 +77,7 @@ public class IjProject {
     this.projectFilesystem = projectFilesystem;
     this.aggregationMode = aggregationMode;
     this.projectConfig = IjProjectBuckConfig.create(buckConfig);
+    this.executorService = executorService;
   }
 
   /**
@@ -83,11 +87,12 @@ public class IjProject {
    * @return set of {@link BuildTarget}s which should be built in order for the project to index
    *   correctly.
    * @throws IOException
+   * @throws InterruptedException
    */
   public ImmutableSet<BuildTarget> write(
       boolean runPostGenerationCleaner,
       boolean excludeArtifacts)
-      throws IOException {
+      throws IOException, InterruptedException {
     final ImmutableSet.Builder<BuildTarget> requiredBuildTargets = ImmutableSet.builder();
     IjLibraryFactory libraryFactory = new DefaultIjLibraryFactory(
         new DefaultIjLibraryFactory.IjLibraryFactoryResolver() {
@@ -212,7 +217,8 @@ public class IjProject {
     IjProjectWriter writer = new IjProjectWriter(
         new IjProjectTemplateDataPreparer(parsingJavaPackageFinder, moduleGraph, projectFilesystem),
         projectConfig,
-        projectFilesystem);
+        projectFilesystem,
+        executorService);
     writer.write(runPostGenerationCleaner);
     return requiredBuildTargets.build();
   }
@@ -21,9 +21,16 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.FluentIterable;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
@@ -36,6 +43,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnull;
 
 /**
  * Writes the serialized representations of IntelliJ project components to disk.
@@ -63,31 +75,63 @@ public class IjProjectWriter {
     }
   }
 
+  private static final LoadingCache<StringTemplateFile, String> TEMPLATES =
+      CacheBuilder.newBuilder()
+          .build(
+              new CacheLoader<StringTemplateFile, String>() {
+                @Override
+                public String load(@Nonnull StringTemplateFile file) throws IOException {
+                  URL templateUrl =
+                      Resources.getResource(IjProjectWriter.class, file.getFileName());
+                  return Resources.toString(templateUrl, StandardCharsets.UTF_8);
+                }
+              });
+
   private IjProjectTemplateDataPreparer projectDataPreparer;
   private IjProjectConfig projectConfig;
   private ProjectFilesystem projectFilesystem;
+  private ListeningExecutorService executorService;
 
   public IjProjectWriter(
       IjProjectTemplateDataPreparer projectDataPreparer,
       IjProjectConfig projectConfig,
-      ProjectFilesystem projectFilesystem) {
+      ProjectFilesystem projectFilesystem,
+      ListeningExecutorService executorService) {
     this.projectDataPreparer = projectDataPreparer;
     this.projectConfig = projectConfig;
     this.projectFilesystem = projectFilesystem;
+    this.executorService = executorService;
   }
 
-  public void write(boolean runPostGenerationCleaner) throws IOException {
+  /**
+   * Writes every module and library.  Their files are rendered in parallel, and a file is only
+   * rewritten if its contents have changed, so that IntelliJ only re-indexes what it needs to.
+   */
+  public void write(boolean runPostGenerationCleaner) throws IOException, InterruptedException {
     IJProjectCleaner cleaner = new IJProjectCleaner(projectFilesystem);
 
     writeProjectSettings(cleaner, projectConfig);
 
-    for (IjModule module : projectDataPreparer.getModulesToBeWritten()) {
-      Path generatedModuleFile = writeModule(module);
-      cleaner.doNotDelete(generatedModuleFile);
+    projectFilesystem.mkdirs(MODULES_PREFIX);
+    projectFilesystem.mkdirs(LIBRARIES_PREFIX);
+    List<ListenableFuture<Path>> generatedFiles = new ArrayList<>();
+    for (final IjModule module : projectDataPreparer.getModulesToBeWritten()) {
+      generatedFiles.add(executorService.submit(() -> writeModule(module)));
     }
-    for (IjLibrary library : projectDataPreparer.getLibrariesToBeWritten()) {
-      Path generatedLibraryFile = writeLibrary(library);
-      cleaner.doNotDelete(generatedLibraryFile);
+    for (final IjLibrary library : projectDataPreparer.getLibrariesToBeWritten()) {
+      generatedFiles.add(executorService.submit(() -> writeLibrary(library)));
+    }
+    try {
+      for (Path generatedFile : Futures.allAsList(generatedFiles).get()) {
+        cleaner.doNotDelete(generatedFile);
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (ListenableFuture<Path> generatedFile : generatedFiles) {
+        generatedFile.cancel(true);
+      }
     }
     Path indexFile = writeModulesIndex();
     cleaner.doNotDelete(indexFile);
@@ -98,7 +142,6 @@ public class IjProjectWriter {
   }
 
   private Path writeModule(IjModule module) throws IOException {
-    projectFilesystem.mkdirs(MODULES_PREFIX);
     Path path = module.getModuleImlFilePath();
 
     ST moduleContents = getST(StringTemplateFile.MODULE_TEMPLATE);
@@ -162,7 +205,6 @@ public class IjProjectWriter {
   }
 
   private Path writeLibrary(IjLibrary library) throws IOException {
-    projectFilesystem.mkdirs(LIBRARIES_PREFIX);
     Path path = LIBRARIES_PREFIX.resolve(library.getName() + ".xml");
 
     ST contents = getST(StringTemplateFile.LIBRARY_TEMPLATE);
@@ -190,9 +232,12 @@ public class IjProjectWriter {
   }
 
   private static ST getST(StringTemplateFile file) throws IOException {
-    URL templateUrl = Resources.getResource(IjProjectWriter.class, file.getFileName());
-    String template = Resources.toString(templateUrl, StandardCharsets.UTF_8);
-    return new ST(template, DELIMITER, DELIMITER);
+    try {
+      return new ST(TEMPLATES.get(file), DELIMITER, DELIMITER);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
   }
 
   @VisibleForTesting
@@ -200,7 +245,7 @@ public class IjProjectWriter {
     StringWriter stringWriter = new StringWriter();
     AutoIndentWriter noIndentWriter = new AutoIndentWriter(stringWriter);
     contents.write(noIndentWriter);
-    byte[] renderedContentsBytes = noIndentWriter.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] renderedContentsBytes = stringWriter.toString().getBytes(StandardCharsets.UTF_8);
     if (projectFilesystem.exists(path)) {
       Sha1HashCode fileSha1 = projectFilesystem.computeSha1(path);
       Sha1HashCode contentsSha1 = Sha1HashCode.fromHashCode(Hashing.sha1()
@@ -218,7 +263,7 @@ public class IjProjectWriter {
     try {
       danglingTempFile = true;
       try (OutputStream outputStream = projectFilesystem.newFileOutputStream(tempFile)) {
-        outputStream.write(contents.render().getBytes());
+        outputStream.write(renderedContentsBytes);
       }
       projectFilesystem.createParentDirs(path);
       projectFilesystem.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
@@ -28,6 +28,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -175,25 +176,29 @@ public class Resolver {
     ImmutableMap<String, Artifact> knownDeps = getRunTimeTransitiveDeps(
         specifiedDependencies.values());
 
-    // We now have the complete set of dependencies. Build the graph of dependencies. We'd like
-    // aether to do this for us, but it doesn't preserve the complete dependency information we need
-    // to accurately construct build files.
-    final MutableDirectedGraph<Artifact> graph = buildDependencyGraph(knownDeps);
+    ListeningExecutorService exec = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new MostExecutors.NamedThreadFactory("artifact download")));
+    try {
+      // We now have the complete set of dependencies. Build the graph of dependencies. We'd like
+      // aether to do this for us, but it doesn't preserve the complete dependency information we
+      // need to accurately construct build files.
+      final MutableDirectedGraph<Artifact> graph = buildDependencyGraph(exec, knownDeps);
 
-    // Now we have the graph, grab the sources and jars for each dependency, as well as the relevant
-    // checksums (which are download by default. Yay!)
-    ImmutableSetMultimap<Path, Prebuilt> downloadedArtifacts = downloadArtifacts(graph);
+      // Now we have the graph, grab the sources and jars for each dependency, as well as the
+      // relevant checksums (which are download by default. Yay!)
+      ImmutableSetMultimap<Path, Prebuilt> downloadedArtifacts = downloadArtifacts(exec, graph);
 
-    createBuckFiles(downloadedArtifacts);
+      createBuckFiles(downloadedArtifacts);
+    } finally {
+      exec.shutdown();
+    }
   }
 
   private ImmutableSetMultimap<Path, Prebuilt> downloadArtifacts(
+      ListeningExecutorService exec,
       final MutableDirectedGraph<Artifact> graph) throws ExecutionException, InterruptedException {
-    ListeningExecutorService exec = MoreExecutors.listeningDecorator(
-        Executors.newFixedThreadPool(
-            Runtime.getRuntime().availableProcessors(),
-            new MostExecutors.NamedThreadFactory("artifact download")));
-
     @SuppressWarnings("unchecked")
     List<ListenableFuture<Map.Entry<Path, Prebuilt>>> results =
         (List<ListenableFuture<Map.Entry<Path, Prebuilt>>>) (List<?>)
@@ -202,14 +207,10 @@ public class Resolver {
                 (Callable<Map.Entry<Path, Prebuilt>>) () -> downloadArtifact(artifact, graph))
             .toList());
 
-    try {
-      return ImmutableSetMultimap.<Path, Prebuilt>builder()
-          .orderValuesBy(Ordering.natural())
-          .putAll(Futures.allAsList(results).get())
-          .build();
-    } finally {
-      exec.shutdown();
-    }
+    return ImmutableSetMultimap.<Path, Prebuilt>builder()
+        .orderValuesBy(Ordering.natural())
+        .putAll(Futures.allAsList(results).get())
+        .build();
   }
 
   private Map.Entry<Path, Prebuilt> downloadArtifact(
@@ -395,16 +396,35 @@ public class Resolver {
   }
 
   private  MutableDirectedGraph<Artifact> buildDependencyGraph(
-      Map<String, Artifact> knownDeps) throws ArtifactDescriptorException {
+      ListeningExecutorService exec,
+      Map<String, Artifact> knownDeps)
+      throws ArtifactDescriptorException, ExecutionException, InterruptedException {
+    // Reading each descriptor may mean fetching a pom, so do them all at once.
+    @SuppressWarnings("unchecked")
+    List<ListenableFuture<List<Dependency>>> descriptors =
+        (List<ListenableFuture<List<Dependency>>>) (List<?>)
+        exec.invokeAll(FluentIterable.from(knownDeps.values())
+            .transform(artifact ->
+                (Callable<List<Dependency>>) () -> getDependenciesOf(artifact))
+            .toList());
+    List<List<Dependency>> allDependencies;
+    try {
+      allDependencies = Futures.allAsList(descriptors).get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), ArtifactDescriptorException.class);
+      throw e;
+    }
+
     MutableDirectedGraph<Artifact> graph;
     graph = new MutableDirectedGraph<>();
+    int index = 0;
     for (Map.Entry<String, Artifact> entry : knownDeps.entrySet()) {
       String key = entry.getKey();
       Artifact artifact = entry.getValue();
 
       graph.addNode(artifact);
 
-      List<Dependency> dependencies = getDependenciesOf(artifact);
+      List<Dependency> dependencies = allDependencies.get(index++);
 
       for (Dependency dependency : dependencies) {
         if (dependency.getArtifact() == null) {
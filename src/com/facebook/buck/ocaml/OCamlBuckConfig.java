@@ -104,6 +104,10 @@ public class OCamlBuckConfig {
     return cxxPlatform.getLd();
   }
 
+  public boolean isParallelBuildEnabled() {
+    return delegate.getBooleanValue("ocaml", "parallel_build", false);
+  }
+
   public Optional<Tool> getOCamlDebug() {
     return getTool("ocaml", "debug", DEFAULT_OCAML_DEBUG);
   }
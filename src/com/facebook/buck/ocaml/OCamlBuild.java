@@ -43,6 +43,7 @@ public class OCamlBuild extends AbstractBuildRule {
   private final Compiler cxxCompiler;
   @AddToRuleKey
   private final boolean bytecodeOnly;
+  private final boolean parallelBuild;
 
   public OCamlBuild(
       BuildRuleParams params,
@@ -50,12 +51,14 @@ public class OCamlBuild extends AbstractBuildRule {
       OCamlBuildContext ocamlContext,
       Compiler cCompiler,
       Compiler cxxCompiler,
-      boolean bytecodeOnly) {
+      boolean bytecodeOnly,
+      boolean parallelBuild) {
     super(params, resolver);
     this.ocamlContext = ocamlContext;
     this.cCompiler = cCompiler;
     this.cxxCompiler = cxxCompiler;
     this.bytecodeOnly = bytecodeOnly;
+    this.parallelBuild = parallelBuild;
 
     Preconditions.checkNotNull(ocamlContext.getInput());
   }
@@ -84,7 +87,8 @@ public class OCamlBuild extends AbstractBuildRule {
             cCompiler.getCommandPrefix(getResolver()),
             cxxCompiler.getEnvironment(getResolver()),
             cxxCompiler.getCommandPrefix(getResolver()),
-            bytecodeOnly));
+            bytecodeOnly,
+            parallelBuild));
   }
 
   @Override
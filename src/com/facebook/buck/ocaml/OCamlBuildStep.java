@@ -25,13 +25,24 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A step that preprocesses, compiles, and assembles OCaml sources.
@@ -46,6 +57,7 @@ public class OCamlBuildStep implements Step {
   private final ImmutableMap<String, String> cxxCompilerEnvironment;
   private final ImmutableList<String> cxxCompiler;
   private final boolean bytecodeOnly;
+  private final boolean parallelBuild;
 
   private final boolean hasGeneratedSources;
   private final OCamlDepToolStep depToolStep;
@@ -58,7 +70,8 @@ public class OCamlBuildStep implements Step {
       ImmutableList<String> cCompiler,
       ImmutableMap<String, String> cxxCompilerEnvironment,
       ImmutableList<String> cxxCompiler,
-      boolean bytecodeOnly) {
+      boolean bytecodeOnly,
+      boolean parallelBuild) {
     this.resolver = resolver;
     this.filesystem = filesystem;
     this.ocamlContext = ocamlContext;
@@ -67,6 +80,7 @@ public class OCamlBuildStep implements Step {
     this.cxxCompilerEnvironment = cxxCompilerEnvironment;
     this.cxxCompiler = cxxCompiler;
     this.bytecodeOnly = bytecodeOnly;
+    this.parallelBuild = parallelBuild;
 
     hasGeneratedSources = ocamlContext.getLexInput().size() > 0 ||
         ocamlContext.getYaccInput().size() > 0;
@@ -118,32 +132,26 @@ public class OCamlBuildStep implements Step {
             ocamlContext.getSourcePathResolver().getAllAbsolutePaths(ocamlContext.getMLInput()));
 
     ImmutableList.Builder<Path> nativeLinkerInputs = ImmutableList.builder();
-
-    if (!bytecodeOnly) {
-      StepExecutionResult mlCompileNativeExecutionResult = executeMLNativeCompilation(
+    ImmutableList.Builder<Path> bytecodeLinkerInputs = ImmutableList.builder();
+    ImmutableList.Builder<Path> cLinkerInputs = ImmutableList.builder();
+    StepExecutionResult compileExecutionResult;
+    if (parallelBuild) {
+      compileExecutionResult = executeCompilationInParallel(
           context,
-          filesystem.getRootPath(),
           sortedInput,
-          nativeLinkerInputs);
-      if (!mlCompileNativeExecutionResult.isSuccess()) {
-        return mlCompileNativeExecutionResult;
-      }
-    }
-
-    ImmutableList.Builder<Path> bytecodeLinkerInputs = ImmutableList.builder();
-    StepExecutionResult mlCompileBytecodeExecutionResult = executeMLBytecodeCompilation(
-        context,
-        filesystem.getRootPath(),
-        sortedInput,
-        bytecodeLinkerInputs);
-    if (!mlCompileBytecodeExecutionResult.isSuccess()) {
-      return mlCompileBytecodeExecutionResult;
+          nativeLinkerInputs,
+          bytecodeLinkerInputs,
+          cLinkerInputs);
+    } else {
+      compileExecutionResult = executeCompilation(
+          context,
+          sortedInput,
+          nativeLinkerInputs,
+          bytecodeLinkerInputs,
+          cLinkerInputs);
     }
-
-    ImmutableList.Builder<Path> cLinkerInputs = ImmutableList.builder();
-    StepExecutionResult cCompileExecutionResult = executeCCompilation(context, cLinkerInputs);
-    if (!cCompileExecutionResult.isSuccess()) {
-      return cCompileExecutionResult;
+    if (!compileExecutionResult.isSuccess()) {
+      return compileExecutionResult;
     }
 
     ImmutableList<Path> cObjects = cLinkerInputs.build();
@@ -183,37 +191,249 @@ public class OCamlBuildStep implements Step {
     }
   }
 
+  /**
+   * Compiles the ML modules to native code, then to bytecode, and then the C sources, one at a
+   * time.
+   */
+  private StepExecutionResult executeCompilation(
+      ExecutionContext context,
+      ImmutableList<Path> sortedInput,
+      ImmutableList.Builder<Path> nativeLinkerInputs,
+      ImmutableList.Builder<Path> bytecodeLinkerInputs,
+      ImmutableList.Builder<Path> cLinkerInputs) throws IOException, InterruptedException {
+    if (!bytecodeOnly) {
+      StepExecutionResult mlCompileNativeExecutionResult = executeMLNativeCompilation(
+          context,
+          sortedInput,
+          nativeLinkerInputs);
+      if (!mlCompileNativeExecutionResult.isSuccess()) {
+        return mlCompileNativeExecutionResult;
+      }
+    }
+
+    StepExecutionResult mlCompileBytecodeExecutionResult = executeMLBytecodeCompilation(
+        context,
+        sortedInput,
+        bytecodeLinkerInputs);
+    if (!mlCompileBytecodeExecutionResult.isSuccess()) {
+      return mlCompileBytecodeExecutionResult;
+    }
+
+    return executeCCompilation(context, cLinkerInputs);
+  }
+
+  /**
+   * Compiles the same things as {@link #executeCompilation}, but on a pool of as many threads as
+   * the build may use: each ML module is compiled as soon as the modules ocamldep says it depends
+   * on have been, and the native, bytecode and C compilations all overlap.  The linker inputs are
+   * added in the same order as when compiling one at a time.
+   */
+  private StepExecutionResult executeCompilationInParallel(
+      final ExecutionContext context,
+      ImmutableList<Path> sortedInput,
+      ImmutableList.Builder<Path> nativeLinkerInputs,
+      ImmutableList.Builder<Path> bytecodeLinkerInputs,
+      ImmutableList.Builder<Path> cLinkerInputs) throws IOException, InterruptedException {
+    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(
+        MostExecutors.newMultiThreadExecutor(
+            "OCaml compile",
+            context.getConcurrencyLimit().threadLimit));
+    try {
+      return executeCompilationInParallel(
+          context,
+          executorService,
+          sortedInput,
+          nativeLinkerInputs,
+          bytecodeLinkerInputs,
+          cLinkerInputs);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private StepExecutionResult executeCompilationInParallel(
+      final ExecutionContext context,
+      ListeningExecutorService executorService,
+      ImmutableList<Path> sortedInput,
+      ImmutableList.Builder<Path> nativeLinkerInputs,
+      ImmutableList.Builder<Path> bytecodeLinkerInputs,
+      ImmutableList.Builder<Path> cLinkerInputs) throws IOException, InterruptedException {
+    ImmutableMap<Path, ImmutableSet<Path>> moduleDeps =
+        getModuleDependencies(depToolStep.getStdout(), sortedInput);
+
+    List<ListenableFuture<StepExecutionResult>> results = new ArrayList<>();
+    if (!bytecodeOnly) {
+      StepExecutionResult mkDirExecutionResult = new MakeCleanDirectoryStep(
+          filesystem,
+          ocamlContext.getCompileNativeOutputDir()).execute(context);
+      if (!mkDirExecutionResult.isSuccess()) {
+        return mkDirExecutionResult;
+      }
+      results.addAll(
+          scheduleMLCompilation(
+              context,
+              executorService,
+              sortedInput,
+              moduleDeps,
+              /* isBytecode */ false,
+              nativeLinkerInputs));
+    }
+
+    StepExecutionResult mkDirExecutionResult = new MakeCleanDirectoryStep(
+        filesystem,
+        ocamlContext.getCompileBytecodeOutputDir()).execute(context);
+    if (!mkDirExecutionResult.isSuccess()) {
+      return mkDirExecutionResult;
+    }
+    results.addAll(
+        scheduleMLCompilation(
+            context,
+            executorService,
+            sortedInput,
+            moduleDeps,
+            /* isBytecode */ true,
+            bytecodeLinkerInputs));
+
+    for (final Step compileStep : getCCompileSteps(cLinkerInputs)) {
+      results.add(executorService.submit(() -> compileStep.execute(context)));
+    }
+
+    List<StepExecutionResult> executionResults;
+    try {
+      executionResults = Futures.allAsList(results).get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    for (StepExecutionResult executionResult : executionResults) {
+      if (!executionResult.isSuccess()) {
+        return executionResult;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return a future for the compilation of each module in {@code sortedInput}, in order, which
+   *     starts once those of the modules it depends on have succeeded.  If any of them failed, so
+   *     does the module, with the same result.
+   */
+  private ImmutableList<ListenableFuture<StepExecutionResult>> scheduleMLCompilation(
+      final ExecutionContext context,
+      ListeningExecutorService executorService,
+      ImmutableList<Path> sortedInput,
+      ImmutableMap<Path, ImmutableSet<Path>> moduleDeps,
+      boolean isBytecode,
+      ImmutableList.Builder<Path> linkerInputs) {
+    Map<Path, ListenableFuture<StepExecutionResult>> compilations = new HashMap<>();
+    ImmutableList.Builder<ListenableFuture<StepExecutionResult>> results = ImmutableList.builder();
+    // Dependencies are always sorted before the modules depending on them, so their futures
+    // already exist by the time they're needed.
+    for (Path input : sortedInput) {
+      Path outputPath = getMLOutputPath(input, isBytecode);
+      if (!outputPath.toString().endsWith(OCamlCompilables.OCAML_CMI)) {
+        linkerInputs.add(outputPath);
+      }
+      final Step compileStep = newMLCompileStep(input, outputPath, isBytecode);
+
+      List<ListenableFuture<StepExecutionResult>> depResults = new ArrayList<>();
+      for (Path dep : moduleDeps.get(input)) {
+        ListenableFuture<StepExecutionResult> depResult = compilations.get(dep);
+        if (depResult != null) {
+          depResults.add(depResult);
+        }
+      }
+      ListenableFuture<StepExecutionResult> result = Futures.transformAsync(
+          Futures.allAsList(depResults),
+          depExecutionResults -> {
+            for (StepExecutionResult depExecutionResult : depExecutionResults) {
+              if (!depExecutionResult.isSuccess()) {
+                return Futures.immediateFuture(depExecutionResult);
+              }
+            }
+            return Futures.immediateFuture(compileStep.execute(context));
+          },
+          executorService);
+      compilations.put(input, result);
+      results.add(result);
+    }
+    return results.build();
+  }
+
+  /**
+   * @return the modules in {@code sortedInput} which each of them needs to be compiled after,
+   *     going by the output of ocamldep.
+   */
+  private static ImmutableMap<Path, ImmutableSet<Path>> getModuleDependencies(
+      String depOutput,
+      ImmutableList<Path> sortedInput) {
+    ImmutableMap<Path, ImmutableList<Path>> depMap =
+        new OCamlDependencyGraphGenerator().generateDependencyMap(depOutput);
+    ImmutableSet<Path> inputs = ImmutableSet.copyOf(sortedInput);
+    ImmutableMap.Builder<Path, ImmutableSet<Path>> moduleDeps = ImmutableMap.builder();
+    for (Path input : sortedInput) {
+      ImmutableSet.Builder<Path> deps = ImmutableSet.builder();
+      ImmutableList<Path> listedDeps = depMap.get(input);
+      if (listedDeps != null) {
+        for (Path dep : listedDeps) {
+          if (inputs.contains(dep) && !dep.equals(input)) {
+            deps.add(dep);
+          }
+        }
+      }
+      // An implementation is always compiled against its own interface, if it has one.
+      String inputString = input.toString();
+      if (inputString.endsWith(OCamlCompilables.OCAML_ML) ||
+          inputString.endsWith(OCamlCompilables.OCAML_RE)) {
+        Path mli = input.resolveSibling(input.getFileName() + "i");
+        if (inputs.contains(mli)) {
+          deps.add(mli);
+        }
+      }
+      moduleDeps.put(input, deps.build());
+    }
+    return moduleDeps.build();
+  }
+
   private StepExecutionResult executeCCompilation(
       ExecutionContext context,
       ImmutableList.Builder<Path> linkerInputs) throws IOException, InterruptedException {
+    for (Step compileStep : getCCompileSteps(linkerInputs)) {
+      StepExecutionResult compileExecutionResult = compileStep.execute(context);
+      if (!compileExecutionResult.isSuccess()) {
+        return compileExecutionResult;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
 
+  private ImmutableList<Step> getCCompileSteps(ImmutableList.Builder<Path> linkerInputs) {
     ImmutableList.Builder<String> cCompileFlags = ImmutableList.builder();
     cCompileFlags.addAll(ocamlContext.getCCompileFlags());
     cCompileFlags.addAll(ocamlContext.getCommonCFlags());
 
     CxxPreprocessorInput cxxPreprocessorInput = ocamlContext.getCxxPreprocessorInput();
 
+    ImmutableList.Builder<Step> compileSteps = ImmutableList.builder();
     for (SourcePath cSrc : ocamlContext.getCInput()) {
       Path outputPath = ocamlContext.getCOutput(resolver.getAbsolutePath(cSrc));
       linkerInputs.add(outputPath);
-      Step compileStep = new OCamlCCompileStep(
-          resolver,
-          filesystem.getRootPath(),
-          new OCamlCCompileStep.Args(
-              cCompilerEnvironment,
-              cCompiler,
-              ocamlContext.getOcamlCompiler().get(),
-              ocamlContext.getOCamlInteropIncludesDir(),
-              outputPath,
-              cSrc,
-              cCompileFlags.build(),
-              cxxPreprocessorInput.getIncludes()));
-      StepExecutionResult compileExecutionResult = compileStep.execute(context);
-      if (!compileExecutionResult.isSuccess()) {
-        return compileExecutionResult;
-      }
+      compileSteps.add(
+          new OCamlCCompileStep(
+              resolver,
+              filesystem.getRootPath(),
+              new OCamlCCompileStep.Args(
+                  cCompilerEnvironment,
+                  cCompiler,
+                  ocamlContext.getOcamlCompiler().get(),
+                  ocamlContext.getOCamlInteropIncludesDir(),
+                  outputPath,
+                  cSrc,
+                  cCompileFlags.build(),
+                  cxxPreprocessorInput.getIncludes())));
     }
-    return StepExecutionResult.SUCCESS;
+    return compileSteps.build();
   }
 
   private StepExecutionResult executeNativeLinking(
@@ -276,9 +496,38 @@ public class OCamlBuildStep implements Step {
     return flagBuilder.build();
   }
 
+  private Path getMLOutputPath(Path input, boolean isBytecode) {
+    String objectExtension = isBytecode ? OCamlCompilables.OCAML_CMO : OCamlCompilables.OCAML_CMX;
+    String outputFileName = input.getFileName().toString()
+        .replaceFirst(OCamlCompilables.OCAML_ML_REGEX, objectExtension)
+        .replaceFirst(OCamlCompilables.OCAML_RE_REGEX, objectExtension)
+        .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI)
+        .replaceFirst(OCamlCompilables.OCAML_REI_REGEX, OCamlCompilables.OCAML_CMI);
+    Path outputDir = isBytecode ?
+        ocamlContext.getCompileBytecodeOutputDir() :
+        ocamlContext.getCompileNativeOutputDir();
+    return outputDir.resolve(outputFileName);
+  }
+
+  private Step newMLCompileStep(Path input, Path outputPath, boolean isBytecode) {
+    return new OCamlMLCompileStep(
+        filesystem.getRootPath(),
+        resolver,
+        new OCamlMLCompileStep.Args(
+            filesystem.getAbsolutifier(),
+            cCompilerEnvironment,
+            cCompiler,
+            isBytecode ?
+                ocamlContext.getOcamlBytecodeCompiler().get() :
+                ocamlContext.getOcamlCompiler().get(),
+            ocamlContext.getOCamlInteropIncludesDir(),
+            outputPath,
+            input,
+            getCompileFlags(isBytecode, /* excludeDeps */ false)));
+  }
+
   private StepExecutionResult executeMLNativeCompilation(
       ExecutionContext context,
-      Path workingDirectory,
       ImmutableList<Path> sortedInput,
       ImmutableList.Builder<Path> linkerInputs
   ) throws IOException, InterruptedException {
@@ -290,31 +539,11 @@ public class OCamlBuildStep implements Step {
       return mkDirExecutionResult;
     }
     for (Path inputOutput : sortedInput) {
-      String inputFileName = inputOutput.getFileName().toString();
-      String outputFileName = inputFileName
-          .replaceFirst(OCamlCompilables.OCAML_ML_REGEX, OCamlCompilables.OCAML_CMX)
-          .replaceFirst(OCamlCompilables.OCAML_RE_REGEX, OCamlCompilables.OCAML_CMX)
-          .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI)
-          .replaceFirst(OCamlCompilables.OCAML_REI_REGEX, OCamlCompilables.OCAML_CMI);
-      Path outputPath = ocamlContext.getCompileNativeOutputDir().resolve(outputFileName);
-      if (!outputFileName.endsWith(OCamlCompilables.OCAML_CMI)) {
+      Path outputPath = getMLOutputPath(inputOutput, /* isBytecode */ false);
+      if (!outputPath.toString().endsWith(OCamlCompilables.OCAML_CMI)) {
         linkerInputs.add(outputPath);
       }
-      final ImmutableList<String> compileFlags = getCompileFlags(
-          /* isBytecode */ false,
-          /* excludeDeps */ false);
-      Step compileStep = new OCamlMLCompileStep(
-          workingDirectory,
-          resolver,
-          new OCamlMLCompileStep.Args(
-              filesystem.getAbsolutifier(),
-              cCompilerEnvironment,
-              cCompiler,
-              ocamlContext.getOcamlCompiler().get(),
-              ocamlContext.getOCamlInteropIncludesDir(),
-              outputPath,
-              inputOutput,
-              compileFlags));
+      Step compileStep = newMLCompileStep(inputOutput, outputPath, /* isBytecode */ false);
       StepExecutionResult compileExecutionResult = compileStep.execute(context);
       if (!compileExecutionResult.isSuccess()) {
         return compileExecutionResult;
@@ -325,7 +554,6 @@ public class OCamlBuildStep implements Step {
 
   private StepExecutionResult executeMLBytecodeCompilation(
       ExecutionContext context,
-      Path workingDirectory,
       ImmutableList<Path> sortedInput,
       ImmutableList.Builder<Path> linkerInputs
   ) throws IOException, InterruptedException {
@@ -337,31 +565,11 @@ public class OCamlBuildStep implements Step {
       return mkDirExecutionResult;
     }
     for (Path inputOutput : sortedInput) {
-      String inputFileName = inputOutput.getFileName().toString();
-      String outputFileName = inputFileName
-          .replaceFirst(OCamlCompilables.OCAML_ML_REGEX, OCamlCompilables.OCAML_CMO)
-          .replaceFirst(OCamlCompilables.OCAML_RE_REGEX, OCamlCompilables.OCAML_CMO)
-          .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI)
-          .replaceFirst(OCamlCompilables.OCAML_REI_REGEX, OCamlCompilables.OCAML_CMI);
-      Path outputPath = ocamlContext.getCompileBytecodeOutputDir().resolve(outputFileName);
-      if (!outputFileName.endsWith(OCamlCompilables.OCAML_CMI)) {
+      Path outputPath = getMLOutputPath(inputOutput, /* isBytecode */ true);
+      if (!outputPath.toString().endsWith(OCamlCompilables.OCAML_CMI)) {
         linkerInputs.add(outputPath);
       }
-      final ImmutableList<String> compileFlags = getCompileFlags(
-          /* isBytecode */ true,
-          /* excludeDeps */ false);
-      Step compileBytecodeStep = new OCamlMLCompileStep(
-          workingDirectory,
-          resolver,
-          new OCamlMLCompileStep.Args(
-              filesystem.getAbsolutifier(),
-              cCompilerEnvironment,
-              cCompiler,
-              ocamlContext.getOcamlBytecodeCompiler().get(),
-              ocamlContext.getOCamlInteropIncludesDir(),
-              outputPath,
-              inputOutput,
-              compileFlags));
+      Step compileBytecodeStep = newMLCompileStep(inputOutput, outputPath, /* isBytecode */ true);
       StepExecutionResult compileExecutionResult = compileBytecodeStep.execute(context);
       if (!compileExecutionResult.isSuccess()) {
         return compileExecutionResult;
@@ -299,7 +299,8 @@ public class OCamlRuleBuilder {
         ocamlContext,
         ocamlBuckConfig.getCCompiler().resolve(resolver),
         ocamlBuckConfig.getCxxCompiler().resolve(resolver),
-        bytecodeOnly);
+        bytecodeOnly,
+        ocamlBuckConfig.isParallelBuildEnabled());
     resolver.addToIndex(ocamlLibraryBuild);
 
     if (isLibrary) {
@@ -159,6 +159,11 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getLong("project", "watchman_query_timeout_ms");
   }
 
+  @Value.Lazy
+  public boolean getEnableWatchmanSubscription() {
+    return getDelegate().getBooleanValue("project", "watchman_subscription", false);
+  }
+
   @Value.Lazy
   public boolean getEnableParallelParsing() {
     return getDelegate().getBooleanValue("project", "parallel_parsing", true);
@@ -18,10 +18,12 @@ package com.facebook.buck.parser;
 
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.HistogramCounter;
 import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.counters.TagSetCounter;
 import com.facebook.buck.event.ParsingEvent;
 import com.facebook.buck.event.listener.BroadcastEventListener;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.io.WatchEvents;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.log.Logger;
@@ -54,6 +56,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -97,6 +100,7 @@ class DaemonicParserState {
       "rules_invalidated_by_watch_events";
   private static final String PATHS_ADDED_OR_REMOVED_INVALIDATING_BUILD_FILES =
       "paths_added_or_removed_invalidating_build_files";
+  private static final String BUILD_FILE_PARSE_TIME_COUNTER_NAME = "build_file_parse_time_ms";
 
   /**
    * Taken from {@link ConcurrentMap}.
@@ -260,6 +264,7 @@ class DaemonicParserState {
   private final IntegerCounter filesChangedCounter;
   private final IntegerCounter rulesInvalidatedByWatchEventsCounter;
   private final TagSetCounter pathsAddedOrRemovedInvalidatingBuildFiles;
+  private final HistogramCounter buildFileParseTimeMs;
 
   /**
    * The set of {@link Cell} instances that have been seen by this state. This information is used
@@ -332,6 +337,10 @@ class DaemonicParserState {
             COUNTER_CATEGORY,
             PATHS_ADDED_OR_REMOVED_INVALIDATING_BUILD_FILES,
             ImmutableMap.of());
+    this.buildFileParseTimeMs = new HistogramCounter(
+        COUNTER_CATEGORY,
+        BUILD_FILE_PARSE_TIME_COUNTER_NAME,
+        ImmutableMap.of());
     this.buildFileTrees = CacheBuilder.newBuilder().build(
         new CacheLoader<Cell, BuildFileTree>() {
           @Override
@@ -383,6 +392,13 @@ class DaemonicParserState {
     return rawNodeCache;
   }
 
+  /**
+   * @return the counter recording how long each build file took to be evaluated.
+   */
+  public HistogramCounter getBuildFileParseTimeCounter() {
+    return buildFileParseTimeMs;
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
@@ -402,6 +418,11 @@ class DaemonicParserState {
   }
 
   public void invalidateBasedOn(WatchEvent<?> event) throws InterruptedException {
+    if (event instanceof WatchEventBatch) {
+      invalidateBasedOnPathEvents(((WatchEventBatch) event).getEvents());
+      return;
+    }
+
     if (!WatchEvents.isPathChangeEvent(event)) {
       // Non-path change event, likely an overflow due to many change events: invalidate everything.
       LOG.debug("Received non-path change event %s, assuming overflow and checking caches.", event);
@@ -413,50 +434,76 @@ class DaemonicParserState {
       return;
     }
 
-    filesChangedCounter.inc();
+    invalidateBasedOnPathEvents(ImmutableList.of(event));
+  }
 
-    Path path = (Path) event.context();
+  /**
+   * Invalidates what a batch of path changes affect.  However many paths are in the batch, each
+   * cell's build file tree is looked up and invalidated at most once, and each path is only
+   * invalidated once.
+   */
+  private void invalidateBasedOnPathEvents(ImmutableList<? extends WatchEvent<?>> events) {
+    filesChangedCounter.inc(events.size());
+
+    // We only care about creation and deletion events because modified should result in a
+    // rule key change.  For parsing, these are the only events we need to care about.
+    Set<Path> changedPaths = new LinkedHashSet<>();
+    Set<Path> addedOrRemovedPaths = new LinkedHashSet<>();
+    for (WatchEvent<?> event : events) {
+      Path path = (Path) event.context();
+      changedPaths.add(path);
+      if (isPathCreateOrDeleteEvent(event)) {
+        addedOrRemovedPaths.add(path);
+      }
+    }
 
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
-      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
-        try {
-          // We only care about creation and deletion events because modified should result in a
-          // rule key change.  For parsing, these are the only events we need to care about.
-          if (isPathCreateOrDeleteEvent(event)) {
+      if (!addedOrRemovedPaths.isEmpty()) {
+        for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+          try {
             Cell cell = state.getCell();
             BuildFileTree buildFiles = buildFileTrees.get(cell);
 
-            if (path.endsWith(cell.getBuildFileName())) {
-              LOG.debug(
-                  "Build file %s changed, invalidating build file tree for cell %s",
-                  path,
-                  cell);
-              // If a build file has been added or removed, reconstruct the build file tree.
-              buildFileTrees.invalidate(cell);
+            for (Path path : addedOrRemovedPaths) {
+              if (path.endsWith(cell.getBuildFileName())) {
+                LOG.debug(
+                    "Build file %s changed, invalidating build file tree for cell %s",
+                    path,
+                    cell);
+                // If a build file has been added or removed, reconstruct the build file tree.
+                buildFileTrees.invalidate(cell);
+                break;
+              }
             }
 
-            // Added or removed files can affect globs, so invalidate the package build file
-            // "containing" {@code path} unless its filename matches a temp file pattern.
-            if (!isTempFile(cell, path)) {
-              invalidateContainingBuildFile(cell, buildFiles, path);
-            } else {
-              LOG.debug(
-                  "Not invalidating the owning build file of %s because it is a temporary file.",
-                  state.getCellRoot().resolve(path).toAbsolutePath().toString());
+            for (Path path : addedOrRemovedPaths) {
+              // Added or removed files can affect globs, so invalidate the package build file
+              // "containing" {@code path} unless its filename matches a temp file pattern.
+              if (!isTempFile(cell, path)) {
+                invalidateContainingBuildFile(cell, buildFiles, path);
+              } else {
+                LOG.debug(
+                    "Not invalidating the owning build file of %s because it is a temporary file.",
+                    state.getCellRoot().resolve(path).toAbsolutePath().toString());
+              }
+            }
+          } catch (ExecutionException | UncheckedExecutionException e) {
+            try {
+              Throwables.propagateIfInstanceOf(e, BuildFileParseException.class);
+              Throwables.propagate(e);
+            } catch (BuildFileParseException bfpe) {
+              LOG.warn("Unable to parse already parsed build file.", bfpe);
             }
-          }
-        } catch (ExecutionException | UncheckedExecutionException e) {
-          try {
-            Throwables.propagateIfInstanceOf(e, BuildFileParseException.class);
-            Throwables.propagate(e);
-          } catch (BuildFileParseException bfpe) {
-            LOG.warn("Unable to parse already parsed build file.", bfpe);
           }
         }
       }
-    }
 
-    invalidatePath(path);
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        for (Path path : changedPaths) {
+          invalidatePath(state, path);
+        }
+      }
+    }
   }
 
   public void invalidatePath(Path path) {
@@ -653,7 +700,8 @@ class DaemonicParserState {
         buildFilesInvalidatedByFileAddOrRemoveCounter,
         filesChangedCounter,
         rulesInvalidatedByWatchEventsCounter,
-        pathsAddedOrRemovedInvalidatingBuildFiles);
+        pathsAddedOrRemovedInvalidatingBuildFiles,
+        buildFileParseTimeMs);
   }
 
   @Override
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.counters.HistogramCounter;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.log.Logger;
@@ -25,6 +26,7 @@ import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
@@ -43,6 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -67,6 +70,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   private final Map<Cell, Deque<ProjectBuildFileParser>> parkedParsers;
   @GuardedBy("this")
   private final Map<Cell, Deque<SettableFuture<Void>>> parserRequests;
+  private final Optional<HistogramCounter> parseTimeMs;
   private final AtomicBoolean closing;
   @GuardedBy("this")
   private final Set<ListenableFuture<?>> pendingWork;
@@ -78,10 +82,24 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   public ProjectBuildFileParserPool(
       int maxParsersPerCell,
       Function<Cell, ProjectBuildFileParser> parserFactory) {
+    this(maxParsersPerCell, parserFactory, Optional.absent());
+  }
+
+  /**
+   * @param maxParsersPerCell maximum number of parsers to create for a single cell.
+   * @param parserFactory function used to create a new parser.
+   * @param parseTimeMs where to record how long each build file took to parse, not counting the
+   *     time spent waiting for a parser.
+   */
+  public ProjectBuildFileParserPool(
+      int maxParsersPerCell,
+      Function<Cell, ProjectBuildFileParser> parserFactory,
+      Optional<HistogramCounter> parseTimeMs) {
     Preconditions.checkArgument(maxParsersPerCell > 0);
 
     this.maxParsersPerCell = maxParsersPerCell;
     this.parserFactory = parserFactory;
+    this.parseTimeMs = parseTimeMs;
     this.createdParsers = ArrayListMultimap.create();
     this.parkedParsers = new HashMap<>();
     this.parserRequests = new HashMap<>();
@@ -113,9 +131,14 @@ class ProjectBuildFileParserPool implements AutoCloseable {
             if (parserRequest.isLeft()) {
               ProjectBuildFileParser parser = parserRequest.getLeft();
               boolean hadErrorDuringParsing = false;
+              Stopwatch stopwatch = Stopwatch.createStarted();
               try {
-                return Futures.immediateFuture(
-                    ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile)));
+                ImmutableSet<Map<String, Object>> rules =
+                    ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile));
+                if (parseTimeMs.isPresent()) {
+                  parseTimeMs.get().addSample(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                }
+                return Futures.immediateFuture(rules);
               } catch (BuildFileParseException e) {
                 hadErrorDuringParsing = true;
                 throw e;
@@ -248,6 +248,7 @@ public class PythonBinaryDescription implements
             pythonPlatform,
             pexTool,
             buildArgs,
+            pythonBuckConfig.shouldWritePexInProcess(),
             pythonBuckConfig.getPexExecutor(resolver).or(pythonPlatform.getEnvironment()),
             extension.or(pythonBuckConfig.getPexExtension()),
             pythonPlatform.getEnvironment(),
@@ -245,6 +245,16 @@ public class PythonBuckConfig {
         .or(NativeLinkStrategy.SEPARATE);
   }
 
+  /**
+   * @return whether standalone packages should be written by buck itself, rather than by running
+   *     the PEX builder.  The builder is still used if it's been replaced or given extra flags.
+   */
+  public boolean shouldWritePexInProcess() {
+    return delegate.getBooleanValue(SECTION, "in_process_pex", false) &&
+        !delegate.getValue(SECTION, "path_to_pex").isPresent() &&
+        delegate.getValue(SECTION, "pex_flags").or("").trim().isEmpty();
+  }
+
   public String getPexExtension() {
     return delegate.getValue(SECTION, "pex_extension").or(".pex");
   }
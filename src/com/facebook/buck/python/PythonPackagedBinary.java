@@ -49,6 +49,8 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
   private final Tool builder;
   @AddToRuleKey
   private final ImmutableList<String> buildArgs;
+  @AddToRuleKey
+  private final boolean writeInProcess;
   private final Tool pathToPexExecuter;
   @AddToRuleKey
   private final String mainModule;
@@ -67,6 +69,7 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
       PythonPlatform pythonPlatform,
       Tool builder,
       ImmutableList<String> buildArgs,
+      boolean writeInProcess,
       Tool pathToPexExecuter,
       String pexExtension,
       PythonEnvironment pythonEnvironment,
@@ -78,6 +81,7 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
     super(params, resolver, pythonPlatform, mainModule, components, preloadLibraries, pexExtension);
     this.builder = builder;
     this.buildArgs = buildArgs;
+    this.writeInProcess = writeInProcess;
     this.pathToPexExecuter = pathToPexExecuter;
     this.pythonEnvironment = pythonEnvironment;
     this.mainModule = mainModule;
@@ -116,33 +120,48 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
     // Delete any other pex that was there (when switching between pex styles).
     steps.add(new RmStep(getProjectFilesystem(), binPath, /* force */ true, /* recurse */ true));
 
-    Path workingDirectory = BuildTargets.getGenPath(
-        getProjectFilesystem(),
-        getBuildTarget(),
-        "__%s__working_directory");
-    steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), workingDirectory));
-
-    // Generate and return the PEX build step.
-    steps.add(
-        new PexStep(
-            getProjectFilesystem(),
-            builder.getEnvironment(getResolver()),
-            ImmutableList.<String>builder()
-                .addAll(builder.getCommandPrefix(getResolver()))
-                .addAll(buildArgs)
-                .build(),
-            pythonEnvironment.getPythonPath(),
-            pythonEnvironment.getPythonVersion(),
-            workingDirectory,
-            binPath,
-            mainModule,
-            getResolver().getMappedPaths(components.getModules()),
-            getResolver().getMappedPaths(components.getResources()),
-            getResolver().getMappedPaths(components.getNativeLibraries()),
-            ImmutableSet.copyOf(
-                getResolver().deprecatedAllPaths(components.getPrebuiltLibraries())),
-            preloadLibraries,
-            components.isZipSafe().or(true)));
+    if (writeInProcess) {
+      steps.add(
+          new WritePexStep(
+              getProjectFilesystem(),
+              pythonEnvironment.getPythonVersion(),
+              binPath,
+              mainModule,
+              getResolver().getMappedPaths(components.getModules()),
+              getResolver().getMappedPaths(components.getResources()),
+              getResolver().getMappedPaths(components.getNativeLibraries()),
+              ImmutableSet.copyOf(
+                  getResolver().deprecatedAllPaths(components.getPrebuiltLibraries())),
+              components.isZipSafe().or(true)));
+    } else {
+      Path workingDirectory = BuildTargets.getGenPath(
+          getProjectFilesystem(),
+          getBuildTarget(),
+          "__%s__working_directory");
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), workingDirectory));
+
+      // Generate and return the PEX build step.
+      steps.add(
+          new PexStep(
+              getProjectFilesystem(),
+              builder.getEnvironment(getResolver()),
+              ImmutableList.<String>builder()
+                  .addAll(builder.getCommandPrefix(getResolver()))
+                  .addAll(buildArgs)
+                  .build(),
+              pythonEnvironment.getPythonPath(),
+              pythonEnvironment.getPythonVersion(),
+              workingDirectory,
+              binPath,
+              mainModule,
+              getResolver().getMappedPaths(components.getModules()),
+              getResolver().getMappedPaths(components.getResources()),
+              getResolver().getMappedPaths(components.getNativeLibraries()),
+              ImmutableSet.copyOf(
+                  getResolver().deprecatedAllPaths(components.getPrebuiltLibraries())),
+              preloadLibraries,
+              components.isZipSafe().or(true)));
+    }
 
     // Record the executable package for caching.
     buildableContext.recordArtifact(getBinPath());
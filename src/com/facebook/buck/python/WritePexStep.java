@@ -0,0 +1,505 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Closer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes a PEX directly, rather than by running the python PEX builder.
+ * <p>
+ * The result has the layout pex's own builder gives it: a shebang line followed by a zip of the
+ * sources, resources and native libraries, prebuilt libraries under {@code .deps}, pex's runtime
+ * under {@code .bootstrap}, and a {@code PEX-INFO} manifest describing it all.  Everything is
+ * streamed straight into the archive, so none of it is copied into a staging directory first.
+ * Sources aren't compiled to bytecode, which python does when they're first imported instead.
+ */
+public class WritePexStep implements Step {
+
+  /**
+   * The directory (or archive) holding the {@code pex} package, whose runtime is bundled in every
+   * PEX.
+   */
+  private static final Path PATH_TO_PEX_LIBRARY =
+      Paths.get(System.getProperty("buck.path_to_pex_library", "third-party/py/pex"));
+
+  /**
+   * The directory (or archive) holding the {@code pkg_resources} and {@code _markerlib} packages
+   * that the pex runtime needs.
+   */
+  private static final Path PATH_TO_SETUPTOOLS =
+      Paths.get(System.getProperty("buck.path_to_setuptools", "third-party/py/setuptools"));
+
+  private static final String SRC_ZIP = ".src.zip";
+  private static final String BOOTSTRAP_DIR = ".bootstrap";
+  private static final String INTERNAL_CACHE = ".deps";
+  private static final String PEX_INFO = "PEX-INFO";
+  private static final String MAIN = "__main__.py";
+  private static final String INIT = "__init__.py";
+  private static final ImmutableList<String> SETUPTOOLS_PACKAGES =
+      ImmutableList.of("pkg_resources", "_markerlib");
+
+  private static final ByteSource NAMESPACE_INIT =
+      ByteSource.wrap("__import__('pkg_resources').declare_namespace(__name__)".getBytes(UTF_8));
+
+  // The same as the bootstrap code pex's builder writes to __main__.py.
+  private static final ByteSource BOOTSTRAP_MAIN = ByteSource.wrap(
+      Joiner.on('\n').join(
+          "",
+          "",
+          "import os",
+          "import sys",
+          "",
+          "__entry_point__ = None",
+          "if '__file__' in locals() and __file__ is not None:",
+          "  __entry_point__ = os.path.dirname(__file__)",
+          "elif '__loader__' in locals():",
+          "  from zipimport import zipimporter",
+          "  from pkgutil import ImpLoader",
+          "  if hasattr(__loader__, 'archive'):",
+          "    __entry_point__ = __loader__.archive",
+          "  elif isinstance(__loader__, ImpLoader):",
+          "    __entry_point__ = os.path.dirname(__loader__.get_filename())",
+          "",
+          "if __entry_point__ is None:",
+          "  sys.stderr.write('Could not launch python executable!\\n')",
+          "  sys.exit(2)",
+          "",
+          "sys.path[0] = os.path.abspath(sys.path[0])",
+          "sys.path.insert(0, os.path.abspath(os.path.join(__entry_point__, '.bootstrap')))",
+          "",
+          "from _pex.pex_bootstrapper import bootstrap_pex",
+          "bootstrap_pex(__entry_point__)",
+          "").getBytes(UTF_8));
+
+  private final ProjectFilesystem filesystem;
+  private final PythonVersion pythonVersion;
+  private final Path destination;
+  private final String entry;
+  private final ImmutableMap<Path, Path> modules;
+  private final ImmutableMap<Path, Path> resources;
+  private final ImmutableMap<Path, Path> nativeLibraries;
+  private final ImmutableSet<Path> prebuiltLibraries;
+  private final boolean zipSafe;
+  private final Path pexLibrary;
+  private final Path setuptools;
+
+  public WritePexStep(
+      ProjectFilesystem filesystem,
+      PythonVersion pythonVersion,
+      Path destination,
+      String entry,
+      ImmutableMap<Path, Path> modules,
+      ImmutableMap<Path, Path> resources,
+      ImmutableMap<Path, Path> nativeLibraries,
+      ImmutableSet<Path> prebuiltLibraries,
+      boolean zipSafe) {
+    this(
+        filesystem,
+        pythonVersion,
+        destination,
+        entry,
+        modules,
+        resources,
+        nativeLibraries,
+        prebuiltLibraries,
+        zipSafe,
+        PATH_TO_PEX_LIBRARY,
+        PATH_TO_SETUPTOOLS);
+  }
+
+  @VisibleForTesting
+  WritePexStep(
+      ProjectFilesystem filesystem,
+      PythonVersion pythonVersion,
+      Path destination,
+      String entry,
+      ImmutableMap<Path, Path> modules,
+      ImmutableMap<Path, Path> resources,
+      ImmutableMap<Path, Path> nativeLibraries,
+      ImmutableSet<Path> prebuiltLibraries,
+      boolean zipSafe,
+      Path pexLibrary,
+      Path setuptools) {
+    this.filesystem = filesystem;
+    this.pythonVersion = pythonVersion;
+    this.destination = destination;
+    this.entry = entry;
+    this.modules = modules;
+    this.resources = resources;
+    this.nativeLibraries = nativeLibraries;
+    this.prebuiltLibraries = prebuiltLibraries;
+    this.zipSafe = zipSafe;
+    this.pexLibrary = pexLibrary;
+    this.setuptools = setuptools;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    try (Closer closer = Closer.create()) {
+      SortedMap<String, ByteSource> entries = new TreeMap<>();
+      List<String> sources = new ArrayList<>();
+
+      for (Map.Entry<Path, Path> module : modules.entrySet()) {
+        Path source = filesystem.resolve(module.getValue());
+        if (source.toString().endsWith(SRC_ZIP)) {
+          // Source zips are laid out from the root of the package.
+          for (Map.Entry<String, ByteSource> ent : getFiles(closer, source).entrySet()) {
+            addEntry(entries, ent.getKey(), ent.getValue());
+            sources.add(ent.getKey());
+          }
+        } else {
+          String name = MorePaths.pathWithUnixSeparators(module.getKey());
+          addEntry(entries, name, asByteSource(source));
+          sources.add(name);
+        }
+      }
+
+      // The pex runtime needs our copy of `pkg_resources`, which is added like any other source.
+      for (Map.Entry<String, ByteSource> ent :
+           getFiles(closer, filesystem.resolve(setuptools)).entrySet()) {
+        String name = ent.getKey();
+        if (isSetuptoolsSource(name)) {
+          addEntry(entries, BOOTSTRAP_DIR + "/" + name, ent.getValue());
+          sources.add(BOOTSTRAP_DIR + "/" + name);
+        }
+      }
+
+      for (Map.Entry<Path, Path> resource :
+           Iterables.concat(resources.entrySet(), nativeLibraries.entrySet())) {
+        addEntry(
+            entries,
+            MorePaths.pathWithUnixSeparators(resource.getKey()),
+            asByteSource(filesystem.resolve(resource.getValue())));
+      }
+
+      // Like pex, make every directory holding sources a package.
+      for (String source : sources) {
+        List<String> parts = Splitter.on('/').splitToList(source);
+        for (int i = 1; i < parts.size(); i++) {
+          String init = Joiner.on('/').join(parts.subList(0, i)) + "/" + INIT;
+          if (!entries.containsKey(init)) {
+            entries.put(init, NAMESPACE_INIT);
+          }
+        }
+      }
+
+      Map<String, Hasher> distributionHashes = new TreeMap<>();
+      List<String> requirements = new ArrayList<>();
+      for (Path library : prebuiltLibraries) {
+        String name = library.getFileName().toString();
+        requirements.add(getRequirement(name));
+        for (Map.Entry<String, ByteSource> ent :
+             getFiles(closer, filesystem.resolve(library)).entrySet()) {
+          addEntry(entries, INTERNAL_CACHE + "/" + name + "/" + ent.getKey(), ent.getValue());
+        }
+        distributionHashes.put(name, newContentHasher(getDistributionFiles(entries, name)));
+      }
+
+      // The runtime's own code is added after the sources have been made into packages.
+      for (Map.Entry<String, ByteSource> ent :
+           getFiles(closer, filesystem.resolve(pexLibrary)).entrySet()) {
+        List<String> parts = Splitter.on('/').splitToList(ent.getKey());
+        if (parts.size() == 2 && parts.get(0).equals("pex") && parts.get(1).endsWith(".py")) {
+          addEntry(entries, BOOTSTRAP_DIR + "/_pex/" + parts.get(1), ent.getValue());
+        }
+      }
+
+      Hasher codeHash = newContentHasher(getCodeFiles(entries));
+
+      Path output = filesystem.resolve(destination);
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output));
+           CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(out)) {
+        out.write(getShebang().getBytes(UTF_8));
+
+        for (Map.Entry<String, ByteSource> ent : entries.entrySet()) {
+          String name = ent.getKey();
+          writeEntry(
+              zip,
+              name,
+              ent.getValue(),
+              isCode(name) ? Optional.of(codeHash) : getDistributionHash(distributionHashes, name));
+        }
+
+        ImmutableMap.Builder<String, String> distributions = ImmutableMap.builder();
+        for (Map.Entry<String, Hasher> ent : distributionHashes.entrySet()) {
+          distributions.put(ent.getKey(), ent.getValue().hash().toString());
+        }
+        List<String> version = new ArrayList<>(
+            Splitter.on('.').splitToList(pythonVersion.getVersionString()));
+        while (version.size() < 3) {
+          version.add("0");
+        }
+        ImmutableMap<String, Object> pexInfo = ImmutableMap.<String, Object>builder()
+            .put(
+                "build_properties",
+                ImmutableMap.of(
+                    "class", pythonVersion.getInterpreterName(),
+                    "version", Lists.transform(version, Integer::valueOf)))
+            .put("code_hash", codeHash.hash().toString())
+            .put("distributions", distributions.build())
+            .put("entry_point", entry)
+            .put("requirements", requirements)
+            .put("zip_safe", zipSafe)
+            .build();
+
+        writeEntry(zip, MAIN, BOOTSTRAP_MAIN, Optional.absent());
+        writeEntry(
+            zip,
+            PEX_INFO,
+            ByteSource.wrap(context.getObjectMapper().writeValueAsBytes(pexInfo)),
+            Optional.absent());
+      }
+      MoreFiles.makeExecutable(output);
+    }
+
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "pex";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("pex %s", destination);
+  }
+
+  @VisibleForTesting
+  String getShebang() {
+    String interpreter;
+    switch (pythonVersion.getInterpreterName()) {
+      case "PyPy":
+        interpreter = "pypy";
+        break;
+      case "Jython":
+        interpreter = "jython";
+        break;
+      default:
+        interpreter = "python" + pythonVersion.getVersionString();
+        break;
+    }
+    return "#!/usr/bin/env " + interpreter + "\n";
+  }
+
+  /**
+   * @return the requirement pex resolves at runtime to find the prebuilt library at
+   *     {@code name}, which is named as wheels and eggs are: its project name then its version.
+   */
+  @VisibleForTesting
+  static String getRequirement(String name) {
+    List<String> parts = Splitter.on('-').splitToList(name);
+    if (!(name.endsWith(".whl") || name.endsWith(".egg")) || parts.size() < 2) {
+      throw new HumanReadableException(
+          "Cannot tell which distribution the prebuilt library %s is: it should be a wheel or egg.",
+          name);
+    }
+    String version = parts.get(1);
+    if (parts.size() == 2) {
+      version = version.substring(0, version.length() - ".egg".length());
+    }
+    // The same normalization pkg_resources gives project names.
+    return parts.get(0).replaceAll("[^A-Za-z0-9.]+", "-") + "==" + version;
+  }
+
+  private static boolean isSetuptoolsSource(String name) {
+    if (!name.endsWith(".py") || name.contains("tests")) {
+      return false;
+    }
+    for (String pkg : SETUPTOOLS_PACKAGES) {
+      if (name.startsWith(pkg + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether {@code name} is one of the files pex hashes to name the directory it extracts
+   *     packages which aren't zip safe to.
+   */
+  private static boolean isCode(String name) {
+    return !name.startsWith(".") && !name.endsWith(".pyc");
+  }
+
+  private static List<String> getCodeFiles(SortedMap<String, ByteSource> entries) {
+    List<String> names = new ArrayList<>();
+    for (String name : entries.keySet()) {
+      if (isCode(name)) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  /**
+   * @return the paths of the files of the prebuilt library {@code name} within it.
+   */
+  private static List<String> getDistributionFiles(
+      SortedMap<String, ByteSource> entries,
+      String name) {
+    String prefix = INTERNAL_CACHE + "/" + name + "/";
+    List<String> files = new ArrayList<>();
+    for (String entry : entries.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+      if (!entry.endsWith(".pyc")) {
+        files.add(entry.substring(prefix.length()));
+      }
+    }
+    return files;
+  }
+
+  private static Optional<Hasher> getDistributionHash(
+      Map<String, Hasher> distributionHashes,
+      String name) {
+    if (!name.startsWith(INTERNAL_CACHE + "/") || name.endsWith(".pyc")) {
+      return Optional.absent();
+    }
+    String distribution =
+        Splitter.on('/').splitToList(name.substring(INTERNAL_CACHE.length() + 1)).get(0);
+    return Optional.fromNullable(distributionHashes.get(distribution));
+  }
+
+  /**
+   * Pex hashes a set of files by their sorted names followed by each of their contents in the
+   * same order.  We write entries in sorted order, so the contents are added as they're written.
+   */
+  private static Hasher newContentHasher(Iterable<String> sortedNames) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(Joiner.on("").join(sortedNames).getBytes(UTF_8));
+    return hasher;
+  }
+
+  private static void addEntry(
+      SortedMap<String, ByteSource> entries,
+      String name,
+      ByteSource source) {
+    if (entries.put(name, source) != null) {
+      throw new HumanReadableException("%s is included in the PEX more than once.", name);
+    }
+  }
+
+  private static void writeEntry(
+      CustomZipOutputStream zip,
+      String name,
+      ByteSource source,
+      Optional<Hasher> hasher) throws IOException {
+    CustomZipEntry entry = new CustomZipEntry(name);
+    // We want deterministic PEXs, so avoid mtimes.
+    entry.setFakeTime();
+    zip.putNextEntry(entry);
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = source.openStream()) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        zip.write(buffer, 0, read);
+        if (hasher.isPresent()) {
+          hasher.get().putBytes(buffer, 0, read);
+        }
+      }
+    }
+    zip.closeEntry();
+  }
+
+  private static ByteSource asByteSource(Path path) {
+    return com.google.common.io.Files.asByteSource(path.toFile());
+  }
+
+  /**
+   * @return the files in {@code root}, which is either a directory or a zip, keyed by their
+   *     paths relative to it.  Zips are read in place and stay open until {@code closer} is closed.
+   */
+  private static SortedMap<String, ByteSource> getFiles(Closer closer, final Path root)
+      throws IOException {
+    final SortedMap<String, ByteSource> files = new TreeMap<>();
+    if (Files.isDirectory(root)) {
+      Files.walkFileTree(
+          root,
+          EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+          Integer.MAX_VALUE,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              files.put(
+                  MorePaths.pathWithUnixSeparators(root.relativize(file)),
+                  asByteSource(file));
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } else {
+      final ZipFile zipFile = closer.register(new ZipFile(root.toFile()));
+      for (final ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+        if (!zipEntry.isDirectory()) {
+          files.put(
+              zipEntry.getName(),
+              new ByteSource() {
+                @Override
+                public InputStream openStream() throws IOException {
+                  return zipFile.getInputStream(zipEntry);
+                }
+              });
+        }
+      }
+    }
+    return files;
+  }
+
+}
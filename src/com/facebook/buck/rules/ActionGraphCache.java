@@ -23,6 +23,7 @@ import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.event.WatchmanStatusEvent;
 import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.graph.AbstractBottomUpTraversal;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
@@ -33,10 +34,13 @@ import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 
+import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -240,6 +244,17 @@ public class ActionGraphCache {
 
   @Subscribe
   public void invalidateBasedOn(WatchEvent<?> event) throws InterruptedException {
+    if (event instanceof WatchEventBatch) {
+      // Only the events in a batch tell us whether anything was added or removed.
+      Set<WatchEvent.Kind<?>> kinds = new LinkedHashSet<>();
+      for (WatchEvent<Path> pathEvent : ((WatchEventBatch) event).getEvents()) {
+        if (kinds.add(pathEvent.kind())) {
+          invalidateBasedOn(pathEvent);
+        }
+      }
+      return;
+    }
+
     // We invalidate in every case except a modify event.
     if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
       LOG.info("ActionGraphCache invalidation due to Watchman event %s.", event);
@@ -20,6 +20,8 @@ import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.counters.CounterRegistry;
+import com.facebook.buck.counters.HistogramCounter;
 import com.facebook.buck.event.ArtifactCompressionEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
@@ -58,6 +60,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -93,6 +96,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -100,6 +104,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -119,6 +125,7 @@ public class CachingBuildEngine implements BuildEngine {
   public static final ResourceAmounts RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS = ResourceAmounts.of(
       0, 0, 1, 0);
   public static final ResourceAmounts SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS = ResourceAmounts.ZERO;
+  private static final String COUNTER_CATEGORY = "buck_build_engine";
 
 
   /**
@@ -149,6 +156,16 @@ public class CachingBuildEngine implements BuildEngine {
   private final LoadingCache<ProjectFilesystem, RuleKeyFactories> ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
 
+  private final HistogramCounter ruleKeyComputationTimeUs =
+      new HistogramCounter(COUNTER_CATEGORY, "rule_key_computation_time_us", ImmutableMap.of());
+  private final HistogramCounter artifactFetchTimeMs =
+      new HistogramCounter(COUNTER_CATEGORY, "artifact_fetch_time_ms", ImmutableMap.of());
+  private final HistogramCounter stepExecutionTimeMs =
+      new HistogramCounter(COUNTER_CATEGORY, "step_execution_time_ms", ImmutableMap.of());
+  // The counters are registered with the event bus of the first build, as that's the first time
+  // one is available.
+  private final AtomicBoolean countersRegistered = new AtomicBoolean(false);
+
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
       WeightedListeningExecutorService service,
@@ -278,14 +295,36 @@ public class CachingBuildEngine implements BuildEngine {
       BuildRule rule,
       BuildContext context,
       ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
+    return getDepResults(rule.getDeps(), context, asyncCallbacks);
+  }
+
+  private ListenableFuture<List<BuildResult>> getDepResults(
+      Collection<BuildRule> deps,
+      BuildContext context,
+      ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
     List<ListenableFuture<BuildResult>> depResults =
-        Lists.newArrayListWithExpectedSize(rule.getDeps().size());
-    for (BuildRule dep : shuffled(rule.getDeps())) {
+        Lists.newArrayListWithExpectedSize(deps.size());
+    for (BuildRule dep : shuffled(deps)) {
       depResults.add(getBuildRuleResultWithRuntimeDeps(dep, context, asyncCallbacks));
     }
     return Futures.allAsList(depResults);
   }
 
+  // Dispatch and return a future resolving to the results of the dependencies this rule needs
+  // to have been built before it can be built itself.
+  private ListenableFuture<List<BuildResult>> getBuildTimeDepResults(
+      BuildRule rule,
+      BuildContext context,
+      ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
+    if (!(rule instanceof SupportsPipelining)) {
+      return getDepResults(rule, context, asyncCallbacks);
+    }
+    return getDepResults(
+        Sets.difference(rule.getDeps(), ((SupportsPipelining) rule).getPipelinedDeps()),
+        context,
+        asyncCallbacks);
+  }
+
   private static List<BuildRule> shuffled(Iterable<BuildRule> rules) {
     ArrayList<BuildRule> rulesList = Lists.newArrayList(rules);
     Collections.shuffle(rulesList);
@@ -484,7 +523,7 @@ public class CachingBuildEngine implements BuildEngine {
       // 3. Build deps.
       ListenableFuture<List<BuildResult>> getDepResults =
           Futures.transformAsync(
-              getDepResults(rule, context, asyncCallbacks),
+              getBuildTimeDepResults(rule, context, asyncCallbacks),
               input -> Futures.transform(
                   markRuleAsUsed(rule, context.getEventBus()),
                   Functions.constant(input)),
@@ -548,6 +587,18 @@ public class CachingBuildEngine implements BuildEngine {
               buildResult);
     }
 
+    // Rules which build in parallel with some of their deps still aren't done until those deps
+    // are, so that dependents can rely on them having been built.
+    if (rule instanceof SupportsPipelining) {
+      buildResult =
+          MoreFutures.chainExceptions(
+              getDepResults(
+                  ((SupportsPipelining) rule).getPipelinedDeps(),
+                  context,
+                  asyncCallbacks),
+              buildResult);
+    }
+
     // Setup a callback to handle either the cached or built locally cases.
     AsyncFunction<BuildResult, BuildResult> callback =
         input -> {
@@ -1062,7 +1113,10 @@ public class CachingBuildEngine implements BuildEngine {
                            context.getEventBus(),
                            rule,
                            keyFactories.defaultRuleKeyBuilderFactory)) {
-                return keyFactories.defaultRuleKeyBuilderFactory.build(rule);
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                RuleKey key = keyFactories.defaultRuleKeyBuilderFactory.build(rule);
+                ruleKeyComputationTimeUs.addSample(stopwatch.elapsed(TimeUnit.MICROSECONDS));
+                return key;
               }
             }
           },
@@ -1077,6 +1131,12 @@ public class CachingBuildEngine implements BuildEngine {
 
   @Override
   public ListenableFuture<BuildResult> build(BuildContext context, BuildRule rule) {
+    if (countersRegistered.compareAndSet(false, true)) {
+      context.getEventBus().post(
+          new CounterRegistry.AsyncCounterRegistrationEvent(
+              ImmutableSet.of(ruleKeyComputationTimeUs, artifactFetchTimeMs, stepExecutionTimeMs)));
+    }
+
     // Keep track of all jobs that run asynchronously with respect to the build dep chain.  We want
     // to make sure we wait for these before calling yielding the final build result.
     final ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks =
@@ -1210,7 +1270,11 @@ public class CachingBuildEngine implements BuildEngine {
       final ArtifactCache artifactCache,
       final BuildInfoRecorder buildInfoRecorder
   ) throws InterruptedException {
-    return buildInfoRecorder.fetchArtifactForBuildable(ruleKey, lazyZipPath, artifactCache);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    CacheResult cacheResult =
+        buildInfoRecorder.fetchArtifactForBuildable(ruleKey, lazyZipPath, artifactCache);
+    artifactFetchTimeMs.addSample(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    return cacheResult;
   }
 
 
@@ -1237,7 +1301,9 @@ public class CachingBuildEngine implements BuildEngine {
     StepRunner stepRunner = context.getStepRunner();
     Optional<BuildTarget> optionalTarget = Optional.of(rule.getBuildTarget());
     for (Step step : steps) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
       stepRunner.runStepForBuildTarget(step, optionalTarget);
+      stepExecutionTimeMs.addSample(stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
       // Check for interruptions that may have been ignored by step.
       if (Thread.interrupted()) {
@@ -757,7 +757,8 @@ public class KnownBuildRuleTypes {
             defaultCxxPlatform,
             defaultTestRuleTimeoutMs,
             cxxPlatforms));
-    builder.register(new RemoteFileDescription(downloader));
+    builder.register(
+        new RemoteFileDescription(downloader, downloadConfig.getDownloadCacheDir()));
     builder.register(new RobolectricTestDescription(
             defaultJavaOptions,
             defaultJavacOptions,
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Provides a facility for a rule to list dependencies whose outputs it doesn't need in order to
+ * build.
+ * <p>
+ * Consider the case of a Java library compiled against the ABI jars of its deps, where those ABI
+ * jars are generated from the deps' sources by separate rules.  The library can be compiled as
+ * soon as the ABI rules (which are also among its deps) have been built, in parallel with the
+ * compilation of the deps themselves.  The build engine starts building such a rule without
+ * waiting for the deps listed here, but doesn't consider it built, or let its dependents proceed,
+ * until they have been built too.
+ */
+public interface SupportsPipelining extends BuildRule {
+
+  /**
+   * @return the subset of this rule's deps which it doesn't need to wait for before building.
+   */
+  ImmutableSortedSet<BuildRule> getPipelinedDeps();
+}
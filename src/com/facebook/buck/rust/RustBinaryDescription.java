@@ -59,6 +59,12 @@ public class RustBinaryDescription implements Description<RustBinaryDescription.
       BuildRuleParams params,
       BuildRuleResolver resolver,
       A args) {
+    if (rustBuckConfig.isPipelinedBuildEnabled()) {
+      // Libraries may have been built against the metadata of their deps, but linking needs all
+      // the rlibs.
+      params = params.appendExtraDeps(
+          RustLinkables.getTransitiveLibraries(resolver, params.getDeclaredDeps().get()));
+    }
     return new RustBinary(
         params,
         new SourcePathResolver(resolver),
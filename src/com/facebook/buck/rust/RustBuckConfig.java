@@ -42,4 +42,8 @@ public class RustBuckConfig {
 
     return Suppliers.ofInstance(new HashedFileTool(compiler));
   }
+
+  boolean isPipelinedBuildEnabled() {
+    return delegate.getBooleanValue("rust", "pipelined_build", false);
+  }
 }
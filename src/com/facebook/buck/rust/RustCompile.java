@@ -113,8 +113,11 @@ abstract class RustCompile extends AbstractBuildRule {
             getBuildTarget().getFullyQualifiedName());
       }
       RustLinkable linkable = (RustLinkable) buildRule;
-      Path ruleOutput = linkable.getLinkPath();
-      externalCratesBuilder.put(linkable.getLinkTarget(), ruleOutput);
+      // Only declared deps may be used directly.  Extra deps are crates which need to be built
+      // before this one can be linked.
+      if (getDeclaredDeps().contains(buildRule)) {
+        externalCratesBuilder.put(linkable.getLinkTarget(), linkable.getLinkPath());
+      }
       externalDepsBuilder.addAll(linkable.getDependencyPaths());
     }
     return ImmutableList.of(
@@ -17,17 +17,36 @@
 package com.facebook.buck.rust;
 
 import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.ImmutableFlavor;
 import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildableProperties;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
 
 public class RustLibrary extends RustCompile implements RustLinkable {
+
+  /**
+   * Flavor of the rule emitting just the crate's metadata, which is all crates depending on it
+   * need to type-check and build their own rlibs.
+   */
+  static final Flavor METADATA_FLAVOR = ImmutableFlavor.of("rmeta");
+
+  private final BuildRuleParams params;
+  private final ImmutableSortedSet<SourcePath> srcs;
+  private final ImmutableSortedSet<String> features;
+  private final ImmutableList<String> rustcFlags;
+  private final Tool compiler;
+  private final boolean isMetadata;
+
   public RustLibrary(
       BuildRuleParams params,
       SourcePathResolver resolver,
@@ -35,21 +54,66 @@ public class RustLibrary extends RustCompile implements RustLinkable {
       ImmutableSortedSet<String> features,
       ImmutableList<String> rustcFlags,
       Tool compiler) {
+    this(params, resolver, srcs, features, rustcFlags, compiler, /* isMetadata */ false);
+  }
+
+  private RustLibrary(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      ImmutableSortedSet<SourcePath> srcs,
+      ImmutableSortedSet<String> features,
+      ImmutableList<String> rustcFlags,
+      Tool compiler,
+      boolean isMetadata) {
     super(
         params,
         resolver,
         srcs,
         ImmutableList.<String>builder()
             .add("--crate-type", "rlib")
-            .add("--emit", "link")
+            .add("--emit", isMetadata ? "metadata" : "link")
             .addAll(rustcFlags)
             .build(),
         features,
         BuildTargets.getGenPath(
             params.getProjectFilesystem(),
             params.getBuildTarget(),
-            "%s/lib" + params.getBuildTarget().getShortName() + ".rlib"),
+            "%s/lib" + params.getBuildTarget().getShortName() +
+                (isMetadata ? ".rmeta" : ".rlib")),
         compiler);
+    this.params = params;
+    this.srcs = srcs;
+    this.features = features;
+    this.rustcFlags = rustcFlags;
+    this.compiler = compiler;
+    this.isMetadata = isMetadata;
+  }
+
+  boolean isMetadata() {
+    return isMetadata;
+  }
+
+  /**
+   * @return the rule emitting this crate's metadata, made with the same sources, flags and deps
+   *     if it doesn't exist yet.
+   */
+  RustLibrary requireMetadataRule(BuildRuleResolver resolver) {
+    Preconditions.checkState(!isMetadata);
+    BuildRuleParams metadataParams = params.withFlavor(METADATA_FLAVOR);
+    Optional<RustLibrary> existing =
+        resolver.getRuleOptionalWithType(metadataParams.getBuildTarget(), RustLibrary.class);
+    if (existing.isPresent()) {
+      return existing.get();
+    }
+    return resolver.addToIndex(
+        new RustLibrary(
+            metadataParams,
+            getResolver(),
+            srcs,
+            features,
+            rustcFlags,
+            compiler,
+            /* isMetadata */ true));
   }
 
   @Override
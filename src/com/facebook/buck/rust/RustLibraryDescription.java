@@ -28,6 +28,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.infer.annotation.SuppressFieldNotInitialized;
 import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
@@ -59,6 +60,14 @@ public class RustLibraryDescription implements Description<RustLibraryDescriptio
       BuildRuleParams params,
       BuildRuleResolver resolver,
       A args) {
+    if (rustBuckConfig.isPipelinedBuildEnabled()) {
+      // Depend on the metadata of other libraries, so that this one can be built while their
+      // code is still being generated.
+      params = params.copyWithDeps(
+          Suppliers.ofInstance(
+              RustLinkables.getMetadataDeps(resolver, params.getDeclaredDeps().get())),
+          params.getExtraDeps());
+    }
     return new RustLibrary(
         params,
         new SourcePathResolver(resolver),
@@ -17,6 +17,7 @@ package com.facebook.buck.rust;
 
 import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
@@ -47,4 +48,52 @@ public class RustLinkables {
 
     return builder.build();
   }
+
+  /**
+   * @return {@code deps}, with the libraries among them replaced by the rules emitting just their
+   *     metadata.
+   */
+  static ImmutableSortedSet<BuildRule> getMetadataDeps(
+      BuildRuleResolver resolver,
+      Iterable<BuildRule> deps) {
+    ImmutableSortedSet.Builder<BuildRule> metadataDeps = ImmutableSortedSet.naturalOrder();
+    for (BuildRule dep : deps) {
+      if (dep instanceof RustLibrary && !((RustLibrary) dep).isMetadata()) {
+        metadataDeps.add(((RustLibrary) dep).requireMetadataRule(resolver));
+      } else {
+        metadataDeps.add(dep);
+      }
+    }
+    return metadataDeps.build();
+  }
+
+  /**
+   * @return the rlibs of all the libraries {@code deps} transitively depend on, including those
+   *     which were only built against the metadata of others, all of which have to be built
+   *     before linking.
+   */
+  static ImmutableSortedSet<BuildRule> getTransitiveLibraries(
+      final BuildRuleResolver resolver,
+      Iterable<BuildRule> deps) {
+    final ImmutableSortedSet.Builder<BuildRule> libraries = ImmutableSortedSet.naturalOrder();
+
+    new AbstractBreadthFirstTraversal<BuildRule>(deps) {
+      @Override
+      public ImmutableSet<BuildRule> visit(BuildRule rule) {
+        if (!(rule instanceof RustLinkable)) {
+          return ImmutableSet.of();
+        }
+        if (rule instanceof RustLibrary && ((RustLibrary) rule).isMetadata()) {
+          return ImmutableSet.of(
+              resolver.getRule(
+                  rule.getBuildTarget().withoutFlavors(
+                      ImmutableSet.of(RustLibrary.METADATA_FLAVOR))));
+        }
+        libraries.add(rule);
+        return rule.getDeps();
+      }
+    }.start();
+
+    return libraries.build();
+  }
 }
@@ -34,4 +34,10 @@ interface AbstractWorkerJobParams {
   ImmutableMap<String, String> getStartupEnvironment();
   String getJobArgs();
   Optional<Integer> getMaxWorkers();
+
+  /**
+   * Whether the worker may outlive the command that started it, when the daemon keeps a pool of
+   * persistent workers.  Such workers must not depend on per-rule state like the temp dir.
+   */
+  boolean isPersistent();
 }
@@ -339,7 +339,8 @@ public class Genrule extends AbstractBuildRule
                   workerMacroArg.getStartupArgs(),
                   workerMacroArg.getEnvironment(),
                   workerMacroArg.getJobArgs(),
-                  workerMacroArg.getMaxWorkers());
+                  workerMacroArg.getMaxWorkers(),
+                  /* isPersistent */ false);
             });
   }
 
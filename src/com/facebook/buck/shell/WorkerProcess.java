@@ -111,6 +111,8 @@ public class WorkerProcess {
     Path stderrPath = Paths.get(
         tmpPath.toString(),
         String.format("%d.err", messageID));
+    // A long-lived process may see its temp dir removed, e.g. by `buck clean`.
+    filesystem.mkdirs(tmpPath);
     filesystem.writeContentsToPath(jobArgs, argsPath);
 
     LOG.debug("Sending job %d to process %d \n" +
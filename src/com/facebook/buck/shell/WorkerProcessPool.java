@@ -16,6 +16,9 @@
 
 package com.facebook.buck.shell;
 
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Optional;
 
 import java.io.IOException;
@@ -24,6 +27,8 @@ import java.util.concurrent.Semaphore;
 
 public abstract class WorkerProcessPool {
 
+  private static final Logger LOG = Logger.get(WorkerProcessPool.class);
+
   public static final int UNLIMITED_CAPACITY = 0;
 
   private final Semaphore available;
@@ -36,13 +41,31 @@ public abstract class WorkerProcessPool {
     workerProcesses = new LinkedBlockingQueue<>();
   }
 
-  public WorkerProcess borrowWorkerProcess()
+  /**
+   * @param context the context of the command borrowing the process, which a new process is started
+   *     in if none are idle.  A pool may outlive the command which created it, so it mustn't hold
+   *     on to that command's context.
+   */
+  public WorkerProcess borrowWorkerProcess(ExecutionContext context)
       throws IOException, InterruptedException {
     if (capacity != UNLIMITED_CAPACITY) {
       available.acquire();
     }
     WorkerProcess workerProcess = workerProcesses.poll();
-    return workerProcess != null ? workerProcess : startWorkerProcess();
+    if (workerProcess != null) {
+      return workerProcess;
+    }
+    boolean started = false;
+    try {
+      workerProcess = startWorkerProcess(context);
+      started = true;
+      return workerProcess;
+    } finally {
+      // Don't leak the permit if the process failed to start, or the pool would slowly run dry.
+      if (!started && capacity != UNLIMITED_CAPACITY) {
+        available.release();
+      }
+    }
   }
 
   public void returnWorkerProcess(WorkerProcess workerProcess) throws InterruptedException {
@@ -52,6 +75,22 @@ public abstract class WorkerProcessPool {
     }
   }
 
+  /**
+   * Shuts down a borrowed process instead of returning it, because it failed or shouldn't be used
+   * again.  The next borrower will be given a new process.
+   */
+  public void destroyWorkerProcess(WorkerProcess workerProcess) {
+    try {
+      workerProcess.close();
+    } catch (HumanReadableException e) {
+      LOG.debug(e, "Error closing a worker process which is being discarded.");
+    } finally {
+      if (capacity != UNLIMITED_CAPACITY) {
+        available.release();
+      }
+    }
+  }
+
   public void close() {
     for (WorkerProcess process : workerProcesses) {
       process.close();
@@ -62,5 +101,6 @@ public abstract class WorkerProcessPool {
     return capacity;
   }
 
-  protected abstract WorkerProcess startWorkerProcess() throws IOException;
+  protected abstract WorkerProcess startWorkerProcess(ExecutionContext context)
+      throws IOException;
 }
@@ -33,8 +33,10 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
@@ -62,12 +64,14 @@ public class WorkerShellStep implements Step {
   public StepExecutionResult execute(final ExecutionContext context) throws InterruptedException {
     WorkerProcessPool pool = null;
     WorkerProcess process = null;
+    boolean processIsHealthy = false;
     try {
       // Use the process's startup command as the key.
       String key = Joiner.on(' ').join(getCommand(context.getPlatform()));
       pool = getWorkerProcessPoolForKey(key, context);
-      process = pool.borrowWorkerProcess(); // blocks until a WorkerProcess becomes available
+      process = pool.borrowWorkerProcess(context); // blocks until a WorkerProcess becomes available
       WorkerJobResult result = process.submitAndWaitForJob(getExpandedJobArgs(context));
+      processIsHealthy = true;
       Verbosity verbosity = context.getVerbosity();
       if (result.getStdout().isPresent() && !result.getStdout().get().isEmpty() &&
           verbosity.shouldPrintOutput()) {
@@ -86,7 +90,13 @@ public class WorkerShellStep implements Step {
       throw new HumanReadableException(e, "Error communicating with external process.");
     } finally {
       if (pool != null && process != null) {
-        pool.returnWorkerProcess(process);
+        if (processIsHealthy) {
+          pool.returnWorkerProcess(process);
+        } else {
+          // Don't hand a process we lost track of to the next job, which may be in another
+          // command if the pool is persistent.
+          pool.destroyWorkerProcess(process);
+        }
       }
     }
   }
@@ -94,27 +104,30 @@ public class WorkerShellStep implements Step {
   /**
    * Returns an existing WorkerProcessPool for the given key if one exists, else creates a new one.
    */
-  private WorkerProcessPool getWorkerProcessPoolForKey(String key, final ExecutionContext context)
+  private WorkerProcessPool getWorkerProcessPoolForKey(String key, ExecutionContext context)
       throws IOException, InterruptedException {
 
     WorkerJobParams paramsToUse = getWorkerJobParamsToUse(context.getPlatform());
-    ConcurrentMap<String, WorkerProcessPool> processPoolMap = context.getWorkerProcessPools();
+    ConcurrentMap<String, WorkerProcessPool> processPoolMap = isPersistent(context) ?
+        context.getPersistentWorkerProcessPools().get() :
+        context.getWorkerProcessPools();
     WorkerProcessPool pool = processPoolMap.get(key);
 
     if (pool == null) {
-      final ProcessExecutorParams processParams = ProcessExecutorParams.builder()
-          .setCommand(getCommand(context.getPlatform()))
-          .setEnvironment(getEnvironmentForProcess(context))
-          .setDirectory(filesystem.getRootPath())
-          .build();
-
-      final Path workerTmpDir = paramsToUse.getTempDir();
       final AtomicInteger workerNumber = new AtomicInteger(0);
 
+      // A persistent pool is shared by later commands, so each process is started with the
+      // context of the command which needs it.
       WorkerProcessPool newPool = new WorkerProcessPool(paramsToUse.getMaxWorkers()) {
         @Override
-        protected WorkerProcess startWorkerProcess() throws IOException {
-          Path tmpDir = workerTmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
+        protected WorkerProcess startWorkerProcess(ExecutionContext context) throws IOException {
+          ProcessExecutorParams processParams = ProcessExecutorParams.builder()
+              .setCommand(getCommand(context.getPlatform()))
+              .setEnvironment(getEnvironmentForProcess(context))
+              .setDirectory(filesystem.getRootPath())
+              .build();
+          Path tmpDir = getWorkerTempDir(context)
+              .resolve(Integer.toString(workerNumber.getAndIncrement()));
           filesystem.mkdirs(tmpDir);
 
           WorkerProcess process = createWorkerProcess(processParams, context, tmpDir);
@@ -143,6 +156,27 @@ public class WorkerShellStep implements Step {
     return pool;
   }
 
+  private boolean isPersistent(ExecutionContext context) {
+    return getWorkerJobParamsToUse(context.getPlatform()).isPersistent() &&
+        context.getPersistentWorkerProcessPools().isPresent();
+  }
+
+  /**
+   * A persistent worker keeps running after the rule that started it has been built, and the rule
+   * may clean its temp dir the next time it's built, so such workers get their own.
+   */
+  @VisibleForTesting
+  Path getWorkerTempDir(ExecutionContext context) {
+    if (!isPersistent(context)) {
+      return getWorkerJobParamsToUse(context.getPlatform()).getTempDir();
+    }
+    String key = Joiner.on(' ').join(getCommand(context.getPlatform()));
+    return filesystem.resolve(
+        filesystem.getBuckPaths().getTmpDir()
+            .resolve("workers")
+            .resolve(Hashing.sha1().hashString(key, StandardCharsets.UTF_8).toString()));
+  }
+
   @VisibleForTesting
   ImmutableList<String> getCommand(Platform platform) {
     ImmutableList<String> executionArgs = platform == Platform.WINDOWS ?
@@ -214,7 +248,7 @@ public class WorkerShellStep implements Step {
 
   @VisibleForTesting
   ImmutableMap<String, String> getEnvironmentForProcess(ExecutionContext context) {
-    Path tmpDir = getWorkerJobParamsToUse(context.getPlatform()).getTempDir();
+    Path tmpDir = getWorkerTempDir(context);
 
     Map<String, String> envVars = Maps.newHashMap(context.getEnvironment());
     envVars.put("TMP", filesystem.resolve(tmpDir).toString());
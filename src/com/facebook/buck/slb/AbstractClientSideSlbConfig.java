@@ -44,6 +44,8 @@ abstract class AbstractClientSideSlbConfig {
       ERROR_CHECK_TIME_RANGE_MILLIS;
   public static final int MAX_ACCEPTABLE_LATENCY_MILLIS = (int) TimeUnit.SECONDS.toMillis(1);
 
+  public static final int RANKING_REFRESH_INTERVAL_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+
   public abstract Clock getClock();
   public abstract ScheduledExecutorService getSchedulerService();
   public abstract ImmutableList<URI> getServerPool();
@@ -64,6 +66,11 @@ abstract class AbstractClientSideSlbConfig {
     return MAX_ACCEPTABLE_LATENCY_MILLIS;
   }
 
+  @Value.Default
+  public int getRankingRefreshIntervalMillis() {
+    return RANKING_REFRESH_INTERVAL_MILLIS;
+  }
+
   @Value.Default
   public int getConnectionTimeoutMillis() {
     return CONNECTION_TIMEOUT_MILLIS;
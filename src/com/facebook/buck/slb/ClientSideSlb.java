@@ -75,6 +75,7 @@ public class ClientSideSlb implements HttpLoadBalancer {
         config.getMaxErrorPercentage(),
         config.getLatencyCheckTimeRangeMillis(),
         config.getMaxAcceptableLatencyMillis(),
+        config.getRankingRefreshIntervalMillis(),
         config.getEventBus());
     this.pingClient = pingClient;
 
@@ -91,6 +92,11 @@ public class ClientSideSlb implements HttpLoadBalancer {
     return healthManager.getBestServer(clock.currentTimeMillis());
   }
 
+  @Override
+  public ImmutableList<URI> getRankedServers() throws NoHealthyServersException {
+    return healthManager.getRankedServers(clock.currentTimeMillis());
+  }
+
   @Override
   public void reportRequestSuccess(URI server) {
     healthManager.reportRequestSuccess(server, clock.currentTimeMillis());
@@ -147,5 +153,12 @@ public class ClientSideSlb implements HttpLoadBalancer {
     }
 
     eventBus.post(new LoadBalancerPingEvent(data.build()));
+
+    // Rank the servers now, so that requests don't have to.
+    try {
+      healthManager.getRankedServers(clock.currentTimeMillis());
+    } catch (NoHealthyServersException e) {
+      // Requests will find this out for themselves.
+    }
   }
 }
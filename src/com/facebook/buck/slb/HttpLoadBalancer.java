@@ -16,11 +16,18 @@
 
 package com.facebook.buck.slb;
 
+import com.google.common.collect.ImmutableList;
+
 import java.net.URI;
 
 public interface HttpLoadBalancer extends AutoCloseable {
   URI getBestServer() throws NoHealthyServersException;
 
+  /**
+   * @return the servers which are healthy, best first.
+   */
+  ImmutableList<URI> getRankedServers() throws NoHealthyServersException;
+
   void reportRequestSuccess(URI server);
   void reportRequestException(URI server);
 
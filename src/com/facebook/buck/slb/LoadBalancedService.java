@@ -17,38 +17,119 @@
 package com.facebook.buck.slb;
 
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LoadBalancedService implements HttpService {
+
+  /**
+   * Requests which haven't been answered within this percentile of recent response times are
+   * sent again to the next best server.
+   */
+  private static final double HEDGE_PERCENTILE = 0.95;
+  private static final int MAX_LATENCY_SAMPLES = 100;
+  private static final int MIN_LATENCY_SAMPLES_TO_HEDGE = 20;
+  private static final long DEFAULT_MIN_HEDGE_DELAY_MILLIS = 50;
+
   private final HttpLoadBalancer slb;
   private final OkHttpClient client;
   private final BuckEventBus eventBus;
+  private final Optional<ExecutorService> hedgingExecutor;
+  private final LatencySamples latencies;
+  private final long minHedgeDelayMillis;
 
   public LoadBalancedService(HttpLoadBalancer slb, OkHttpClient client, BuckEventBus eventBus) {
+    this(slb, client, eventBus, false);
+  }
+
+  /**
+   * @param hedgeRequests whether to send requests which are slow to be answered to a second
+   *     server as well, and use whichever answers first. Only requests which are safe to repeat
+   *     should be made through a service which does this.
+   */
+  public LoadBalancedService(
+      HttpLoadBalancer slb,
+      OkHttpClient client,
+      BuckEventBus eventBus,
+      boolean hedgeRequests) {
+    this(slb, client, eventBus, hedgeRequests, DEFAULT_MIN_HEDGE_DELAY_MILLIS);
+  }
+
+  /**
+   * @param minHedgeDelayMillis how long requests are always given to be answered before being
+   *     sent to a second server, however quick recent ones were.
+   */
+  @VisibleForTesting
+  LoadBalancedService(
+      HttpLoadBalancer slb,
+      OkHttpClient client,
+      BuckEventBus eventBus,
+      boolean hedgeRequests,
+      long minHedgeDelayMillis) {
     this.slb = slb;
     this.client = client;
     this.eventBus = eventBus;
+    this.hedgingExecutor = hedgeRequests
+        ? Optional.of(
+            Executors.newCachedThreadPool(
+                new MostExecutors.NamedThreadFactory("LoadBalancedService")))
+        : Optional.absent();
+    this.latencies = new LatencySamples();
+    this.minHedgeDelayMillis = minHedgeDelayMillis;
   }
 
   @Override
   public HttpResponse makeRequest(
       String path, Request.Builder requestBuilder) throws IOException {
-    URI server = slb.getBestServer();
+    if (hedgingExecutor.isPresent()) {
+      ImmutableList<URI> servers = slb.getRankedServers();
+      Optional<Long> hedgeDelayMillis = getHedgeDelayMillis();
+      if (servers.size() > 1 && hedgeDelayMillis.isPresent()) {
+        return makeHedgedRequest(
+            servers.get(0),
+            servers.get(1),
+            hedgeDelayMillis.get(),
+            path,
+            requestBuilder);
+      }
+      return makeRequest(servers.get(0), path, requestBuilder);
+    }
+    return makeRequest(slb.getBestServer(), path, requestBuilder);
+  }
+
+  private HttpResponse makeRequest(
+      URI server,
+      String path,
+      Request.Builder requestBuilder) throws IOException {
     LoadBalancedServiceEventData.Builder data = LoadBalancedServiceEventData.builder()
         .setServer(server);
-    requestBuilder.url(SingleUriService.getFullUrl(server, path));
-    Request request = requestBuilder.build();
-    if (request.body() != null && request.body().contentLength() != -1) {
-      data.setRequestSizeBytes(request.body().contentLength());
-    }
+    Request request = buildRequest(server, path, requestBuilder, data);
     Call call = client.newCall(request);
     try {
-      HttpResponse response = new LoadBalancedHttpResponse(server, slb, call.execute());
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      Response rawResponse = call.execute();
+      latencies.add(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+      HttpResponse response = new LoadBalancedHttpResponse(server, slb, rawResponse);
       if (response.contentLength() != -1) {
         data.setResponseSizeBytes(response.contentLength());
       }
@@ -61,8 +142,175 @@ public class LoadBalancedService implements HttpService {
     }
   }
 
+  /**
+   * Sends the request to {@code server}, and if it hasn't been answered after
+   * {@code hedgeDelayMillis} to {@code hedgeServer} as well.  The first successful response is
+   * returned and the other request is cancelled.
+   */
+  private HttpResponse makeHedgedRequest(
+      URI server,
+      URI hedgeServer,
+      long hedgeDelayMillis,
+      String path,
+      Request.Builder requestBuilder) throws IOException {
+    BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+    AtomicBoolean isDecided = new AtomicBoolean(false);
+    List<Attempt> attempts = new ArrayList<>(2);
+    Optional<Attempt> winner = Optional.absent();
+    try {
+      attempts.add(startAttempt(server, path, requestBuilder, finished, isDecided));
+      Attempt attempt = finished.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+      if (attempt == null || !attempt.response.isPresent()) {
+        attempts.add(startAttempt(hedgeServer, path, requestBuilder, finished, isDecided));
+      }
+
+      int pending = attempts.size() - (attempt == null ? 0 : 1);
+      while ((attempt == null || !attempt.response.isPresent()) && pending > 0) {
+        attempt = finished.take();
+        pending--;
+      }
+
+      if (!attempt.response.isPresent()) {
+        // Every attempt failed; report the last one.
+        eventBus.post(new LoadBalancedServiceEvent(attempt.data.build()));
+        throw new IOException(attempt.exception.get());
+      }
+
+      winner = Optional.of(attempt);
+      latencies.add(attempt.latencyMillis);
+      HttpResponse response =
+          new LoadBalancedHttpResponse(attempt.server, slb, attempt.response.get());
+      if (response.contentLength() != -1) {
+        attempt.data.setResponseSizeBytes(response.contentLength());
+      }
+      eventBus.post(new LoadBalancedServiceEvent(attempt.data.build()));
+      return response;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + path);
+    } finally {
+      isDecided.set(true);
+      for (Attempt attempt : attempts) {
+        if (!winner.isPresent() || attempt != winner.get()) {
+          attempt.call.cancel();
+        }
+      }
+      closeLosingResponses(finished);
+    }
+  }
+
+  private Attempt startAttempt(
+      URI server,
+      String path,
+      Request.Builder requestBuilder,
+      BlockingQueue<Attempt> finished,
+      AtomicBoolean isDecided) throws IOException {
+    LoadBalancedServiceEventData.Builder data = LoadBalancedServiceEventData.builder()
+        .setServer(server);
+    Attempt attempt = new Attempt(
+        server,
+        client.newCall(buildRequest(server, path, requestBuilder, data)),
+        data);
+    hedgingExecutor.get().execute(
+        () -> {
+          Stopwatch stopwatch = Stopwatch.createStarted();
+          try {
+            attempt.response = Optional.of(attempt.call.execute());
+            attempt.latencyMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+          } catch (IOException e) {
+            attempt.exception = Optional.of(e);
+            data.setException(e);
+          }
+          finished.add(attempt);
+          if (isDecided.get()) {
+            // Nobody is waiting for this any more.
+            closeLosingResponses(finished);
+          }
+        });
+    return attempt;
+  }
+
+  private static void closeLosingResponses(BlockingQueue<Attempt> finished) {
+    Attempt attempt;
+    while ((attempt = finished.poll()) != null) {
+      if (attempt.response.isPresent()) {
+        attempt.response.get().body().close();
+      }
+    }
+  }
+
+  private static Request buildRequest(
+      URI server,
+      String path,
+      Request.Builder requestBuilder,
+      LoadBalancedServiceEventData.Builder data) throws IOException {
+    requestBuilder.url(SingleUriService.getFullUrl(server, path));
+    Request request = requestBuilder.build();
+    if (request.body() != null && request.body().contentLength() != -1) {
+      data.setRequestSizeBytes(request.body().contentLength());
+    }
+    return request;
+  }
+
+  @VisibleForTesting
+  Optional<Long> getHedgeDelayMillis() {
+    Optional<Long> percentile = latencies.getPercentile(HEDGE_PERCENTILE);
+    if (!percentile.isPresent()) {
+      return Optional.absent();
+    }
+    return Optional.of(Math.max(minHedgeDelayMillis, percentile.get()));
+  }
+
   @Override
   public void close() {
+    if (hedgingExecutor.isPresent()) {
+      hedgingExecutor.get().shutdownNow();
+    }
     slb.close();
   }
+
+  /**
+   * One of the requests sent for a hedged request.  Its outcome is filled in by the thread making
+   * it, and read after it's been handed over through a queue.
+   */
+  private static class Attempt {
+    private final URI server;
+    private final Call call;
+    private final LoadBalancedServiceEventData.Builder data;
+    private Optional<Response> response;
+    private Optional<IOException> exception;
+    private long latencyMillis;
+
+    private Attempt(URI server, Call call, LoadBalancedServiceEventData.Builder data) {
+      this.server = server;
+      this.call = call;
+      this.data = data;
+      this.response = Optional.absent();
+      this.exception = Optional.absent();
+    }
+  }
+
+  /**
+   * How long the most recent requests took to be answered.
+   */
+  private static class LatencySamples {
+    private final long[] samples = new long[MAX_LATENCY_SAMPLES];
+    private int next;
+    private int count;
+
+    public synchronized void add(long latencyMillis) {
+      samples[next] = latencyMillis;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized Optional<Long> getPercentile(double percentile) {
+      if (count < MIN_LATENCY_SAMPLES_TO_HEDGE) {
+        return Optional.absent();
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      return Optional.of(sorted[(int) Math.ceil(percentile * count) - 1]);
+    }
+  }
 }
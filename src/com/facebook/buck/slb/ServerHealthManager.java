@@ -20,6 +20,7 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.model.Pair;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -44,8 +45,13 @@ public class ServerHealthManager {
   private final int latencyCheckTimeRangeMillis;
   private final float maxErrorPercentage;
   private final int errorCheckTimeRangeMillis;
+  private final int rankingRefreshIntervalMillis;
   private final BuckEventBus eventBus;
 
+  // The ranking is worked out from every sample of every server, so it's only refreshed once in a
+  // while rather than on every request, or as soon as a ping or an error might change it.
+  private volatile Optional<Ranking> ranking;
+
   public ServerHealthManager(
       ImmutableList<URI> servers,
       int errorCheckTimeRangeMillis,
@@ -53,25 +59,51 @@ public class ServerHealthManager {
       int latencyCheckTimeRangeMillis,
       int maxAcceptableLatencyMillis,
       BuckEventBus eventBus) {
+    this(
+        servers,
+        errorCheckTimeRangeMillis,
+        maxErrorPercentage,
+        latencyCheckTimeRangeMillis,
+        maxAcceptableLatencyMillis,
+        0,
+        eventBus);
+  }
+
+  /**
+   * @param rankingRefreshIntervalMillis how long the ranking of servers is reused for, unless
+   *     pings or errors are reported in the meantime. Zero ranks the servers on every call.
+   */
+  public ServerHealthManager(
+      ImmutableList<URI> servers,
+      int errorCheckTimeRangeMillis,
+      float maxErrorPercentage,
+      int latencyCheckTimeRangeMillis,
+      int maxAcceptableLatencyMillis,
+      int rankingRefreshIntervalMillis,
+      BuckEventBus eventBus) {
     this.errorCheckTimeRangeMillis = errorCheckTimeRangeMillis;
     this.maxErrorPercentage = maxErrorPercentage;
     this.latencyCheckTimeRangeMillis = latencyCheckTimeRangeMillis;
     this.maxAcceptableLatencyMillis = maxAcceptableLatencyMillis;
+    this.rankingRefreshIntervalMillis = rankingRefreshIntervalMillis;
     this.servers = new ConcurrentHashMap<>();
     for (URI server : servers) {
       this.servers.put(server, new ServerHealthState(server));
     }
     this.eventBus = eventBus;
+    this.ranking = Optional.absent();
   }
 
   public void reportPingLatency(URI server, long epochMillis, long latencyMillis) {
     Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
     servers.get(server).reportPingLatency(epochMillis, latencyMillis);
+    ranking = Optional.absent();
   }
 
   public void reportRequestError(URI server, long epochMillis) {
     Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
     servers.get(server).reportRequestError(epochMillis);
+    ranking = Optional.absent();
   }
 
   public void reportRequestSuccess(URI server, long epochMillis) {
@@ -80,12 +112,32 @@ public class ServerHealthManager {
   }
 
   public URI getBestServer(long epochMillis) throws NoHealthyServersException {
+    return getRankedServers(epochMillis).get(0);
+  }
+
+  /**
+   * @return the healthy servers, fastest first.
+   */
+  public ImmutableList<URI> getRankedServers(long epochMillis) throws NoHealthyServersException {
+    Optional<Ranking> current = ranking;
+    if (!current.isPresent() || !current.get().isFresh(epochMillis)) {
+      current = Optional.of(rankServers(epochMillis));
+      ranking = current;
+    }
+
+    if (current.get().servers.isEmpty()) {
+      throw new NoHealthyServersException(String.format(
+          "No servers available. Too many errors reported by all servers in the pool: [%s]",
+          Joiner.on(", ").join(FluentIterable.from(servers.keySet()).transform(
+              Functions.toStringFunction()))));
+    }
+    return current.get().servers;
+  }
+
+  private Ranking rankServers(long epochMillis) {
     ServerHealthManagerEventData.Builder data = ServerHealthManagerEventData.builder();
     Map<URI, PerServerData.Builder> allPerServerData = Maps.newHashMap();
     try {
-      // TODO(ruibm): Computations in this method could be cached and only refreshed
-      // every 10 seconds to avoid call bursts causing unnecessary CPU consumption.
-
       List<Pair<URI, Long>> serverLatencies = Lists.newArrayList();
       for (ServerHealthState state : servers.values()) {
         URI server = state.getServer();
@@ -103,16 +155,17 @@ public class ServerHealthManager {
 
       if (serverLatencies.size() == 0) {
         data.setNoHealthyServersAvailable(true);
-        throw new NoHealthyServersException(String.format(
-            "No servers available. Too many errors reported by all servers in the pool: [%s]",
-            Joiner.on(", ").join(FluentIterable.from(servers.keySet()).transform(
-                Functions.toStringFunction()))));
+        return new Ranking(epochMillis, ImmutableList.of());
       }
 
       Collections.sort(serverLatencies, LATENCY_COMPARATOR);
       URI bestServer = serverLatencies.get(0).getFirst();
       Preconditions.checkNotNull(allPerServerData.get(bestServer)).setBestServer(true);
-      return bestServer;
+      ImmutableList.Builder<URI> rankedServers = ImmutableList.builder();
+      for (Pair<URI, Long> serverLatency : serverLatencies) {
+        rankedServers.add(serverLatency.getFirst());
+      }
+      return new Ranking(epochMillis, rankedServers.build());
     } finally {
       for (PerServerData.Builder builder : allPerServerData.values()) {
         data.addPerServerData(builder.build());
@@ -132,4 +185,18 @@ public class ServerHealthManager {
     builder.append("}");
     return builder.toString();
   }
+
+  private class Ranking {
+    private final long epochMillis;
+    private final ImmutableList<URI> servers;
+
+    private Ranking(long epochMillis, ImmutableList<URI> servers) {
+      this.epochMillis = epochMillis;
+      this.servers = servers;
+    }
+
+    private boolean isFresh(long nowMillis) {
+      return nowMillis >= epochMillis && nowMillis - epochMillis < rankingRefreshIntervalMillis;
+    }
+  }
 }
@@ -27,8 +27,10 @@ import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.util.Ansi;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
@@ -118,6 +120,13 @@ abstract class AbstractExecutionContext implements Closeable {
     return new ConcurrentHashMap<>();
   }
 
+  /**
+   * Pools of workers which outlive this context, owned and closed by the daemon.  Absent when
+   * there is no daemon, in which case persistent workers are pooled like any other.
+   */
+  public abstract Optional<ConcurrentMap<String, WorkerProcessPool>>
+      getPersistentWorkerProcessPools();
+
   @Value.Default
   public ConcurrencyLimit getConcurrencyLimit() {
     return new ConcurrencyLimit(
@@ -134,6 +143,16 @@ abstract class AbstractExecutionContext implements Closeable {
     return new ClassLoaderCache();
   }
 
+  @Value.Default
+  public JarIndexCache getJarIndexCache() {
+    return new JarIndexCache();
+  }
+
+  /**
+   * The hashes of files which the build's rule keys are computed from.  Absent outside of a build.
+   */
+  public abstract Optional<FileHashCache> getFileHashCache();
+
   @Value.Default
   public ProcessExecutor getProcessExecutor() {
     return new ProcessExecutor(getConsole());
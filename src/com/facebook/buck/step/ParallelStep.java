@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step;
+
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs independent steps at the same time, on as many threads as the build may use.  All of the
+ * steps are run to completion, and the result is that of the first (in order) which failed.
+ */
+public class ParallelStep implements Step {
+
+  private final ImmutableList<Step> steps;
+
+  public ParallelStep(List<? extends Step> steps) {
+    Preconditions.checkArgument(!steps.isEmpty(), "Must have at least one step");
+    this.steps = ImmutableList.copyOf(steps);
+  }
+
+  public ImmutableList<Step> getSteps() {
+    return steps;
+  }
+
+  @Override
+  public StepExecutionResult execute(final ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList.Builder<Callable<StepExecutionResult>> callables = ImmutableList.builder();
+    for (final Step step : steps) {
+      callables.add(() -> step.execute(context));
+    }
+
+    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(
+        MostExecutors.newMultiThreadExecutor(
+            "Parallel step",
+            Math.min(steps.size(), context.getConcurrencyLimit().threadLimit)));
+    List<StepExecutionResult> results;
+    try {
+      results = MoreFutures.getAll(executorService, callables.build());
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    for (StepExecutionResult result : results) {
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return Joiner.on("_||_").join(Iterables.transform(steps, Step::getShortName));
+  }
+
+  @Override
+  public String getDescription(final ExecutionContext context) {
+    return Joiner.on(" & ").join(Iterables.transform(steps, step -> step.getDescription(context)))
+        + " & wait";
+  }
+}
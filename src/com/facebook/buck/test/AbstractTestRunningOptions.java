@@ -86,4 +86,25 @@ abstract class AbstractTestRunningOptions {
   public abstract Optional<String> getCoverageExcludes();
 
   public abstract Optional<String> getCoverageIncludes();
+
+  /**
+   * The number of JVMs the test classes of a single java_test may be split across.
+   */
+  @Value.Default
+  public int getJavaTestShards() {
+    return 1;
+  }
+
+  /**
+   * Whether java_tests should be run in JVMs which are kept running between test rules.
+   */
+  @Value.Default
+  public boolean isUsingJavaTestWorkers() {
+    return false;
+  }
+
+  /**
+   * How long each test case took, in milliseconds, the last time it was run.
+   */
+  public abstract ImmutableMap<String, Long> getTestCaseDurations();
 }
@@ -177,6 +177,16 @@ public class TestCaseSummary implements TestCaseSummaryExternalInterface<TestRes
     return testResults;
   }
 
+  @JsonIgnore
+  public boolean isCached() {
+    return isCached;
+  }
+
+  @JsonIgnore
+  public boolean isDryRun() {
+    return isDryRun;
+  }
+
   @JsonIgnore
   public int getPassedCount() {
     return testResults.size() - failureCount - skippedCount;
@@ -21,6 +21,7 @@ import com.facebook.buck.util.concurrent.MostExecutors;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkField;
 import org.junit.runners.model.FrameworkMethod;
@@ -28,6 +29,8 @@ import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -46,6 +49,10 @@ import java.util.concurrent.Future;
  */
 public class BuckBlockJUnit4ClassRunner extends BlockJUnit4ClassRunner {
 
+  // Every executor created by this runner, so that their threads can be stopped once it has run.
+  private final List<ExecutorService> executors =
+      Collections.synchronizedList(new ArrayList<ExecutorService>());
+
   // We create an ExecutorService based on the implementation of
   // Executors.newSingleThreadExecutor(). The problem with Executors.newSingleThreadExecutor() is
   // that it does not let us specify a RejectedExecutionHandler, which we need to ensure that
@@ -53,7 +60,10 @@ public class BuckBlockJUnit4ClassRunner extends BlockJUnit4ClassRunner {
   private final ThreadLocal<ExecutorService> executor = new ThreadLocal<ExecutorService>() {
     @Override
     protected ExecutorService initialValue() {
-      return MostExecutors.newSingleThreadExecutor(getClass().getSimpleName());
+      ExecutorService executorService =
+          MostExecutors.newSingleThreadExecutor(getClass().getSimpleName());
+      executors.add(executorService);
+      return executorService;
     }
   };
 
@@ -65,6 +75,20 @@ public class BuckBlockJUnit4ClassRunner extends BlockJUnit4ClassRunner {
     this.defaultTestTimeoutMillis = defaultTestTimeoutMillis;
   }
 
+  @Override
+  public void run(RunNotifier notifier) {
+    try {
+      super.run(notifier);
+    } finally {
+      // The runner may share its JVM with later tests, so don't leave idle threads behind.
+      synchronized (executors) {
+        for (ExecutorService executorService : executors) {
+          executorService.shutdown();
+        }
+      }
+    }
+  }
+
   @Override
   protected Object createTest() throws Exception {
     // Pushing tests onto threads because the test timeout has been set is Unexpected Behaviour. It
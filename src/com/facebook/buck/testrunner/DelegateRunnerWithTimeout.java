@@ -158,4 +158,12 @@ class DelegateRunnerWithTimeout extends Runner {
     executor.get().shutdownNow();
   }
 
+  /**
+   * Stops the thread which the current thread's tests were run on, once there are no more to run.
+   */
+  static void shutdownExecutor() {
+    executor.get().shutdown();
+    executor.remove();
+  }
+
 }
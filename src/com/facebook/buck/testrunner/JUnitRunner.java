@@ -140,6 +140,8 @@ public final class JUnitRunner extends BaseRunner {
         writeResult(className, results);
       }
     }
+
+    DelegateRunnerWithTimeout.shutdownExecutor();
   }
 
   /**
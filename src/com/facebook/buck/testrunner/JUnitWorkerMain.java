@@ -0,0 +1,377 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * A long-lived JUnit runner, so that each test rule doesn't have to pay for starting up a JVM.  It
+ * speaks the same protocol as the processes started for {@code worker_tool} rules, reading JSON
+ * messages from stdin and answering on stdout.
+ * <p>
+ * Expected arguments are:
+ * <ul>
+ *   <li>(int) the number of jobs to run before asking to be replaced
+ * </ul>
+ * <p>
+ * Each job is a file of NUL-separated arguments:
+ * <ul>
+ *   <li>(string...) {@code -Dname=value} system properties to set while the job runs
+ *   <li>(string) {@code --classpath-file} and the newline-separated classpath of the test
+ *   <li>(string...) the arguments {@link JUnitMain} would have been given
+ * </ul>
+ * <p>
+ * The tests are loaded in a new class loader for every job, which sees the test's classpath and
+ * these runner classes but nothing else, and the system properties, default locale and time zone
+ * are put back afterwards.  While a job runs, the {@value #WORKER_PROPERTY} system property names
+ * the worker process, so that tests can tell where they are being run.  A job's exit code is 0 if
+ * the tests were run (whether or not they passed), {@link #EXIT_CODE_RETIRE} if they were run but
+ * this process shouldn't be used again because it has run enough jobs or the tests left threads or
+ * memory behind, and 1 if the tests couldn't be run here at all.
+ * <p>
+ * IMPORTANT! Like {@link JUnitMain}, this class limits itself to types that are available in the
+ * JDK, since the worker's own classpath is shared with nothing but the runner.
+ */
+public class JUnitWorkerMain {
+
+  static final int EXIT_CODE_RETIRE = 3;
+
+  private static final String RUNNER_CLASS = "com.facebook.buck.testrunner.JUnitRunner";
+  private static final String CLASSPATH_FILE_FLAG = "--classpath-file";
+  static final String WORKER_PROPERTY = "buck.junit_worker";
+
+  private JUnitWorkerMain() {
+    // Launcher class.
+  }
+
+  public static void main(String[] args) throws IOException {
+    int maxJobs = Integer.parseInt(args[0]);
+
+    // Stdout carries the protocol, so anything else written to it would corrupt the conversation.
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+    System.setOut(System.err);
+    MessageReader in =
+        new MessageReader(new BufferedReader(new InputStreamReader(System.in, UTF_8)));
+
+    in.expect('[');
+    Map<String, String> handshake = in.readObject();
+    out.write(
+        String.format(
+            "[{\"id\":%s,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}",
+            handshake.get("id")));
+    out.flush();
+
+    int jobs = 0;
+    while (in.next() == ',') {
+      Map<String, String> message = in.readObject();
+      int exitCode;
+      if (!"command".equals(message.get("type"))) {
+        exitCode = 1;
+      } else {
+        exitCode = runJob(
+            message.get("args_path"),
+            message.get("stdout_path"),
+            message.get("stderr_path"));
+        if (exitCode == 0 && ++jobs >= maxJobs) {
+          exitCode = EXIT_CODE_RETIRE;
+        }
+      }
+      out.write(
+          String.format(
+              ",{\"id\":%s,\"type\":\"%s\",\"exit_code\":%d}",
+              message.get("id"),
+              "command".equals(message.get("type")) ? "result" : "error",
+              exitCode));
+      out.flush();
+    }
+
+    out.write("]");
+    out.flush();
+    System.exit(0);
+  }
+
+  private static int runJob(String argsPath, String stdOutPath, String stdErrPath)
+      throws IOException {
+    String[] jobArgs = new String(Files.readAllBytes(Paths.get(argsPath)), UTF_8).split("\0");
+    Map<String, String> properties = new HashMap<>();
+    int i = 0;
+    for (; i < jobArgs.length && jobArgs[i].startsWith("-D"); i++) {
+      int equals = jobArgs[i].indexOf('=');
+      if (equals < 0) {
+        properties.put(jobArgs[i].substring(2), "");
+      } else {
+        properties.put(jobArgs[i].substring(2, equals), jobArgs[i].substring(equals + 1));
+      }
+    }
+    if (i + 1 >= jobArgs.length || !CLASSPATH_FILE_FLAG.equals(jobArgs[i])) {
+      return 1;
+    }
+    List<String> classpath = new ArrayList<>();
+    for (String line : Files.readAllLines(Paths.get(jobArgs[i + 1]), UTF_8)) {
+      if (!line.isEmpty()) {
+        classpath.add(line);
+      }
+    }
+    // The runner's own classes come after the test's, as they do on a forked runner's classpath.
+    classpath.addAll(
+        Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+    String[] runnerArgs = Arrays.copyOfRange(jobArgs, i + 2, jobArgs.length);
+
+    List<URL> urls = new ArrayList<>();
+    StringBuilder classpathProperty = new StringBuilder();
+    for (String entry : classpath) {
+      urls.add(Paths.get(entry).toUri().toURL());
+      if (classpathProperty.length() > 0) {
+        classpathProperty.append(File.pathSeparatorChar);
+      }
+      classpathProperty.append(entry);
+    }
+
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    Locale originalLocale = Locale.getDefault();
+    TimeZone originalTimeZone = TimeZone.getDefault();
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+    Set<Thread> originalThreads = new HashSet<>(Thread.getAllStackTraces().keySet());
+
+    try (PrintStream jobOut = new PrintStream(new FileOutputStream(stdOutPath), true, "UTF-8");
+         PrintStream jobErr = new PrintStream(new FileOutputStream(stdErrPath), true, "UTF-8");
+         URLClassLoader loader = new URLClassLoader(
+             urls.toArray(new URL[urls.size()]),
+             ClassLoader.getSystemClassLoader().getParent())) {
+      System.setOut(jobOut);
+      System.setErr(jobErr);
+      for (Map.Entry<String, String> property : properties.entrySet()) {
+        System.setProperty(property.getKey(), property.getValue());
+      }
+      System.setProperty("java.class.path", classpathProperty.toString());
+      System.setProperty(WORKER_PROPERTY, ManagementFactory.getRuntimeMXBean().getName());
+      thread.setContextClassLoader(loader);
+
+      Object runner;
+      try {
+        // Leave it to a freshly started runner to explain what is missing.
+        loader.loadClass("org.junit.Test");
+        loader.loadClass("org.hamcrest.Description");
+
+        Class<?> runnerClass = loader.loadClass(RUNNER_CLASS);
+        runner = runnerClass.getConstructor().newInstance();
+        Method parseArgs =
+            runnerClass.getSuperclass().getDeclaredMethod("parseArgs", String[].class);
+        parseArgs.setAccessible(true);
+        parseArgs.invoke(runner, (Object) runnerArgs);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        e.printStackTrace();
+        return 1;
+      }
+
+      // As with a runner in its own process, the job has succeeded once the tests have been run.
+      try {
+        runner.getClass().getMethod("run").invoke(runner);
+      } catch (InvocationTargetException e) {
+        e.getCause().printStackTrace();
+      } catch (ReflectiveOperationException e) {
+        e.printStackTrace();
+      }
+    } finally {
+      thread.setContextClassLoader(originalContextClassLoader);
+      System.setOut(originalOut);
+      System.setErr(originalErr);
+      System.setProperties(originalProperties);
+      Locale.setDefault(originalLocale);
+      TimeZone.setDefault(originalTimeZone);
+    }
+
+    return hasLeaked(originalThreads) ? EXIT_CODE_RETIRE : 0;
+  }
+
+  /**
+   * @return whether the tests left threads running which would keep their classes alive, or so
+   *     much memory in use that the next tests might run out.
+   */
+  private static boolean hasLeaked(Set<Thread> originalThreads) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (!thread.isDaemon() && thread.isAlive() && !originalThreads.contains(thread)) {
+        return true;
+      }
+    }
+
+    Runtime runtime = Runtime.getRuntime();
+    long limit = runtime.maxMemory() / 4 * 3;
+    if (runtime.totalMemory() - runtime.freeMemory() > limit) {
+      System.gc();
+      return runtime.totalMemory() - runtime.freeMemory() > limit;
+    }
+    return false;
+  }
+
+  /**
+   * Just enough of a JSON reader for the flat messages the protocol uses.
+   */
+  private static class MessageReader {
+    private final Reader reader;
+
+    MessageReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * @return the next character which isn't whitespace.
+     */
+    char next() throws IOException {
+      int c;
+      do {
+        c = reader.read();
+        if (c == -1) {
+          throw new IOException("Unexpected end of input");
+        }
+      } while (Character.isWhitespace(c));
+      return (char) c;
+    }
+
+    void expect(char expected) throws IOException {
+      char c = next();
+      if (c != expected) {
+        throw new IOException(String.format("Expected '%s' but got '%s'", expected, c));
+      }
+    }
+
+    /**
+     * Reads an object, keeping the values which are strings or numbers.
+     */
+    Map<String, String> readObject() throws IOException {
+      Map<String, String> object = new HashMap<>();
+      expect('{');
+      char c = next();
+      while (c != '}') {
+        if (c != '"') {
+          throw new IOException(String.format("Expected a name but got '%s'", c));
+        }
+        String name = readString();
+        expect(':');
+        c = next();
+        if (c == '"') {
+          object.put(name, readString());
+          c = next();
+        } else if (c == '[' || c == '{') {
+          c = skipNested();
+        } else {
+          StringBuilder value = new StringBuilder();
+          while (c != ',' && c != '}') {
+            value.append(c);
+            c = next();
+          }
+          object.put(name, value.toString());
+        }
+        if (c == ',') {
+          c = next();
+        }
+      }
+      return object;
+    }
+
+    private String readString() throws IOException {
+      StringBuilder string = new StringBuilder();
+      for (int c = reader.read(); c != '"'; c = reader.read()) {
+        if (c == -1) {
+          throw new IOException("Unexpected end of input");
+        } else if (c == '\\') {
+          c = reader.read();
+          switch (c) {
+            case 'n':
+              string.append('\n');
+              break;
+            case 't':
+              string.append('\t');
+              break;
+            case 'r':
+              string.append('\r');
+              break;
+            case 'b':
+              string.append('\b');
+              break;
+            case 'f':
+              string.append('\f');
+              break;
+            case 'u':
+              char[] hex = new char[4];
+              for (int i = 0; i < hex.length; i++) {
+                hex[i] = (char) reader.read();
+              }
+              string.append((char) Integer.parseInt(new String(hex), 16));
+              break;
+            default:
+              string.append((char) c);
+          }
+        } else {
+          string.append((char) c);
+        }
+      }
+      return string.toString();
+    }
+
+    /**
+     * Skips the rest of an array or object which has just been opened.
+     *
+     * @return the next character after it.
+     */
+    private char skipNested() throws IOException {
+      int depth = 1;
+      while (depth > 0) {
+        char c = next();
+        if (c == '"') {
+          readString();
+        } else if (c == '[' || c == '{') {
+          depth++;
+        } else if (c == ']' || c == '}') {
+          depth--;
+        }
+      }
+      return next();
+    }
+  }
+}
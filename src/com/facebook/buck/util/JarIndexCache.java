@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Maintains an index of the entries of jars along with a bounded cache of their contents, so that
+ * compilations against the same classpath (concurrently, or across commands when held by the
+ * daemon) don't each have to reopen and rescan every jar on it.  Jars are identified by the hash
+ * of their contents which rule keys are computed from, so a jar which is rewritten is simply
+ * indexed again, and the stale entries age out.
+ */
+public final class JarIndexCache {
+
+  private static final long DEFAULT_MAX_INDEXED_ENTRIES = 4_000_000;
+  private static final long DEFAULT_MAX_CONTENTS_BYTES = 64L * 1024 * 1024;
+
+  private final Cache<JarKey, JarIndex> indexes;
+  private final Cache<EntryKey, byte[]> contents;
+
+  public JarIndexCache() {
+    this(DEFAULT_MAX_INDEXED_ENTRIES, DEFAULT_MAX_CONTENTS_BYTES);
+  }
+
+  @VisibleForTesting
+  JarIndexCache(long maxIndexedEntries, long maxContentsBytes) {
+    this.indexes = CacheBuilder.newBuilder()
+        .maximumWeight(maxIndexedEntries)
+        .weigher(
+            new Weigher<JarKey, JarIndex>() {
+              @Override
+              public int weigh(JarKey key, JarIndex index) {
+                return index.size();
+              }
+            })
+        .build();
+    this.contents = CacheBuilder.newBuilder()
+        .maximumWeight(maxContentsBytes)
+        .weigher(
+            new Weigher<EntryKey, byte[]>() {
+              @Override
+              public int weigh(EntryKey key, byte[] bytes) {
+                return bytes.length;
+              }
+            })
+        .build();
+  }
+
+  /**
+   * @param hash the hash of the jar's contents, as used by the build.
+   * @return the index of the given jar, reading it only if it hasn't been seen with these
+   *     contents.
+   */
+  public JarIndex getIndex(Path jar, HashCode hash) throws IOException {
+    final JarKey key = new JarKey(jar, hash);
+    try {
+      return indexes.get(
+          key,
+          new Callable<JarIndex>() {
+            @Override
+            public JarIndex call() throws IOException {
+              return JarIndex.read(key);
+            }
+          });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * @return the contents of {@code entryName} in the indexed jar, using {@code loader} to read
+   *     them if they aren't cached.  The jar may have been rewritten since it was indexed, so what
+   *     the loader reads is only cached if it's what was in the jar then.
+   */
+  public byte[] getContents(
+      JarIndex index,
+      String entryName,
+      Callable<byte[]> loader) throws IOException {
+    EntryKey key = new EntryKey(index.key.hash, entryName);
+    byte[] bytes = contents.getIfPresent(key);
+    if (bytes != null) {
+      return bytes;
+    }
+    try {
+      bytes = loader.call();
+    } catch (Exception e) {
+      Throwables.propagateIfInstanceOf(e, IOException.class);
+      throw Throwables.propagate(e);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    Long indexedCrc = index.crcs.get(entryName);
+    if (indexedCrc != null && indexedCrc == crc.getValue()) {
+      contents.put(key, bytes);
+    }
+    return bytes;
+  }
+
+  @VisibleForTesting
+  long getIndexedJarCount() {
+    return indexes.size();
+  }
+
+  @VisibleForTesting
+  long getCachedContentsCount() {
+    return contents.size();
+  }
+
+  /**
+   * The names of the file entries in a jar, grouped by the (dotted) package they belong to.
+   */
+  public static final class JarIndex {
+
+    private final JarKey key;
+    private final ImmutableListMultimap<String, String> entriesByPackage;
+    private final ImmutableMap<String, Long> crcs;
+
+    private JarIndex(
+        JarKey key,
+        ImmutableListMultimap<String, String> entriesByPackage,
+        ImmutableMap<String, Long> crcs) {
+      this.key = key;
+      this.entriesByPackage = entriesByPackage;
+      this.crcs = crcs;
+    }
+
+    private static JarIndex read(JarKey key) throws IOException {
+      ImmutableListMultimap.Builder<String, String> entries = ImmutableListMultimap.builder();
+      Map<String, Long> crcs = new HashMap<>();
+      try (ZipFile zip = new ZipFile(key.path.toFile())) {
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+          ZipEntry entry = zipEntries.nextElement();
+          if (entry.isDirectory()) {
+            continue;
+          }
+          String name = entry.getName();
+          int lastSlash = name.lastIndexOf('/');
+          String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+          entries.put(packageName, name);
+          crcs.put(name, entry.getCrc());
+        }
+      }
+      return new JarIndex(key, entries.build(), ImmutableMap.copyOf(crcs));
+    }
+
+    public Path getPath() {
+      return key.path;
+    }
+
+    /**
+     * @return the names of the entries directly in {@code packageName}.
+     */
+    public ImmutableList<String> getEntries(String packageName) {
+      return entriesByPackage.get(packageName);
+    }
+
+    /**
+     * @return the names of the packages which are, or are nested in, {@code packageName}.
+     */
+    public ImmutableList<String> getPackagesUnder(String packageName) {
+      ImmutableSet<String> packages = entriesByPackage.keySet();
+      if (packageName.isEmpty()) {
+        return packages.asList();
+      }
+      ImmutableList.Builder<String> result = ImmutableList.builder();
+      String prefix = packageName + ".";
+      for (String candidate : packages) {
+        if (candidate.equals(packageName) || candidate.startsWith(prefix)) {
+          result.add(candidate);
+        }
+      }
+      return result.build();
+    }
+
+    private int size() {
+      return Math.max(1, entriesByPackage.size());
+    }
+  }
+
+  /**
+   * Indexes are kept per path, since the entries of jars with the same contents are still named
+   * after the jar they were found in.
+   */
+  private static final class JarKey {
+    private final Path path;
+    private final HashCode hash;
+
+    private JarKey(Path path, HashCode hash) {
+      this.path = path;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof JarKey)) {
+        return false;
+      }
+      JarKey that = (JarKey) other;
+      return path.equals(that.path) && hash.equals(that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, hash);
+    }
+  }
+
+  private static final class EntryKey {
+    private final HashCode jar;
+    private final String entryName;
+
+    private EntryKey(HashCode jar, String entryName) {
+      this.jar = jar;
+      this.entryName = entryName;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof EntryKey)) {
+        return false;
+      }
+      EntryKey that = (EntryKey) other;
+      return jar.equals(that.jar) && entryName.equals(that.entryName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(jar, entryName);
+    }
+  }
+}
@@ -21,12 +21,14 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.PathOrGlobMatcher;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.io.Watchman;
 import com.facebook.buck.io.Watchman.Capability;
 import com.facebook.buck.io.WatchmanClient;
 import com.facebook.buck.io.WatchmanDiagnostic;
 import com.facebook.buck.io.WatchmanDiagnosticCache;
 import com.facebook.buck.io.WatchmanQuery;
+import com.facebook.buck.io.WatchmanSubscription;
 import com.facebook.buck.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
@@ -67,21 +69,20 @@ public class WatchmanWatcher {
   };
 
   private static final Logger LOG = Logger.get(WatchmanWatcher.class);
-  private static final int DEFAULT_OVERFLOW_THRESHOLD = 10000;
+  private static final int DEFAULT_OVERFLOW_THRESHOLD = 200;
   private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
   private final EventBus fileChangeEventBus;
   private final WatchmanClient watchmanClient;
   private final WatchmanQuery query;
+  private final Optional<WatchmanSubscription> subscription;
   private String mSinceCursor;
 
   /**
-   * The maximum number of watchman changes to process in each call to postEvents before
-   * giving up and generating an overflow. The goal is to be able to process a reasonable
-   * number of human generated changes quickly, but not spend a long time processing lots
-   * of changes after a branch switch which will end up invalidating the entire cache
-   * anyway. If overflow is negative calls to postEvents will just generate a single
-   * overflow event.
+   * The maximum number of watchman changes to post one at a time in each call to postEvents.
+   * Beyond this they're posted as a single {@link WatchEventBatch}, so that after a branch switch
+   * subscribers can invalidate what the changes affect in one pass rather than once per change.
+   * If overflow is negative calls to postEvents will just generate a single overflow event.
    */
   private final int overflow;
 
@@ -108,6 +109,20 @@ public class WatchmanWatcher {
       ImmutableSet<PathOrGlobMatcher> ignorePaths,
       Watchman watchman,
       String sinceCursor) {
+    this(watchRoot, fileChangeEventBus, ignorePaths, watchman, sinceCursor, Optional.absent());
+  }
+
+  /**
+   * @param subscription if present, made by {@link #subscribe} with the same arguments, and used
+   *     instead of querying for changes since {@code sinceCursor}.
+   */
+  public WatchmanWatcher(
+      String watchRoot,
+      EventBus fileChangeEventBus,
+      ImmutableSet<PathOrGlobMatcher> ignorePaths,
+      Watchman watchman,
+      String sinceCursor,
+      Optional<WatchmanSubscription> subscription) {
     this(
         fileChangeEventBus,
         watchman.getWatchmanClient().get(),
@@ -118,7 +133,8 @@ public class WatchmanWatcher {
             watchman.getProjectPrefix(),
             ignorePaths,
             watchman.getCapabilities()),
-        sinceCursor);
+        sinceCursor,
+        subscription);
   }
 
   @VisibleForTesting
@@ -128,12 +144,31 @@ public class WatchmanWatcher {
                   long timeoutMillis,
                   WatchmanQuery query,
                   String sinceCursor) {
+    this(
+        fileChangeEventBus,
+        watchmanClient,
+        overflow,
+        timeoutMillis,
+        query,
+        sinceCursor,
+        Optional.absent());
+  }
+
+  @VisibleForTesting
+  WatchmanWatcher(EventBus fileChangeEventBus,
+                  WatchmanClient watchmanClient,
+                  int overflow,
+                  long timeoutMillis,
+                  WatchmanQuery query,
+                  String sinceCursor,
+                  Optional<WatchmanSubscription> subscription) {
     this.fileChangeEventBus = fileChangeEventBus;
     this.watchmanClient = watchmanClient;
     this.overflow = overflow;
     this.timeoutMillis = timeoutMillis;
     this.query = query;
     this.mSinceCursor = sinceCursor;
+    this.subscription = subscription;
   }
 
   @VisibleForTesting
@@ -219,113 +254,73 @@ public class WatchmanWatcher {
   }
 
   /**
-   * Query Watchman for file change events. If too many events are pending or an error occurs
-   * an overflow event is posted to the EventBus signalling that events may have been lost
-   * (and so typically caches must be cleared to avoid inconsistency). Interruptions and
-   * IOExceptions are propagated to callers, but typically if overflow events are handled
-   * conservatively by subscribers then no other remedial action is required.
+   * Subscribes to the changes that a {@link WatchmanWatcher} created with the same arguments would
+   * query for, so that they can be streamed to it in the background instead.
+   *
+   * @return the subscription, or absent if this version of Watchman can't support it.
+   */
+  public static Optional<WatchmanSubscription> subscribe(
+      String watchRoot,
+      ImmutableSet<PathOrGlobMatcher> ignorePaths,
+      Watchman watchman,
+      String subscriptionName) throws IOException, InterruptedException {
+    return WatchmanSubscription.subscribe(
+        watchman,
+        subscriptionName,
+        createQuery(
+            watchRoot,
+            watchman.getProjectPrefix(),
+            ignorePaths,
+            watchman.getCapabilities()),
+        DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Query Watchman for file change events, or if there is a subscription collect the ones it has
+   * streamed to us. If an error occurs an overflow event is posted to the EventBus signalling that
+   * events may have been lost (and so typically caches must be cleared to avoid inconsistency).
+   * Interruptions and IOExceptions are propagated to callers, but typically if overflow events are
+   * handled conservatively by subscribers then no other remedial action is required.
    *
    * Any diagnostics posted by Watchman are added to watchmanDiagnosticCache.
    */
-  @SuppressWarnings("unchecked")
   public void postEvents(
       BuckEventBus buckEventBus,
       WatchmanDiagnosticCache watchmanDiagnosticCache,
       FreshInstanceAction freshInstanceAction
   ) throws IOException, InterruptedException {
     try {
-      Optional<? extends Map<String, ? extends Object>> queryResponse =
-          watchmanClient.queryWithTimeout(
-              TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
-              getWatchmanQuery().toArray());
-      if (!queryResponse.isPresent()) {
+      Optional<? extends List<? extends Map<String, ? extends Object>>> responses;
+      if (subscription.isPresent()) {
+        responses = subscription.get().flush(timeoutMillis);
+      } else {
+        Optional<? extends Map<String, ? extends Object>> queryResponse =
+            watchmanClient.queryWithTimeout(
+                TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
+                getWatchmanQuery().toArray());
+        responses = queryResponse.isPresent()
+            ? Optional.of(ImmutableList.of(queryResponse.get()))
+            : Optional.absent();
+      }
+      if (!responses.isPresent()) {
         LOG.warn(
-            "Could not get response from Watchman for query %s %s within %d ms",
+            "Could not get response from Watchman for query %s within %d ms",
             query,
             timeoutMillis);
+        closeSubscription();
         postWatchEvent(
             createOverflowEvent("Query to Watchman timed out after " + timeoutMillis + "ms"));
         return;
       }
 
-      Map<String, ? extends Object> response = queryResponse.get();
-      String error = (String) response.get("error");
-      if (error != null) {
-        watchmanDiagnosticCache.addDiagnostic(
-            WatchmanDiagnostic.of(WatchmanDiagnostic.Level.ERROR, error));
-        WatchmanWatcherException e = new WatchmanWatcherException(error);
-        LOG.error(
-            e,
-            "Error in Watchman output. Posting an overflow event to flush the caches");
-        postWatchEvent(createOverflowEvent("Watchman Error occurred - " + e.getMessage()));
-        throw e;
-      }
-
-      String warning = (String) response.get("warning");
-      if (warning != null) {
-        switch (watchmanDiagnosticCache.addDiagnostic(
-                    WatchmanDiagnostic.of(WatchmanDiagnostic.Level.WARNING, warning))) {
-          case NEW_DIAGNOSTIC:
-            buckEventBus.post(
-                ConsoleEvent.warning("Watchman has produced a warning: %s", warning));
-            LOG.warn("Watchman has produced a warning: %s", warning);
-            break;
-          case DUPLICATE_DIAGNOSTIC:
-            LOG.verbose("Watchman has produced a duplicate warning: %s", warning);
-            break;
-        }
-      }
-
-      Boolean isFreshInstance = (Boolean) response.get("is_fresh_instance");
-      if (isFreshInstance != null && isFreshInstance) {
-        LOG.debug(
-            "Watchman indicated a fresh instance (fresh instance action %s)",
-            freshInstanceAction);
-        switch (freshInstanceAction) {
-          case NONE:
-            break;
-          case POST_OVERFLOW_EVENT:
-            postWatchEvent(createOverflowEvent("New Buck instance"));
-            break;
-        }
-        return;
-      }
-
-      List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
-      if (files != null) {
-        if (files.size() > overflow) {
-          String message = "Too many changed files (" + files.size() + " > " + overflow + ")";
-          LOG.warn(message + ", posting overflow event");
-          postWatchEvent(createOverflowEvent(message));
-          return;
-        }
-
-        for (Map<String, Object> file : files) {
-          String fileName = (String) file.get("name");
-          if (fileName == null) {
-            LOG.warn("Filename missing from Watchman file response %s", file);
-            postWatchEvent(createOverflowEvent("Filename missing from Watchman response"));
-            return;
-          }
-          PathEventBuilder builder = new PathEventBuilder();
-          builder.setPath(Paths.get(fileName));
-          Boolean fileNew = (Boolean) file.get("new");
-          if (fileNew != null && fileNew) {
-            builder.setCreationEvent();
-          }
-          Boolean fileExists = (Boolean) file.get("exists");
-          if (fileExists != null && !fileExists) {
-            builder.setDeletionEvent();
-          }
-          postWatchEvent(builder.build());
-        }
-
-        LOG.debug("Posted %d Watchman events.", files.size());
+      for (Map<String, ? extends Object> response : responses.get()) {
+        postEvents(buckEventBus, watchmanDiagnosticCache, freshInstanceAction, response);
       }
     } catch (InterruptedException e) {
       String message = "Watchman communication interrupted";
       LOG.warn(e, message);
       // Events may have been lost, signal overflow.
+      closeSubscription();
       postWatchEvent(createOverflowEvent(message));
       Thread.currentThread().interrupt();
       throw e;
@@ -333,11 +328,118 @@ public class WatchmanWatcher {
       String message = "I/O error talking to Watchman";
       LOG.error(e, message);
       // Events may have been lost, signal overflow.
+      closeSubscription();
       postWatchEvent(createOverflowEvent(message + " - " + e.getMessage()));
       throw e;
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private void postEvents(
+      BuckEventBus buckEventBus,
+      WatchmanDiagnosticCache watchmanDiagnosticCache,
+      FreshInstanceAction freshInstanceAction,
+      Map<String, ? extends Object> response) throws IOException {
+    String error = (String) response.get("error");
+    if (error != null) {
+      watchmanDiagnosticCache.addDiagnostic(
+          WatchmanDiagnostic.of(WatchmanDiagnostic.Level.ERROR, error));
+      WatchmanWatcherException e = new WatchmanWatcherException(error);
+      LOG.error(
+          e,
+          "Error in Watchman output. Posting an overflow event to flush the caches");
+      closeSubscription();
+      postWatchEvent(createOverflowEvent("Watchman Error occurred - " + e.getMessage()));
+      throw e;
+    }
+
+    String warning = (String) response.get("warning");
+    if (warning != null) {
+      switch (watchmanDiagnosticCache.addDiagnostic(
+                  WatchmanDiagnostic.of(WatchmanDiagnostic.Level.WARNING, warning))) {
+        case NEW_DIAGNOSTIC:
+          buckEventBus.post(
+              ConsoleEvent.warning("Watchman has produced a warning: %s", warning));
+          LOG.warn("Watchman has produced a warning: %s", warning);
+          break;
+        case DUPLICATE_DIAGNOSTIC:
+          LOG.verbose("Watchman has produced a duplicate warning: %s", warning);
+          break;
+      }
+    }
+
+    Boolean isFreshInstance = (Boolean) response.get("is_fresh_instance");
+    if (isFreshInstance != null && isFreshInstance) {
+      LOG.debug(
+          "Watchman indicated a fresh instance (fresh instance action %s)",
+          freshInstanceAction);
+      switch (freshInstanceAction) {
+        case NONE:
+          break;
+        case POST_OVERFLOW_EVENT:
+          postWatchEvent(createOverflowEvent("New Buck instance"));
+          break;
+      }
+      return;
+    }
+
+    List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
+    if (files != null) {
+      if (overflow < 0) {
+        String message = "Too many changed files (" + files.size() + " > " + overflow + ")";
+        LOG.warn(message + ", posting overflow event");
+        postWatchEvent(createOverflowEvent(message));
+        return;
+      }
+
+      ImmutableList.Builder<WatchEvent<Path>> events = ImmutableList.builder();
+      for (Map<String, Object> file : files) {
+        String fileName = (String) file.get("name");
+        if (fileName == null) {
+          LOG.warn("Filename missing from Watchman file response %s", file);
+          postWatchEvent(createOverflowEvent("Filename missing from Watchman response"));
+          return;
+        }
+        PathEventBuilder builder = new PathEventBuilder();
+        builder.setPath(Paths.get(fileName));
+        Boolean fileNew = (Boolean) file.get("new");
+        if (fileNew != null && fileNew) {
+          builder.setCreationEvent();
+        }
+        Boolean fileExists = (Boolean) file.get("exists");
+        if (fileExists != null && !fileExists) {
+          builder.setDeletionEvent();
+        }
+        events.add(builder.build());
+      }
+
+      if (files.size() > overflow) {
+        String message = "Too many changed files (" + files.size() + " > " + overflow + ")";
+        LOG.info(message + ", posting them as a batch");
+        postWatchEvent(new WatchEventBatch(message, events.build()));
+      } else {
+        for (WatchEvent<Path> event : events.build()) {
+          postWatchEvent(event);
+        }
+      }
+
+      LOG.debug("Posted %d Watchman events.", files.size());
+    }
+  }
+
+  /**
+   * Stops using a subscription which may have missed changes, so that a new one is made.
+   */
+  private void closeSubscription() {
+    if (subscription.isPresent()) {
+      try {
+        subscription.get().close();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to close Watchman subscription");
+      }
+    }
+  }
+
   private void postWatchEvent(WatchEvent<?> event) {
     LOG.warn("Posting WatchEvent: %s", event);
     fileChangeEventBus.post(event);
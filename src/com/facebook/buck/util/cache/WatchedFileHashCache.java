@@ -17,15 +17,19 @@
 package com.facebook.buck.util.cache;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.io.WatchEvents;
 import com.facebook.buck.log.Logger;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
+import java.util.HashSet;
+import java.util.Set;
 
 public class WatchedFileHashCache extends DefaultFileHashCache {
 
@@ -42,7 +46,9 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
    */
   @Subscribe
   public synchronized void onFileSystemChange(WatchEvent<?> event) throws IOException {
-    if (WatchEvents.isPathChangeEvent(event)) {
+    if (event instanceof WatchEventBatch) {
+      invalidateAll(((WatchEventBatch) event).getEvents());
+    } else if (WatchEvents.isPathChangeEvent(event)) {
       // Path event, remove the path from the cache as it has been changed, added or deleted.
       final Path path = ((Path) event.context()).normalize();
       LOG.verbose("Invalidating %s", path);
@@ -69,4 +75,38 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     }
   }
 
+  /**
+   * Invalidates the paths changed by a batch of events with a single pass over the cache, rather
+   * than one pass for each of them.
+   */
+  private void invalidateAll(ImmutableList<WatchEvent<Path>> events) {
+    final Set<Path> changedPaths = new HashSet<>();
+    final Set<Path> changedPathsAndAncestors = new HashSet<>();
+    for (WatchEvent<Path> event : events) {
+      Path path = event.context().normalize();
+      changedPaths.add(path);
+      // Stop at the first ancestor we've already seen, as its own ancestors will be there too.
+      while (path != null && changedPathsAndAncestors.add(path)) {
+        path = path.getParent();
+      }
+    }
+    LOG.verbose("Invalidating %s", changedPaths);
+    Iterable<Path> pathsToInvalidate =
+        Maps.filterEntries(
+            loadingCache.asMap(),
+            entry -> {
+              switch (entry.getValue().getType()) {
+                case ARCHIVE:
+                case FILE:
+                  return changedPaths.contains(entry.getKey());
+                case DIRECTORY:
+                  return changedPathsAndAncestors.contains(entry.getKey());
+              }
+              return false;
+            }
+        ).keySet();
+    LOG.verbose("Paths to invalidate: %s", pathsToInvalidate);
+    loadingCache.invalidateAll(pathsToInvalidate);
+  }
+
 }
@@ -37,6 +37,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
@@ -66,6 +67,7 @@ public class VersionedTargetGraphBuilder {
   private final ForkJoinPool pool;
   private final VersionSelector versionSelector;
   private final TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets;
+  private final Optional<VersionedTargetGraphCache> cache;
 
   /**
    * The resolved version graph being built.
@@ -87,15 +89,43 @@ public class VersionedTargetGraphBuilder {
    */
   private final ConcurrentHashMap<BuildTarget, VersionInfo> versionInfo;
 
+  /**
+   * Hash of the unversioned sub-graph rooted at each node, used to key the cache.
+   */
+  private final ConcurrentHashMap<BuildTarget, HashCode> subGraphKeys;
+
+  /**
+   * The versions selected for each processed root node.
+   */
+  private final ConcurrentHashMap<BuildTarget, ImmutableMap<BuildTarget, Version>>
+      rootSelectedVersions;
+
   /**
    * Count of root nodes.
    */
   private final AtomicInteger roots = new AtomicInteger();
 
+  /**
+   * Count of root nodes whose version sub-graph was taken from the cache.
+   */
+  private final AtomicInteger reusedRoots = new AtomicInteger();
+
   public VersionedTargetGraphBuilder(
       ForkJoinPool pool,
       VersionSelector versionSelector,
       TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets) {
+    this(
+        pool,
+        versionSelector,
+        unversionedTargetGraphAndBuildTargets,
+        Optional.<VersionedTargetGraphCache>absent());
+  }
+
+  public VersionedTargetGraphBuilder(
+      ForkJoinPool pool,
+      VersionSelector versionSelector,
+      TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
+      Optional<VersionedTargetGraphCache> cache) {
 
     Preconditions.checkArgument(
         unversionedTargetGraphAndBuildTargets.getTargetGraph().getGroups().isEmpty(),
@@ -104,6 +134,7 @@ public class VersionedTargetGraphBuilder {
     this.pool = pool;
     this.versionSelector = versionSelector;
     this.unversionedTargetGraphAndBuildTargets = unversionedTargetGraphAndBuildTargets;
+    this.cache = cache;
 
     this.graph = MutableDirectedGraph.createConcurrent();
     this.index =
@@ -121,6 +152,8 @@ public class VersionedTargetGraphBuilder {
             2 * unversionedTargetGraphAndBuildTargets.getTargetGraph().getNodes().size(),
             0.75f,
             pool.getParallelism());
+    this.subGraphKeys = new ConcurrentHashMap<>();
+    this.rootSelectedVersions = new ConcurrentHashMap<>();
   }
 
   private TargetNode<?> getNode(BuildTarget target) {
@@ -181,6 +214,37 @@ public class VersionedTargetGraphBuilder {
     return info;
   }
 
+  /**
+   * Get/cache a hash of the unversioned sub-graph rooted at this node, which changes whenever the
+   * node or anything it transitively depends on changes.
+   */
+  private HashCode getSubGraphKey(TargetNode<?> node) {
+    HashCode key = subGraphKeys.get(node.getBuildTarget());
+    if (key != null) {
+      return key;
+    }
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(node.getBuildTarget().toString(), Charsets.UTF_8);
+    hasher.putBytes(node.getRawInputsHashCode().asBytes());
+    Optional<TargetNode<VersionedAlias.Arg>> versionedNode =
+        TargetGraphVersionTransformations.getVersionedNode(node);
+    if (versionedNode.isPresent()) {
+      for (Map.Entry<Version, BuildTarget> ent :
+           versionedNode.get().getConstructorArg().versions.entrySet()) {
+        hasher.putString(ent.getKey().getName(), Charsets.UTF_8);
+        hasher.putBytes(getSubGraphKey(getNode(ent.getValue())).asBytes());
+      }
+    }
+    for (BuildTarget depTarget : TargetGraphVersionTransformations.getDeps(node)) {
+      hasher.putBytes(getSubGraphKey(getNode(depTarget)).asBytes());
+    }
+    key = hasher.hash();
+
+    subGraphKeys.put(node.getBuildTarget(), key);
+    return key;
+  }
+
   /**
    * @return a flavor to which summarizes the given version selections.
    */
@@ -296,15 +360,21 @@ public class VersionedTargetGraphBuilder {
 
     long end = System.currentTimeMillis();
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
+        "Finished version target graph transformation in %.2f (nodes %d, roots: %d, reused: %d)",
         (end - start) / 1000.0,
         index.size(),
-        roots.get());
-
-    return new TargetGraph(
-        graph,
-        ImmutableMap.copyOf(index),
-        ImmutableSet.of());
+        roots.get(),
+        reusedRoots.get());
+
+    TargetGraph versionedGraph =
+        new TargetGraph(
+            graph,
+            ImmutableMap.copyOf(index),
+            ImmutableSet.of());
+    if (cache.isPresent()) {
+      cache.get().update(subGraphKeys, rootSelectedVersions, versionedGraph, reusedRoots.get());
+    }
+    return versionedGraph;
   }
 
   public static TargetGraphAndBuildTargets transform(
@@ -350,6 +420,32 @@ public class VersionedTargetGraphBuilder {
       return node;
     }
 
+    /**
+     * Add a node from a previously built versioned graph, along with everything it transitively
+     * depends on, to the graph being built.  Other version roots are processed in their own right,
+     * as their version selections may have changed independently.
+     */
+    protected TargetNode<?> copyCachedNode(TargetGraph cachedGraph, TargetNode<?> node)
+        throws VersionException {
+      TargetNode<?> oldNode = index.putIfAbsent(node.getBuildTarget(), node);
+      if (oldNode != null) {
+        return oldNode;
+      }
+      graph.addNode(node);
+      List<BuildTarget> rootDeps = new ArrayList<>();
+      for (TargetNode<?> dep : cachedGraph.getOutgoingNodesFor(node)) {
+        if (TargetGraphVersionTransformations.isVersionRoot(dep)) {
+          rootDeps.add(dep.getBuildTarget());
+        } else {
+          graph.addEdge(node, copyCachedNode(cachedGraph, dep));
+        }
+      }
+      for (TargetNode<?> dep : process(rootDeps)) {
+        graph.addEdge(node, dep);
+      }
+      return node;
+    }
+
     /**
      * Dispatch new jobs to transform the given nodes in parallel and wait for their results.
      */
@@ -549,6 +645,19 @@ public class VersionedTargetGraphBuilder {
           versionSelector.resolve(
               root.getBuildTarget(),
               versionInfo.getVersionDomain());
+      rootSelectedVersions.put(root.getBuildTarget(), selectedVersions);
+
+      // If nothing in this root's sub-graph has changed since it was last transformed, reuse the
+      // previous result rather than walking it again.
+      if (cache.isPresent()) {
+        Optional<VersionedTargetGraphCache.CachedRoot> cachedRoot =
+            cache.get().lookup(root.getBuildTarget(), getSubGraphKey(root), selectedVersions);
+        if (cachedRoot.isPresent()) {
+          reusedRoots.incrementAndGet();
+          TargetGraph cachedGraph = cachedRoot.get().getVersionedGraph();
+          return copyCachedNode(cachedGraph, cachedGraph.get(root.getBuildTarget()));
+        }
+      }
 
       return processVersionSubGraphNode(root, selectedVersions);
     }
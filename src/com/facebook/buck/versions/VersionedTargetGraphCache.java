@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.versions;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetGraphAndBuildTargets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the version sub-graphs built for each version root by the last
+ * {@link VersionedTargetGraphBuilder} run, so that a long-lived process (e.g. the daemon) only has
+ * to rebuild the roots whose unversioned sub-graph or selected versions have changed since.
+ */
+public class VersionedTargetGraphCache {
+
+  private static final Logger LOG = Logger.get(VersionedTargetGraphCache.class);
+
+  private ImmutableMap<BuildTarget, CachedRoot> roots = ImmutableMap.of();
+
+  /**
+   * @return the versioned form of {@code unversionedTargetGraphAndBuildTargets}, reusing any
+   *     version sub-graphs which are still up-to-date.
+   */
+  public TargetGraphAndBuildTargets toVersionedTargetGraph(
+      VersionSelector versionSelector,
+      TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
+      ForkJoinPool pool)
+      throws VersionException, InterruptedException {
+    return unversionedTargetGraphAndBuildTargets.withTargetGraph(
+        new VersionedTargetGraphBuilder(
+            pool,
+            versionSelector,
+            unversionedTargetGraphAndBuildTargets,
+            Optional.of(this))
+            .build());
+  }
+
+  /**
+   * @return the cached versioned root node for {@code root}, if it was last built from an
+   *     identical unversioned sub-graph with the same version selections.
+   */
+  synchronized Optional<CachedRoot> lookup(
+      BuildTarget root,
+      HashCode subGraphKey,
+      ImmutableMap<BuildTarget, Version> selectedVersions) {
+    CachedRoot cached = roots.get(root);
+    if (cached == null) {
+      LOG.verbose("%s: no cached version sub-graph", root);
+      return Optional.absent();
+    }
+    if (!cached.getSubGraphKey().equals(subGraphKey) ||
+        !cached.getSelectedVersions().equals(selectedVersions)) {
+      LOG.verbose("%s: cached version sub-graph is stale", root);
+      return Optional.absent();
+    }
+    return Optional.of(cached);
+  }
+
+  /**
+   * Replace the cached roots with those processed by the most recent transformation.
+   */
+  synchronized void update(
+      Map<BuildTarget, HashCode> subGraphKeys,
+      Map<BuildTarget, ImmutableMap<BuildTarget, Version>> selectedVersions,
+      TargetGraph versionedGraph,
+      int reusedRoots) {
+    LOG.debug(
+        "Reused %d of %d version sub-graphs",
+        reusedRoots,
+        selectedVersions.size());
+    ImmutableMap.Builder<BuildTarget, CachedRoot> newRoots = ImmutableMap.builder();
+    for (Map.Entry<BuildTarget, ImmutableMap<BuildTarget, Version>> ent :
+         selectedVersions.entrySet()) {
+      newRoots.put(
+          ent.getKey(),
+          new CachedRoot(
+              Preconditions.checkNotNull(subGraphKeys.get(ent.getKey())),
+              ent.getValue(),
+              versionedGraph));
+    }
+    roots = newRoots.build();
+  }
+
+  /**
+   * A version root, as transformed by a previous run.
+   */
+  static class CachedRoot {
+
+    private final HashCode subGraphKey;
+    private final ImmutableMap<BuildTarget, Version> selectedVersions;
+    private final TargetGraph versionedGraph;
+
+    CachedRoot(
+        HashCode subGraphKey,
+        ImmutableMap<BuildTarget, Version> selectedVersions,
+        TargetGraph versionedGraph) {
+      this.subGraphKey = subGraphKey;
+      this.selectedVersions = selectedVersions;
+      this.versionedGraph = versionedGraph;
+    }
+
+    HashCode getSubGraphKey() {
+      return subGraphKey;
+    }
+
+    ImmutableMap<BuildTarget, Version> getSelectedVersions() {
+      return selectedVersions;
+    }
+
+    /**
+     * @return the versioned graph containing the transformed root and its sub-graph.
+     */
+    TargetGraph getVersionedGraph() {
+      return versionedGraph;
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class ResourceSymbolTableTest {
+
+  private static final Path R_DOT_TXT = Paths.get("res/R.txt");
+
+  @Test
+  public void tableRoundTripsEveryField() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    ImmutableList<RDotTxtEntry> entries = ImmutableList.of(
+        new RDotTxtEntry(IdType.INT, RType.DRAWABLE, "custom", "0x7f010001", true),
+        new RDotTxtEntry(IdType.INT, RType.STRING, "hello", "0x7f020001"),
+        new RDotTxtEntry(IdType.INT_ARRAY, RType.STYLEABLE, "View", "{ 0x7f030001,0x7f030002 }"));
+    ResourceSymbolTable.write(filesystem, R_DOT_TXT, entries);
+
+    assertTrue(filesystem.isFile(Paths.get("res/R.txt.bin")));
+    ImmutableList<RDotTxtEntry> read = ResourceSymbolTable.read(filesystem, R_DOT_TXT);
+    assertEquals(describe(entries), describe(read));
+  }
+
+  @Test
+  public void textIsParsedAndSortedWithoutATable() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "int string b 0x7f020002",
+            "int drawable custom 0x7f010001 #",
+            "",
+            "int string a 0x7f020001"),
+        R_DOT_TXT);
+
+    assertEquals(
+        ImmutableList.of(
+            "int drawable custom 0x7f010001 true",
+            "int string a 0x7f020001 false",
+            "int string b 0x7f020002 false"),
+        describe(ResourceSymbolTable.read(filesystem, R_DOT_TXT)));
+  }
+
+  private static ImmutableList<String> describe(Iterable<RDotTxtEntry> entries) {
+    return FluentIterable.from(entries)
+        .transform(
+            input -> String.format(
+                "%s %s %s %s %s",
+                input.idType,
+                input.type,
+                input.name,
+                input.idValue,
+                input.custom))
+        .toList();
+  }
+}
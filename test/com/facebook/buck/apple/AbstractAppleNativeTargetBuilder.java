@@ -25,11 +25,13 @@ import com.facebook.buck.rules.SourceWithFlags;
 import com.facebook.buck.rules.coercer.FrameworkPath;
 import com.facebook.buck.rules.coercer.PatternMatchedCollection;
 import com.facebook.buck.rules.coercer.SourceList;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
 
 public abstract class AbstractAppleNativeTargetBuilder<
     ARG extends AppleNativeTargetDescriptionArg,
@@ -42,6 +44,13 @@ public abstract class AbstractAppleNativeTargetBuilder<
     super(description, target);
   }
 
+  public AbstractAppleNativeTargetBuilder(
+      Description<ARG> description,
+      BuildTarget target,
+      HashCode hashCode) {
+    super(description, target, new FakeProjectFilesystem(), hashCode);
+  }
+
   public BUILDER setConfigs(
       Optional<ImmutableSortedMap<String, ImmutableMap<String, String>>> configs) {
     arg.configs = configs;
@@ -17,6 +17,7 @@
 package com.facebook.buck.apple;
 
 import com.facebook.buck.model.BuildTarget;
+import com.google.common.hash.HashCode;
 
 public class AppleLibraryBuilder
     extends AbstractAppleNativeTargetBuilder<AppleLibraryDescription.Arg, AppleLibraryBuilder> {
@@ -30,7 +31,15 @@ public class AppleLibraryBuilder
     super(FakeAppleRuleDescriptions.LIBRARY_DESCRIPTION, target);
   }
 
+  protected AppleLibraryBuilder(BuildTarget target, HashCode hashCode) {
+    super(FakeAppleRuleDescriptions.LIBRARY_DESCRIPTION, target, hashCode);
+  }
+
   public static AppleLibraryBuilder createBuilder(BuildTarget target) {
     return new AppleLibraryBuilder(target);
   }
+
+  public static AppleLibraryBuilder createBuilder(BuildTarget target, HashCode hashCode) {
+    return new AppleLibraryBuilder(target, hashCode);
+  }
 }
@@ -30,6 +30,8 @@ import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
@@ -118,6 +120,7 @@ import com.facebook.buck.timing.IncrementingFakeClock;
 import com.facebook.buck.timing.SettableFakeClock;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
@@ -129,6 +132,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 
 import org.hamcrest.FeatureMatcher;
@@ -3306,6 +3310,92 @@ public class ProjectGeneratorTest {
         equalTo(49152L));
   }
 
+  @Test
+  public void projectWithUnchangedTargetsIsReusedFromGenerationCache() throws IOException {
+    ProjectGenerationCache generationCache = new ProjectGenerationCache();
+    BuildTarget buildTarget = BuildTarget.builder(rootPath, "//foo", "lib").build();
+    TargetNode<?> node = AppleLibraryBuilder
+        .createBuilder(buildTarget)
+        .setConfigs(
+            Optional.of(
+                ImmutableSortedMap.of(
+                    "Debug",
+                    ImmutableMap.of())))
+        .build();
+
+    ProjectGenerator projectGenerator = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(node))
+        .setGenerationCache(generationCache);
+    projectGenerator.createXcodeProjects();
+
+    ProjectGenerator projectGenerator2 = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(node))
+        .setGenerationCache(generationCache);
+    projectGenerator2.createXcodeProjects();
+
+    assertSame(projectGenerator.getGeneratedProject(), projectGenerator2.getGeneratedProject());
+    assertEquals(
+        projectGenerator.getBuildTargetToGeneratedTargetMap(),
+        projectGenerator2.getBuildTargetToGeneratedTargetMap());
+    assertEquals(
+        projectGenerator.getGeneratedHeaderSymlinkTrees(),
+        projectGenerator2.getGeneratedHeaderSymlinkTrees());
+  }
+
+  @Test
+  public void projectWithChangedTargetIsRegeneratedDespiteGenerationCache() throws IOException {
+    ProjectGenerationCache generationCache = new ProjectGenerationCache();
+    BuildTarget buildTarget = BuildTarget.builder(rootPath, "//foo", "lib").build();
+    TargetNode<?> node = AppleLibraryBuilder
+        .createBuilder(buildTarget)
+        .build();
+    TargetNode<?> changedNode = AppleLibraryBuilder
+        .createBuilder(buildTarget, Hashing.sha1().hashString("changed", Charsets.UTF_8))
+        .build();
+
+    ProjectGenerator projectGenerator = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(node))
+        .setGenerationCache(generationCache);
+    projectGenerator.createXcodeProjects();
+
+    ProjectGenerator projectGenerator2 = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(changedNode))
+        .setGenerationCache(generationCache);
+    projectGenerator2.createXcodeProjects();
+
+    assertNotSame(
+        projectGenerator.getGeneratedProject(),
+        projectGenerator2.getGeneratedProject());
+  }
+
+  @Test
+  public void projectIsRegeneratedIfItsFilesChangedSinceItWasCached() throws IOException {
+    ProjectGenerationCache generationCache = new ProjectGenerationCache();
+    BuildTarget buildTarget = BuildTarget.builder(rootPath, "//foo", "lib").build();
+    TargetNode<?> node = AppleLibraryBuilder
+        .createBuilder(buildTarget)
+        .build();
+
+    ProjectGenerator projectGenerator = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(node))
+        .setGenerationCache(generationCache);
+    projectGenerator.createXcodeProjects();
+    String projectFile = projectFilesystem.readFileIfItExists(OUTPUT_PROJECT_FILE_PATH).get();
+
+    projectFilesystem.writeContentsToPath("", OUTPUT_PROJECT_FILE_PATH);
+    ProjectGenerator projectGenerator2 = createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(node))
+        .setGenerationCache(generationCache);
+    projectGenerator2.createXcodeProjects();
+
+    assertNotSame(
+        projectGenerator.getGeneratedProject(),
+        projectGenerator2.getGeneratedProject());
+    assertEquals(
+        Optional.of(projectFile),
+        projectFilesystem.readFileIfItExists(OUTPUT_PROJECT_FILE_PATH));
+  }
+
   @Test
   public void nonexistentResourceDirectoryShouldThrow() throws IOException {
     ImmutableSet<TargetNode<?>> nodes = setupSimpleLibraryWithResources(
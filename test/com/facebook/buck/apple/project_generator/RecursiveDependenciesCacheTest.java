@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.apple.project_generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.apple.AppleBuildRules;
+import com.facebook.buck.apple.AppleBundleBuilder;
+import com.facebook.buck.apple.AppleBundleExtension;
+import com.facebook.buck.apple.AppleLibraryBuilder;
+import com.facebook.buck.apple.AppleLibraryDescription;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.Either;
+import com.facebook.buck.rules.BuildRuleType;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Test;
+
+public class RecursiveDependenciesCacheTest {
+
+  @Test
+  public void matchesUncachedDependenciesInEveryMode() throws Exception {
+    BuildTarget libraryTarget = BuildTargetFactory.newInstance("//foo:lib");
+    TargetNode<?> libraryNode = AppleLibraryBuilder
+        .createBuilder(libraryTarget)
+        .build();
+
+    BuildTarget bundleTarget = BuildTargetFactory.newInstance("//foo:bundle");
+    TargetNode<?> bundleNode = AppleBundleBuilder
+        .createBuilder(bundleTarget)
+        .setExtension(Either.ofLeft(AppleBundleExtension.FRAMEWORK))
+        .setBinary(libraryTarget)
+        .build();
+
+    BuildTarget rootTarget = BuildTargetFactory.newInstance("//foo:root");
+    TargetNode<?> rootNode = AppleLibraryBuilder
+        .createBuilder(rootTarget)
+        .setDeps(Optional.of(ImmutableSortedSet.of(libraryTarget, bundleTarget)))
+        .build();
+
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(ImmutableSet.of(libraryNode, bundleNode, rootNode));
+    RecursiveDependenciesCache cache = new RecursiveDependenciesCache(targetGraph);
+
+    ImmutableList<Optional<ImmutableSet<BuildRuleType>>> typeFilters = ImmutableList.of(
+        Optional.absent(),
+        Optional.of(AppleBuildRules.XCODE_TARGET_BUILD_RULE_TYPES),
+        Optional.of(ImmutableSet.of(AppleLibraryDescription.TYPE)));
+    for (AppleBuildRules.RecursiveDependenciesMode mode :
+        AppleBuildRules.RecursiveDependenciesMode.values()) {
+      for (Optional<ImmutableSet<BuildRuleType>> types : typeFilters) {
+        assertEquals(
+            ImmutableList.copyOf(
+                AppleBuildRules.getRecursiveTargetNodeDependenciesOfTypes(
+                    targetGraph,
+                    mode,
+                    rootNode,
+                    types)),
+            cache.getRecursiveTargetNodeDependenciesOfTypes(mode, rootNode, types));
+      }
+    }
+  }
+
+  @Test
+  public void walksTheGraphOncePerNodeAndMode() throws Exception {
+    TargetNode<?> libraryNode = AppleLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//foo:lib"))
+        .build();
+    RecursiveDependenciesCache cache =
+        new RecursiveDependenciesCache(TargetGraphFactory.newInstance(libraryNode));
+
+    assertSame(
+        cache.getRecursiveTargetNodeDependenciesOfTypes(
+            AppleBuildRules.RecursiveDependenciesMode.LINKING,
+            libraryNode,
+            Optional.absent()),
+        cache.getRecursiveTargetNodeDependenciesOfTypes(
+            AppleBuildRules.RecursiveDependenciesMode.LINKING,
+            libraryNode,
+            Optional.absent()));
+  }
+}
@@ -38,6 +38,7 @@ import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.JarIndexCache;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.TriState;
 import com.facebook.buck.util.cache.NullFileHashCache;
@@ -111,7 +112,10 @@ public class CommandRunnerParamsForTesting {
             ExecutorPool.PROJECT,
             MoreExecutors.newDirectExecutorService()),
         BUILD_ENVIRONMENT_DESCRIPTION,
-        new ActionGraphCache(new BroadcastEventListener()));
+        new ActionGraphCache(new BroadcastEventListener()),
+        new JarIndexCache(),
+        Optional.absent(),
+        Optional.absent());
   }
 
   public static Builder builder() {
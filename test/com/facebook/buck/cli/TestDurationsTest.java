@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResultSummary;
+import com.facebook.buck.test.TestResults;
+import com.facebook.buck.test.result.type.ResultType;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+public class TestDurationsTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//example:test");
+
+  @Test
+  public void durationsOfTestsWhichRanAreRecordedAndReloaded() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+
+    TestDurations durations = TestDurations.load(filesystem, objectMapper);
+    durations.record(
+        results(
+            testCase("com.example.ATest", ResultType.SUCCESS, 30, 40),
+            testCase("com.example.BTest", ResultType.FAILURE, 5)));
+    durations.save(filesystem, objectMapper);
+
+    TestDurations reloaded = TestDurations.load(filesystem, objectMapper);
+    assertEquals(Optional.of(75L), reloaded.getTargetDuration(TARGET));
+    assertEquals(
+        ImmutableMap.of("com.example.ATest", 70L, "com.example.BTest", 5L),
+        reloaded.getTestCaseDurations());
+  }
+
+  @Test
+  public void cachedAndDryRunResultsAreNotRecorded() throws Exception {
+    TestDurations durations =
+        new TestDurations(
+            ImmutableMap.of(TARGET.getFullyQualifiedName(), 100L),
+            ImmutableMap.of("com.example.ATest", 100L));
+
+    durations.record(
+        results(
+            TestCaseSummary.TO_CACHED_TRANSFORMATION.apply(
+                testCase("com.example.ATest", ResultType.SUCCESS, 1)),
+            testCase("com.example.BTest", ResultType.DRY_RUN, 0)));
+
+    assertEquals(Optional.of(100L), durations.getTargetDuration(TARGET));
+    assertEquals(ImmutableMap.of("com.example.ATest", 100L), durations.getTestCaseDurations());
+  }
+
+  @Test
+  public void unreadableDurationsAreIgnored() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("{not json", TestDurations.getPath(filesystem));
+
+    TestDurations durations =
+        TestDurations.load(filesystem, ObjectMappers.newDefaultInstance());
+
+    assertEquals(Optional.<Long>absent(), durations.getTargetDuration(TARGET));
+    assertEquals(ImmutableMap.of(), durations.getTestCaseDurations());
+  }
+
+  private static TestResults results(TestCaseSummary... testCases) {
+    return TestResults.builder()
+        .setBuildTarget(TARGET)
+        .setTestCases(ImmutableList.copyOf(testCases))
+        .build();
+  }
+
+  private static TestCaseSummary testCase(String name, ResultType type, long... times) {
+    ImmutableList.Builder<TestResultSummary> results = ImmutableList.builder();
+    for (int i = 0; i < times.length; i++) {
+      results.add(
+          new TestResultSummary(name, "test" + i, type, times[i], null, null, null, null));
+    }
+    return new TestCaseSummary(name, results.build());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class HistogramCounterTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+  public static final ImmutableMap<String, String> TAGS = ImmutableMap.of(
+      "My super Tag Key", "And the according value!"
+  );
+
+  @Test
+  public void testBucketsCoverEveryValue() {
+    Assert.assertEquals(0, HistogramCounter.getBucket(0));
+    Assert.assertEquals(7, HistogramCounter.getBucket(7));
+    Assert.assertEquals(
+        HistogramCounter.BUCKETS - 1,
+        HistogramCounter.getBucket(Long.MAX_VALUE));
+    for (long value : new long[] {0, 1, 8, 15, 16, 17, 100, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = HistogramCounter.getBucket(value);
+      long upperBound = HistogramCounter.getBucketUpperBound(bucket);
+      Assert.assertTrue(value <= upperBound);
+      Assert.assertTrue(upperBound - value <= value / 8);
+      if (bucket > 0) {
+        Assert.assertTrue(HistogramCounter.getBucketUpperBound(bucket - 1) < value);
+      }
+    }
+  }
+
+  @Test
+  public void testSnapshot() {
+    HistogramCounter counter = createCounter();
+    for (int i = 1; i <= 100; i++) {
+      counter.addSample(i);
+    }
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Map<String, Long> values = snapshot.get().getValues();
+    Assert.assertEquals(100, (long) values.get(NAME + "_count"));
+    Assert.assertEquals(50, (long) values.get(NAME + "_avg"));
+    Assert.assertEquals(100, (long) values.get(NAME + "_max"));
+    assertWithinBucket(50, values.get(NAME + "_p50"));
+    assertWithinBucket(95, values.get(NAME + "_p95"));
+    assertWithinBucket(99, values.get(NAME + "_p99"));
+    Assert.assertEquals(CATEGORY, snapshot.get().getCategory());
+    Assert.assertEquals(TAGS, snapshot.get().getTags());
+  }
+
+  @Test
+  public void testReset() {
+    HistogramCounter counter = createCounter();
+    counter.addSample(42);
+    Assert.assertTrue(counter.flush().isPresent());
+    Assert.assertFalse(counter.flush().isPresent());
+    counter.addSample(21);
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(1, (long) snapshot.get().getValues().get(NAME + "_count"));
+    Assert.assertEquals(21, (long) snapshot.get().getValues().get(NAME + "_max"));
+  }
+
+  @Test
+  public void testSnapshotWithoutSamples() {
+    HistogramCounter counter = createCounter();
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertFalse(snapshot.isPresent());
+  }
+
+  @Test
+  public void testConcurrentSamplesAreAllCounted() throws Exception {
+    final HistogramCounter counter = createCounter();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(
+          () -> {
+            for (int sample = 0; sample < 10000; sample++) {
+              counter.addSample(sample);
+            }
+          });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(80000, (long) snapshot.get().getValues().get(NAME + "_count"));
+  }
+
+  private static void assertWithinBucket(long expected, long actual) {
+    Assert.assertTrue(actual >= expected);
+    Assert.assertTrue(actual - expected <= expected / 8);
+  }
+
+  private HistogramCounter createCounter() {
+    return new HistogramCounter(CATEGORY, NAME, TAGS);
+  }
+}
@@ -152,7 +152,8 @@ public class CxxCompilationDatabaseTest {
                 Paths.get("test.o"),
                 new FakeSourcePath(filesystem, "test.ii"),
                 CxxSource.Type.CXX_CPP_OUTPUT,
-                CxxPlatformUtils.DEFAULT_DEBUG_PATH_SANITIZER
+                CxxPlatformUtils.DEFAULT_DEBUG_PATH_SANITIZER,
+                Optional.absent()
             ));
         break;
       case COMBINED:
@@ -193,7 +194,8 @@ public class CxxCompilationDatabaseTest {
                 CxxSource.Type.CXX,
                 Optional.absent(),
                 CxxPlatformUtils.DEFAULT_DEBUG_PATH_SANITIZER,
-                strategy
+                strategy,
+                Optional.absent()
             ));
         break;
       default:
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CxxCompileCacheTest {
+
+  private static final Path CACHE_DIR = Paths.get("compile-cache");
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private CxxCompileCache cache;
+
+  private final Path source = Paths.get("foo.cpp");
+  private final Path header = Paths.get("foo.h");
+  private final Path output = Paths.get("foo.o");
+  private final Path depFile = Paths.get("foo.o.dep");
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    cache = new CxxCompileCache(filesystem, CACHE_DIR, Long.MAX_VALUE);
+    filesystem.writeContentsToPath("#include \"foo.h\"", source);
+    filesystem.writeContentsToPath("int foo();", header);
+  }
+
+  private HashCode computeKey(String... flags) throws IOException {
+    return cache.computeManifestKey(
+        ImmutableList.of(ImmutableList.of("clang++")),
+        ImmutableList.copyOf(flags),
+        ImmutableMap.of(),
+        source);
+  }
+
+  private void compile(String contents) throws IOException {
+    filesystem.writeContentsToPath(contents, output);
+    filesystem.writeContentsToPath(filesystem.resolve(header).toString(), depFile);
+  }
+
+  @Test
+  public void fetchMissesWithoutManifest() throws IOException {
+    assertFalse(cache.fetch(computeKey("-O2"), output, Optional.of(depFile)).isPresent());
+  }
+
+  @Test
+  public void fetchRestoresStoredOutputs() throws IOException {
+    HashCode key = computeKey("-O2");
+    compile("object");
+    cache.store(
+        key,
+        ImmutableList.of(filesystem.resolve(source), filesystem.resolve(header)),
+        output,
+        Optional.of(depFile),
+        "foo.cpp:1: warning: unused");
+
+    filesystem.deleteFileAtPath(output);
+    filesystem.deleteFileAtPath(depFile);
+
+    assertEquals(
+        Optional.of("foo.cpp:1: warning: unused"),
+        cache.fetch(key, output, Optional.of(depFile)));
+    assertEquals(Optional.of("object"), filesystem.readFileIfItExists(output));
+    assertEquals(
+        Optional.of(filesystem.resolve(header).toString()),
+        filesystem.readFirstLine(depFile));
+  }
+
+  @Test
+  public void headerChangesCauseMiss() throws IOException {
+    HashCode key = computeKey("-O2");
+    compile("object");
+    cache.store(
+        key,
+        ImmutableList.of(filesystem.resolve(header)),
+        output,
+        Optional.of(depFile),
+        "");
+
+    filesystem.writeContentsToPath("int foo(int);", header);
+
+    assertFalse(cache.fetch(key, output, Optional.of(depFile)).isPresent());
+  }
+
+  @Test
+  public void deletedHeaderCausesMiss() throws IOException {
+    HashCode key = computeKey("-O2");
+    compile("object");
+    cache.store(
+        key,
+        ImmutableList.of(filesystem.resolve(header)),
+        output,
+        Optional.of(depFile),
+        "");
+
+    filesystem.deleteFileAtPath(header);
+
+    assertFalse(cache.fetch(key, output, Optional.of(depFile)).isPresent());
+  }
+
+  @Test
+  public void manifestKeyReflectsFlagsAndSource() throws IOException {
+    HashCode key = computeKey("-O2");
+    assertEquals(key, computeKey("-O2"));
+    assertNotEquals(key, computeKey("-O3"));
+
+    filesystem.writeContentsToPath("int main() {}", source);
+    assertNotEquals(key, computeKey("-O2"));
+  }
+
+  @Test
+  public void entriesOverTheSizeLimitAreEvicted() throws IOException {
+    CxxCompileCache emptyCache = new CxxCompileCache(filesystem, CACHE_DIR, 0);
+    HashCode key = computeKey("-O2");
+    compile("object");
+    emptyCache.store(key, ImmutableList.of(), output, Optional.absent(), "");
+
+    assertFalse(emptyCache.fetch(key, output, Optional.absent()).isPresent());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvictedFirst() throws IOException {
+    // Without dependencies, the keys only depend on the flags, so look for three compilations
+    // whose objects share a bucket.
+    compile("0123456789");
+    Map<String, List<String>> flagsByBucket = new HashMap<>();
+    List<String> flags = null;
+    for (int i = 0; flags == null; i++) {
+      String flag = "-DN=" + i;
+      HashCode key = computeKey(flag);
+      Set<Path> before = listObjects();
+      cache.store(key, ImmutableList.of(), output, Optional.absent(), "");
+      Path object = Iterables.getOnlyElement(
+          Sets.filter(
+              Sets.difference(listObjects(), before),
+              path -> path.toString().endsWith(".o")));
+      String bucket = object.getParent().toString();
+      List<String> sameBucket = flagsByBucket.get(bucket);
+      if (sameBucket == null) {
+        sameBucket = new ArrayList<>();
+        flagsByBucket.put(bucket, sameBucket);
+      }
+      sameBucket.add(flag);
+      if (sameBucket.size() == 3) {
+        flags = sameBucket;
+      }
+    }
+    filesystem.deleteRecursivelyIfExists(CACHE_DIR);
+
+    // Each entry is a 10 byte object plus an empty diagnostics file, so a bucket fits two.
+    CxxCompileCache smallCache = new CxxCompileCache(filesystem, CACHE_DIR, 256 * 25);
+    long time = 1000000;
+    for (String flag : flags.subList(0, 2)) {
+      Set<Path> before = listObjects();
+      smallCache.store(computeKey(flag), ImmutableList.of(), output, Optional.absent(), "");
+      for (Path path : Sets.difference(listObjects(), before)) {
+        filesystem.setLastModifiedTime(path, FileTime.fromMillis(time));
+      }
+      time += 1000;
+    }
+
+    // Using the first entry makes the second the least recently used one.
+    assertTrue(smallCache.fetch(computeKey(flags.get(0)), output, Optional.absent()).isPresent());
+    smallCache.store(computeKey(flags.get(2)), ImmutableList.of(), output, Optional.absent(), "");
+
+    assertTrue(smallCache.fetch(computeKey(flags.get(0)), output, Optional.absent()).isPresent());
+    assertFalse(smallCache.fetch(computeKey(flags.get(1)), output, Optional.absent()).isPresent());
+    assertTrue(smallCache.fetch(computeKey(flags.get(2)), output, Optional.absent()).isPresent());
+  }
+
+  private Set<Path> listObjects() throws IOException {
+    Path objects = CACHE_DIR.resolve("objects");
+    if (!filesystem.isDirectory(objects)) {
+      return ImmutableSet.of();
+    }
+    try (Stream<Path> paths = Files.walk(filesystem.resolve(objects))) {
+      return paths
+          .filter(Files::isRegularFile)
+          .map(path -> objects.resolve(filesystem.resolve(objects).relativize(path)))
+          .collect(Collectors.toSet());
+    }
+  }
+
+}
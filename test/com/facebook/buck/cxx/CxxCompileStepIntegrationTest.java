@@ -109,7 +109,8 @@ public class CxxCompileStepIntegrationTest {
             CxxPlatformUtils.DEFAULT_CONFIG.getHeaderVerification(),
             scratchDir,
             true,
-            compiler);
+            compiler,
+            Optional.absent());
 
     // Execute the archive step and verify it ran successfully.
     ExecutionContext executionContext = TestExecutionContext.newInstance();
@@ -192,7 +193,8 @@ public class CxxCompileStepIntegrationTest {
             CxxPlatformUtils.DEFAULT_CONFIG.getHeaderVerification(),
             scratchDir,
             true,
-            compiler);
+            compiler,
+            Optional.absent());
 
     // Execute the archive step and verify it ran successfully.
     ExecutionContext executionContext = TestExecutionContext.newInstance();
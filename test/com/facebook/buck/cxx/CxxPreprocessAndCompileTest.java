@@ -161,7 +161,8 @@ public class CxxPreprocessAndCompileTest {
             DEFAULT_OUTPUT,
             DEFAULT_INPUT,
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER));
+            DEFAULT_SANITIZER,
+            Optional.absent()));
 
     // Verify that changing the compiler causes a rulekey change.
 
@@ -177,7 +178,8 @@ public class CxxPreprocessAndCompileTest {
             DEFAULT_OUTPUT,
             DEFAULT_INPUT,
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER));
+            DEFAULT_SANITIZER,
+            Optional.absent()));
     assertNotEquals(defaultRuleKey, compilerChange);
 
     // Verify that changing the operation causes a rulekey change.
@@ -224,7 +226,8 @@ public class CxxPreprocessAndCompileTest {
                 DEFAULT_OUTPUT,
                 DEFAULT_INPUT,
                 DEFAULT_INPUT_TYPE,
-                DEFAULT_SANITIZER));
+                DEFAULT_SANITIZER,
+                Optional.absent()));
     assertNotEquals(defaultRuleKey, platformFlagsChange);
 
     // Verify that changing the rule flags causes a rulekey change.
@@ -244,7 +247,8 @@ public class CxxPreprocessAndCompileTest {
             DEFAULT_OUTPUT,
             DEFAULT_INPUT,
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER));
+            DEFAULT_SANITIZER,
+            Optional.absent()));
     assertNotEquals(defaultRuleKey, ruleFlagsChange);
 
     // Verify that changing the input causes a rulekey change.
@@ -261,7 +265,8 @@ public class CxxPreprocessAndCompileTest {
             DEFAULT_OUTPUT,
             new FakeSourcePath("different"),
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER));
+            DEFAULT_SANITIZER,
+            Optional.absent()));
     assertNotEquals(defaultRuleKey, inputChange);
   }
 
@@ -343,7 +348,8 @@ public class CxxPreprocessAndCompileTest {
             output,
             new FakeSourcePath(input.toString()),
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER);
+            DEFAULT_SANITIZER,
+            Optional.absent());
 
     ImmutableList<String> expectedCompileCommand = ImmutableList.<String>builder()
         .add("compiler")
@@ -487,7 +493,8 @@ public class CxxPreprocessAndCompileTest {
             DEFAULT_OUTPUT,
             DEFAULT_INPUT,
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER);
+            DEFAULT_SANITIZER,
+            Optional.absent());
     assertThat(
         cxxCompile.getInputsAfterBuildingLocally(),
         hasItem(compiler));
@@ -518,7 +525,8 @@ public class CxxPreprocessAndCompileTest {
             output,
             new FakeSourcePath(input.toString()),
             DEFAULT_INPUT_TYPE,
-            DEFAULT_SANITIZER);
+            DEFAULT_SANITIZER,
+            Optional.absent());
 
     ImmutableList<String> command =
         buildRule.makeMainStep(buildRule.getProjectFilesystem().getRootPath(), false)
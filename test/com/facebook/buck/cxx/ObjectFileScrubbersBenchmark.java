@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Measures scrubbing of static archives, either built from a corpus of real object files or
+ * synthesized with the requested number and size of members.
+ */
+public class ObjectFileScrubbersBenchmark {
+
+  /**
+   * A directory of object files to archive.  When empty, synthetic members are used instead.
+   */
+  @Param({""})
+  private String corpus = "";
+
+  @Param({"100", "1000", "10000"})
+  private int memberCount = 100;
+
+  @Param({"4096", "65536"})
+  private int memberSize = 4096;
+
+  @Rule
+  public TemporaryPaths tempDir = new TemporaryPaths();
+
+  private Path archive;
+  private FileContentsScrubber scrubber;
+
+  @Before
+  public void setUpTest() throws Exception {
+    memberCount = 10;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    Path root = tempDir.getRoot();
+    Files.createDirectories(root);
+    archive = root.resolve("benchmark.a");
+    scrubber =
+        ObjectFileScrubbers.createDateUidGidScrubber(ObjectFileScrubbers.PaddingStyle.LEFT);
+
+    ImmutableList.Builder<byte[]> members = ImmutableList.builder();
+    if (corpus.isEmpty()) {
+      Random random = new Random(0);
+      for (int i = 0; i < memberCount; i++) {
+        byte[] member = new byte[memberSize];
+        random.nextBytes(member);
+        members.add(member);
+      }
+    } else {
+      try (DirectoryStream<Path> objects = Files.newDirectoryStream(Paths.get(corpus), "*.o")) {
+        for (Path object : objects) {
+          members.add(Files.readAllBytes(object));
+        }
+      }
+    }
+    writeArchive(members.build());
+  }
+
+  private void writeArchive(ImmutableList<byte[]> members) throws IOException {
+    try (OutputStream output = Files.newOutputStream(archive)) {
+      output.write(ObjectFileScrubbers.GLOBAL_HEADER);
+      int index = 0;
+      for (byte[] member : members) {
+        output.write(
+            (Strings.padEnd(String.format("m%d.o/", index++), 16, ' ') +
+                Strings.padEnd("1466000000", 12, ' ') +
+                Strings.padEnd("501", 6, ' ') +
+                Strings.padEnd("20", 6, ' ') +
+                Strings.padEnd("100644", 8, ' ') +
+                Strings.padEnd(Integer.toString(member.length), 10, ' '))
+                .getBytes(Charsets.US_ASCII));
+        output.write(ObjectFileScrubbers.END_OF_FILE_HEADER_MARKER);
+        output.write(member);
+        if (member.length % 2 != 0) {
+          output.write('\n');
+        }
+      }
+    }
+  }
+
+  @Test
+  public void scrubArchiveCorrectness() throws Exception {
+    scrubArchive();
+  }
+
+  @Macrobenchmark
+  public void scrubArchive() throws Exception {
+    try (FileChannel channel =
+             FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      scrubber.scrubFile(channel);
+    }
+  }
+}
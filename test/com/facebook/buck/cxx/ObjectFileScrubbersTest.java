@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.io.FileScrubber;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ObjectFileScrubbersTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  /**
+   * Builds the bytes of a BSD-style archive with the given members, using the given metadata for
+   * each entry.
+   */
+  static byte[] createArchive(
+      boolean thin,
+      String mtime,
+      String owner,
+      String group,
+      String mode,
+      String... members) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+    for (int i = 0; i < members.length; i++) {
+      String contents = members[i];
+      output.write(
+          (Strings.padEnd("m" + i + ".o", 16, ' ') +
+              Strings.padEnd(mtime, 12, ' ') +
+              Strings.padEnd(owner, 6, ' ') +
+              Strings.padEnd(group, 6, ' ') +
+              Strings.padEnd(mode, 8, ' ') +
+              Strings.padEnd(Integer.toString(contents.length()), 10, ' '))
+              .getBytes(Charsets.US_ASCII));
+      output.write(ObjectFileScrubbers.END_OF_FILE_HEADER_MARKER);
+      if (!thin) {
+        output.write(contents.getBytes(Charsets.US_ASCII));
+        if (contents.length() % 2 != 0) {
+          output.write('\n');
+        }
+      }
+    }
+    return output.toByteArray();
+  }
+
+  private byte[] scrub(byte[] archive) throws IOException, FileScrubber.ScrubException {
+    Path path = tmp.newFile("archive.a");
+    Files.write(path, archive);
+    FileContentsScrubber scrubber =
+        ObjectFileScrubbers.createDateUidGidScrubber(ObjectFileScrubbers.PaddingStyle.RIGHT);
+    try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      scrubber.scrubFile(channel);
+    }
+    return Files.readAllBytes(path);
+  }
+
+  @Test
+  public void scrubsEveryEntryHeader() throws Exception {
+    byte[] scrubbed =
+        scrub(createArchive(false, "1466000000", "501", "20", "100755", "odd", "even"));
+    assertArrayEquals(
+        createArchive(
+            false,
+            Integer.toString(ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP),
+            "0",
+            "0",
+            "0100644",
+            "odd",
+            "even"),
+        scrubbed);
+  }
+
+  @Test
+  public void scrubsEveryEntryHeaderOfThinArchive() throws Exception {
+    byte[] scrubbed = scrub(createArchive(true, "1466000000", "501", "20", "100755", "a", "bb"));
+    assertArrayEquals(
+        createArchive(
+            true,
+            Integer.toString(ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP),
+            "0",
+            "0",
+            "0100644",
+            "a",
+            "bb"),
+        scrubbed);
+  }
+
+  @Test(expected = FileScrubber.ScrubException.class)
+  public void rejectsTruncatedEntry() throws Exception {
+    byte[] archive = createArchive(false, "1", "1", "1", "644", "contents");
+    byte[] truncated = new byte[ObjectFileScrubbers.GLOBAL_HEADER.length + 20];
+    System.arraycopy(archive, 0, truncated, 0, truncated.length);
+    scrub(truncated);
+  }
+
+  @Test
+  public void malformedArchiveIsLeftUntouched() throws Exception {
+    byte[] archive = createArchive(false, "1466000000", "501", "20", "100755", "odd", "even");
+    // Corrupt the file magic of the second entry.
+    int secondEntry = ObjectFileScrubbers.GLOBAL_HEADER.length + 60 + 4;
+    archive[secondEntry + 58] = 'x';
+
+    Path path = tmp.newFile("malformed.a");
+    Files.write(path, archive);
+    FileContentsScrubber scrubber =
+        ObjectFileScrubbers.createDateUidGidScrubber(ObjectFileScrubbers.PaddingStyle.RIGHT);
+    try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      scrubber.scrubFile(channel);
+      fail("expected a ScrubException");
+    } catch (FileScrubber.ScrubException e) {
+      assertThat(e.getMessage(), containsString("invalid file magic"));
+    }
+    assertArrayEquals(archive, Files.readAllBytes(path));
+  }
+
+  @Test
+  public void malformedSizeIsRejectedBeforeWriting() throws Exception {
+    byte[] archive = createArchive(false, "1466000000", "501", "20", "100755", "odd");
+    // Replace the size field with garbage.
+    int sizeField = ObjectFileScrubbers.GLOBAL_HEADER.length + 48;
+    archive[sizeField] = 'z';
+
+    Path path = tmp.newFile("badsize.a");
+    Files.write(path, archive);
+    FileContentsScrubber scrubber =
+        ObjectFileScrubbers.createDateUidGidScrubber(ObjectFileScrubbers.PaddingStyle.RIGHT);
+    try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      scrubber.scrubFile(channel);
+      fail("expected a ScrubException");
+    } catch (FileScrubber.ScrubException e) {
+      assertThat(e.getMessage(), containsString("invalid file size"));
+    }
+    assertArrayEquals(archive, Files.readAllBytes(path));
+  }
+
+}
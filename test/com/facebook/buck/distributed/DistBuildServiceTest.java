@@ -173,6 +173,70 @@ public class DistBuildServiceTest {
         "content1".getBytes()));
   }
 
+  @Test
+  public void uploadsFilesInBatches() throws Exception {
+    FrontendResponse firstContainsResponse = new FrontendResponse();
+    firstContainsResponse.setType(FrontendRequestType.CAS_CONTAINS);
+    firstContainsResponse.setCasContainsResponse(
+        new CASContainsResponse().setExists(Arrays.asList(true, true)));
+    firstContainsResponse.setWasSuccessful(true);
+    Capture<FrontendRequest> firstContainsRequest = EasyMock.newCapture();
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(firstContainsRequest)))
+        .andReturn(firstContainsResponse).once();
+
+    FrontendResponse secondContainsResponse = new FrontendResponse();
+    secondContainsResponse.setType(FrontendRequestType.CAS_CONTAINS);
+    secondContainsResponse.setCasContainsResponse(
+        new CASContainsResponse().setExists(Arrays.asList(false)));
+    secondContainsResponse.setWasSuccessful(true);
+    Capture<FrontendRequest> secondContainsRequest = EasyMock.newCapture();
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(secondContainsRequest)))
+        .andReturn(secondContainsResponse).once();
+
+    FrontendResponse storeResponse = new FrontendResponse();
+    storeResponse.setType(FrontendRequestType.STORE_LOCAL_CHANGES);
+    storeResponse.setWasSuccessful(true);
+    Capture<FrontendRequest> storeRequest = EasyMock.newCapture();
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(storeRequest)))
+        .andReturn(storeResponse).once();
+
+    EasyMock.replay(frontendService);
+
+    BuildJobStateFileHashes fileHashes = new BuildJobStateFileHashes();
+    fileHashes.setCellIndex(0);
+    for (int i = 0; i < 3; i++) {
+      BuildJobStateFileHashEntry file = new BuildJobStateFileHashEntry();
+      file.setHashCode(Integer.toString(i));
+      file.setContents(("content" + Integer.toString(i)).getBytes());
+      file.setPath(new PathWithUnixSeparators("/tmp/" + i));
+      fileHashes.addToEntries(file);
+    }
+
+    final List<String> progress = new ArrayList<>();
+    distBuildService.uploadMissingFiles(
+        Arrays.asList(fileHashes),
+        2,
+        new DistBuildService.FileUploadListener() {
+          @Override
+          public void onBatchUploaded(int filesChecked, int filesUploaded, int totalFiles) {
+            progress.add(filesChecked + "/" + filesUploaded + "/" + totalFiles);
+          }
+        },
+        executor).get();
+
+    EasyMock.verify(frontendService);
+    Assert.assertEquals(
+        Arrays.asList("0", "1"),
+        firstContainsRequest.getValue().getCasContainsRequest().getContentSha1s());
+    Assert.assertEquals(
+        Arrays.asList("2"),
+        secondContainsRequest.getValue().getCasContainsRequest().getContentSha1s());
+    Assert.assertEquals(
+        "2",
+        storeRequest.getValue().getStoreLocalChangesRequest().getFiles().get(0).getContentHash());
+    Assert.assertEquals(Arrays.asList("2/0/3", "3/1/3"), progress);
+  }
+
   @Test
   public void canCreateBuild() throws Exception {
     final String idString = "create id";
@@ -69,6 +69,7 @@ import java.io.ByteArrayInputStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -164,6 +165,48 @@ public class DistributedBuildFileHashesTest {
         Matchers.equalTo(Optional.of(f.writtenContents)));
   }
 
+  @Test
+  public void materializerWritesDirectoryContentsOnDemand() throws Exception {
+    BuildJobStateFileHashes fileHashes = new BuildJobStateFileHashes();
+    fileHashes.addToEntries(
+        new BuildJobStateFileHashEntry()
+            .setPath(new PathWithUnixSeparators("res"))
+            .setHashCode("0")
+            .setIsDirectory(true));
+    fileHashes.addToEntries(
+        new BuildJobStateFileHashEntry()
+            .setPath(new PathWithUnixSeparators("res/a.txt"))
+            .setHashCode("1")
+            .setContents("a".getBytes(Charsets.UTF_8)));
+    fileHashes.addToEntries(
+        new BuildJobStateFileHashEntry()
+            .setPath(new PathWithUnixSeparators("res/b.txt"))
+            .setHashCode("2")
+            .setContents("b".getBytes(Charsets.UTF_8)));
+    fileHashes.addToEntries(
+        new BuildJobStateFileHashEntry()
+            .setPath(new PathWithUnixSeparators("src/C.java"))
+            .setHashCode("3")
+            .setContents("class C {}".getBytes(Charsets.UTF_8)));
+
+    ProjectFilesystem materializeProjectFilesystem = FakeProjectFilesystem.createJavaOnlyFilesystem(
+        "/materialize");
+    DistBuildFileMaterializer materializer = DistBuildFileHashes.createMaterializingLoader(
+        materializeProjectFilesystem,
+        fileHashes,
+        new FileContentsProviders.InlineContentsProvider());
+
+    materializer.get(materializeProjectFilesystem.resolve("res"));
+    materializer.get(materializeProjectFilesystem.resolve("res/a.txt"));
+
+    assertThat(
+        materializeProjectFilesystem.readFileIfItExists(Paths.get("res/b.txt")),
+        Matchers.equalTo(Optional.of("b")));
+    assertFalse(materializeProjectFilesystem.exists(Paths.get("src/C.java")));
+    assertThat(materializer.getMaterializedFileCount(), Matchers.equalTo(2));
+    assertThat(materializer.getRecordedPathCount(), Matchers.equalTo(4));
+  }
+
   @Test
   public void cacheMaterializes() throws Exception {
     SingleFileFixture f = new SingleFileFixture();
@@ -19,26 +19,37 @@ package com.facebook.buck.file;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.capture;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.BaseEncoding;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.PasswordAuthentication;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,6 +57,9 @@ import javax.net.ssl.HttpsURLConnection;
 
 public class HttpDownloaderTest {
 
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
   private final Path neverUsed = Paths.get("never/used");
   private BuckEventBus eventBus = BuckEventBusFactory.newInstance();
 
@@ -112,6 +126,44 @@ public class HttpDownloaderTest {
     EasyMock.verify(connection);
   }
 
+  @Test
+  public void shouldResumeAnInterruptedDownload() throws IOException, URISyntaxException {
+    InputStream interrupted = new SequenceInputStream(
+        new ByteArrayInputStream("hello".getBytes(UTF_8)),
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("Connection reset");
+          }
+        });
+    HttpURLConnection first = EasyMock.createNiceMock(HttpURLConnection.class);
+    EasyMock.expect(first.getResponseCode()).andStubReturn(HTTP_OK);
+    EasyMock.expect(first.getContentLengthLong()).andStubReturn(10L);
+    EasyMock.expect(first.getInputStream()).andStubReturn(interrupted);
+
+    HttpURLConnection second = EasyMock.createNiceMock(HttpURLConnection.class);
+    second.setRequestProperty("Range", "bytes=5-");
+    EasyMock.expectLastCall();
+    EasyMock.expect(second.getResponseCode()).andStubReturn(HTTP_PARTIAL);
+    EasyMock.expect(second.getHeaderField("Content-Range")).andStubReturn("bytes 5-9/10");
+    EasyMock.expect(second.getInputStream())
+        .andStubReturn(new ByteArrayInputStream("world".getBytes(UTF_8)));
+    EasyMock.replay(first, second);
+
+    final Iterator<HttpURLConnection> connections = ImmutableList.of(first, second).iterator();
+    HttpDownloader downloader = new HttpDownloader(Optional.absent()) {
+      @Override
+      protected HttpURLConnection createConnection(URI uri) throws IOException {
+        return connections.next();
+      }
+    };
+    Path output = tmp.getRoot().resolve("output");
+    assertTrue(downloader.fetch(eventBus, new URI("http://example.com"), output));
+
+    EasyMock.verify(first, second);
+    assertEquals("helloworld", new String(Files.readAllBytes(output), UTF_8));
+  }
+
   @Test
   public void shouldReturnFalseIfUrlIsNotHttp() throws URISyntaxException, IOException {
     Downloader downloader = new HttpDownloader(Optional.absent());
@@ -35,6 +35,7 @@ import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
@@ -102,10 +103,31 @@ public class RemoteFileTest {
     assertFalse(Files.exists(output));
   }
 
+  @Test
+  public void shouldUseTheDownloadCacheInsteadOfDownloadingAgain() throws Exception {
+    String value = "Cake, again";
+    HashCode hashCode = Hashing.sha1().hashBytes(value.getBytes(UTF_8));
+    Optional<Path> cacheDir = Optional.of(tmp.newFolder("download-cache").toPath());
+
+    runTheMagic(null, value, hashCode, cacheDir);
+    assertTrue(Files.exists(cacheDir.get().resolve(hashCode.toString())));
+
+    Path output = runTheMagic(new ExplodingDownloader(), value, hashCode, cacheDir);
+    assertTrue(Files.exists(output));
+  }
+
   private Path runTheMagic(
       @Nullable Downloader downloader,
       String contentsOfFile,
       HashCode hashCode) throws Exception {
+    return runTheMagic(downloader, contentsOfFile, hashCode, Optional.absent());
+  }
+
+  private Path runTheMagic(
+      @Nullable Downloader downloader,
+      String contentsOfFile,
+      HashCode hashCode,
+      Optional<Path> downloadCacheDir) throws Exception {
     final byte[] bytes = contentsOfFile.getBytes(UTF_8);
 
     if (downloader == null) {
@@ -129,6 +151,7 @@ public class RemoteFileTest {
               new DefaultTargetNodeToBuildRuleTransformer())
         ),
         downloader,
+        downloadCacheDir,
         new URI("http://example.com"),
         hashCode,
         "output.txt");
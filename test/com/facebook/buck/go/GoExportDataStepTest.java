@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.go;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class GoExportDataStepTest {
+
+  private static final String EXPORT_DATA = "go object linux amd64 go1.7\n\n$$\nfunc F()\n$$\n";
+
+  @Test
+  public void extractsPkgdefMember() {
+    byte[] archive = archive(
+        member("__.PKGDEF", EXPORT_DATA),
+        member("_go_.o", "object code"));
+    assertArrayEquals(EXPORT_DATA.getBytes(US_ASCII), GoExportDataStep.getExportData(archive));
+  }
+
+  @Test
+  public void skipsPaddedMembersBeforePkgdef() {
+    byte[] archive = archive(
+        member("asm.o/", "odd"),
+        member("__.PKGDEF/", EXPORT_DATA));
+    assertArrayEquals(EXPORT_DATA.getBytes(US_ASCII), GoExportDataStep.getExportData(archive));
+  }
+
+  @Test
+  public void usesWholeFileWhenThereIsNoExportData() {
+    byte[] empty = new byte[0];
+    assertArrayEquals(empty, GoExportDataStep.getExportData(empty));
+
+    byte[] archive = archive(member("_go_.o", "object code"));
+    assertArrayEquals(archive, GoExportDataStep.getExportData(archive));
+  }
+
+  private static String member(String name, String contents) {
+    String header = String.format(
+        "%-16s%-12s%-6s%-6s%-8s%-10d`\n",
+        name,
+        "0",
+        "0",
+        "0",
+        "644",
+        contents.length());
+    return header + contents + (contents.length() % 2 == 0 ? "" : "\n");
+  }
+
+  private static byte[] archive(String... members) {
+    StringBuilder archive = new StringBuilder("!<arch>\n");
+    for (String member : members) {
+      archive.append(member);
+    }
+    return archive.toString().getBytes(US_ASCII);
+  }
+}
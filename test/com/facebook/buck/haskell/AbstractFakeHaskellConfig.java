@@ -60,4 +60,10 @@ abstract class AbstractFakeHaskellConfig implements HaskellConfig {
     return true;
   }
 
+  @Override
+  @Value.Default
+  public boolean shouldCompileModulesInParallel() {
+    return false;
+  }
+
 }
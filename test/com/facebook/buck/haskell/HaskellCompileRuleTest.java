@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.haskell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class HaskellCompileRuleTest {
+
+  private static final Path OBJECT_DIR = Paths.get("/out/objects").toAbsolutePath();
+  private static final Path INTERFACE_DIR = Paths.get("/out/interfaces").toAbsolutePath();
+
+  @Test
+  public void moduleDependenciesAreReadFromTheMakefile() {
+    Optional<ImmutableMap<String, ImmutableSet<String>>> deps =
+        HaskellCompileRule.parseModuleDependencies(
+            ImmutableList.of(
+                "# DO NOT DELETE: Beginning of Haskell dependencies",
+                OBJECT_DIR.resolve("Foo/Bar.o") + " : /src/Foo/Bar.hs",
+                OBJECT_DIR.resolve("Foo/Bar.o") + " : " + INTERFACE_DIR.resolve("Baz.hi"),
+                OBJECT_DIR.resolve("Baz.o") + " : /src/Baz.hs",
+                OBJECT_DIR.resolve("Main.o") + " : " + INTERFACE_DIR.resolve("Foo/Bar.dyn_hi"),
+                OBJECT_DIR.resolve("Main.o") + " : /packages/base/Prelude.hi",
+                "# DO NOT DELETE: End of Haskell dependencies"),
+            OBJECT_DIR,
+            INTERFACE_DIR,
+            ImmutableSortedSet.of("Baz", "Foo.Bar", "Main"));
+    assertEquals(
+        Optional.of(
+            ImmutableMap.of(
+                "Baz", ImmutableSet.of(),
+                "Foo.Bar", ImmutableSet.of("Baz"),
+                "Main", ImmutableSet.of("Foo.Bar"))),
+        deps);
+  }
+
+  @Test
+  public void bootInterfacesAreNotSupported() {
+    assertFalse(
+        HaskellCompileRule.parseModuleDependencies(
+            ImmutableList.of(
+                OBJECT_DIR.resolve("A.o") + " : " + INTERFACE_DIR.resolve("B.hi-boot")),
+            OBJECT_DIR,
+            INTERFACE_DIR,
+            ImmutableSortedSet.of("A", "B"))
+            .isPresent());
+  }
+
+}
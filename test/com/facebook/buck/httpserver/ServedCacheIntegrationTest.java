@@ -16,6 +16,7 @@
 
 package com.facebook.buck.httpserver;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -48,6 +49,9 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -62,6 +66,7 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class ServedCacheIntegrationTest {
   @Rule
@@ -493,6 +498,80 @@ public class ServedCacheIntegrationTest {
         Matchers.equalTo(data));
   }
 
+  @Test
+  public void testHeadAndRangedFetchFromServedDircache() throws Exception {
+    webServer = new WebServer(
+        /* port */ 0,
+        projectFilesystem,
+        "/static/",
+        MAPPER);
+    webServer.updateAndStartIfNeeded(ArtifactCaches.newServedCache(
+        createMockLocalConfig(
+            "[cache]",
+            "dir = test-cache",
+            "serve_local_cache = true",
+            "served_local_cache_mode = readonly"),
+        projectFilesystem));
+    OkHttpClient client = new OkHttpClient();
+    String url = String.format(
+        "http://127.0.0.1:%d/artifacts/key/%s",
+        webServer.getPort().get(),
+        A_FILE_RULE_KEY);
+
+    byte[] body;
+    try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(200));
+      body = response.body().bytes();
+    }
+    assertThat(
+        new String(body, body.length - A_FILE_DATA.length(), A_FILE_DATA.length(), UTF_8),
+        Matchers.equalTo(A_FILE_DATA));
+
+    try (Response response =
+             client.newCall(new Request.Builder().url(url).head().build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(200));
+      assertThat(
+          response.header("Content-Length"),
+          Matchers.equalTo(String.valueOf(body.length)));
+    }
+
+    try (Response response = client.newCall(
+        new Request.Builder().url(url).header("Range", "bytes=2-").build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(206));
+      assertThat(
+          response.header("Content-Range"),
+          Matchers.equalTo(String.format("bytes 2-%d/%d", body.length - 1, body.length)));
+      assertThat(
+          response.body().bytes(),
+          Matchers.equalTo(Arrays.copyOfRange(body, 2, body.length)));
+    }
+
+    try (Response response = client.newCall(
+        new Request.Builder().url(url).header("Range", "bytes=-4").build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(206));
+      assertThat(
+          new String(response.body().bytes(), UTF_8),
+          Matchers.equalTo(A_FILE_DATA.substring(A_FILE_DATA.length() - 4)));
+    }
+
+    try (Response response = client.newCall(
+        new Request.Builder()
+            .url(url)
+            .header("Range", String.format("bytes=%d-", body.length))
+            .build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(416));
+    }
+
+    String missingUrl = String.format(
+        "http://127.0.0.1:%d/artifacts/key/%s",
+        webServer.getPort().get(),
+        new RuleKey("baadbeef"));
+    try (Response response =
+             client.newCall(new Request.Builder().url(missingUrl).head().build()).execute()) {
+      assertThat(response.code(), Matchers.equalTo(404));
+    }
+  }
+
   @Test
   public void testStoreDisabled() throws Exception {
     webServer = new WebServer(
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import org.junit.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CombinedPathOrGlobMatcherTest {
+
+  private static final ImmutableList<String> GLOBS = ImmutableList.of(
+      "**/*.pbxproj",
+      "**/#*#",
+      "**/.#*",
+      "*.swp",
+      "foo/*/bar",
+      "foo/**/baz",
+      "a?c/**",
+      "**/*.{orig,rej}",
+      "weird$name+(1)",
+      "**/[ab].txt",
+      "**/[!a-b].txt",
+      "**/[a-].txt",
+      "{foo,src}/{one,Main}*",
+      "**/\\*literal");
+
+  private static final ImmutableList<String> PATHS = ImmutableList.of(
+      "App.xcodeproj/project.pbxproj",
+      "project.pbxproj",
+      "dir/#autosave#",
+      "dir/.#lock",
+      "x.swp",
+      "dir/x.swp",
+      "foo/one/bar",
+      "foo/one/two/bar",
+      "foo/baz",
+      "foo/one/two/baz",
+      "abc/d",
+      "a/c/d",
+      "src/Main.java.orig",
+      "src/Main.java.rej",
+      "src/Main.java",
+      "weird$name+(1)",
+      "weirdXname+(1)",
+      "dir/a.txt",
+      "dir/c.txt",
+      "dir/-.txt",
+      "dir/ab.txt",
+      "dir/*literal",
+      "dir/xliteral");
+
+  @Test
+  public void globsMatchLikeTheFileSystemsMatchers() {
+    for (String glob : GLOBS) {
+      PathOrGlobMatcher single = new PathOrGlobMatcher(glob);
+      CombinedPathOrGlobMatcher combined =
+          new CombinedPathOrGlobMatcher(ImmutableSet.of(single), "/");
+      for (String path : PATHS) {
+        assertEquals(
+            String.format("%s matching %s", glob, path),
+            single.matches(Paths.get(path)),
+            combined.matches(Paths.get(path)));
+      }
+    }
+  }
+
+  @Test
+  public void anyMatcherMatching() {
+    ImmutableSet.Builder<PathOrGlobMatcher> matchers = ImmutableSet.builder();
+    for (String glob : GLOBS) {
+      matchers.add(new PathOrGlobMatcher(glob));
+    }
+    matchers.add(new PathOrGlobMatcher(Paths.get("buck-out")));
+    matchers.add(new PathOrGlobMatcher(Paths.get("third-party/big")));
+    CombinedPathOrGlobMatcher combined = new CombinedPathOrGlobMatcher(matchers.build(), "/");
+
+    for (String path : PATHS) {
+      boolean expected = false;
+      for (String glob : GLOBS) {
+        expected |= new PathOrGlobMatcher(glob).matches(Paths.get(path));
+      }
+      assertEquals(path, expected, combined.matches(Paths.get(path)));
+    }
+    assertTrue(combined.matches(Paths.get("buck-out")));
+    assertTrue(combined.matches(Paths.get("buck-out/gen/foo")));
+    assertTrue(combined.matches(Paths.get("third-party/big/lib.jar")));
+    assertFalse(combined.matches(Paths.get("third-party")));
+    assertFalse(combined.matches(Paths.get("third-party/bigger")));
+    assertFalse(combined.matches(Paths.get("buck-out-other")));
+  }
+
+  @Test
+  public void pathsAreMatchedLikeStartsWith() {
+    FileSystem vfs = Jimfs.newFileSystem(Configuration.unix());
+    PathOrGlobMatcher matcher = new PathOrGlobMatcher(vfs.getPath("foo/bar"));
+    CombinedPathOrGlobMatcher combined =
+        new CombinedPathOrGlobMatcher(ImmutableSet.of(matcher), vfs.getSeparator());
+    for (Path path : ImmutableList.of(
+        vfs.getPath("foo"),
+        vfs.getPath("foo/bar"),
+        vfs.getPath("foo/bar/baz"),
+        vfs.getPath("foo/barbaz"),
+        vfs.getPath("bar/foo/bar"))) {
+      assertEquals(path.toString(), matcher.matches(path), combined.matches(path));
+    }
+  }
+
+  @Test
+  public void invalidGlobsAreNotParsed() {
+    assertFalse(GlobAutomaton.parse("\\").isPresent());
+    assertFalse(GlobAutomaton.parse("[ab").isPresent());
+    assertFalse(GlobAutomaton.parse("[a/b]").isPresent());
+    assertFalse(GlobAutomaton.parse("[z-a]").isPresent());
+    assertFalse(GlobAutomaton.parse("{a,{b,c}}").isPresent());
+    assertFalse(GlobAutomaton.parse("{a,b").isPresent());
+    assertEquals(4, GlobAutomaton.parse("{a,b}/{c,d}").get().size());
+  }
+
+  @Test
+  public void manyGlobsAreMatchedTogether() {
+    ImmutableList.Builder<ImmutableList<GlobAutomaton.Token>> globs = ImmutableList.builder();
+    for (int i = 0; i < 100; i++) {
+      globs.addAll(GlobAutomaton.parse("**/*.ext" + i).get());
+    }
+    GlobAutomaton automaton = new GlobAutomaton(globs.build());
+    assertTrue(automaton.matches("a/b.ext0"));
+    assertTrue(automaton.matches("a/b/c.ext99"));
+    assertTrue(automaton.matches("a/b.ext1.ext10"));
+    assertFalse(automaton.matches("a/b.ext100"));
+    assertFalse(automaton.matches("b.ext1"));
+    assertFalse(automaton.matches("a/b.ext1/c"));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures {@link ProjectFilesystem#isIgnored(Path)} over a synthetic tree with the given number
+ * of ignored paths and globs, against checking each of them in turn.
+ */
+public class ProjectFilesystemIsIgnoredBenchmark {
+
+  @Param({"10", "50"})
+  private int ignoreCount = 10;
+
+  @Param({"100000"})
+  private int pathCount = 100000;
+
+  @Rule
+  public TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ImmutableSet<PathOrGlobMatcher> ignores;
+  private ImmutableList<Path> paths;
+  // Kept so that the work done in the benchmarks can't be optimized away.
+  private int ignored;
+
+  @Before
+  public void setUpTest() throws Exception {
+    pathCount = 1000;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    ImmutableSet.Builder<PathOrGlobMatcher> ignores = ImmutableSet.builder();
+    for (int i = 0; i < ignoreCount; i++) {
+      if (i % 2 == 0) {
+        ignores.add(new PathOrGlobMatcher(Paths.get("ignored" + i + "/dir")));
+      } else {
+        ignores.add(new PathOrGlobMatcher("**/*.ext" + i));
+      }
+    }
+    this.ignores = ignores.build();
+    filesystem = new ProjectFilesystem(tempDir.getRoot().toRealPath(), this.ignores);
+
+    ImmutableList.Builder<Path> paths = ImmutableList.builder();
+    for (int i = 0; i < pathCount; i++) {
+      paths.add(
+          Paths.get(
+              String.format(
+                  "ignored%d/dir%d/pkg%d/File%d.ext%d",
+                  i % (ignoreCount * 2),
+                  i % 3,
+                  i % 100,
+                  i,
+                  i % (ignoreCount * 2))));
+    }
+    this.paths = paths.build();
+  }
+
+  @Test
+  public void isIgnoredCorrectness() {
+    isIgnoredOneAtATime();
+    int expected = ignored;
+    isIgnored();
+    assertEquals(expected, ignored);
+  }
+
+  @Macrobenchmark
+  public void isIgnored() {
+    ignored = 0;
+    for (Path path : paths) {
+      if (filesystem.isIgnored(path)) {
+        ignored++;
+      }
+    }
+  }
+
+  @Macrobenchmark
+  public void isIgnoredOneAtATime() {
+    ignored = 0;
+    for (Path path : paths) {
+      for (PathOrGlobMatcher ignore : ignores) {
+        if (ignore.matches(path)) {
+          ignored++;
+          break;
+        }
+      }
+    }
+  }
+}
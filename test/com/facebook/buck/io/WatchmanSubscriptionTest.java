@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.Map;
+
+public class WatchmanSubscriptionTest {
+
+  private static final String NAME = "buckd-test";
+  private static final String ROOT = "/path/to/repo";
+
+  private PipedOutputStream fromWatchman;
+  private ByteArrayOutputStream toWatchman;
+  private WatchmanSubscription subscription;
+
+  @Before
+  public void setUp() throws IOException {
+    fromWatchman = new PipedOutputStream();
+    toWatchman = new ByteArrayOutputStream();
+    subscription = new WatchmanSubscription(
+        NAME,
+        ROOT,
+        new PipedInputStream(fromWatchman),
+        toWatchman,
+        fromWatchman);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    subscription.close();
+  }
+
+  @Test
+  public void flushReturnsThisSubscriptionsNotificationsThenTheResponse() throws Exception {
+    Map<String, Object> notification = ImmutableMap.of(
+        "unilateral", true,
+        "subscription", NAME,
+        "files", ImmutableList.of(ImmutableMap.of("name", "foo/bar")));
+    send(notification);
+    send(
+        ImmutableMap.of(
+            "unilateral", true,
+            "subscription", "someone-else",
+            "files", ImmutableList.of(ImmutableMap.of("name", "foo/baz"))));
+    Map<String, Object> response = ImmutableMap.of("synced", ImmutableList.of(NAME));
+    send(response);
+
+    Optional<ImmutableList<Map<String, Object>>> result = subscription.flush(10000);
+
+    assertEquals(Optional.of(ImmutableList.of(notification, response)), result);
+    List<?> command = (List<?>) new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED)
+        .deserializeBserValue(new ByteArrayInputStream(toWatchman.toByteArray()));
+    assertEquals("flush-subscriptions", command.get(0));
+    assertEquals(ROOT, command.get(1));
+
+    // Notifications are only returned once.
+    send(response);
+    assertEquals(Optional.of(ImmutableList.of(response)), subscription.flush(10000));
+  }
+
+  @Test
+  public void flushIsAbsentIfWatchmanDoesNotAnswer() throws Exception {
+    assertEquals(
+        Optional.<ImmutableList<Map<String, Object>>>absent(),
+        subscription.flush(10));
+    assertTrue(subscription.isAlive());
+  }
+
+  @Test
+  public void lostConnectionIsReported() throws Exception {
+    fromWatchman.close();
+    for (int i = 0; i < 100 && subscription.isAlive(); i++) {
+      Thread.sleep(10);
+    }
+    assertFalse(subscription.isAlive());
+
+    try {
+      subscription.flush(10000);
+      fail("Should have thrown IOException.");
+    } catch (IOException e) {
+      assertEquals("Lost connection to Watchman", e.getMessage());
+    }
+  }
+
+  private void send(Map<String, Object> pdu) throws IOException {
+    new BserSerializer().serializeToStream(pdu, fromWatchman);
+    fromWatchman.flush();
+  }
+}
@@ -57,7 +57,8 @@ public class WatchmanTest {
               "cmd-watch-project",
               "wildmatch",
               "wildmatch_multislash",
-              "glob_generator")));
+              "glob_generator",
+              "cmd-flush-subscriptions")));
   private static final Function<Path, Optional<WatchmanClient>> NULL_WATCHMAN_CONNECTOR =
       path -> Optional.absent();
 
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.ClassFileSummary;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IncrementalJavacStepTest {
+
+  private static final FileTime BEFORE = FileTime.fromMillis(1000);
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    writeSource("A", "public class A { void use() { B.value(); } }");
+    writeSource("B", "public class B { public static int value() { return 1; } }");
+    writeSource("C", "public class C { }");
+    writeSource("D", "public class D { public static final int X = 1; }");
+    writeSource("E", "public class E { int x() { return D.X; } }");
+  }
+
+  @Test
+  public void changingImplementationOnlyRecompilesThatSource() throws Exception {
+    compileAndAge();
+    writeSource("B", "public class B { public static int value() { return 2; } }");
+
+    compile();
+
+    assertRecompiled("B");
+    assertNotRecompiled("A", "C", "D", "E");
+  }
+
+  @Test
+  public void changingAbiRecompilesDependents() throws Exception {
+    compileAndAge();
+    writeSource("B", "public class B { public static long value() { return 2; } }");
+
+    compile();
+
+    assertRecompiled("A", "B");
+    assertNotRecompiled("C", "D", "E");
+  }
+
+  @Test
+  public void changingConstantsRecompilesEverything() throws Exception {
+    compileAndAge();
+    writeSource("D", "public class D { public static final int X = 2; }");
+
+    compile();
+
+    assertRecompiled("A", "B", "C", "D", "E");
+  }
+
+  @Test
+  public void removedSourcesAreRemovedFromTheOutput() throws Exception {
+    compileAndAge();
+    Files.delete(tmp.getRoot().resolve(getSource("C")));
+
+    compile();
+
+    assertFalse(Files.exists(tmp.getRoot().resolve("out/com/example/C.class")));
+    assertNotRecompiled("A", "B", "D", "E");
+  }
+
+  @Test
+  public void failedCompilesAreFollowedByAFullCompile() throws Exception {
+    compileAndAge();
+    writeSource("B", "public class B { }");
+    assertFalse(compile().isSuccess());
+
+    writeSource("B", "public class B { public static int value() { return 1; } }");
+    compile();
+
+    assertRecompiled("A", "B", "C", "D", "E");
+  }
+
+  @Test
+  public void changingAbiRecompilesUsersOfTransitiveSubclasses() throws Exception {
+    writeSource("Base", "public class Base { public int f() { return 1; } }");
+    writeSource("Middle", "public class Middle extends Base { }");
+    writeSource("Leaf", "public class Leaf extends Middle { }");
+    // Calls to inherited methods are compiled against Leaf, so User never refers to Base.
+    writeSource("User", "public class User { long use(Leaf leaf) { return leaf.f(); } }");
+    compileAndAge();
+    assertFalse(getReferencedClasses("User").contains("com/example/Base"));
+    writeSource("Base", "public class Base { public long f() { return 1; } }");
+
+    assertTrue(compile().isSuccess());
+
+    assertRecompiled("Base", "Middle", "Leaf", "User");
+    assertNotRecompiled("A", "B", "C", "D", "E");
+  }
+
+  @Test
+  public void addedClassesRecompileUsersOfClassesTheyShadow() throws Exception {
+    writeSource("other/F", "public class F { public static int value() { return 1; } }");
+    writeSource(
+        "User",
+        "import com.example.other.*; public class User { int use() { return F.value(); } }");
+    compileAndAge();
+    assertTrue(getReferencedClasses("User").contains("com/example/other/F"));
+    // A class in the same package is found before one imported on demand.
+    writeSource("F", "public class F { public static int value() { return 2; } }");
+
+    assertTrue(compile().isSuccess());
+
+    assertRecompiled("User");
+    assertTrue(getReferencedClasses("User").contains("com/example/F"));
+    assertFalse(getReferencedClasses("User").contains("com/example/other/F"));
+    assertNotRecompiled("A", "B", "C", "D", "E");
+  }
+
+  @Test
+  public void sourcesOutsideTheirPackageDirectoryCompileIncrementally() throws Exception {
+    // Sources needn't be laid out by package, so these both end in a plain Foo.java.
+    writeFile("java/one/Foo.java", "package com.example.one; public class Foo { }");
+    writeFile("java/two/Foo.java", "package com.example.two; public class Foo { }");
+    compileAndAge();
+    writeFile(
+        "java/one/Foo.java",
+        "package com.example.one; public class Foo { int x() { return 1; } }");
+
+    assertTrue(compile().isSuccess());
+
+    assertRecompiled("one/Foo");
+    assertNotRecompiled("two/Foo", "A", "B", "C", "D", "E");
+  }
+
+  /**
+   * @param className the name of a class in {@code com.example}, or in a package under it, such as
+   *     {@code other/F}.
+   */
+  private void writeSource(String className, String contents) throws IOException {
+    Path source = tmp.getRoot().resolve(getSource(className));
+    Files.createDirectories(source.getParent());
+    String packageName = ("com/example/" + className).replaceFirst("/[^/]*$", "").replace('/', '.');
+    Files.write(
+        source,
+        ("package " + packageName + "; " + contents).getBytes(Charsets.UTF_8));
+  }
+
+  private void writeFile(String path, String contents) throws IOException {
+    Path file = tmp.getRoot().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(Charsets.UTF_8));
+  }
+
+  private static Path getSource(String className) {
+    return Paths.get("java/com/example/" + className + ".java");
+  }
+
+  private StepExecutionResult compile() throws Exception {
+    ImmutableSortedSet.Builder<Path> sources = ImmutableSortedSet.naturalOrder();
+    try (Stream<Path> files = Files.walk(tmp.getRoot().resolve("java"))) {
+      files
+          .filter(file -> file.toString().endsWith(".java"))
+          .forEach(file -> sources.add(tmp.getRoot().relativize(file)));
+    }
+    // Like a java_library, start from a clean output directory.
+    filesystem.deleteRecursivelyIfExists(Paths.get("out"));
+
+    IncrementalJavacStep step = new IncrementalJavacStep(
+        Paths.get("out"),
+        Paths.get("incremental"),
+        NoOpClassUsageFileWriter.instance(),
+        Optional.absent(),
+        sources.build(),
+        Paths.get("srcs"),
+        ImmutableSortedSet.of(),
+        JavacOptions.builder(JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS)
+            .setSourceLevel("8")
+            .setTargetLevel("8")
+            .setIncrementalCompilation(true)
+            .build(),
+        BuildTargetFactory.newInstance("//java/com/example:example"),
+        Optional.absent(),
+        new SourcePathResolver(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer())),
+        filesystem);
+    return step.execute(TestExecutionContext.newInstance());
+  }
+
+  private void compileAndAge() throws Exception {
+    assertTrue(compile().isSuccess());
+    List<Path> keptClasses;
+    try (Stream<Path> files = Files.walk(tmp.getRoot().resolve("incremental/classes"))) {
+      keptClasses = files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    for (Path keptClass : keptClasses) {
+      Files.setLastModifiedTime(keptClass, BEFORE);
+    }
+  }
+
+  private Path getKeptClass(String className) {
+    return tmp.getRoot().resolve("incremental/classes/com/example/" + className + ".class");
+  }
+
+  private void assertRecompiled(String... classNames) throws IOException {
+    for (String className : classNames) {
+      assertFalse(
+          className + " should have been recompiled",
+          BEFORE.equals(Files.getLastModifiedTime(getKeptClass(className))));
+      assertTrue(Files.exists(tmp.getRoot().resolve("out/com/example/" + className + ".class")));
+    }
+  }
+
+  private Set<String> getReferencedClasses(String className) throws IOException {
+    return ClassFileSummary.of(Files.readAllBytes(getKeptClass(className)))
+        .getReferencedClasses();
+  }
+
+  private void assertNotRecompiled(String... classNames) throws IOException {
+    for (String className : classNames) {
+      assertEquals(
+          className + " shouldn't have been recompiled",
+          BEFORE,
+          Files.getLastModifiedTime(getKeptClass(className)));
+      assertTrue(Files.exists(tmp.getRoot().resolve("out/com/example/" + className + ".class")));
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.JarIndexCache;
+import com.facebook.buck.util.cache.DefaultFileHashCache;
+import com.facebook.buck.util.cache.FileHashCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+public class IndexedClasspathFileManagerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final byte[] CLASS_CONTENTS = {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe};
+
+  private JavaCompiler compiler;
+  private JarIndexCache cache;
+  private FileHashCache hashes;
+  private Path jar;
+  private Path classesDir;
+
+  @Before
+  public void setUp() throws IOException {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    cache = new JarIndexCache();
+    hashes = DefaultFileHashCache.createDefaultFileHashCache(new ProjectFilesystem(tmp.getRoot()));
+
+    jar = tmp.getRoot().resolve("lib.jar");
+    writeJar(CLASS_CONTENTS);
+
+    classesDir = tmp.newFolder("classes");
+    Files.createDirectories(classesDir.resolve("com/example"));
+    Files.write(classesDir.resolve("com/example/Baz.class"), CLASS_CONTENTS);
+  }
+
+  private IndexedClasspathFileManager createFileManager() throws IOException {
+    StandardJavaFileManager delegate = compiler.getStandardFileManager(null, null, null);
+    delegate.setLocation(
+        StandardLocation.CLASS_PATH,
+        ImmutableList.of(jar.toFile(), classesDir.toFile()));
+    return new IndexedClasspathFileManager(delegate, cache, hashes, StandardCharsets.UTF_8);
+  }
+
+  private void writeJar(byte[] classContents) throws IOException {
+    try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String name : ImmutableList.of(
+          "com/example/",
+          "com/example/Foo.class",
+          "com/example/inner/Bar.class",
+          "com/example/resource.txt")) {
+        output.putNextEntry(new ZipEntry(name));
+        if (name.endsWith(".class")) {
+          output.write(classContents);
+        }
+        output.closeEntry();
+      }
+    }
+    hashes.invalidate(jar);
+  }
+
+  private ImmutableSortedSet<String> listBinaryNames(
+      IndexedClasspathFileManager fileManager,
+      String packageName,
+      boolean recurse) throws IOException {
+    ImmutableSortedSet.Builder<String> names = ImmutableSortedSet.naturalOrder();
+    for (JavaFileObject file : fileManager.list(
+        StandardLocation.CLASS_PATH,
+        packageName,
+        ImmutableSet.of(JavaFileObject.Kind.CLASS),
+        recurse)) {
+      names.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+    }
+    return names.build();
+  }
+
+  @Test
+  public void listsClassesFromJarsAndDirectories() throws IOException {
+    try (IndexedClasspathFileManager fileManager = createFileManager()) {
+      assertEquals(
+          ImmutableSortedSet.of("com.example.Baz", "com.example.Foo"),
+          listBinaryNames(fileManager, "com.example", false));
+      assertEquals(
+          ImmutableSortedSet.of("com.example.Baz", "com.example.Foo", "com.example.inner.Bar"),
+          listBinaryNames(fileManager, "com.example", true));
+    }
+  }
+
+  @Test
+  public void jarEntriesHaveJarUrisAndContents() throws IOException {
+    try (IndexedClasspathFileManager fileManager = createFileManager()) {
+      JavaFileObject bar = Iterables.getOnlyElement(
+          fileManager.list(
+              StandardLocation.CLASS_PATH,
+              "com.example.inner",
+              ImmutableSet.of(JavaFileObject.Kind.CLASS),
+              false));
+      assertEquals(
+          "jar:" + jar.toUri() + "!/com/example/inner/Bar.class",
+          bar.toUri().toString());
+      assertTrue(bar.isNameCompatible("Bar", JavaFileObject.Kind.CLASS));
+      try (InputStream input = bar.openInputStream()) {
+        assertArrayEquals(CLASS_CONTENTS, ByteStreams.toByteArray(input));
+      }
+    }
+  }
+
+  @Test
+  public void indexIsSharedBetweenFileManagers() throws IOException {
+    JarIndexCache.JarIndex index = cache.getIndex(jar, hashes.get(jar));
+    try (IndexedClasspathFileManager fileManager = createFileManager()) {
+      listBinaryNames(fileManager, "com.example", false);
+    }
+    assertSame(index, cache.getIndex(jar, hashes.get(jar)));
+
+    // Touching the jar leaves its contents, and so its index, as they were.
+    Files.setLastModifiedTime(
+        jar,
+        FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 10000));
+    assertSame(index, cache.getIndex(jar, hashes.get(jar)));
+
+    // Rewriting the jar invalidates the index.
+    writeJar(new byte[] {1, 2, 3});
+    assertNotSame(index, cache.getIndex(jar, hashes.get(jar)));
+  }
+
+  @Test
+  public void contentsOfARewrittenJarAreNotCachedForTheOldOne() throws IOException {
+    JarIndexCache.JarIndex index = cache.getIndex(jar, hashes.get(jar));
+    final byte[] rewritten = {1, 2, 3};
+
+    assertArrayEquals(
+        rewritten,
+        cache.getContents(index, "com/example/Foo.class", () -> rewritten));
+    assertArrayEquals(
+        CLASS_CONTENTS,
+        cache.getContents(index, "com/example/Foo.class", () -> CLASS_CONTENTS));
+    assertArrayEquals(
+        CLASS_CONTENTS,
+        cache.getContents(index, "com/example/Foo.class", () -> rewritten));
+  }
+}
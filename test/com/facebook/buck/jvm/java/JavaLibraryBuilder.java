@@ -41,8 +41,16 @@ public class JavaLibraryBuilder extends AbstractNodeBuilder<JavaLibraryDescripti
       BuildTarget target,
       ProjectFilesystem projectFilesystem,
       HashCode hashCode) {
+    this(target, projectFilesystem, hashCode, DEFAULT_JAVAC_OPTIONS);
+  }
+
+  protected JavaLibraryBuilder(
+      BuildTarget target,
+      ProjectFilesystem projectFilesystem,
+      HashCode hashCode,
+      JavacOptions defaultJavacOptions) {
     super(
-        new JavaLibraryDescription(DEFAULT_JAVAC_OPTIONS),
+        new JavaLibraryDescription(defaultJavacOptions),
         target,
         projectFilesystem,
         hashCode);
@@ -63,6 +71,12 @@ public class JavaLibraryBuilder extends AbstractNodeBuilder<JavaLibraryDescripti
     return new JavaLibraryBuilder(target, new FakeProjectFilesystem(), hashCode);
   }
 
+  public static JavaLibraryBuilder createBuilder(
+      BuildTarget target,
+      JavacOptions defaultJavacOptions) {
+    return new JavaLibraryBuilder(target, new FakeProjectFilesystem(), null, defaultJavacOptions);
+  }
+
   public JavaLibraryBuilder addDep(BuildTarget rule) {
     arg.deps = amend(arg.deps, rule);
     return this;
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS;
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -23,15 +24,21 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildContext;
 import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.FakeBuildableContext;
 import com.facebook.buck.rules.FakeExportDependenciesRule;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.Step;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Paths;
+import java.util.List;
+
 public class JavaLibraryDescriptionTest {
 
   private FakeExportDependenciesRule exportingRule;
@@ -68,4 +75,59 @@ public class JavaLibraryDescriptionTest {
 
     assertThat(javaLibrary.getDeps(), Matchers.<BuildRule>hasItem(exportedRule));
   }
+
+  @Test
+  public void dependentsOfLibrariesWithSourceAbisDoNotWaitForThem() throws Exception {
+    JavacOptions javacOptions = JavacOptions.builder(DEFAULT_JAVAC_OPTIONS)
+        .setAbiGenerationMode(AbstractJavacOptions.AbiGenerationMode.SOURCE)
+        .build();
+    BuildRule dep = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:dep"), javacOptions)
+        .addSrc(Paths.get("Dep.java"))
+        .build(resolver);
+    DefaultJavaLibrary javaLibrary = (DefaultJavaLibrary) JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:rule"), javacOptions)
+        .addSrc(Paths.get("Rule.java"))
+        .addDep(dep.getBuildTarget())
+        .build(resolver);
+
+    BuildRule depAbi =
+        resolver.getRule(dep.getBuildTarget().withAppendedFlavors(CalculateAbi.FLAVOR));
+    assertThat(depAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(depAbi.getDeps(), Matchers.not(Matchers.<BuildRule>hasItem(dep)));
+    assertThat(javaLibrary.getDeps(), Matchers.<BuildRule>hasItem(depAbi));
+    assertThat(javaLibrary.getPipelinedDeps(), Matchers.<BuildRule>contains(dep));
+  }
+
+  @Test
+  public void librariesWithSourceAbisDoNotStubTheirOutput() throws Exception {
+    JavacOptions javacOptions = JavacOptions.builder(DEFAULT_JAVAC_OPTIONS)
+        .setAbiGenerationMode(AbstractJavacOptions.AbiGenerationMode.SOURCE)
+        .build();
+    BuildRule javaLibrary = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:rule"), javacOptions)
+        .addSrc(Paths.get("Rule.java"))
+        .build(resolver);
+
+    List<Step> steps =
+        javaLibrary.getBuildSteps(FakeBuildContext.NOOP_CONTEXT, new FakeBuildableContext());
+    assertThat(steps, Matchers.not(Matchers.hasItem(Matchers.instanceOf(CalculateAbiStep.class))));
+  }
+
+  @Test
+  public void librariesWithClassAbisAreNotPipelined() throws Exception {
+    BuildRule dep = JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:dep"))
+        .addSrc(Paths.get("Dep.java"))
+        .build(resolver);
+    DefaultJavaLibrary javaLibrary = (DefaultJavaLibrary) JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:rule"))
+        .addSrc(Paths.get("Rule.java"))
+        .addDep(dep.getBuildTarget())
+        .build(resolver);
+
+    assertThat(
+        resolver.getRule(dep.getBuildTarget().withAppendedFlavors(CalculateAbi.FLAVOR)),
+        Matchers.instanceOf(CalculateAbi.class));
+    assertThat(javaLibrary.getPipelinedDeps(), Matchers.<BuildRule>empty());
+  }
 }
@@ -60,6 +60,11 @@ public class JavaTestBuilder extends AbstractNodeBuilder<JavaTestDescription.Arg
     return this;
   }
 
+  public JavaTestBuilder setRunTestSeparately(boolean runTestSeparately) {
+    arg.runTestSeparately = Optional.of(runTestSeparately);
+    return this;
+  }
+
   public JavaTestBuilder setVmArgs(@Nullable ImmutableList<String> vmArgs) {
     arg.vmArgs = Optional.fromNullable(vmArgs);
     return this;
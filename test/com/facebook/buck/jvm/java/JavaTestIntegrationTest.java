@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.java;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
@@ -246,6 +247,23 @@ public class JavaTestIntegrationTest {
     result.assertSuccess();
   }
 
+  @Test
+  public void testsRunInWorkersDoNotShareState() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this,
+        "java_test_workers",
+        temp);
+    workspace.setUp();
+    ProjectWorkspace.ProcessResult result =
+        workspace.runBuckCommand("test", "-j", "1", "//:first", "//:second");
+    result.assertSuccess();
+
+    // Both tests ran in the same worker, rather than falling back to JVMs of their own.
+    String firstWorker = workspace.getFileContents("first-worker.txt");
+    assertNotEquals("null", firstWorker);
+    assertEquals(firstWorker, workspace.getFileContents("second-worker.txt"));
+  }
+
   @Test
   public void testClasspath() throws IOException {
     final ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
@@ -18,27 +18,48 @@ package com.facebook.buck.jvm.java;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TestRule;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ParallelStep;
+import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TargetDevice;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.testutil.MoreAsserts;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import org.junit.Rule;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class JavaTestRuleTest {
 
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
   @Test
   public void shouldNotAmendVmArgsIfTargetDeviceIsNotPresent() throws Exception {
     ImmutableList<String> vmArgs = ImmutableList.of("--one", "--two", "--three");
@@ -116,6 +137,102 @@ public class JavaTestRuleTest {
         Matchers.hasItems(rule.getCompiledTestsLibrary(), firstOrderDep, transitiveDep));
   }
 
+  @Test
+  public void testClassesAreNotShardedByDefault() {
+    ImmutableSortedSet<String> testClasses = ImmutableSortedSet.of("A", "B", "C");
+
+    assertEquals(
+        ImmutableList.of(testClasses),
+        JavaTest.shardTestClasses(testClasses, 1, ImmutableMap.of()));
+  }
+
+  @Test
+  public void testClassesAreBalancedAcrossShardsByDuration() {
+    ImmutableList<Set<String>> shards = JavaTest.shardTestClasses(
+        ImmutableSortedSet.of("A", "B", "C", "D"),
+        2,
+        ImmutableMap.of("A", 100L, "B", 60L, "C", 50L, "D", 10L));
+
+    assertEquals(
+        ImmutableList.of(ImmutableSortedSet.of("A", "D"), ImmutableSortedSet.of("B", "C")),
+        shards);
+  }
+
+  @Test
+  public void unknownTestClassesAreAssumedToTakeTheAverageTime() {
+    ImmutableList<Set<String>> shards = JavaTest.shardTestClasses(
+        ImmutableSortedSet.of("A", "B", "C"),
+        2,
+        ImmutableMap.of("A", 100L, "B", 100L));
+
+    assertEquals(
+        ImmutableList.of(ImmutableSortedSet.of("A", "C"), ImmutableSortedSet.of("B")),
+        shards);
+  }
+
+  @Test
+  public void thereAreNeverMoreShardsThanTestClasses() {
+    assertEquals(
+        2,
+        JavaTest.shardTestClasses(ImmutableSortedSet.of("A", "B"), 8, ImmutableMap.of()).size());
+  }
+
+  @Test
+  public void eachShardLogsToItsOwnFile() throws Exception {
+    ImmutableList<Step> steps = runTests(newRuleWithCompiledTests(false), 2);
+
+    ParallelStep shards = (ParallelStep) Iterables.getOnlyElement(
+        FluentIterable.from(steps).filter(ParallelStep.class));
+    assertEquals(2, shards.getSteps().size());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    assertThat(
+        shards.getSteps().get(0).getDescription(context),
+        Matchers.containsString("logs.txt"));
+    assertThat(
+        shards.getSteps().get(1).getDescription(context),
+        Matchers.containsString("logs-1.txt"));
+  }
+
+  @Test
+  public void testsWhichRunSeparatelyAreNotSharded() throws Exception {
+    ImmutableList<Step> steps = runTests(newRuleWithCompiledTests(true), 2);
+
+    assertTrue(FluentIterable.from(steps).filter(ParallelStep.class).isEmpty());
+    assertEquals(1, FluentIterable.from(steps).filter(JUnitStep.class).size());
+  }
+
+  private JavaTest newRuleWithCompiledTests(boolean runTestSeparately) throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    JavaTest rule = (JavaTest) JavaTestBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//example:test"))
+        .addSrc(Paths.get("ATest.java"))
+        .addSrc(Paths.get("BTest.java"))
+        .setRunTestSeparately(runTestSeparately)
+        .build(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer()),
+            filesystem);
+    Path jar = filesystem.resolve(rule.getPathToOutput());
+    Files.createDirectories(jar.getParent());
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String entry : ImmutableList.of("com/example/ATest.class", "com/example/BTest.class")) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.closeEntry();
+      }
+    }
+    return rule;
+  }
+
+  private static ImmutableList<Step> runTests(JavaTest rule, int shards) {
+    return rule.runTests(
+        TestExecutionContext.newInstance(),
+        TestRunningOptions.builder()
+            .setJavaTestShards(shards)
+            .build(),
+        TestRule.NOOP_REPORTING_CALLBACK);
+  }
+
   private JavaTest newRule(ImmutableList<String> vmArgs) throws NoSuchBuildTargetException {
     return (JavaTest) JavaTestBuilder
         .createBuilder(BuildTargetFactory.newInstance("//example:test"))
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class SourceAbiStubProcessorTest {
+
+  private static final String SOURCE = Joiner.on("\n").join(ImmutableList.of(
+      "package com.example.buck;",
+      "import java.io.IOException;",
+      "import java.lang.annotation.*;",
+      "import java.util.*;",
+      "@Deprecated",
+      "public abstract class A<T extends Comparable<T>> implements Iterable<T> {",
+      "  @Retention(RetentionPolicy.RUNTIME)",
+      "  public @interface Ann {",
+      "    String value() default \"x\";",
+      "    ElementType[] types() default {ElementType.TYPE};",
+      "  }",
+      "  public static final int CONSTANT = 42;",
+      "  public static final boolean FLAG = true;",
+      "  public static final char CHAR = 'c';",
+      "  public static final String STRING = \"s\";",
+      "  protected List<? extends T> items;",
+      "  private int hidden;",
+      "  public A(int a, String... rest) throws IOException {}",
+      "  @Ann(\"y\") public abstract <E extends Exception & Runnable> T get(",
+      "      @Ann Map<String, List<T>> map, int[][] matrix) throws E;",
+      "  protected static synchronized void stat() {}",
+      "  private void secret() {}",
+      "  public class Inner { public Inner(T t) {} }",
+      "  public static class Nested<U> extends ArrayList<U> {}",
+      "  private static class Hidden {}",
+      "  public enum Color { RED, GREEN; Color() {} }",
+      "  public interface Callback { void call(); }",
+      "}"));
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private Path sourceFile;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(temp.newFolder().toPath());
+    sourceFile = temp.newFolder().toPath().resolve("A.java");
+    Files.write(sourceFile, SOURCE.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void stubsMatchThoseOfCompiledClasses() throws IOException {
+    Path classesDir = temp.newFolder().toPath();
+    assertTrue(compile(ImmutableList.of("-d", classesDir.toString()), sourceFile, null));
+    Path classAbi = Paths.get("class-abi.jar");
+    new StubJar(classesDir).writeTo(filesystem, classAbi);
+
+    SourceAbiStubProcessor processor = new SourceAbiStubProcessor();
+    assertTrue(compile(ImmutableList.of("-proc:only"), sourceFile, processor));
+    assertTrue(processor.isSuccessful());
+    Path sourceAbi = Paths.get("source-abi.jar");
+    processor.writeTo(filesystem, sourceAbi);
+
+    // Private member types can't be referenced by dependents, so aren't stubbed.
+    Map<String, ClassNode> expected = readClasses(filesystem.resolve(classAbi));
+    assertTrue(expected.remove("com/example/buck/A$Hidden.class") != null);
+    Map<String, ClassNode> actual = readClasses(filesystem.resolve(sourceAbi));
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String name : expected.keySet()) {
+      assertClassEquals(expected.get(name), actual.get(name));
+    }
+  }
+
+  @Test
+  public void dependentsCompileAgainstStubs() throws IOException {
+    SourceAbiStubProcessor processor = new SourceAbiStubProcessor();
+    assertTrue(compile(ImmutableList.of("-proc:only"), sourceFile, processor));
+    Path sourceAbi = Paths.get("source-abi.jar");
+    processor.writeTo(filesystem, sourceAbi);
+
+    Path dependent = temp.newFolder().toPath().resolve("B.java");
+    Files.write(
+        dependent,
+        Joiner.on("\n").join(ImmutableList.of(
+            "package com.example.buck;",
+            "import java.util.Iterator;",
+            "public class B extends A<String> {",
+            "  public B() throws java.io.IOException { super(A.CONSTANT, \"a\", \"b\"); }",
+            "  public Iterator<String> iterator() { return null; }",
+            "  public <E extends Exception & Runnable> String get(",
+            "      java.util.Map<String, java.util.List<String>> map, int[][] m) throws E {",
+            "    switch (CONSTANT) { case A.CONSTANT: return new Nested<String>().get(0); }",
+            "    return Color.RED.name();",
+            "  }",
+            "}")).getBytes(StandardCharsets.UTF_8));
+    assertTrue(
+        compile(
+            ImmutableList.of(
+                "-d", temp.newFolder().getPath(),
+                "-classpath", filesystem.resolve(sourceAbi).toString()),
+            dependent,
+            null));
+  }
+
+  @Test
+  public void unresolvedTypesInTheAbiAreReported() throws IOException {
+    Path broken = temp.newFolder().toPath().resolve("C.java");
+    Files.write(
+        broken,
+        "package com.example.buck; public class C { public Missing get() { return null; } }"
+            .getBytes(StandardCharsets.UTF_8));
+
+    SourceAbiStubProcessor processor = new SourceAbiStubProcessor();
+    compile(ImmutableList.of("-proc:only"), broken, processor);
+    assertFalse(processor.isSuccessful());
+    assertEquals(ImmutableSortedMap.<String, byte[]>of(), processor.getStubs());
+  }
+
+  private static boolean compile(
+      List<String> options,
+      Path source,
+      SourceAbiStubProcessor processor) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+             compiler.getStandardFileManager(null, null, null)) {
+      Iterable<? extends JavaFileObject> sources =
+          fileManager.getJavaFileObjects(source.toFile());
+      List<String> args = new ArrayList<>(options);
+      args.add("-g");
+      args.add("-source");
+      args.add("8");
+      args.add("-target");
+      args.add("8");
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(null, fileManager, null, args, null, sources);
+      if (processor != null) {
+        task.setProcessors(ImmutableList.of(processor));
+      }
+      return task.call();
+    }
+  }
+
+  private static Map<String, ClassNode> readClasses(Path jar) throws IOException {
+    Map<String, ClassNode> classes = new TreeMap<>();
+    try (ZipFile zip = new ZipFile(jar.toFile())) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        if (entry.getName().endsWith(".class")) {
+          ClassNode node = new ClassNode();
+          new ClassReader(zip.getInputStream(entry)).accept(node, 0);
+          classes.put(entry.getName(), node);
+        }
+      }
+    }
+    return classes;
+  }
+
+  private static void assertClassEquals(ClassNode expected, ClassNode actual) {
+    String name = expected.name;
+    assertEquals(name, expected.access, actual.access);
+    assertEquals(name, expected.superName, actual.superName);
+    assertEquals(name, expected.interfaces, actual.interfaces);
+    assertEquals(name, expected.signature, actual.signature);
+    assertEquals(name, describeAnnotations(expected.visibleAnnotations),
+        describeAnnotations(actual.visibleAnnotations));
+    assertEquals(name, describeAnnotations(expected.invisibleAnnotations),
+        describeAnnotations(actual.invisibleAnnotations));
+    assertEquals(name, describeInnerClasses(expected), describeInnerClasses(actual));
+
+    Map<String, FieldNode> expectedFields = new TreeMap<>();
+    for (FieldNode field : expected.fields) {
+      // Synthetic members, such as the outer instance of inner classes, can't be referenced.
+      if ((field.access & Opcodes.ACC_SYNTHETIC) == 0) {
+        expectedFields.put(field.name, field);
+      }
+    }
+    Map<String, FieldNode> actualFields = new TreeMap<>();
+    for (FieldNode field : actual.fields) {
+      actualFields.put(field.name, field);
+    }
+    assertEquals(name, expectedFields.keySet(), actualFields.keySet());
+    for (FieldNode field : expectedFields.values()) {
+      FieldNode seen = actualFields.get(field.name);
+      String fieldName = name + "." + field.name;
+      assertEquals(fieldName, field.access, seen.access);
+      assertEquals(fieldName, field.desc, seen.desc);
+      assertEquals(fieldName, field.signature, seen.signature);
+      assertEquals(fieldName, field.value, seen.value);
+    }
+
+    Map<String, MethodNode> expectedMethods = new TreeMap<>();
+    for (MethodNode method : expected.methods) {
+      // Static initializers aren't part of the ABI, though class stubs keep them.
+      if (!method.name.equals("<clinit>") && (method.access & Opcodes.ACC_SYNTHETIC) == 0) {
+        expectedMethods.put(method.name + method.desc, method);
+      }
+    }
+    Map<String, MethodNode> actualMethods = new TreeMap<>();
+    for (MethodNode method : actual.methods) {
+      actualMethods.put(method.name + method.desc, method);
+    }
+    assertEquals(name, expectedMethods.keySet(), actualMethods.keySet());
+    for (Map.Entry<String, MethodNode> entry : expectedMethods.entrySet()) {
+      MethodNode method = entry.getValue();
+      MethodNode seen = actualMethods.get(entry.getKey());
+      String methodName = name + "." + entry.getKey();
+      assertEquals(methodName, method.access, seen.access);
+      assertEquals(methodName, method.signature, seen.signature);
+      assertEquals(methodName, method.exceptions, seen.exceptions);
+      assertEquals(methodName, describeAnnotations(method.visibleAnnotations),
+          describeAnnotations(seen.visibleAnnotations));
+      assertEquals(methodName, method.annotationDefault == null, seen.annotationDefault == null);
+    }
+  }
+
+  private static ImmutableSortedSet<String> describeAnnotations(List<AnnotationNode> annotations) {
+    ImmutableSortedSet.Builder<String> descriptions = ImmutableSortedSet.naturalOrder();
+    if (annotations != null) {
+      for (AnnotationNode annotation : annotations) {
+        descriptions.add(
+            annotation.desc +
+                (annotation.values == null ?
+                    "" :
+                    Arrays.deepToString(annotation.values.toArray())));
+      }
+    }
+    return descriptions.build();
+  }
+
+  private static ImmutableSortedSet<String> describeInnerClasses(ClassNode node) {
+    ImmutableSortedSet.Builder<String> descriptions = ImmutableSortedSet.naturalOrder();
+    for (InnerClassNode inner : node.innerClasses) {
+      if (inner.name.endsWith("$Hidden")) {
+        continue;
+      }
+      descriptions.add(
+          String.format("%s %s %s %d", inner.name, inner.outerName, inner.innerName, inner.access));
+    }
+    return descriptions.build();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.intellij;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.DefaultJavaPackageFinder;
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.stringtemplate.v4.ST;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IjProjectWriterTest {
+
+  private static final FileTime BEFORE = FileTime.fromMillis(1000);
+  private static final String CONTENTS = "<library name=\"caf\u00e9\" />";
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void unchangedFilesAreNotRewritten() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    IjProjectWriter writer = createWriter(
+        filesystem,
+        ImmutableSet.of(),
+        MoreExecutors.newDirectExecutorService());
+    Path path = Paths.get(".idea/libraries/cafe.xml");
+    filesystem.mkdirs(path.getParent());
+
+    // The file must hold exactly the bytes which are hashed, whatever the default charset.
+    writer.writeToFile(newST(CONTENTS), path);
+    assertEquals(
+        Hashing.sha1().hashString(CONTENTS, UTF_8).toString(),
+        filesystem.computeSha1(path).getHash());
+
+    Files.setLastModifiedTime(filesystem.resolve(path), BEFORE);
+    writer.writeToFile(newST(CONTENTS), path);
+    assertEquals(BEFORE, Files.getLastModifiedTime(filesystem.resolve(path)));
+
+    writer.writeToFile(newST("<library name=\"cafe\" />"), path);
+    assertFalse(BEFORE.equals(Files.getLastModifiedTime(filesystem.resolve(path))));
+  }
+
+  @Test
+  public void renderingInParallelWritesTheSameFiles() throws Exception {
+    ImmutableSet.Builder<TargetNode<?>> targetNodes = ImmutableSet.builder();
+    TargetNode<?> base = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//java/com/example/base:base"))
+        .addSrc(Paths.get("java/com/example/base/Base.java"))
+        .build();
+    targetNodes.add(base);
+    for (int i = 0; i < 20; i++) {
+      targetNodes.add(
+          JavaLibraryBuilder
+              .createBuilder(
+                  BuildTargetFactory.newInstance(
+                      String.format("//java/com/example/lib%d:lib%d", i, i)))
+              .addSrc(Paths.get(String.format("java/com/example/lib%d/Lib.java", i)))
+              .addDep(base.getBuildTarget())
+              .build());
+    }
+
+    ProjectFilesystem serial = new ProjectFilesystem(tmp.newFolder("serial"));
+    createWriter(serial, targetNodes.build(), MoreExecutors.newDirectExecutorService())
+        .write(/* runPostGenerationCleaner */ false);
+
+    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(
+        MostExecutors.newMultiThreadExecutor("IjProjectWriterTest", 4));
+    ProjectFilesystem parallel = new ProjectFilesystem(tmp.newFolder("parallel"));
+    try {
+      createWriter(parallel, targetNodes.build(), executorService)
+          .write(/* runPostGenerationCleaner */ false);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    Map<Path, String> serialFiles = readFiles(serial);
+    assertThat(
+        serialFiles.get(Paths.get(".idea/modules.xml")),
+        containsString("java/com/example/lib19/java_com_example_lib19.iml"));
+    assertEquals(serialFiles, readFiles(parallel));
+  }
+
+  private static ST newST(String contents) {
+    return new ST(contents, IjProjectWriter.DELIMITER, IjProjectWriter.DELIMITER);
+  }
+
+  private static IjProjectWriter createWriter(
+      ProjectFilesystem filesystem,
+      ImmutableSet<TargetNode<?>> targetNodes,
+      ListeningExecutorService executorService) {
+    IjModuleGraph moduleGraph = IjModuleGraphTest.createModuleGraph(targetNodes);
+    IjProjectTemplateDataPreparer dataPreparer = new IjProjectTemplateDataPreparer(
+        DefaultJavaPackageFinder.createDefaultJavaPackageFinder(ImmutableSet.of("/java/")),
+        moduleGraph,
+        filesystem);
+    IjProjectConfig projectConfig =
+        IjProjectBuckConfig.create(FakeBuckConfig.builder().build());
+    return new IjProjectWriter(dataPreparer, projectConfig, filesystem, executorService);
+  }
+
+  private static Map<Path, String> readFiles(ProjectFilesystem filesystem) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(filesystem.getRootPath())) {
+      files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    Map<Path, String> contents = new TreeMap<>();
+    for (Path file : files) {
+      contents.put(
+          filesystem.getRootPath().relativize(file),
+          new String(Files.readAllBytes(file), UTF_8));
+    }
+    return contents;
+  }
+}
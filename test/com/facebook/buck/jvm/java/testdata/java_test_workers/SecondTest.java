@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class SecondTest {
+
+  @Test
+  public void testsDoNotShareState() {
+    assertEquals(1, Counter.increment());
+    assertEquals(null, System.getProperty("java_test_workers.ran"));
+    System.setProperty("java_test_workers.ran", "second");
+  }
+
+  @Test
+  public void recordWhereTheTestRan() throws IOException {
+    Files.write(
+        Paths.get("second-worker.txt"),
+        String.valueOf(System.getProperty("buck.junit_worker")).getBytes(UTF_8));
+  }
+
+}
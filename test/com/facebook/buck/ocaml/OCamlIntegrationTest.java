@@ -238,6 +238,37 @@ public class OCamlIntegrationTest {
     buildLog.assertTargetBuiltLocally(binary.toString());
   }
 
+  @Test
+  public void testLexAndYaccParallelBuild() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this,
+        "ocaml",
+        tmp);
+    workspace.setUp();
+
+    BuildTarget target = BuildTargetFactory.newInstance(workspace.getDestPath(), "//calc:calc");
+    BuildTarget binary = createOCamlLinkTarget(target);
+
+    workspace.runBuckCommand(
+        "build",
+        "-c", "ocaml.parallel_build=true",
+        target.toString()).assertSuccess();
+    BuckBuildLog buildLog = workspace.getBuildLog();
+    assertEquals(
+        ImmutableSet.of(target, binary),
+        buildLog.getAllTargets());
+    buildLog.assertTargetBuiltLocally(target.toString());
+    buildLog.assertTargetBuiltLocally(binary.toString());
+
+    workspace.resetBuildLogFile();
+
+    // Compiling in parallel doesn't change the outputs, so it doesn't change the rule keys either.
+    workspace.runBuckCommand("build", target.toString()).assertSuccess();
+    buildLog = workspace.getBuildLog();
+    buildLog.assertTargetHadMatchingRuleKey(binary.toString());
+    buildLog.assertTargetHadMatchingRuleKey(target.toString());
+  }
+
   @Test
   public void testCInteropBuild() throws IOException {
     ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
@@ -22,6 +22,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.cli.BuckConfig;
@@ -318,6 +319,18 @@ public class PythonBinaryIntegrationTest {
     workspace.getBuildLog().assertTargetBuiltLocally("//:bin");
   }
 
+  @Test
+  public void inProcessPexIsRunnable() throws IOException {
+    assumeThat(packageStyle, Matchers.is(PythonBuckConfig.PackageStyle.STANDALONE));
+    assumeFalse(pexDirectory);
+    workspace.writeContentsToPath("print('hello world')", "main.py");
+    String stdout = workspace.runBuckCommand("run", "-c", "python.in_process_pex=true", ":bin")
+        .assertSuccess()
+        .getStdout()
+        .trim();
+    assertThat(stdout, equalTo("hello world"));
+  }
+
   /**
    * Test a bug where a C/C++ library that is transitively excluded by a `python_library` containing
    * native extensions (in this case, it has to be a 2nd-order dep of the `python_library`) but
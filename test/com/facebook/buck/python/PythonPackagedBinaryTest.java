@@ -73,6 +73,7 @@ public class PythonPackagedBinaryTest {
         PythonTestUtils.PYTHON_PLATFORM,
         PEX,
         ImmutableList.of(),
+        /* writeInProcess */ false,
         new HashedFileTool(Paths.get("dummy_path_to_pex_runner")),
         ".pex",
         new PythonEnvironment(Paths.get("fake_python"), PythonVersion.of("CPython", "2.7")),
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class WritePexStepTest {
+
+  private static final PythonVersion PYTHON_VERSION = PythonVersion.of("CPython", "2.7");
+  private static final String WHEEL = "foo_bar-1.0-py2.py3-none-any.whl";
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    writeFile("src/main.py", "print('hello')");
+    writeFile("src/lib/util.py", "");
+    writeFile("src/res.txt", "data");
+    writeFile("pex/pex/pex_bootstrapper.py", "");
+    writeFile("pex/pex/bin/pex.py", "");
+    writeFile("setuptools/pkg_resources/__init__.py", "");
+    writeFile("setuptools/pkg_resources/tests/test_a.py", "");
+    writeFile("setuptools/_markerlib/__init__.py", "");
+    writeZip(Paths.get("src/gen.src.zip"), ImmutableMap.of("gen/mod.py", ""));
+    writeZip(
+        Paths.get("src/" + WHEEL),
+        ImmutableMap.of(
+            "foo_bar/__init__.py", "",
+            "foo_bar-1.0.dist-info/METADATA", "Name: foo_bar"));
+  }
+
+  @Test
+  public void writesRunnableLayout() throws Exception {
+    Path pex = Paths.get("bin.pex");
+    StepExecutionResult result = newStep(pex).execute(TestExecutionContext.newInstance());
+    assertThat(result, equalTo(StepExecutionResult.SUCCESS));
+
+    byte[] contents = Files.readAllBytes(filesystem.resolve(pex));
+    assertThat(new String(contents, UTF_8), startsWith("#!/usr/bin/env python2.7\n"));
+    assertTrue(Files.isExecutable(filesystem.resolve(pex)));
+
+    try (ZipFile zip = new ZipFile(filesystem.resolve(pex).toFile())) {
+      List<String> names = Collections.list(zip.entries())
+          .stream()
+          .map(ZipEntry::getName)
+          .collect(Collectors.toList());
+      assertThat(
+          names,
+          hasItems(
+              "__main__.py",
+              "PEX-INFO",
+              "main.py",
+              "lib/util.py",
+              "lib/__init__.py",
+              "res.txt",
+              "gen/mod.py",
+              "gen/__init__.py",
+              ".bootstrap/_pex/pex_bootstrapper.py",
+              ".bootstrap/pkg_resources/__init__.py",
+              ".bootstrap/_markerlib/__init__.py",
+              ".bootstrap/__init__.py",
+              ".deps/" + WHEEL + "/foo_bar/__init__.py",
+              ".deps/" + WHEEL + "/foo_bar-1.0.dist-info/METADATA"));
+      assertThat(names, not(hasItems(".bootstrap/_pex/bin/pex.py")));
+      assertThat(names, not(hasItems(".bootstrap/pkg_resources/tests/test_a.py")));
+
+      JsonNode pexInfo;
+      try (InputStream in = zip.getInputStream(zip.getEntry("PEX-INFO"))) {
+        pexInfo = ObjectMappers.newDefaultInstance().readTree(in);
+      }
+      assertThat(pexInfo.get("entry_point").asText(), equalTo("main"));
+      assertThat(pexInfo.get("zip_safe").asBoolean(), equalTo(false));
+      assertThat(pexInfo.get("requirements").get(0).asText(), equalTo("foo-bar==1.0"));
+      assertThat(pexInfo.get("distributions").get(WHEEL).asText().length(), equalTo(40));
+      assertThat(pexInfo.get("code_hash").asText().length(), equalTo(40));
+      assertThat(pexInfo.get("build_properties").get("version").get(1).asInt(), equalTo(7));
+
+      try (InputStream in = zip.getInputStream(zip.getEntry("lib/__init__.py"))) {
+        assertThat(
+            new String(ByteStreams.toByteArray(in), UTF_8),
+            equalTo("__import__('pkg_resources').declare_namespace(__name__)"));
+      }
+    }
+  }
+
+  @Test
+  public void codeHashDependsOnContents() throws Exception {
+    String first = getCodeHash(Paths.get("first.pex"));
+    writeFile("src/main.py", "print('goodbye')");
+    String second = getCodeHash(Paths.get("second.pex"));
+    assertThat(first, not(equalTo(second)));
+  }
+
+  @Test
+  public void requirementsAreTakenFromDistributionNames() {
+    assertThat(WritePexStep.getRequirement(WHEEL), equalTo("foo-bar==1.0"));
+    assertThat(WritePexStep.getRequirement("six-1.10.0-py2.7.egg"), equalTo("six==1.10.0"));
+    assertThat(WritePexStep.getRequirement("six-1.10.0.egg"), equalTo("six==1.10.0"));
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void unrecognizedPrebuiltLibrariesAreRejected() {
+    WritePexStep.getRequirement("library.tar.gz");
+  }
+
+  private String getCodeHash(Path pex) throws Exception {
+    newStep(pex).execute(TestExecutionContext.newInstance());
+    try (ZipFile zip = new ZipFile(filesystem.resolve(pex).toFile());
+         InputStream in = zip.getInputStream(zip.getEntry("PEX-INFO"))) {
+      return ObjectMappers.newDefaultInstance().readTree(in).get("code_hash").asText();
+    }
+  }
+
+  private WritePexStep newStep(Path destination) {
+    return new WritePexStep(
+        filesystem,
+        PYTHON_VERSION,
+        destination,
+        "main",
+        ImmutableMap.of(
+            Paths.get("main.py"), Paths.get("src/main.py"),
+            Paths.get("lib/util.py"), Paths.get("src/lib/util.py"),
+            Paths.get("gen"), Paths.get("src/gen.src.zip")),
+        ImmutableMap.of(Paths.get("res.txt"), Paths.get("src/res.txt")),
+        ImmutableMap.of(),
+        ImmutableSet.of(Paths.get("src/" + WHEEL)),
+        /* zipSafe */ false,
+        Paths.get("pex"),
+        Paths.get("setuptools"));
+  }
+
+  private void writeFile(String path, String contents) throws IOException {
+    filesystem.createParentDirs(Paths.get(path));
+    filesystem.writeContentsToPath(contents, Paths.get(path));
+  }
+
+  private void writeZip(Path path, ImmutableMap<String, String> entries) throws IOException {
+    filesystem.createParentDirs(path);
+    try (OutputStream out = filesystem.newFileOutputStream(path);
+         ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (ImmutableMap.Entry<String, String> entry : entries.entrySet()) {
+        zip.putNextEntry(new ZipEntry(entry.getKey()));
+        zip.write(entry.getValue().getBytes(UTF_8));
+        zip.closeEntry();
+      }
+    }
+  }
+
+}
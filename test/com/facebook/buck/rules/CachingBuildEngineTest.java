@@ -25,6 +25,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -1101,6 +1102,62 @@ public class CachingBuildEngineTest {
           equalTo(BuildRuleStatus.SUCCESS));
     }
 
+    @Test
+    public void pipelinedRulesBuildWithoutWaitingForPipelinedDeps() throws Exception {
+      ListeningExecutorService service = listeningDecorator(Executors.newFixedThreadPool(2));
+      final Semaphore depFinish = new Semaphore(0);
+      final Semaphore ruleBuilt = new Semaphore(0);
+
+      BuildRule dep =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(
+                  new AbstractExecutionStep("wait") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context)
+                        throws InterruptedException {
+                      depFinish.acquire();
+                      return StepExecutionResult.SUCCESS;
+                    }
+                  }),
+              /* output */ null);
+      BuildRule rule =
+          new PipelinedRuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:rule"))
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(
+                  new AbstractExecutionStep("built") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context) {
+                      ruleBuilt.release();
+                      return StepExecutionResult.SUCCESS;
+                    }
+                  }),
+              ImmutableSortedSet.of(dep));
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory()
+          .setExecutorService(service)
+          .build();
+      ListenableFuture<BuildResult> result = cachingBuildEngine.build(buildContext, rule);
+
+      // The rule is built while its dep is still building, but isn't finished until the dep is.
+      assertTrue(ruleBuilt.tryAcquire(10, TimeUnit.SECONDS));
+      assertFalse(result.isDone());
+      depFinish.release();
+      assertThat(result.get().getStatus(), equalTo(BuildRuleStatus.SUCCESS));
+      assertThat(
+          Preconditions.checkNotNull(
+              cachingBuildEngine.getBuildRuleResult(dep.getBuildTarget())).getStatus(),
+          equalTo(BuildRuleStatus.SUCCESS));
+      service.shutdown();
+    }
+
     @Test
     public void getNumRulesToBuild() throws Exception {
       BuildRule rule3 =
@@ -3278,6 +3335,26 @@ public class CachingBuildEngineTest {
 
   }
 
+  private static class PipelinedRuleWithSteps extends RuleWithSteps implements SupportsPipelining {
+
+    private final ImmutableSortedSet<BuildRule> pipelinedDeps;
+
+    public PipelinedRuleWithSteps(
+        BuildRuleParams buildRuleParams,
+        SourcePathResolver resolver,
+        ImmutableList<Step> steps,
+        ImmutableSortedSet<BuildRule> pipelinedDeps) {
+      super(buildRuleParams, resolver, steps, /* output */ null);
+      this.pipelinedDeps = pipelinedDeps;
+    }
+
+    @Override
+    public ImmutableSortedSet<BuildRule> getPipelinedDeps() {
+      return pipelinedDeps;
+    }
+
+  }
+
   private static class SleepStep extends AbstractExecutionStep {
 
     private final long millis;
@@ -17,10 +17,12 @@
 package com.facebook.buck.rust;
 
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.CommandTool;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
 import com.facebook.buck.rules.FakeSourcePath;
@@ -34,6 +36,7 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -73,6 +76,45 @@ public class RustCompileTest {
     linkable.getCrateRoot();
   }
 
+  @Test
+  public void pipelinedLibrariesAreBuiltAgainstMetadata() {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(resolver);
+    RustLibrary dep = resolver.addToIndex(
+        new RustLibrary(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep")).build(),
+            pathResolver,
+            ImmutableSortedSet.of(new FakeSourcePath("lib.rs")),
+            /* features */ ImmutableSortedSet.of(),
+            /* rustcFlags */ ImmutableList.of(),
+            new CommandTool.Builder().build()));
+
+    ImmutableSortedSet<BuildRule> metadataDeps =
+        RustLinkables.getMetadataDeps(resolver, ImmutableList.of(dep));
+    RustLibrary metadata = (RustLibrary) Iterables.getOnlyElement(metadataDeps);
+    assertTrue(metadata.isMetadata());
+    assertThat(metadata.getLinkTarget(), Matchers.equalTo("dep"));
+    assertThat(metadata.getLinkPath().toString(), Matchers.endsWith("libdep.rmeta"));
+    assertThat(
+        RustLinkables.getMetadataDeps(resolver, ImmutableList.of(dep)),
+        Matchers.equalTo(metadataDeps));
+
+    RustLibrary library = resolver.addToIndex(
+        new RustLibrary(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:library"))
+                .setDeclaredDeps(metadataDeps)
+                .build(),
+            pathResolver,
+            ImmutableSortedSet.of(new FakeSourcePath("lib.rs")),
+            /* features */ ImmutableSortedSet.of(),
+            /* rustcFlags */ ImmutableList.of(),
+            new CommandTool.Builder().build()));
+    assertThat(
+        RustLinkables.getTransitiveLibraries(resolver, ImmutableList.of(library)),
+        Matchers.<BuildRule>containsInAnyOrder(library, dep));
+  }
+
   class FakeRustCompile extends RustCompile {
     FakeRustCompile(
         String target,
@@ -18,6 +18,8 @@ package com.facebook.buck.shell;
 
 import static org.junit.Assert.assertThat;
 
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 
@@ -32,6 +34,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class WorkerProcessPoolTest {
+  private final ExecutionContext context = TestExecutionContext.newInstance();
+
   @Test
   public void testProvidesWorkersAccordingToCapacityThenBlocks() throws InterruptedException {
     int maxWorkers = 3;
@@ -132,10 +136,22 @@ public class WorkerProcessPoolTest {
 
   }
 
+  @Test
+  public void testDestroyedWorkerProcessesAreReplaced() throws Exception {
+    final WorkerProcessPool pool = createPool(Optional.of(1));
+
+    WorkerProcess first = pool.borrowWorkerProcess(context);
+    pool.destroyWorkerProcess(first);
+    // With a capacity of one, this would block forever if destroying hadn't released the worker.
+    WorkerProcess second = pool.borrowWorkerProcess(context);
+
+    assertThat(second, Matchers.not(Matchers.sameInstance(first)));
+  }
+
   private static WorkerProcessPool createPool(final Optional<Integer> maxWorkers) {
     return new WorkerProcessPool(maxWorkers) {
       @Override
-      protected WorkerProcess startWorkerProcess() throws IOException {
+      protected WorkerProcess startWorkerProcess(ExecutionContext context) throws IOException {
         return new FakeWorkerProcess(ImmutableMap.of());
       }
     };
@@ -171,7 +187,7 @@ public class WorkerProcessPoolTest {
 
     @Override
     public void runUnsafe() throws Exception {
-      createdWorkers.add(pool.borrowWorkerProcess());
+      createdWorkers.add(pool.borrowWorkerProcess(context));
     }
   }
 
@@ -188,7 +204,7 @@ public class WorkerProcessPoolTest {
 
     @Override
     public void runUnsafe() throws Exception {
-      WorkerProcess workerProcess = pool.borrowWorkerProcess();
+      WorkerProcess workerProcess = pool.borrowWorkerProcess(context);
       usedWorkers.put(this, workerProcess);
       pool.returnWorkerProcess(workerProcess);
     }
@@ -43,9 +43,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -101,7 +104,8 @@ public class WorkerShellStepTest {
         startupArgs,
         startupEnv,
         jobArgs,
-        maxWorkers);
+        maxWorkers,
+        /* isPersistent */ false);
   }
 
   private ExecutionContext createExecutionContextWith(
@@ -127,7 +131,7 @@ public class WorkerShellStepTest {
     ConcurrentHashMap<String, WorkerProcessPool> workerProcessMap = new ConcurrentHashMap<>();
     WorkerProcessPool workerProcessPool = new WorkerProcessPool(poolCapacity) {
       @Override
-      protected WorkerProcess startWorkerProcess() throws IOException {
+      protected WorkerProcess startWorkerProcess(ExecutionContext context) throws IOException {
         return new FakeWorkerProcess(jobArgs);
       }
     };
@@ -494,6 +498,108 @@ public class WorkerShellStepTest {
 
   }
 
+  @Test
+  public void testPersistentWorkersOutliveTheExecutionContext() throws Exception {
+    final ImmutableMap<String, WorkerJobResult> jobResults = ImmutableMap.of(
+        "jobArgs", WorkerJobResult.of(0, Optional.of(""), Optional.of("")));
+    WorkerShellStep step = new WorkerShellStep(
+        new FakeProjectFilesystem(),
+        Optional.of(
+            WorkerJobParams.of(
+                Paths.get("tmp").toAbsolutePath().normalize(),
+                ImmutableList.of(startupCommand),
+                startupArgs,
+                ImmutableMap.of(),
+                "jobArgs",
+                Optional.of(1),
+                /* isPersistent */ true)),
+        Optional.absent(),
+        Optional.absent()) {
+      @Override
+      WorkerProcess createWorkerProcess(
+          ProcessExecutorParams processParams,
+          ExecutionContext context,
+          Path tmpDir) throws IOException {
+        return new FakeWorkerProcess(jobResults);
+      }
+    };
+
+    ConcurrentHashMap<String, WorkerProcessPool> persistentPools = new ConcurrentHashMap<>();
+    ExecutionContext context = TestExecutionContext
+        .newBuilder()
+        .setPlatform(Platform.LINUX)
+        .setPersistentWorkerProcessPools(
+            Optional.<ConcurrentMap<String, WorkerProcessPool>>of(persistentPools))
+        .setConsole(new TestConsole(Verbosity.ALL))
+        .setBuckEventBus(BuckEventBusFactory.newInstance())
+        .build();
+    assertThat(step.execute(context).getExitCode(), Matchers.equalTo(0));
+    context.close();
+
+    assertThat(context.getWorkerProcessPools().size(), Matchers.equalTo(0));
+    assertThat(persistentPools.keySet(), Matchers.contains(fakeWorkerStartupCommand));
+    assertThat(
+        step.getWorkerTempDir(context),
+        Matchers.not(Matchers.equalTo(Paths.get("tmp").toAbsolutePath().normalize())));
+  }
+
+  @Test
+  public void testPersistentWorkersAreStartedInTheBorrowingCommandsContext() throws Exception {
+    final ImmutableMap<String, WorkerJobResult> jobResults = ImmutableMap.of(
+        "jobArgs", WorkerJobResult.of(0, Optional.of(""), Optional.of("")));
+    final List<ExecutionContext> startedIn = new ArrayList<>();
+    final List<Map<String, String>> startedWith = new ArrayList<>();
+    WorkerShellStep step = new WorkerShellStep(
+        new FakeProjectFilesystem(),
+        Optional.of(
+            WorkerJobParams.of(
+                Paths.get("tmp").toAbsolutePath().normalize(),
+                ImmutableList.of(startupCommand),
+                startupArgs,
+                ImmutableMap.of(),
+                "jobArgs",
+                Optional.of(2),
+                /* isPersistent */ true)),
+        Optional.absent(),
+        Optional.absent()) {
+      @Override
+      WorkerProcess createWorkerProcess(
+          ProcessExecutorParams processParams,
+          ExecutionContext context,
+          Path tmpDir) throws IOException {
+        startedIn.add(context);
+        startedWith.add(processParams.getEnvironment().get());
+        return new FakeWorkerProcess(jobResults);
+      }
+    };
+
+    Optional<ConcurrentMap<String, WorkerProcessPool>> persistentPools =
+        Optional.<ConcurrentMap<String, WorkerProcessPool>>of(new ConcurrentHashMap<>());
+    ExecutionContext first = TestExecutionContext
+        .newBuilder()
+        .setPlatform(Platform.LINUX)
+        .setEnvironment(ImmutableMap.of("COMMAND", "first"))
+        .setPersistentWorkerProcessPools(persistentPools)
+        .build();
+    assertThat(step.execute(first).getExitCode(), Matchers.equalTo(0));
+    first.close();
+
+    ExecutionContext second = TestExecutionContext
+        .newBuilder()
+        .setPlatform(Platform.LINUX)
+        .setEnvironment(ImmutableMap.of("COMMAND", "second"))
+        .setPersistentWorkerProcessPools(persistentPools)
+        .build();
+    WorkerProcessPool pool = persistentPools.get().get(fakeWorkerStartupCommand);
+    // The first process is idle, so borrowing another starts a new one.
+    pool.borrowWorkerProcess(second);
+    pool.borrowWorkerProcess(second);
+
+    assertThat(startedIn, Matchers.contains(first, second));
+    assertThat(startedWith.get(0).get("COMMAND"), Matchers.equalTo("first"));
+    assertThat(startedWith.get(1).get("COMMAND"), Matchers.equalTo("second"));
+  }
+
   private static class ConcurrentExecution extends Thread {
     private final WorkerShellStep step;
     private final ExecutionContext context;
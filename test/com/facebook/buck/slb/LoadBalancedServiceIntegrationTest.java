@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.slb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.testutil.integration.HttpdForTests;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class LoadBalancedServiceIntegrationTest {
+
+  private static final int WARM_UP_REQUESTS = 30;
+
+  private final CountDownLatch releaseSlowRequests = new CountDownLatch(1);
+  private final AtomicInteger fastServerRequests = new AtomicInteger();
+  private HttpdForTests slowServer;
+  private HttpdForTests fastServer;
+  private BuckEventBus eventBus;
+
+  @Before
+  public void setUp() throws Exception {
+    slowServer = startServer("slow", true, new AtomicInteger());
+    fastServer = startServer("fast", false, fastServerRequests);
+    eventBus = BuckEventBusFactory.newInstance();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    releaseSlowRequests.countDown();
+    slowServer.close();
+    fastServer.close();
+  }
+
+  @Test
+  public void slowRequestIsAnsweredByTheSecondBestServer() throws Exception {
+    try (LoadBalancedService service = newHedgingService(/* minHedgeDelayMillis */ 0)) {
+      warmUp(service);
+      assertTrue(service.getHedgeDelayMillis().isPresent());
+
+      long startMillis = System.currentTimeMillis();
+      assertEquals("fast", fetch(service, "/hang"));
+      assertTrue(System.currentTimeMillis() - startMillis < TimeUnit.SECONDS.toMillis(10));
+    }
+  }
+
+  @Test
+  public void quickRequestsAreOnlySentToTheBestServer() throws Exception {
+    // However slow the machine running the test is, no request is ever slow enough to hedge.
+    try (LoadBalancedService service = newHedgingService(TimeUnit.HOURS.toMillis(1))) {
+      warmUp(service);
+      assertEquals(0, fastServerRequests.get());
+    }
+  }
+
+  private LoadBalancedService newHedgingService(long minHedgeDelayMillis) {
+    return new LoadBalancedService(
+        new FixedRanking(getUri(slowServer), getUri(fastServer)),
+        new OkHttpClient(),
+        eventBus,
+        true,
+        minHedgeDelayMillis);
+  }
+
+  /**
+   * Makes enough quick requests for the service to start hedging.  Any of them may have been
+   * hedged, and answered by either server, unless the hedge delay is too long for that.
+   */
+  private static void warmUp(HttpService service) throws IOException {
+    for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+      fetch(service, "/quick");
+    }
+  }
+
+  private static URI getUri(HttpdForTests server) {
+    return URI.create("http://localhost:" + server.getRootUri().getPort());
+  }
+
+  private static String fetch(HttpService service, String path) throws IOException {
+    try (HttpResponse response = service.makeRequest(path, new Request.Builder().get());
+         InputStream body = response.getBody()) {
+      return new String(ByteStreams.toByteArray(body), UTF_8);
+    }
+  }
+
+  /**
+   * Starts a server which answers with {@code name}, except for requests to {@code /hang} if
+   * {@code hangs}, which are answered only once the test is over.
+   */
+  private HttpdForTests startServer(
+      String name,
+      boolean hangs,
+      AtomicInteger requestCount) throws Exception {
+    HttpdForTests server = new HttpdForTests();
+    server.addHandler(
+        new AbstractHandler() {
+          @Override
+          public void handle(
+              String target,
+              org.eclipse.jetty.server.Request request,
+              HttpServletRequest httpServletRequest,
+              HttpServletResponse httpServletResponse) throws IOException {
+            requestCount.incrementAndGet();
+            if (hangs && target.equals("/hang")) {
+              try {
+                releaseSlowRequests.await(30, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+            httpServletResponse.setStatus(200);
+            httpServletResponse.getOutputStream().write(name.getBytes(UTF_8));
+            request.setHandled(true);
+          }
+        });
+    server.start();
+    return server;
+  }
+
+  private static class FixedRanking implements HttpLoadBalancer {
+    private final ImmutableList<URI> servers;
+
+    private FixedRanking(URI... servers) {
+      this.servers = ImmutableList.copyOf(servers);
+    }
+
+    @Override
+    public URI getBestServer() {
+      return servers.get(0);
+    }
+
+    @Override
+    public ImmutableList<URI> getRankedServers() {
+      return servers;
+    }
+
+    @Override
+    public void reportRequestSuccess(URI server) {
+    }
+
+    @Override
+    public void reportRequestException(URI server) {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -80,6 +80,46 @@ public class ServerHealthManagerTest {
     Assert.assertEquals(SERVERS.get(0), server);
   }
 
+  @Test
+  public void testServersAreRankedByLatency() throws IOException {
+    ServerHealthManager manager = newServerHealthManager();
+    manager.reportPingLatency(SERVERS.get(0), NOW_MILLIS, 3);
+    manager.reportPingLatency(SERVERS.get(1), NOW_MILLIS, 1);
+    manager.reportPingLatency(SERVERS.get(2), NOW_MILLIS, 2);
+
+    Assert.assertEquals(
+        ImmutableList.of(SERVERS.get(1), SERVERS.get(2), SERVERS.get(0)),
+        manager.getRankedServers(NOW_MILLIS));
+  }
+
+  @Test
+  public void testRankingIsReusedUntilItIsRefreshedOrInvalidated() throws IOException {
+    eventBus = EasyMock.createMock(BuckEventBus.class);
+    eventBus.post(EasyMock.anyObject(ServerHealthManagerEvent.class));
+    EasyMock.expectLastCall().times(2);
+    EasyMock.replay(eventBus);
+    ServerHealthManager manager = new ServerHealthManager(
+        SERVERS,
+        RANGE_MILLIS,
+        MAX_ERROR_PERCENTAGE,
+        RANGE_MILLIS,
+        MAX_ACCEPTABLE_LATENCY_MILLIS,
+        RANGE_MILLIS,
+        eventBus);
+    for (int i = 0; i < SERVERS.size(); ++i) {
+      manager.reportPingLatency(SERVERS.get(i), NOW_MILLIS, i);
+    }
+
+    Assert.assertEquals(SERVERS.get(0), manager.getBestServer(NOW_MILLIS));
+    manager.reportRequestSuccess(SERVERS.get(1), NOW_MILLIS);
+    Assert.assertEquals(SERVERS.get(0), manager.getBestServer(NOW_MILLIS + 1));
+
+    // An error could make the best server unhealthy, so it's taken into account straight away.
+    manager.reportRequestError(SERVERS.get(0), NOW_MILLIS + 1);
+    Assert.assertEquals(SERVERS.get(1), manager.getBestServer(NOW_MILLIS + 1));
+    EasyMock.verify(eventBus);
+  }
+
   private void reportLatencyToAll(ServerHealthManager manager, int latencyMillis) {
     for (URI server : SERVERS) {
       manager.reportPingLatency(server, NOW_MILLIS, latencyMillis);
@@ -35,6 +35,7 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.FakeWatchmanClient;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.PathOrGlobMatcher;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.io.Watchman;
 import com.facebook.buck.io.WatchmanDiagnostic;
 import com.facebook.buck.io.WatchmanDiagnosticCache;
@@ -254,6 +255,44 @@ public class WatchmanWatcherTest {
         eventCapture.getValue().kind());
   }
 
+  @Test
+  public void whenManyChangesThenBatchEventGenerated()
+      throws IOException, InterruptedException {
+    ImmutableMap<String, Object> watchmanOutput = ImmutableMap.of(
+        "files", ImmutableList.of(
+            ImmutableMap.<String, Object>of("name", "foo/bar/baz"),
+            ImmutableMap.<String, Object>of(
+                "name", "foo/bar/boz",
+                "exists", false)));
+    Capture<WatchEvent<?>> eventCapture = newCapture();
+    EventBus eventBus = createStrictMock(EventBus.class);
+    eventBus.post(capture(eventCapture));
+    replay(eventBus);
+    WatchmanWatcher watcher = createWatcher(
+        eventBus,
+        new FakeWatchmanClient(
+            0 /* queryElapsedTimeNanos */,
+            ImmutableMap.of(FAKE_UUID_QUERY, watchmanOutput)),
+        1 /* overflow */,
+        10000 /* timeout */);
+    watcher.postEvents(
+        new BuckEventBus(new FakeClock(0), new BuildId()),
+        new WatchmanDiagnosticCache(),
+        WatchmanWatcher.FreshInstanceAction.NONE);
+    verify(eventBus);
+    assertThat(eventCapture.getValue(), Matchers.instanceOf(WatchEventBatch.class));
+    List<WatchEvent<Path>> events = ((WatchEventBatch) eventCapture.getValue()).getEvents();
+    assertEquals(2, events.size());
+    assertEquals(StandardWatchEventKinds.ENTRY_MODIFY, events.get(0).kind());
+    assertEquals(
+        MorePaths.pathWithPlatformSeparators("foo/bar/baz"),
+        events.get(0).context().toString());
+    assertEquals(StandardWatchEventKinds.ENTRY_DELETE, events.get(1).kind());
+    assertEquals(
+        MorePaths.pathWithPlatformSeparators("foo/bar/boz"),
+        events.get(1).context().toString());
+  }
+
   @Test
   public void whenWatchmanFailsThenOverflowEventGenerated()
       throws IOException, InterruptedException {
@@ -20,11 +20,14 @@ import static com.facebook.buck.testutil.WatchEventsForTests.createOverflowEvent
 import static com.facebook.buck.testutil.WatchEventsForTests.createPathEvent;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.WatchEventBatch;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 
@@ -125,4 +128,33 @@ public class WatchedFileHashCacheTest {
     assertFalse("Cache should not contain path", cache.willGet(dir));
   }
 
+  @Test
+  public void whenNotifiedOfBatchOnlyAffectedCacheEntriesAreRemoved() throws IOException {
+    WatchedFileHashCache cache =
+        new WatchedFileHashCache(new FakeProjectFilesystem());
+    Path changedFile = Paths.get("foo/Changed.java");
+    Path unchangedFile = Paths.get("foo/Unchanged.java");
+    Path changedDir = Paths.get("bar");
+    Path unchangedDir = Paths.get("baz");
+    HashCodeAndFileType file = HashCodeAndFileType.ofFile(HashCode.fromInt(42));
+    HashCodeAndFileType dir =
+        HashCodeAndFileType.ofDirectory(HashCode.fromInt(42), ImmutableSet.of());
+    cache.loadingCache.put(changedFile, file);
+    cache.loadingCache.put(unchangedFile, file);
+    cache.loadingCache.put(changedDir, dir);
+    cache.loadingCache.put(unchangedDir, dir);
+    cache.onFileSystemChange(
+        new WatchEventBatch(
+            "Lots of changes",
+            ImmutableList.of(
+                createPathEvent(changedFile, StandardWatchEventKinds.ENTRY_MODIFY),
+                createPathEvent(
+                    changedDir.resolve("qux/Added.java"),
+                    StandardWatchEventKinds.ENTRY_CREATE))));
+    assertFalse("Cache should not contain changed file", cache.willGet(changedFile));
+    assertFalse("Cache should not contain changed dir", cache.willGet(changedDir));
+    assertTrue("Cache should still contain unchanged file", cache.willGet(unchangedFile));
+    assertTrue("Cache should still contain unchanged dir", cache.willGet(unchangedDir));
+  }
+
 }
@@ -333,4 +333,80 @@ public class VersionedTargetGraphBuilderTest {
     assertEquals(expectedTargetGraph, versionedGraph);
   }
 
+  private static TargetGraph createGraphWithTwoRoots() {
+    return TargetGraphFactory.newInstance(
+        new VersionPropagatorBuilder("//:v2")
+            .build(),
+        new VersionPropagatorBuilder("//:v1")
+            .build(),
+        new VersionedAliasBuilder("//:dep")
+            .setVersions("1.0", "//:v1", "2.0", "//:v2")
+            .build(),
+        new VersionPropagatorBuilder("//:lib")
+            .setDeps("//:dep")
+            .build(),
+        new VersionRootBuilder("//:a")
+            .setDeps("//:lib")
+            .build(),
+        new VersionRootBuilder("//:b")
+            .setDeps("//:lib")
+            .build());
+  }
+
+  @Test
+  public void cacheReusesUnchangedRoots() throws Exception {
+    BuildTarget a = BuildTargetFactory.newInstance("//:a");
+    BuildTarget b = BuildTargetFactory.newInstance("//:b");
+    BuildTarget dep = BuildTargetFactory.newInstance("//:dep");
+    TargetGraphAndBuildTargets unversioned =
+        TargetGraphAndBuildTargets.of(createGraphWithTwoRoots(), ImmutableSet.of(a, b));
+    VersionSelector selector =
+        new FixedVersionSelector(
+            ImmutableMap.of(
+                a, ImmutableMap.of(dep, Version.of("1.0")),
+                b, ImmutableMap.of(dep, Version.of("2.0"))));
+    VersionedTargetGraphCache cache = new VersionedTargetGraphCache();
+
+    TargetGraph first = cache.toVersionedTargetGraph(selector, unversioned, POOL).getTargetGraph();
+    TargetGraph second =
+        cache.toVersionedTargetGraph(selector, unversioned, POOL).getTargetGraph();
+
+    assertEquals(first, second);
+    assertThat(second.get(a), Matchers.sameInstance(first.get(a)));
+    assertThat(second.get(b), Matchers.sameInstance(first.get(b)));
+  }
+
+  @Test
+  public void cacheRebuildsRootsWithChangedVersions() throws Exception {
+    BuildTarget a = BuildTargetFactory.newInstance("//:a");
+    BuildTarget b = BuildTargetFactory.newInstance("//:b");
+    BuildTarget dep = BuildTargetFactory.newInstance("//:dep");
+    TargetGraphAndBuildTargets unversioned =
+        TargetGraphAndBuildTargets.of(createGraphWithTwoRoots(), ImmutableSet.of(a, b));
+    VersionedTargetGraphCache cache = new VersionedTargetGraphCache();
+
+    TargetGraph first =
+        cache.toVersionedTargetGraph(
+            new FixedVersionSelector(
+                ImmutableMap.of(
+                    a, ImmutableMap.of(dep, Version.of("1.0")),
+                    b, ImmutableMap.of(dep, Version.of("2.0")))),
+            unversioned,
+            POOL)
+            .getTargetGraph();
+    VersionSelector newSelector =
+        new FixedVersionSelector(
+            ImmutableMap.of(
+                a, ImmutableMap.of(dep, Version.of("1.0")),
+                b, ImmutableMap.of(dep, Version.of("1.0"))));
+    TargetGraph second =
+        cache.toVersionedTargetGraph(newSelector, unversioned, POOL).getTargetGraph();
+
+    assertEquals(
+        new VersionedTargetGraphBuilder(POOL, newSelector, unversioned).build(),
+        second);
+    assertThat(second.get(a), Matchers.sameInstance(first.get(a)));
+    assertThat(second.get(b), Matchers.not(Matchers.sameInstance(first.get(b))));
+  }
+
 }